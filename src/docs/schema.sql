@@ -179,6 +179,8 @@ CREATE TABLE IF NOT EXISTS public.orchestrator_run
     created_at      BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
     updated_at      BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT
 );
+CREATE INDEX IF NOT EXISTS idx_orchestrator_run_orchestrator ON public.orchestrator_run (orchestrator_id, start_time DESC);
+CREATE INDEX IF NOT EXISTS idx_orchestrator_run_session ON public.orchestrator_run (session_id);
 
 -- ========================
 -- 12. Orchestrator消息记录表
@@ -195,6 +197,7 @@ CREATE TABLE IF NOT EXISTS public.orchestrator_message
     timestamp    BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
     sequence     INTEGER
 );
+CREATE INDEX IF NOT EXISTS idx_orchestrator_message_run ON public.orchestrator_message (run_id, sequence);
 
 -- ========================
 -- 13. Agent共享记忆表
@@ -213,6 +216,9 @@ CREATE TABLE IF NOT EXISTS public.agent_memory
     created_at  BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
     updated_at  BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT
 );
+-- 对话记忆：按会话取最近N条、按过期时间清理
+CREATE INDEX IF NOT EXISTS idx_agent_memory_session ON public.agent_memory (session_id, id);
+CREATE INDEX IF NOT EXISTS idx_agent_memory_expires ON public.agent_memory (expires_at) WHERE expires_at IS NOT NULL;
 
 -- ========================
 -- 14. 知识图谱实体表
@@ -227,6 +233,9 @@ CREATE TABLE IF NOT EXISTS public.kg_entity
     created_at  BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
     updated_at  BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT
 );
+-- 实体消歧：按类型取最近邻实体
+CREATE INDEX IF NOT EXISTS idx_kg_entity_embedding ON public.kg_entity USING hnsw (embedding vector_cosine_ops);
+CREATE INDEX IF NOT EXISTS idx_kg_entity_type ON public.kg_entity (lower(type));
 
 -- ========================
 -- 15. 文档表
@@ -262,6 +271,42 @@ CREATE TABLE IF NOT EXISTS public.rag_doc
     CONSTRAINT pk_rag_doc PRIMARY KEY (rag_id, doc_id)
 );
 
+-- ========================
+-- 18. 向量缓存表（按 模型 + 规范化文本SHA-256 寻址）
+-- ========================
+CREATE TABLE IF NOT EXISTS public.embedding_cache
+(
+    model      VARCHAR(255) NOT NULL,
+    text_hash  CHAR(64) NOT NULL,
+    embedding  BYTEA NOT NULL,
+    created_at BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
+    CONSTRAINT pk_embedding_cache PRIMARY KEY (model, text_hash)
+);
+
+-- ========================
+-- 19. 文档导入任务表（工作线程以 FOR UPDATE SKIP LOCKED 领取）
+-- ========================
+CREATE TABLE IF NOT EXISTS public.doc_import_job
+(
+    id           BIGINT PRIMARY KEY,
+    rag_id       BIGINT NOT NULL,
+    doc_id       VARCHAR(32) NOT NULL,
+    status       VARCHAR(16) NOT NULL DEFAULT 'PENDING', -- PENDING, RUNNING, SUCCEEDED, FAILED
+    progress     INTEGER NOT NULL DEFAULT 0,             -- 0-100
+    stage        VARCHAR(64),
+    attempts     INTEGER NOT NULL DEFAULT 0,
+    max_attempts INTEGER NOT NULL DEFAULT 5,
+    next_run_at  BIGINT NOT NULL DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
+    locked_by    VARCHAR(128),
+    locked_at    BIGINT,                                 -- 领取/心跳时间，超时视为工作线程失联
+    last_error   TEXT,
+    created_at   BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
+    updated_at   BIGINT DEFAULT (EXTRACT(EPOCH FROM CURRENT_TIMESTAMP))::BIGINT,
+    CONSTRAINT uk_doc_import_job UNIQUE (rag_id, doc_id)
+);
+CREATE INDEX IF NOT EXISTS idx_doc_import_job_pending ON public.doc_import_job (next_run_at) WHERE status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_doc_import_job_running ON public.doc_import_job (locked_at) WHERE status = 'RUNNING';
+
 -- ========================
 -- 初始数据
 -- ========================
@@ -17,7 +17,12 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import static com.example.ddd.common.constant.IAgentConstant.COLON;
 
@@ -29,7 +34,16 @@ import static com.example.ddd.common.constant.IAgentConstant.COLON;
 @Singleton
 public class BeanUtil {
     private final Map<Long, List<ServiceNode>> agentServiceNodes = new ConcurrentHashMap<>();
-    private final Map<Long, Orchestrator> agentOrchestrators = new ConcurrentHashMap<>();
+    /**
+     * 每个Orchestrator当前（最新一次装配）的版本，旧版本被替换后由使用中的执行持有，释放完毕后销毁
+     */
+    private final Map<Long, Generation> generations = new ConcurrentHashMap<>();
+    private final AtomicLong generationSequence = new AtomicLong();
+    /**
+     * 正在构建中的Orchestrator，同一ID同一时刻只允许一个构建
+     */
+    private final Map<Long, CompletableFuture<Orchestrator>> orchestratorBuilds = new ConcurrentHashMap<>();
+    private static final int MAX_ACQUIRE_ATTEMPTS = 3;
     @Inject
     private ApplicationContext applicationContext;
     /**
@@ -55,6 +69,30 @@ public class BeanUtil {
 
     }
 
+    /**
+     * 注册Orchestrator 独有命名的Bean，并记录归属以便该版本退役后销毁
+     */
+    private void registerOrchestratorBean(Long orchestratorId, Class<?> beanType, Object bean, String qualifierName) {
+        registerBean(beanType, bean, qualifierName);
+        generation(orchestratorId).beans.add(bean);
+    }
+
+    /**
+     * Orchestrator 独有命名的qualifier，带装配版本号，新旧版本的Bean可以同时存在
+     */
+    private String qualifier(Long orchestratorId, String type, Long id) {
+        return "Orchestrator" + COLON + orchestratorId + COLON + generation(orchestratorId).number
+                + COLON + type + COLON + id;
+    }
+
+    /**
+     * 当前装配版本，不经过 getOrCreateOrchestrator 直接装配时按无指纹版本处理
+     */
+    private Generation generation(Long orchestratorId) {
+        return generations.computeIfAbsent(orchestratorId,
+                k -> new Generation(k, generationSequence.incrementAndGet(), null));
+    }
+
     /**
      * 注册ChatModel（Orchestrator 独有命名）
      *
@@ -64,7 +102,7 @@ public class BeanUtil {
      * @return 是否注册成功（如果已存在则返回true不处理，不存在则注册后返回true）
      */
     public boolean registerChatModel(Long orchestratorId, Long modelId, StreamingChatModel chatModel) {
-        String qualifier = "Orchestrator" + COLON + orchestratorId + COLON + "ChatModel" + COLON + modelId;
+        String qualifier = qualifier(orchestratorId, "ChatModel", modelId);
         try {
             StreamingChatModel existing = getBean(StreamingChatModel.class, qualifier);
             if (existing != null) {
@@ -73,7 +111,7 @@ public class BeanUtil {
         } catch (Exception e) {
             // Bean不存在是正常情况，忽略异常
         }
-        registerBean(StreamingChatModel.class, chatModel, qualifier);
+        registerOrchestratorBean(orchestratorId, StreamingChatModel.class, chatModel, qualifier);
         return true;
     }
 
@@ -86,18 +124,19 @@ public class BeanUtil {
      * @return 是否注册成功（如果已存在则返回true不处理，不存在则注册后返回true）
      */
     public boolean registerEmbeddingStore(Long orchestratorId, Long ragId, EmbeddingStore<?> embeddingStore) {
-        String qualifier = "Orchestrator" + COLON + orchestratorId + COLON + "EmbeddingStore" + COLON + ragId;
+        String qualifier = qualifier(orchestratorId, "EmbeddingStore", ragId);
 
         EmbeddingStore<?> existing = getBean(EmbeddingStore.class, qualifier);
         if (existing != null) {
             return true;
         }
-        registerBean(EmbeddingStore.class, embeddingStore, qualifier);
+        registerOrchestratorBean(orchestratorId, EmbeddingStore.class, embeddingStore, qualifier);
         return true;
     }
 
     /**
-     * 注册EmbeddingModel（Orchestrator 独有命名）
+     * 登记RAG使用的EmbeddingModel
+     * 模型由 EmbeddingService 在多个Orchestrator间共享，不注册为本Orchestrator的Bean，版本退役时也不销毁
      *
      * @param orchestratorId Orchestrator ID
      * @param ragId          RAG ID
@@ -105,14 +144,7 @@ public class BeanUtil {
      * @return 是否注册成功（如果已存在则返回true不处理，不存在则注册后返回true）
      */
     public boolean registerEmbeddingModel(Long orchestratorId, Long ragId, EmbeddingModel embeddingModel) {
-        String qualifier = "Orchestrator" + COLON + orchestratorId + COLON + "EmbeddingModel" + COLON + ragId;
-
-        EmbeddingModel existing = getBean(EmbeddingModel.class, qualifier);
-        if (existing != null) {
-            return true;
-        }
-
-        registerBean(EmbeddingModel.class, embeddingModel, qualifier);
+        generation(orchestratorId).embeddingModels.putIfAbsent(ragId, embeddingModel);
         return true;
     }
 
@@ -143,7 +175,7 @@ public class BeanUtil {
      * @return ChatModel实例
      */
     public StreamingChatModel getChatModel(Long orchestratorId, Long modelId) {
-        return getBean(StreamingChatModel.class, "Orchestrator" + COLON + orchestratorId + COLON + "ChatModel" + COLON + modelId);
+        return getBean(StreamingChatModel.class, qualifier(orchestratorId, "ChatModel", modelId));
     }
 
     /**
@@ -154,18 +186,18 @@ public class BeanUtil {
      * @return EmbeddingStore实例
      */
     public EmbeddingStore<?> getEmbeddingStore(Long orchestratorId, Long ragId) {
-        return getBean(EmbeddingStore.class, "Orchestrator" + COLON + orchestratorId + COLON + "EmbeddingStore" + COLON + ragId);
+        return getBean(EmbeddingStore.class, qualifier(orchestratorId, "EmbeddingStore", ragId));
     }
 
     /**
-     * 获取EmbeddingModel（Orchestrator 独有命名）
+     * 获取RAG使用的EmbeddingModel（当前装配版本登记的共享模型）
      *
      * @param orchestratorId Orchestrator ID
      * @param ragId          RAG ID
      * @return EmbeddingModel实例
      */
     public EmbeddingModel getEmbeddingModel(Long orchestratorId, Long ragId) {
-        return getBean(EmbeddingModel.class, "Orchestrator" + COLON + orchestratorId + COLON + "EmbeddingModel" + COLON + ragId);
+        return generation(orchestratorId).embeddingModels.get(ragId);
     }
 
     /**
@@ -177,14 +209,14 @@ public class BeanUtil {
      * @return 是否注册成功（如果已存在则返回true不处理，不存在则注册后返回true）
      */
     public boolean registerAiService(Long orchestratorId, Long clientId, AiService aiService) {
-        String qualifier = "Orchestrator" + COLON + orchestratorId + COLON + "AiService" + COLON + clientId;
+        String qualifier = qualifier(orchestratorId, "AiService", clientId);
 
         AiService existing = getBean(AiService.class, qualifier);
         if (existing != null) {
             return true;
         }
 
-        registerBean(AiService.class, aiService, qualifier);
+        registerOrchestratorBean(orchestratorId, AiService.class, aiService, qualifier);
         return true;
     }
 
@@ -196,7 +228,7 @@ public class BeanUtil {
      * @return AiService实例
      */
     public AiService getAiService(Long orchestratorId, Long clientId) {
-        return getBean(AiService.class, "Orchestrator" + COLON + orchestratorId + COLON + "AiService" + COLON + clientId);
+        return getBean(AiService.class, qualifier(orchestratorId, "AiService", clientId));
     }
 
     /**
@@ -232,18 +264,19 @@ public class BeanUtil {
 
 
     /**
-     * 注册Orchestrator到Agent
+     * 注册Orchestrator到Agent（登记为当前装配版本的Orchestrator）
      *
      * @param agentId      Agent ID
      * @param orchestrator Orchestrator实例
      * @return 是否注册成功（如果已存在则返回true不处理，不存在则注册后返回true）
      */
     public boolean registerOrchestrator(Long agentId, Orchestrator orchestrator) {
-        if (agentOrchestrators.containsKey(agentId)) {
+        Generation generation = generation(agentId);
+        if (generation.orchestrator != null) {
             return true;
         }
-        agentOrchestrators.put(agentId, orchestrator);
-        log.debug("注册Orchestrator: agentId={}", agentId);
+        generation.orchestrator = orchestrator;
+        log.debug("注册Orchestrator: agentId={}, generation={}", agentId, generation.number);
         return true;
     }
 
@@ -254,34 +287,170 @@ public class BeanUtil {
      * @return Orchestrator实例
      */
     public Orchestrator getOrchestrator(Long agentId) {
-        return agentOrchestrators.get(agentId);
+        Generation generation = generations.get(agentId);
+        return generation != null ? generation.orchestrator : null;
+    }
+
+    /**
+     * 获取指定配置版本的Orchestrator
+     *
+     * @param orchestratorId Orchestrator ID
+     * @param version        配置指纹
+     * @return Orchestrator实例，不存在或版本不一致时返回null
+     */
+    public Orchestrator getOrchestrator(Long orchestratorId, String version) {
+        Generation generation = generations.get(orchestratorId);
+        if (version == null || generation == null || !version.equals(generation.version)) {
+            return null;
+        }
+        return generation.orchestrator;
+    }
+
+    /**
+     * 获取指定配置版本的Orchestrator，不存在时构建
+     * 同一ID的并发构建只执行一次，其余请求等待同一个构建结果
+     *
+     * @param orchestratorId Orchestrator ID
+     * @param version        配置指纹
+     * @param builder        构建逻辑（执行装配链并返回构建好的Orchestrator）
+     * @return Orchestrator实例
+     */
+    public Orchestrator getOrCreateOrchestrator(Long orchestratorId, String version, Supplier<Orchestrator> builder) {
+        Orchestrator cached = getOrchestrator(orchestratorId, version);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<Orchestrator> build = new CompletableFuture<>();
+        CompletableFuture<Orchestrator> inflight = orchestratorBuilds.putIfAbsent(orchestratorId, build);
+        if (inflight != null) {
+            log.debug("等待Orchestrator构建完成: orchestratorId={}", orchestratorId);
+            return inflight.join();
+        }
+        Generation next = null;
+        try {
+            cached = getOrchestrator(orchestratorId, version);
+            if (cached == null) {
+                // 新版本使用新的qualifier注册Bean，旧版本退役，仍在执行的请求释放后才销毁
+                next = new Generation(orchestratorId, generationSequence.incrementAndGet(), version);
+                agentServiceNodes.remove(orchestratorId);
+                retire(generations.put(orchestratorId, next));
+                cached = builder.get();
+                if (cached == null) {
+                    discard(next);
+                }
+                log.info("Orchestrator构建完成: orchestratorId={}, version={}, generation={}", orchestratorId, version, next.number);
+            }
+            build.complete(cached);
+            return cached;
+        } catch (RuntimeException e) {
+            if (next != null) {
+                discard(next);
+            }
+            build.completeExceptionally(e);
+            throw e;
+        } finally {
+            orchestratorBuilds.remove(orchestratorId, build);
+        }
     }
 
     /**
-     * 注册MCP
+     * 获取指定配置版本的Orchestrator并持有，持有期间该版本的Bean不会被销毁
+     * 执行结束后必须关闭返回的租约
      *
-     * @param mcpId     MCP ID
-     * @param mcpEntity MCP实体
+     * @param orchestratorId Orchestrator ID
+     * @param version        配置指纹
+     * @param builder        构建逻辑（执行装配链并返回构建好的Orchestrator）
+     * @return Orchestrator租约，装配失败时返回null
+     */
+    public OrchestratorLease acquireOrchestrator(Long orchestratorId, String version, Supplier<Orchestrator> builder) {
+        for (int attempt = 0; attempt < MAX_ACQUIRE_ATTEMPTS; attempt++) {
+            Orchestrator orchestrator = getOrCreateOrchestrator(orchestratorId, version, builder);
+            if (orchestrator == null) {
+                return null;
+            }
+            Generation generation = generations.get(orchestratorId);
+            if (generation != null && generation.orchestrator == orchestrator && generation.acquire()) {
+                return new OrchestratorLease(generation);
+            }
+            // 获取与持有之间该版本已被替换或失效，重新获取
+            log.debug("Orchestrator版本已变化，重新获取: orchestratorId={}, attempt={}", orchestratorId, attempt);
+        }
+        throw new IllegalStateException("Orchestrator配置频繁变化，获取失败: orchestratorId=" + orchestratorId);
+    }
+
+    /**
+     * 使Orchestrator缓存失效
+     * 移除当前版本的Orchestrator、ServiceNode，下次获取时重新构建；
+     * 该版本独有命名的Bean在仍在执行的请求全部结束后销毁
+     *
+     * @param orchestratorId Orchestrator ID
+     */
+    public void invalidateOrchestrator(Long orchestratorId) {
+        agentServiceNodes.remove(orchestratorId);
+        retire(generations.remove(orchestratorId));
+        log.info("Orchestrator缓存已失效: orchestratorId={}", orchestratorId);
+    }
+
+    /**
+     * 构建失败的版本：移出当前版本并销毁已注册的Bean
+     */
+    private void discard(Generation generation) {
+        generations.remove(generation.orchestratorId, generation);
+        agentServiceNodes.remove(generation.orchestratorId);
+        retire(generation);
+    }
+
+    private void retire(Generation generation) {
+        if (generation != null && generation.retire()) {
+            destroy(generation);
+        }
+    }
+
+    private void release(Generation generation) {
+        if (generation.release()) {
+            destroy(generation);
+        }
+    }
+
+    private void destroy(Generation generation) {
+        for (Object bean : generation.beans) {
+            try {
+                applicationContext.destroyBean(bean);
+            } catch (Exception e) {
+                log.warn("销毁Bean失败: orchestratorId={}, bean={}", generation.orchestratorId, bean.getClass().getSimpleName(), e);
+            }
+        }
+        log.info("Orchestrator旧版本Bean已销毁: orchestratorId={}, generation={}, beans={}",
+                generation.orchestratorId, generation.number, generation.beans.size());
+    }
+
+    /**
+     * 注册MCP配置（Orchestrator 独有命名，随装配版本失效，配置变化后重新装配时重新注册）
+     *
+     * @param orchestratorId Orchestrator ID
+     * @param mcpId          MCP ID
+     * @param mcpEntity      MCP实体
      * @return 是否注册成功
      */
-    public boolean registerMcp(Long mcpId, McpEntity mcpEntity) {
-        String qualifier = "Mcp" + COLON + mcpId;
+    public boolean registerMcp(Long orchestratorId, Long mcpId, McpEntity mcpEntity) {
+        String qualifier = qualifier(orchestratorId, "Mcp", mcpId);
         McpEntity existing = getBean(McpEntity.class, qualifier);
         if (existing != null) {
             return true;
         }
-        registerBean(McpEntity.class, mcpEntity, qualifier);
+        registerOrchestratorBean(orchestratorId, McpEntity.class, mcpEntity, qualifier);
         return true;
     }
 
     /**
-     * 获取MCP
+     * 获取MCP配置（Orchestrator 独有命名）
      *
-     * @param mcpId MCP ID
+     * @param orchestratorId Orchestrator ID
+     * @param mcpId          MCP ID
      * @return MCP实体
      */
-    public McpEntity getMcp(Long mcpId) {
-        return getBean(McpEntity.class, "Mcp" + COLON + mcpId);
+    public McpEntity getMcp(Long orchestratorId, Long mcpId) {
+        return getBean(McpEntity.class, qualifier(orchestratorId, "Mcp", mcpId));
     }
 
     /**
@@ -293,12 +462,12 @@ public class BeanUtil {
      * @return 是否注册成功
      */
     public boolean registerMcpClient(Long orchestratorId, Long mcpId, McpClient mcpClient) {
-        String qualifier = "Orchestrator" + COLON + orchestratorId + COLON + "McpClient" + COLON + mcpId;
+        String qualifier = qualifier(orchestratorId, "McpClient", mcpId);
         McpClient existing = getBean(McpClient.class, qualifier);
         if (existing != null) {
             return true;
         }
-        registerBean(McpClient.class, mcpClient, qualifier);
+        registerOrchestratorBean(orchestratorId, McpClient.class, mcpClient, qualifier);
         return true;
     }
 
@@ -310,7 +479,87 @@ public class BeanUtil {
      * @return MCP客户端实例
      */
     public dev.langchain4j.mcp.client.McpClient getMcpClient(Long orchestratorId, Long mcpId) {
-        return getBean(dev.langchain4j.mcp.client.McpClient.class, "Orchestrator" + COLON + orchestratorId + COLON + "McpClient" + COLON + mcpId);
+        return getBean(dev.langchain4j.mcp.client.McpClient.class, qualifier(orchestratorId, "McpClient", mcpId));
+    }
+
+    /**
+     * Orchestrator的一次装配
+     * 持有该次装配创建的Bean；退役（被新版本替换或失效）且持有者全部释放后销毁
+     */
+    private static final class Generation {
+        private final Long orchestratorId;
+        private final long number;
+        private final String version;
+        private final List<Object> beans = new CopyOnWriteArrayList<>();
+        private final Map<Long, EmbeddingModel> embeddingModels = new ConcurrentHashMap<>();
+        private volatile Orchestrator orchestrator;
+        private int refs;
+        private boolean retired;
+        private boolean destroyed;
+
+        Generation(Long orchestratorId, long number, String version) {
+            this.orchestratorId = orchestratorId;
+            this.number = number;
+            this.version = version;
+        }
+
+        /**
+         * 已退役的版本不再接受新的持有者
+         */
+        synchronized boolean acquire() {
+            if (retired) {
+                return false;
+            }
+            refs++;
+            return true;
+        }
+
+        /**
+         * @return 是否需要由调用方销毁
+         */
+        synchronized boolean release() {
+            refs--;
+            return destroyIfIdle();
+        }
+
+        /**
+         * @return 是否需要由调用方销毁
+         */
+        synchronized boolean retire() {
+            retired = true;
+            return destroyIfIdle();
+        }
+
+        private boolean destroyIfIdle() {
+            if (!retired || refs > 0 || destroyed) {
+                return false;
+            }
+            destroyed = true;
+            return true;
+        }
+    }
+
+    /**
+     * Orchestrator租约，关闭后释放对装配版本的持有（重复关闭无副作用）
+     */
+    public final class OrchestratorLease implements AutoCloseable {
+        private final Generation generation;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private OrchestratorLease(Generation generation) {
+            this.generation = generation;
+        }
+
+        public Orchestrator getOrchestrator() {
+            return generation.orchestrator;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(generation);
+            }
+        }
     }
 
 }
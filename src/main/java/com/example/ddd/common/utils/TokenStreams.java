@@ -0,0 +1,78 @@
+package com.example.ddd.common.utils;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.service.TokenStream;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * TokenStream 适配工具类
+ * 把回调式的 TokenStream 转换为 CompletableFuture，统一处理超时、取消和异常传递，
+ * 调用方不再需要自己用 CountDownLatch 阻塞等待
+ */
+public class TokenStreams {
+
+    /**
+     * 转换为 CompletableFuture，完成时返回完整回答
+     *
+     * @param tokenStream token流（尚未start）
+     * @param onToken     每个token的回调，可为null；future完成（含取消、超时）后不再回调
+     * @param timeout     超时时间，为null时不设置超时
+     * @return 完整回答的future，取消future即停止处理后续回调
+     */
+    public static CompletableFuture<String> toFuture(TokenStream tokenStream, Consumer<String> onToken, Duration timeout) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        StringBuilder partial = new StringBuilder();
+        tokenStream.onPartialResponse(token -> {
+                    if (future.isDone()) {
+                        return;
+                    }
+                    partial.append(token);
+                    if (onToken != null) {
+                        onToken.accept(token);
+                    }
+                })
+                .onCompleteResponse(response -> {
+                    AiMessage aiMessage = response.aiMessage();
+                    // 部分模型的完整响应不带text，回退到已收到的token
+                    String text = aiMessage != null && aiMessage.text() != null ? aiMessage.text() : partial.toString();
+                    future.complete(text);
+                })
+                .onError(future::completeExceptionally);
+        try {
+            tokenStream.start();
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return timeout == null ? future : future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 阻塞等待结果，把 future 的异常还原为原始异常
+     * 在虚拟线程上调用时只挂起虚拟线程，不占用平台线程
+     *
+     * @throws CancellationException future被取消或等待线程被中断（原样抛出，调用方按取消处理而不是失败）
+     */
+    public static String await(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new CancellationException("等待token流完成被中断");
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                throw new RuntimeException("模型响应超时", cause);
+            }
+            throw cause instanceof RuntimeException re ? re : new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.ddd.configuration.config;
+
+import com.example.ddd.infrastructure.config.PoolMetrics;
+import io.micronaut.configuration.jdbc.hikari.DatasourceConfiguration;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * 在创建 Hikari 连接池之前注册连接池指标
+ */
+@Singleton
+public class DatasourceConfigurationListener implements BeanCreatedEventListener<DatasourceConfiguration> {
+    @Inject
+    private PoolMetrics poolMetrics;
+
+    @Override
+    public DatasourceConfiguration onCreated(BeanCreatedEvent<DatasourceConfiguration> event) {
+        DatasourceConfiguration configuration = event.getBean();
+        configuration.setMetricsTrackerFactory(poolMetrics);
+        return configuration;
+    }
+}
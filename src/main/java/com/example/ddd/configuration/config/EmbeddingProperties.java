@@ -0,0 +1,43 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 向量化配置
+ */
+@ConfigurationProperties("openai.embedding")
+@Getter
+@Setter
+public class EmbeddingProperties {
+
+    /**
+     * 默认向量模型
+     */
+    private String model = "text-embedding-3-small";
+    /**
+     * 单次请求最多携带的文本数
+     */
+    private int batchSize = 256;
+    /**
+     * 同时进行中的请求数上限
+     */
+    private int maxConcurrency = 4;
+    /**
+     * 每秒请求数上限，0表示不限制
+     */
+    private double requestsPerSecond = 0;
+    /**
+     * 合并等待时间（毫秒）：单条请求在此时间内与其他请求合并为一批
+     */
+    private long coalesceMillis = 5;
+    /**
+     * 堆内向量缓存条数
+     */
+    private int cacheSize = 10000;
+    /**
+     * 是否启用 embedding_cache 表作为二级缓存
+     */
+    private boolean persistentCache = true;
+}
@@ -0,0 +1,31 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 知识抽取配置
+ */
+@ConfigurationProperties("rag.extraction")
+@Getter
+@Setter
+public class ExtractionProperties {
+
+    /**
+     * 每个抽取片段的token数，不超过该长度的文档整篇抽取
+     */
+    private int chunkSize = 3000;
+    /**
+     * 相邻片段重叠的token数（最多为 chunkSize 的1/4）
+     */
+    private int chunkOverlap = 200;
+    /**
+     * 所有导入共享的LLM抽取并发上限
+     */
+    private int maxConcurrency = 4;
+    /**
+     * 单个片段的最大尝试次数（输出不是合法JSON时重试）
+     */
+    private int maxAttempts = 2;
+}
@@ -0,0 +1,39 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 文档导入任务配置
+ */
+@ConfigurationProperties("rag.import-job")
+@Getter
+@Setter
+public class ImportJobProperties {
+
+    /**
+     * 本实例的工作线程数，0表示本实例不消费任务（只提交）
+     */
+    private int workers = 2;
+    /**
+     * 无任务时的轮询间隔（毫秒）
+     */
+    private long pollMillis = 1000;
+    /**
+     * 最大尝试次数（含首次）
+     */
+    private int maxAttempts = 5;
+    /**
+     * 重试退避基数（秒），第n次失败后等待 base * 2^(n-1)
+     */
+    private long backoffSeconds = 10;
+    /**
+     * 重试退避上限（秒）
+     */
+    private long maxBackoffSeconds = 600;
+    /**
+     * 运行中任务超过该时间未更新心跳，视为工作线程失联并重新入队（秒）
+     */
+    private long staleSeconds = 900;
+}
@@ -0,0 +1,19 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 模型调用配置
+ */
+@ConfigurationProperties("agent.llm")
+@Getter
+@Setter
+public class LlmProperties {
+
+    /**
+     * 等待模型流式响应完成的最长时间（秒），0表示不设置超时
+     */
+    private long timeoutSeconds = 300;
+}
@@ -0,0 +1,47 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 对话记忆配置
+ */
+@ConfigurationProperties("agent.memory")
+@Getter
+@Setter
+public class MemoryProperties {
+
+    /**
+     * 每个会话在内存及持久化读取时保留的最大消息数
+     */
+    private int maxMessagesPerSession = 50;
+    /**
+     * 内存中最多保留的会话数，超出后淘汰最久未访问的会话
+     */
+    private int maxSessions = 10000;
+    /**
+     * 会话闲置超过该时间后从内存淘汰（秒），下次访问时从数据库重新加载
+     */
+    private long idleTtlSeconds = 1800;
+    /**
+     * 持久化记忆的保留天数，0表示不过期
+     */
+    private int persistTtlDays = 30;
+    /**
+     * 异步写入的最大等待时间（毫秒）
+     */
+    private long flushMillis = 200;
+    /**
+     * 单次批量写入的最大消息数，同时也是每个批次间待写入队列的容量基数
+     */
+    private int flushBatchSize = 256;
+    /**
+     * 是否持久化到 agent_memory 表
+     */
+    private boolean persistent = true;
+    /**
+     * 注入 prompt 的历史对话token预算（按最近优先截断），0表示不注入
+     */
+    private int historyTokenBudget = 1500;
+}
@@ -0,0 +1,47 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 任务计划语义缓存配置
+ */
+@ConfigurationProperties("agent.plan-cache")
+@Getter
+@Setter
+public class PlanCacheProperties {
+
+    /**
+     * 是否启用任务计划缓存
+     */
+    private boolean enabled = true;
+    /**
+     * 命中所需的最小余弦相似度
+     */
+    private double similarityThreshold = 0.95;
+    /**
+     * 计划缓存有效期（秒）
+     */
+    private long ttlSeconds = 3600;
+    /**
+     * 作用域区分历史对话的范围：
+     * >0 表示只取历史对话的最后N个字符（近似最近一轮对话），追问类请求只在最近对话相同时复用计划；
+     * 0 表示不区分历史，计划中可能带有生成它的那段对话的内容，只适合不依赖上下文的请求；
+     * <0 表示按完整历史区分，此时只有首轮对话能命中，带历史的请求直接跳过缓存（不做向量化）
+     */
+    private int historyWindowChars = 1000;
+    /**
+     * 是否在用户之间共享计划；默认按用户隔离，计划（包括其中引用的请求和对话内容）不会提供给其他用户，
+     * 没有用户ID的请求不使用缓存
+     */
+    private boolean shareAcrossUsers = false;
+    /**
+     * 每个缓存作用域（Orchestrator + 子Agent指纹 + 历史窗口 + 用户）最多保留的计划数，超出时淘汰最久未命中的
+     */
+    private int maxEntriesPerScope = 200;
+    /**
+     * 最多保留的缓存作用域数，超出时淘汰最久未访问的
+     */
+    private int maxScopes = 1000;
+}
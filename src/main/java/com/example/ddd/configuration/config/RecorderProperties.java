@@ -0,0 +1,39 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Orchestrator执行记录配置
+ */
+@ConfigurationProperties("agent.recorder")
+@Getter
+@Setter
+public class RecorderProperties {
+
+    /**
+     * 是否记录执行过程到 orchestrator_run / orchestrator_message
+     */
+    private boolean enabled = true;
+    /**
+     * 待写入消息队列容量，已满时丢弃新的消息记录（不阻塞执行，执行状态不受影响）
+     */
+    private int queueCapacity = 10000;
+    /**
+     * 单次批量写入的最大记录数
+     */
+    private int batchSize = 500;
+    /**
+     * 批量写入的最长等待时间（毫秒）
+     */
+    private long flushMillis = 500;
+    /**
+     * 队列使用率超过该比例时对流式token消息采样
+     */
+    private double samplingWatermark = 0.5;
+    /**
+     * 采样时每N条流式token消息保留1条
+     */
+    private int samplingRate = 10;
+}
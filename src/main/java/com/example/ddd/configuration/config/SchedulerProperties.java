@@ -0,0 +1,31 @@
+package com.example.ddd.configuration.config;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 任务图调度配置
+ */
+@ConfigurationProperties("agent.scheduler")
+@Getter
+@Setter
+public class SchedulerProperties {
+
+    /**
+     * 全局并发任务数上限（所有执行共享）
+     */
+    private int globalMaxConcurrency = 64;
+    /**
+     * 单次执行并发任务数上限
+     */
+    private int runMaxConcurrency = 4;
+    /**
+     * 是否在Supervisor流式输出计划的过程中提前派发入口任务
+     */
+    private boolean earlyDispatch = true;
+    /**
+     * 缓存的任务图拓扑数（按任务ID与依赖结构），超出时淘汰最久未使用的；0表示不缓存
+     */
+    private int topologyCacheSize = 256;
+}
@@ -0,0 +1,48 @@
+package com.example.ddd.configuration.config;
+
+import com.example.ddd.domain.agent.service.execute.context.OverflowPolicy;
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 任务执行事件流（SSE）配置
+ */
+@ConfigurationProperties("agent.stream")
+@Getter
+@Setter
+public class StreamProperties {
+
+    /**
+     * 每个请求的事件缓冲区大小
+     */
+    private int bufferSize = 1024;
+    /**
+     * 缓冲区已满时流式token事件的处理策略
+     */
+    private OverflowPolicy overflow = OverflowPolicy.DROP_LATEST;
+    /**
+     * 缓冲区已满时等待的最长时间（毫秒）
+     */
+    private long blockTimeoutMillis = 2000;
+    /**
+     * 流式token合并：每帧最多token数，1表示逐token发送（可被请求参数覆盖）
+     */
+    private int frameTokens = 16;
+    /**
+     * 流式token合并：每帧最长等待时间（毫秒）（可被请求参数覆盖）
+     */
+    private long frameMillis = 30;
+    /**
+     * 每次执行在内存中保留的最近事件数，供断线重连重放
+     */
+    private int replayBufferSize = 2048;
+    /**
+     * 执行结束后内存中保留事件的时间（秒），之后重连只能从执行记录中重放
+     */
+    private long retentionSeconds = 300;
+    /**
+     * 客户端断开后等待重连的时间（毫秒），超时取消执行并中止模型调用；0 表示立即取消，<0 表示不取消
+     */
+    private long cancelGraceMillis = 10_000;
+}
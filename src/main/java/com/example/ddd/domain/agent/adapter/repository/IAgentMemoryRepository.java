@@ -0,0 +1,34 @@
+package com.example.ddd.domain.agent.adapter.repository;
+
+import com.example.ddd.domain.agent.service.execute.memory.InMemory;
+import org.jooq.DSLContext;
+
+import java.util.List;
+
+/**
+ * 对话记忆仓储接口
+ */
+public interface IAgentMemoryRepository {
+
+    /**
+     * 批量保存对话消息
+     *
+     * @param expiresAt 过期时间（秒），null表示不过期
+     */
+    int saveMessages(DSLContext dslContext, List<InMemory.PendingMessage> messages, Long expiresAt);
+
+    /**
+     * 查询会话最近的对话消息（按时间正序）
+     */
+    List<InMemory.ConversationMessage> queryRecentMessages(DSLContext dslContext, String sessionKey, int limit);
+
+    /**
+     * 删除会话的对话消息
+     */
+    int deleteMessages(DSLContext dslContext, String sessionKey);
+
+    /**
+     * 删除过期的对话消息
+     */
+    int deleteExpiredMessages(DSLContext dslContext);
+}
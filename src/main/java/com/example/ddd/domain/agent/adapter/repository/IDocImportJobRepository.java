@@ -0,0 +1,59 @@
+package com.example.ddd.domain.agent.adapter.repository;
+
+import com.example.ddd.domain.agent.model.entity.DocImportJobEntity;
+import com.example.ddd.domain.agent.model.valobj.DocImportJobStatus;
+import org.jooq.DSLContext;
+
+import java.util.List;
+
+/**
+ * 文档导入任务仓储接口
+ */
+public interface IDocImportJobRepository {
+
+    /**
+     * 提交任务，(ragId, docId) 相同的任务只保留一个
+     *
+     * @param force 是否强制重新导入（已成功的任务也重新入队）
+     * @return 新建或重新入队的任务；未重新入队时返回null
+     */
+    DocImportJobEntity enqueue(DSLContext dslContext, Long id, Long ragId, String docId, int maxAttempts, boolean force);
+
+    /**
+     * 领取可执行的任务（FOR UPDATE SKIP LOCKED）
+     */
+    List<DocImportJobEntity> claim(DSLContext dslContext, String workerId, int limit);
+
+    /**
+     * 更新进度（同时刷新心跳）
+     *
+     * @return 任务是否仍归该工作线程所有
+     */
+    boolean updateProgress(DSLContext dslContext, Long id, String workerId, int progress, String stage);
+
+    /**
+     * 标记成功
+     */
+    boolean complete(DSLContext dslContext, Long id, String workerId, String stage);
+
+    /**
+     * 标记失败
+     *
+     * @param status    PENDING（等待重试）或 FAILED
+     * @param nextRunAt 下次可执行时间（秒）
+     */
+    boolean fail(DSLContext dslContext, Long id, String workerId, DocImportJobStatus status, long nextRunAt, String error);
+
+    /**
+     * 回收心跳超时的执行中任务
+     *
+     * @return 回收的任务数
+     */
+    int recoverStale(DSLContext dslContext, long staleSeconds);
+
+    DocImportJobEntity queryById(DSLContext dslContext, Long id);
+
+    DocImportJobEntity queryByKey(DSLContext dslContext, Long ragId, String docId);
+
+    List<DocImportJobEntity> queryByRagId(DSLContext dslContext, Long ragId, int limit);
+}
@@ -0,0 +1,26 @@
+package com.example.ddd.domain.agent.adapter.repository;
+
+import org.jooq.DSLContext;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 向量缓存仓储接口
+ */
+public interface IEmbeddingCacheRepository {
+
+    /**
+     * 按文本哈希批量查询向量
+     *
+     * @param model      向量模型名称
+     * @param textHashes 规范化文本的SHA-256
+     * @return 文本哈希 -> 向量（未命中的不包含）
+     */
+    Map<String, float[]> queryByHashes(DSLContext dslContext, String model, Collection<String> textHashes);
+
+    /**
+     * 批量保存向量，已存在的忽略
+     */
+    int batchInsert(DSLContext dslContext, String model, Map<String, float[]> embeddings);
+}
@@ -35,5 +35,10 @@ public interface IOrchestratorRepository {
      */
     int deleteById(DSLContext dslContext, Long id);
 
+    /**
+     * 查询Orchestrator配置指纹（orchestrator/agent/model/rag/mcp任一配置变化时指纹随之变化）
+     */
+    String queryConfigFingerprint(DSLContext dslContext, Long orchestratorId);
+
 }
 
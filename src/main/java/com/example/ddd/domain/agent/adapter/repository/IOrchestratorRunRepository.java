@@ -0,0 +1,28 @@
+package com.example.ddd.domain.agent.adapter.repository;
+
+import com.example.ddd.domain.agent.model.entity.OrchestratorMessageEntity;
+import com.example.ddd.domain.agent.model.entity.OrchestratorRunEntity;
+import org.jooq.DSLContext;
+
+import java.util.List;
+
+/**
+ * Orchestrator执行记录仓储接口
+ */
+public interface IOrchestratorRunRepository {
+
+    /**
+     * 批量保存执行记录（不存在则插入，已存在则更新状态与统计）
+     */
+    int saveRuns(DSLContext dslContext, List<OrchestratorRunEntity> runs);
+
+    /**
+     * 批量保存消息记录
+     */
+    int saveMessages(DSLContext dslContext, List<OrchestratorMessageEntity> messages);
+
+    /**
+     * 查询执行内序号在 (afterSequence, beforeSequence) 之间的消息（按序号正序）
+     */
+    List<OrchestratorMessageEntity> queryMessages(DSLContext dslContext, Long runId, int afterSequence, int beforeSequence, int limit);
+}
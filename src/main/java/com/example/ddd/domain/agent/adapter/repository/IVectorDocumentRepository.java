@@ -1,6 +1,7 @@
 package com.example.ddd.domain.agent.adapter.repository;
 
 import com.example.ddd.domain.agent.model.entity.VectorDocumentEntity;
+import com.example.ddd.domain.agent.model.valobj.VectorSearchQuery;
 import org.jooq.DSLContext;
 
 import java.util.List;
@@ -43,6 +44,14 @@ public interface IVectorDocumentRepository {
                                                 float[] queryEmbedding, int limit,
                                                 double similarityThreshold);
 
+    /**
+     * 按投影字段的向量相似度搜索，只返回 query.fields 中的字段和相似度
+     *
+     * @param query 检索条件
+     * @return 相似文档列表，按相似度降序排列
+     */
+    List<VectorDocumentEntity> search(DSLContext dslContext, VectorSearchQuery query);
+
     /**
      * 根据RAG ID删除所有向量文档
      */
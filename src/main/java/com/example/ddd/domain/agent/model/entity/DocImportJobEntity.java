@@ -0,0 +1,29 @@
+package com.example.ddd.domain.agent.model.entity;
+
+import com.example.ddd.domain.agent.model.valobj.DocImportJobStatus;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 文档导入任务实体
+ */
+@Getter
+@Setter
+@Serdeable
+public class DocImportJobEntity {
+    private Long id;
+    private Long ragId;
+    private String docId;
+    private DocImportJobStatus status;
+    private Integer progress;          // 0-100
+    private String stage;              // 当前阶段描述
+    private Integer attempts;          // 已尝试次数
+    private Integer maxAttempts;
+    private Long nextRunAt;            // 下次可执行时间（秒），重试退避时大于当前时间
+    private String lockedBy;           // 执行中的工作线程
+    private Long lockedAt;             // 领取/心跳时间（秒）
+    private String lastError;
+    private Long createdAt;
+    private Long updatedAt;
+}
@@ -0,0 +1,23 @@
+package com.example.ddd.domain.agent.model.entity;
+
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Orchestrator消息记录实体（对应一次执行中的一个事件）
+ */
+@Getter
+@Setter
+@Serdeable
+public class OrchestratorMessageEntity {
+    private Long runId;
+    private String taskId;
+    private String agentRole;          // SUPERVISOR / WORKER / SYSTEM
+    private String messageType;        // 事件类型
+    private String content;
+    private String message;
+    private String error;
+    private Long timestamp;            // 毫秒
+    private Integer sequence;          // 执行内的事件序号
+}
@@ -0,0 +1,28 @@
+package com.example.ddd.domain.agent.model.entity;
+
+import com.example.ddd.domain.agent.model.valobj.OrchestratorRunStatus;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Orchestrator执行记录实体
+ */
+@Getter
+@Setter
+@Serdeable
+public class OrchestratorRunEntity {
+    private Long id;
+    private Long orchestratorId;
+    private String sessionId;
+    private String userId;
+    private String goal;               // 用户请求
+    private OrchestratorRunStatus status;
+    private Long startTime;            // 毫秒
+    private Long endTime;              // 毫秒，执行中为null
+    private Integer totalTasks;
+    private Integer completedTasks;
+    private String executionMode;
+    private Integer messageCount;      // 产生的事件数
+    private Integer sampledCount;      // 写入压力下被采样丢弃的消息数
+}
@@ -21,6 +21,7 @@ public class VectorDocumentEntity {
     private Integer chunkIndex;
     private Long createdAt;
     private Long updatedAt;
+    private Double similarity; // 相似度（仅检索结果有值）
 }
 
 
@@ -0,0 +1,23 @@
+package com.example.ddd.domain.agent.model.valobj;
+
+/**
+ * 文档导入任务状态
+ */
+public enum DocImportJobStatus {
+    /**
+     * 等待执行（含等待重试）
+     */
+    PENDING,
+    /**
+     * 执行中
+     */
+    RUNNING,
+    /**
+     * 执行成功
+     */
+    SUCCEEDED,
+    /**
+     * 重试次数用尽
+     */
+    FAILED
+}
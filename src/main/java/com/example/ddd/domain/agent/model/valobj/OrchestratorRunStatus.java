@@ -0,0 +1,23 @@
+package com.example.ddd.domain.agent.model.valobj;
+
+/**
+ * Orchestrator执行状态
+ */
+public enum OrchestratorRunStatus {
+    /**
+     * 执行中
+     */
+    RUNNING,
+    /**
+     * 执行成功
+     */
+    SUCCEEDED,
+    /**
+     * 规划或执行失败
+     */
+    FAILED,
+    /**
+     * 客户端断开等原因被取消
+     */
+    CANCELLED
+}
@@ -0,0 +1,24 @@
+package com.example.ddd.domain.agent.model.valobj;
+
+/**
+ * 向量检索可选返回字段
+ * embeddingId、ragId 和相似度总是返回
+ */
+public enum VectorSearchField {
+    TEXT("text"),
+    METADATA("metadata"),
+    CHUNK_INDEX("chunk_index"),
+    EMBEDDING("embedding"),
+    CREATED_AT("created_at"),
+    UPDATED_AT("updated_at");
+
+    private final String column;
+
+    VectorSearchField(String column) {
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+}
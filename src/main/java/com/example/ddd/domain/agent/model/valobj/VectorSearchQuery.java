@@ -0,0 +1,43 @@
+package com.example.ddd.domain.agent.model.valobj;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 向量检索条件
+ */
+@Getter
+@Setter
+public class VectorSearchQuery {
+    /**
+     * RAG ID
+     */
+    private Long ragId;
+    /**
+     * 查询向量
+     */
+    private float[] queryEmbedding;
+    /**
+     * 返回结果数量限制
+     */
+    private int limit = 10;
+    /**
+     * 相似度阈值（0-1之间）
+     */
+    private double similarityThreshold = 0.6;
+    /**
+     * 返回字段，默认只返回文本和元数据（不返回向量）
+     */
+    private Set<VectorSearchField> fields = EnumSet.of(VectorSearchField.TEXT, VectorSearchField.METADATA);
+    /**
+     * HNSW索引的 hnsw.ef_search，为空时使用数据库默认值
+     */
+    private Integer efSearch;
+    /**
+     * IVFFlat索引的 ivfflat.probes，为空时使用数据库默认值
+     */
+    private Integer probes;
+}
@@ -3,6 +3,7 @@ package com.example.ddd.domain.agent.service.armory;
 import com.example.ddd.common.utils.BeanUtil;
 import com.example.ddd.common.utils.ILogicHandler;
 import com.example.ddd.common.utils.JSON;
+import com.example.ddd.configuration.config.LlmProperties;
 import com.example.ddd.domain.agent.model.entity.*;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.mcp.McpToolProvider;
@@ -18,6 +19,7 @@ import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +33,8 @@ public class AgentNode extends AbstractArmorySupport {
     BeanUtil beanUtil;
     @Inject
     private OrchestratorNode orchestratorNode;
+    @Inject
+    private LlmProperties llmProperties;
 
     @Override
     public String handle(ArmoryCommandEntity armoryCommandEntity, DynamicContext dynamicContext) {
@@ -126,6 +130,8 @@ public class AgentNode extends AbstractArmorySupport {
                 .clientStatus(client.getStatus())
                 .systemPrompt(client.getSystemPrompt())
                 .role(client.getRole())
+                .responseTimeout(llmProperties.getTimeoutSeconds() > 0
+                        ? Duration.ofSeconds(llmProperties.getTimeoutSeconds()) : null)
                 .build();
     }
 
@@ -0,0 +1,60 @@
+package com.example.ddd.domain.agent.service.armory;
+
+import com.example.ddd.common.utils.BeanUtil;
+import com.example.ddd.domain.agent.adapter.repository.IOrchestratorRepository;
+import com.example.ddd.domain.agent.model.entity.ArmoryCommandEntity;
+import com.example.ddd.domain.agent.service.execute.task.PlanCache;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Orchestrator装配服务
+ * 按配置指纹缓存已构建的Orchestrator，配置未变化时不再重复执行装配链
+ */
+@Slf4j
+@Singleton
+public class ArmoryService {
+
+    @Inject
+    private RootNode rootNode;
+    @Inject
+    private BeanUtil beanUtil;
+    @Inject
+    private DSLContextFactory dslContextFactory;
+    @Inject
+    private IOrchestratorRepository orchestratorRepository;
+    @Inject
+    private PlanCache planCache;
+
+    /**
+     * 获取并持有Orchestrator
+     * 配置指纹与缓存一致时直接返回，否则（单飞）重新执行装配链；
+     * 持有期间配置变化不会销毁本次执行使用的模型、MCP等Bean，执行结束后关闭租约
+     *
+     * @param orchestratorId Orchestrator ID
+     * @return Orchestrator租约，装配失败时返回null
+     */
+    public BeanUtil.OrchestratorLease acquireOrchestrator(Long orchestratorId) {
+        String version = dslContextFactory.callable(dslContext ->
+                orchestratorRepository.queryConfigFingerprint(dslContext, orchestratorId));
+        return beanUtil.acquireOrchestrator(orchestratorId, version, () -> {
+            log.info("多agent构建中 配置已变化或未构建，执行装配: orchestratorId={}, version={}", orchestratorId, version);
+            ArmoryCommandEntity armoryCommandEntity = new ArmoryCommandEntity();
+            armoryCommandEntity.setOrchestratorId(orchestratorId);
+            rootNode.handle(armoryCommandEntity, new DynamicContext());
+            return beanUtil.getOrchestrator(orchestratorId);
+        });
+    }
+
+    /**
+     * 使Orchestrator缓存失效，下次获取时重新装配
+     *
+     * @param orchestratorId Orchestrator ID
+     */
+    public void invalidate(Long orchestratorId) {
+        beanUtil.invalidateOrchestrator(orchestratorId);
+        planCache.invalidate(orchestratorId);
+    }
+}
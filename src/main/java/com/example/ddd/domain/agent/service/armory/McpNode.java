@@ -47,6 +47,7 @@ public class McpNode extends AbstractArmorySupport {
                 .forEach(mcpEntity -> {
                     log.info("多agent构建中 构建MCP: mcpName={}, orchestratorId={}, type={}, baseUrl={}",
                             mcpEntity.getName(), agentId, mcpEntity.getType(), mcpEntity.getBaseUrl());
+                    beanUtil.registerMcp(agentId, mcpEntity.getId(), mcpEntity);
                     if ("streamable_http".equalsIgnoreCase(mcpEntity.getType()) && "ACTIVE".equals(mcpEntity.getStatus())) {
                         try {
                             StreamableHttpMcpTransport.Builder transportBuilder = new StreamableHttpMcpTransport.Builder();
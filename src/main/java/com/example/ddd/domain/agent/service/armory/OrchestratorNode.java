@@ -4,7 +4,10 @@ import com.example.ddd.common.utils.BeanUtil;
 import com.example.ddd.common.utils.ILogicHandler;
 import com.example.ddd.domain.agent.model.entity.ArmoryCommandEntity;
 import com.example.ddd.domain.agent.service.execute.Orchestrator;
+import com.example.ddd.domain.agent.service.execute.graph.DagScheduler;
+import com.example.ddd.domain.agent.service.execute.graph.GraphTopologyCache;
 import com.example.ddd.domain.agent.service.execute.role.AgentRole;
+import com.example.ddd.domain.agent.service.execute.task.PlanCache;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +25,12 @@ public class OrchestratorNode extends AbstractArmorySupport {
 
     @Inject
     private BeanUtil beanUtil;
+    @Inject
+    private PlanCache planCache;
+    @Inject
+    private DagScheduler dagScheduler;
+    @Inject
+    private GraphTopologyCache topologyCache;
 
     @Override
     public String handle(ArmoryCommandEntity armoryCommandEntity, DynamicContext dynamicContext) {
@@ -51,6 +60,11 @@ public class OrchestratorNode extends AbstractArmorySupport {
                 return router(armoryCommandEntity, dynamicContext);
             }
             Orchestrator orchestrator = new Orchestrator(orchestratorId, supervisorNode, workerNodes);
+            orchestrator.setPlanCache(planCache);
+            orchestrator.setDagScheduler(dagScheduler);
+            orchestrator.setTopologyCache(topologyCache);
+            // 重新装配意味着配置（提示词、模型、子Agent等）可能已变化，旧计划不再复用
+            planCache.invalidate(orchestratorId);
             beanUtil.registerOrchestrator(orchestratorId, orchestrator);
             log.info("多agent构建中 Orchestrator构建成功: orchestratorId={}, supervisor={}, workers={}",
                     orchestratorId, supervisorNode.getRole(), workerNodes.size());
@@ -3,11 +3,10 @@ package com.example.ddd.domain.agent.service.armory;
 import com.example.ddd.common.utils.BeanUtil;
 import com.example.ddd.common.utils.ILogicHandler;
 import com.example.ddd.common.utils.JSON;
-import com.example.ddd.configuration.config.OpenAIProperties;
 import com.example.ddd.domain.agent.model.entity.ArmoryCommandEntity;
 import com.example.ddd.domain.agent.model.entity.RagEntity;
+import com.example.ddd.domain.agent.service.embedding.EmbeddingService;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -28,7 +27,7 @@ public class RagNode extends AbstractArmorySupport {
     BeanUtil beanUtil;
 
     @Inject
-    OpenAIProperties openAIProperties;
+    EmbeddingService embeddingService;
 
     @Override
     public String handle(ArmoryCommandEntity armoryCommandEntity, DynamicContext dynamicContext) {
@@ -47,24 +46,14 @@ public class RagNode extends AbstractArmorySupport {
                     log.info("多agent构建中 构建RAG: ragName={}, orchestratorId={}", ragEntity.getName(), agentId);
                     PgVectorEmbeddingStore embeddingStore = getEmbeddingStore(ragEntity);
                     beanUtil.registerEmbeddingStore(agentId, ragEntity.getId(), embeddingStore);
-                    EmbeddingModel embeddingModel = createEmbeddingModel(ragEntity);
+                    // 共享客户端：同一模型的所有RAG复用一个连接池，并统一限流
+                    EmbeddingModel embeddingModel = embeddingService.model(ragEntity.getEmbeddingModel());
                     beanUtil.registerEmbeddingModel(agentId, ragEntity.getId(), embeddingModel);
                 });
 
         return router(armoryCommandEntity, dynamicContext);
     }
 
-    /**
-     * 创建EmbeddingModel
-     */
-    private EmbeddingModel createEmbeddingModel(RagEntity ragEntity) {
-        return OpenAiEmbeddingModel.builder()
-                .apiKey(openAIProperties.getKey())
-                .baseUrl(openAIProperties.getUrl())
-                .modelName(ragEntity.getEmbeddingModel())
-                .build();
-    }
-
     /**
      * 创建PgVector向量存储
      */
@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Duration;
+
 /**
  * Service节点
  * 封装AiService和Client信息
@@ -50,6 +52,11 @@ public class ServiceNode {
      */
     private AgentRole role;
 
+    /**
+     * 等待模型流式响应完成的超时时间，为null时不设置超时
+     */
+    private Duration responseTimeout;
+
     /**
      * 获取Client ID（便捷方法）
      */
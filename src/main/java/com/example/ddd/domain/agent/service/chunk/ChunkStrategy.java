@@ -0,0 +1,43 @@
+package com.example.ddd.domain.agent.service.chunk;
+
+import com.example.ddd.common.utils.JSON;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.util.Map;
+
+/**
+ * 文档切分策略
+ * 通过 rag.config 的 splitter 字段配置，例如 {"splitter": "sentence"}
+ */
+public enum ChunkStrategy {
+    /**
+     * 按token切分：以单个汉字/单词为最小单位装箱，切分点可能落在句子中间
+     */
+    TOKEN,
+
+    /**
+     * 按句子切分：以句子为单位装箱，超长句子退化为按token切分
+     */
+    SENTENCE,
+
+    /**
+     * 递归切分：段落 → 句子 → 分句 → token，尽量保持语义完整
+     */
+    RECURSIVE;
+
+    /**
+     * 从RAG扩展配置中解析切分策略，未配置或无法识别时使用 RECURSIVE
+     */
+    public static ChunkStrategy fromConfig(Object config) {
+        if (config == null) {
+            return RECURSIVE;
+        }
+        try {
+            Map<String, Object> map = JSON.parseObject(config.toString(), new TypeReference<Map<String, Object>>() {});
+            Object splitter = map == null ? null : map.get("splitter");
+            return splitter == null ? RECURSIVE : ChunkStrategy.valueOf(splitter.toString().trim().toUpperCase());
+        } catch (Exception e) {
+            return RECURSIVE;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.ddd.domain.agent.service.chunk;
+
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import jakarta.inject.Singleton;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 文档切分器
+ * 按 rag.chunk_size / rag.chunk_overlap（单位：token）把文档切分为片段：
+ * 先按策略把文本拆成语义单元（段落/句子/分句/token），再贪心装箱，相邻片段保留 overlap 个token的重叠
+ * 切分结果以 Stream 惰性输出：语义单元在装箱时按需拆分，不预先生成整篇文档的单元列表，
+ * 下游可以边切分边向量化、边入库（原文本身仍整体驻留内存）
+ */
+@Singleton
+public class TextSplitter {
+    /**
+     * 未配置 chunk_size 时的默认值（token）
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 512;
+    /**
+     * 未配置 chunk_overlap 时的默认值（token）
+     */
+    public static final int DEFAULT_CHUNK_OVERLAP = 64;
+
+    /**
+     * 段落：空行分隔
+     */
+    private static final Pattern PARAGRAPH = Pattern.compile("(?<=\\n)(?=\\s*\\n)");
+    /**
+     * 句子：中英文句末标点、换行（英文句号要求后面是空白，避免切开小数和缩写）
+     */
+    private static final Pattern SENTENCE = Pattern.compile("(?<=[。！？；!?;])|(?<=\\.)(?=\\s)|(?<=\\n)");
+    /**
+     * 分句：逗号、顿号、冒号
+     */
+    private static final Pattern CLAUSE = Pattern.compile("(?<=[，、：,:])");
+    /**
+     * token单元：单个汉字/假名、连续的非空白字符（含尾随空白）、连续空白
+     */
+    private static final Pattern ATOM = Pattern.compile(
+            "[\\p{IsHan}\\p{IsHiragana}\\p{IsKatakana}]|[^\\s\\p{IsHan}\\p{IsHiragana}\\p{IsKatakana}]+\\s*|\\s+");
+
+    private final TokenCountEstimator tokenCountEstimator = new OpenAiTokenCountEstimator("text-embedding-3-small");
+
+    /**
+     * 切分文档
+     *
+     * @param text         文档内容
+     * @param strategy     切分策略
+     * @param chunkSize    片段大小（token），为空时使用默认值
+     * @param chunkOverlap 片段重叠（token），为空时使用默认值，必须小于 chunkSize
+     * @return 片段流（已去除首尾空白，不含空片段）
+     */
+    public Stream<String> split(String text, ChunkStrategy strategy, Integer chunkSize, Integer chunkOverlap) {
+        if (text == null || text.isBlank()) {
+            return Stream.empty();
+        }
+        int size = chunkSize == null || chunkSize <= 0 ? DEFAULT_CHUNK_SIZE : chunkSize;
+        int overlap = chunkOverlap == null || chunkOverlap < 0 ? Math.min(DEFAULT_CHUNK_OVERLAP, size / 4) : chunkOverlap;
+        if (overlap >= size) {
+            overlap = size / 4;
+        }
+        Iterator<String> chunks = new ChunkIterator(units(text, strategy == null ? ChunkStrategy.RECURSIVE : strategy, size), size, overlap);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * 按策略拆分语义单元，超过 chunkSize 的单元逐级细分
+     */
+    private Iterator<Unit> units(String text, ChunkStrategy strategy, int chunkSize) {
+        return switch (strategy) {
+            case TOKEN -> new UnitIterator(text, new Pattern[0], chunkSize);
+            case SENTENCE -> new UnitIterator(text, new Pattern[]{SENTENCE}, chunkSize);
+            case RECURSIVE -> new UnitIterator(text, new Pattern[]{PARAGRAPH, SENTENCE, CLAUSE}, chunkSize);
+        };
+    }
+
+    /**
+     * 惰性拆分语义单元：每层分隔符的切分结果用迭代器逐段读取，超过 chunkSize 的段压栈继续细分，
+     * 最后一层仍超长时拆成token单元；相同的token单元只估算一次
+     */
+    private class UnitIterator implements Iterator<Unit> {
+        private final Pattern[] separators;
+        private final int chunkSize;
+        /**
+         * 各层尚未读取的段，栈深度 - 1 即当前层级
+         */
+        private final Deque<Iterator<String>> parts = new ArrayDeque<>();
+        private final Map<String, Integer> atomTokens = new HashMap<>();
+        private Matcher atoms;
+        private Unit next;
+
+        UnitIterator(String text, Pattern[] separators, int chunkSize) {
+            this.separators = separators;
+            this.chunkSize = chunkSize;
+            if (separators.length == 0) {
+                atoms = ATOM.matcher(text);
+            } else {
+                parts.push(separators[0].splitAsStream(text).iterator());
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (atoms != null) {
+                    if (atoms.find()) {
+                        String atom = atoms.group();
+                        next = new Unit(atom, atomTokens.computeIfAbsent(atom,
+                                key -> Math.max(1, tokenCountEstimator.estimateTokenCountInText(key))));
+                        continue;
+                    }
+                    atoms = null;
+                }
+                Iterator<String> current = parts.peek();
+                if (current == null) {
+                    return false;
+                }
+                if (!current.hasNext()) {
+                    parts.pop();
+                    continue;
+                }
+                String part = current.next();
+                if (part.isEmpty()) {
+                    continue;
+                }
+                int depth = parts.size() - 1;
+                int tokens = tokenCountEstimator.estimateTokenCountInText(part);
+                if (tokens <= chunkSize) {
+                    next = new Unit(part, tokens);
+                } else if (depth + 1 < separators.length) {
+                    parts.push(separators[depth + 1].splitAsStream(part).iterator());
+                } else {
+                    atoms = ATOM.matcher(part);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Unit next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Unit unit = next;
+            next = null;
+            return unit;
+        }
+    }
+
+    private record Unit(String text, int tokens) {
+    }
+
+    /**
+     * 贪心装箱：单元累计超过 chunkSize 时输出一个片段，并保留末尾不超过 overlap 的单元作为下一片段的开头
+     */
+    private static class ChunkIterator implements Iterator<String> {
+        private final Iterator<Unit> units;
+        private final int chunkSize;
+        private final int overlap;
+        private final Deque<Unit> window = new ArrayDeque<>();
+        private int windowTokens;
+        /**
+         * 窗口中是否有尚未输出过的单元（只剩重叠部分时不再输出）
+         */
+        private boolean hasFresh;
+        private String next;
+
+        ChunkIterator(Iterator<Unit> units, int chunkSize, int overlap) {
+            this.units = units;
+            this.chunkSize = chunkSize;
+            this.overlap = overlap;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (!units.hasNext()) {
+                    if (!hasFresh) {
+                        return false;
+                    }
+                    hasFresh = false;
+                    next = emit();
+                    continue;
+                }
+                Unit unit = units.next();
+                if (hasFresh && windowTokens + unit.tokens() > chunkSize) {
+                    next = emit();
+                    hasFresh = false;
+                    while (!window.isEmpty() && (windowTokens > overlap || windowTokens + unit.tokens() > chunkSize)) {
+                        windowTokens -= window.pollFirst().tokens();
+                    }
+                }
+                window.addLast(unit);
+                windowTokens += unit.tokens();
+                hasFresh = true;
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        /**
+         * 拼接当前窗口，空白片段返回null由 hasNext 继续读取
+         */
+        private String emit() {
+            StringBuilder builder = new StringBuilder();
+            window.forEach(unit -> builder.append(unit.text()));
+            String chunk = builder.toString().strip();
+            return chunk.isEmpty() ? null : chunk;
+        }
+    }
+}
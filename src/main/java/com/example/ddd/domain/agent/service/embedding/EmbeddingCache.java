@@ -0,0 +1,177 @@
+package com.example.ddd.domain.agent.service.embedding;
+
+import com.example.ddd.configuration.config.EmbeddingProperties;
+import com.example.ddd.domain.agent.adapter.repository.IEmbeddingCacheRepository;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 向量缓存
+ * 按（模型名称，规范化文本的SHA-256）寻址，两级缓存：
+ * - 一级：堆内LRU
+ * - 二级：embedding_cache 表，一级未命中时按 batchSize 分批查询，命中后回填一级
+ * 缓存读写失败只记录日志，不影响向量化本身；写入和返回都复制向量，调用方修改返回值不会污染缓存
+ */
+@Slf4j
+@Singleton
+public class EmbeddingCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Inject
+    private EmbeddingProperties embeddingProperties;
+    @Inject
+    private IEmbeddingCacheRepository embeddingCacheRepository;
+    @Inject
+    private DSLContextFactory dslContextFactory;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Map<String, float[]> memory;
+
+    @PostConstruct
+    void init() {
+        int capacity = Math.max(0, embeddingProperties.getCacheSize());
+        memory = Collections.synchronizedMap(new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /**
+     * 计算文本的缓存键：NFKC规范化、合并空白、去除首尾空白后取SHA-256
+     */
+    public static String hash(String text) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC)).replaceAll(" ").strip();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 只查一级缓存（不访问数据库）
+     *
+     * @param model    模型名称
+     * @param textHash 文本哈希
+     * @return 向量副本，未命中时返回null
+     */
+    public float[] getFromMemory(String model, String textHash) {
+        float[] vector = memory.get(key(model, textHash));
+        if (vector == null) {
+            return null;
+        }
+        memoryHits.incrementAndGet();
+        return vector.clone();
+    }
+
+    /**
+     * 批量查询
+     *
+     * @param model      模型名称
+     * @param textHashes 文本哈希
+     * @return 文本哈希 -> 向量副本（未命中的不包含）
+     */
+    public Map<String, float[]> getAll(String model, Collection<String> textHashes) {
+        Map<String, float[]> found = new HashMap<>();
+        Set<String> absent = new LinkedHashSet<>();
+        for (String textHash : textHashes) {
+            if (found.containsKey(textHash) || absent.contains(textHash)) {
+                continue;
+            }
+            float[] vector = memory.get(key(model, textHash));
+            if (vector != null) {
+                found.put(textHash, vector.clone());
+            } else {
+                absent.add(textHash);
+            }
+        }
+        memoryHits.addAndGet(found.size());
+        int persistedCount = 0;
+        if (!absent.isEmpty() && embeddingProperties.isPersistentCache()) {
+            int batchSize = Math.max(1, embeddingProperties.getBatchSize());
+            List<String> pending = new ArrayList<>(absent);
+            for (int from = 0; from < pending.size(); from += batchSize) {
+                List<String> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+                try {
+                    Map<String, float[]> persisted = dslContextFactory.callable(dslContext ->
+                            embeddingCacheRepository.queryByHashes(dslContext, model, batch));
+                    persisted.forEach((textHash, vector) -> memory.put(key(model, textHash), vector.clone()));
+                    persistedCount += persisted.size();
+                    found.putAll(persisted);
+                } catch (Exception e) {
+                    log.warn("查询向量缓存表失败，按未命中处理: model={}, size={}", model, batch.size(), e);
+                }
+            }
+        }
+        persistentHits.addAndGet(persistedCount);
+        misses.addAndGet(absent.size() - persistedCount);
+        return found;
+    }
+
+    /**
+     * 批量写入
+     *
+     * @param model      模型名称
+     * @param embeddings 文本哈希 -> 向量
+     */
+    public void putAll(String model, Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        embeddings.forEach((textHash, vector) -> memory.put(key(model, textHash), vector.clone()));
+        if (embeddingProperties.isPersistentCache()) {
+            try {
+                dslContextFactory.callable(dslContext ->
+                        embeddingCacheRepository.batchInsert(dslContext, model, embeddings));
+            } catch (Exception e) {
+                log.warn("写入向量缓存表失败: model={}, size={}", model, embeddings.size(), e);
+            }
+        }
+    }
+
+    /**
+     * 命中统计
+     */
+    public Map<String, Object> stats() {
+        long memoryHit = memoryHits.get();
+        long persistentHit = persistentHits.get();
+        long miss = misses.get();
+        long total = memoryHit + persistentHit + miss;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("memoryHits", memoryHit);
+        stats.put("persistentHits", persistentHit);
+        stats.put("misses", miss);
+        stats.put("hitRate", total == 0 ? 0 : (double) (memoryHit + persistentHit) / total);
+        stats.put("memorySize", memory.size());
+        return stats;
+    }
+
+    private static String key(String model, String textHash) {
+        return model + ":" + textHash;
+    }
+}
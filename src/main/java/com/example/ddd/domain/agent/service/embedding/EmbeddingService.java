@@ -0,0 +1,351 @@
+package com.example.ddd.domain.agent.service.embedding;
+
+import com.example.ddd.configuration.config.EmbeddingProperties;
+import com.example.ddd.configuration.config.OpenAIProperties;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量化服务
+ * - 每个向量模型只创建一个客户端（复用HTTP连接）
+ * - 批量请求按 batchSize 切分为多次 embedAll，单条请求在 coalesceMillis 内合并为一批
+ * - 所有请求共享并发上限和每秒请求数上限，避免导入大文档时打满模型配额
+ * - 相同文本优先从 EmbeddingCache 获取，不重复请求
+ * - 返回的向量归调用方所有，可以修改
+ */
+@Slf4j
+@Singleton
+public class EmbeddingService {
+
+    @Inject
+    private OpenAIProperties openAIProperties;
+    @Inject
+    private EmbeddingProperties embeddingProperties;
+    @Inject
+    private EmbeddingCache embeddingCache;
+
+    /**
+     * 模型名称 -> 底层客户端
+     */
+    private final Map<String, OpenAiEmbeddingModel> clients = new ConcurrentHashMap<>();
+    /**
+     * 模型名称 -> 经过限流的EmbeddingModel（供 ContentRetriever 等 langchain4j 组件使用）
+     */
+    private final Map<String, EmbeddingModel> models = new ConcurrentHashMap<>();
+    /**
+     * 模型名称 -> 单条请求合并器
+     */
+    private final Map<String, Coalescer> coalescers = new ConcurrentHashMap<>();
+    private final ExecutorService executorService = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("EmbeddingExecutor-", 0).factory());
+    private final Object rateLock = new Object();
+    private long nextRequestNanos;
+    private Semaphore permits;
+
+    @PostConstruct
+    void init() {
+        permits = new Semaphore(Math.max(1, embeddingProperties.getMaxConcurrency()), true);
+    }
+
+    @PreDestroy
+    void close() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * 默认向量模型名称
+     */
+    public String defaultModel() {
+        return embeddingProperties.getModel();
+    }
+
+    /**
+     * 获取经过批量合并和限流的EmbeddingModel
+     *
+     * @param modelName 模型名称，为空时使用默认模型
+     */
+    public EmbeddingModel model(String modelName) {
+        return models.computeIfAbsent(resolve(modelName), SharedEmbeddingModel::new);
+    }
+
+    /**
+     * 向量化单条文本（默认模型）
+     */
+    public float[] embed(String text) {
+        return embed(null, text);
+    }
+
+    /**
+     * 向量化单条文本，并发调用会在 coalesceMillis 内合并为一次请求
+     * 调用线程只查一级缓存，未命中时缓存表查询也随合并后的批次一起执行
+     *
+     * @param modelName 模型名称，为空时使用默认模型
+     * @param text      文本
+     * @return 向量
+     */
+    public float[] embed(String modelName, String text) {
+        String name = resolve(modelName);
+        String textHash = EmbeddingCache.hash(text);
+        float[] cached = embeddingCache.getFromMemory(name, textHash);
+        if (cached != null) {
+            return cached;
+        }
+        return await(coalescers.computeIfAbsent(name, Coalescer::new).submit(text, textHash));
+    }
+
+    /**
+     * 批量向量化（默认模型）
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        return embedAll(null, texts);
+    }
+
+    /**
+     * 批量向量化，先查缓存，未命中的文本去重后按 batchSize 切分并行请求（受并发和限流约束），结果顺序与输入一致
+     *
+     * @param modelName 模型名称，为空时使用默认模型
+     * @param texts     文本列表
+     * @return 向量列表
+     */
+    public List<float[]> embedAll(String modelName, List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return List.of();
+        }
+        String name = resolve(modelName);
+        List<String> textHashes = texts.stream().map(EmbeddingCache::hash).toList();
+        Map<String, float[]> found = new HashMap<>(embeddingCache.getAll(name, textHashes));
+        Map<String, String> absent = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!found.containsKey(textHashes.get(i))) {
+                absent.putIfAbsent(textHashes.get(i), texts.get(i));
+            }
+        }
+        if (!absent.isEmpty()) {
+            List<float[]> vectors = fetchAll(name, new ArrayList<>(absent.values()));
+            Map<String, float[]> fetched = new HashMap<>();
+            int index = 0;
+            for (String textHash : absent.keySet()) {
+                fetched.put(textHash, vectors.get(index++));
+            }
+            embeddingCache.putAll(name, fetched);
+            found.putAll(fetched);
+        }
+        // 重复文本各自返回独立的副本
+        Set<String> returned = new HashSet<>();
+        return textHashes.stream()
+                .map(textHash -> returned.add(textHash) ? found.get(textHash) : found.get(textHash).clone())
+                .toList();
+    }
+
+    /**
+     * 按 batchSize 切分后并行请求
+     */
+    private List<float[]> fetchAll(String name, List<String> texts) {
+        int batchSize = Math.max(1, embeddingProperties.getBatchSize());
+        if (texts.size() <= batchSize) {
+            return request(name, texts);
+        }
+        List<CompletableFuture<List<float[]>>> futures = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            List<String> batch = texts.subList(from, Math.min(from + batchSize, texts.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> request(name, batch), executorService));
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (CompletableFuture<List<float[]>> future : futures) {
+            vectors.addAll(await(future));
+        }
+        return vectors;
+    }
+
+    private String resolve(String modelName) {
+        return modelName == null || modelName.isBlank() ? embeddingProperties.getModel() : modelName;
+    }
+
+    /**
+     * 发送一次 embedAll 请求
+     */
+    private List<float[]> request(String modelName, List<String> texts) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待向量化请求许可被中断", e);
+        }
+        try {
+            pace();
+            long begin = System.nanoTime();
+            List<TextSegment> segments = texts.stream().map(TextSegment::from).toList();
+            List<Embedding> embeddings = client(modelName).embedAll(segments).content();
+            log.debug("向量化请求完成: model={}, size={}, costMs={}",
+                    modelName, texts.size(), (System.nanoTime() - begin) / 1_000_000);
+            return embeddings.stream().map(Embedding::vector).toList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待向量化限流被中断", e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 按 requestsPerSecond 均匀分配请求时间片
+     */
+    private void pace() throws InterruptedException {
+        double requestsPerSecond = embeddingProperties.getRequestsPerSecond();
+        if (requestsPerSecond <= 0) {
+            return;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        long wait;
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextRequestNanos);
+            nextRequestNanos = slot + interval;
+            wait = slot - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private OpenAiEmbeddingModel client(String modelName) {
+        return clients.computeIfAbsent(modelName, name -> OpenAiEmbeddingModel.builder()
+                .apiKey(openAIProperties.getKey())
+                .baseUrl(openAIProperties.getUrl())
+                .modelName(name)
+                .build());
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待向量化结果被中断", e);
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof RuntimeException re ? re : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 单条请求合并器
+     * 后台虚拟线程取出第一条请求后，在 coalesceMillis 内继续收集，凑满 batchSize 或超时即发送
+     */
+    private class Coalescer {
+        private final String modelName;
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+        Coalescer(String modelName) {
+            this.modelName = modelName;
+            executorService.execute(this::loop);
+        }
+
+        CompletableFuture<float[]> submit(String text, String textHash) {
+            Pending pending = new Pending(text, textHash, new CompletableFuture<>());
+            queue.add(pending);
+            return pending.future();
+        }
+
+        private void loop() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    List<Pending> batch = new ArrayList<>();
+                    batch.add(queue.take());
+                    int batchSize = Math.max(1, embeddingProperties.getBatchSize());
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(embeddingProperties.getCoalesceMillis());
+                    while (batch.size() < batchSize) {
+                        Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    executorService.execute(() -> flush(batch));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * 整批一次查询缓存，只请求未命中的文本（同批内相同文本只请求一次）
+         */
+        private void flush(List<Pending> batch) {
+            try {
+                Map<String, float[]> found = embeddingCache.getAll(modelName,
+                        batch.stream().map(Pending::textHash).toList());
+                Map<String, String> absent = new LinkedHashMap<>();
+                for (Pending pending : batch) {
+                    if (!found.containsKey(pending.textHash())) {
+                        absent.putIfAbsent(pending.textHash(), pending.text());
+                    }
+                }
+                if (!absent.isEmpty()) {
+                    List<float[]> vectors = request(modelName, new ArrayList<>(absent.values()));
+                    Map<String, float[]> fetched = new HashMap<>();
+                    int index = 0;
+                    for (String textHash : absent.keySet()) {
+                        fetched.put(textHash, vectors.get(index++));
+                    }
+                    embeddingCache.putAll(modelName, fetched);
+                    found.putAll(fetched);
+                }
+                for (Pending pending : batch) {
+                    pending.future().complete(found.get(pending.textHash()).clone());
+                }
+            } catch (Exception e) {
+                batch.forEach(pending -> pending.future().completeExceptionally(e));
+            }
+        }
+    }
+
+    private record Pending(String text, String textHash, CompletableFuture<float[]> future) {
+    }
+
+    /**
+     * 共享的EmbeddingModel：单条走合并器，多条走批量切分，统一受并发和限流约束
+     */
+    private class SharedEmbeddingModel implements EmbeddingModel {
+        private final String modelName;
+
+        SharedEmbeddingModel(String modelName) {
+            this.modelName = modelName;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            List<String> texts = textSegments.stream().map(TextSegment::text).toList();
+            List<float[]> vectors = texts.size() == 1
+                    ? List.of(embed(modelName, texts.get(0)))
+                    : EmbeddingService.this.embedAll(modelName, texts);
+            return Response.from(vectors.stream().map(Embedding::from).toList());
+        }
+    }
+}
@@ -1,26 +1,36 @@
 package com.example.ddd.domain.agent.service.execute;
 
 import com.example.ddd.common.utils.JSON;
+import com.example.ddd.common.utils.TokenStreams;
 import com.example.ddd.domain.agent.service.armory.AiService;
 import com.example.ddd.domain.agent.service.armory.ServiceNode;
 import com.example.ddd.domain.agent.service.execute.context.EventType;
 import com.example.ddd.domain.agent.service.execute.context.UserContext;
+import com.example.ddd.domain.agent.service.execute.executor.ExecutorFactory;
+import com.example.ddd.domain.agent.service.execute.graph.DagScheduler;
 import com.example.ddd.domain.agent.service.execute.graph.GraphBuilder;
-import com.example.ddd.domain.agent.service.execute.graph.WorkspaceState;
+import com.example.ddd.domain.agent.service.execute.graph.GraphTopologyCache;
+import com.example.ddd.domain.agent.service.execute.graph.TaskGraph;
+import com.example.ddd.domain.agent.service.embedding.EmbeddingCache;
 import com.example.ddd.domain.agent.service.execute.role.AgentRole;
+import com.example.ddd.domain.agent.service.execute.task.PlanCache;
+import com.example.ddd.domain.agent.service.execute.task.StreamingPlanParser;
+import com.example.ddd.domain.agent.service.execute.task.Task;
 import com.example.ddd.domain.agent.service.execute.task.TaskPlan;
-import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.service.TokenStream;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.bsc.langgraph4j.CompiledGraph;
+import org.apache.commons.lang3.StringUtils;
 import org.bsc.langgraph4j.GraphStateException;
 
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -28,7 +38,8 @@ import java.util.stream.Collectors;
  * - 持有一个「主管 AiService + 主管的 ServiceNode 配置」
  * - 持有一个「子 Agent ServiceNode 列表」
  * - 主管先生成 TaskPlan（任务计划）
- * - Orchestrator 根据 plan 构建 StateGraph 并执行
+ * - Orchestrator 根据 plan 构建任务图并由 DagScheduler 并行调度执行
+ * - 主管流式输出计划时增量解析，入口任务在计划生成完之前就开始执行
  */
 @Slf4j
 @Getter
@@ -37,7 +48,11 @@ public class Orchestrator {
     private final ServiceNode supervisorNode;      // 主管节点配置（但不会放进执行图）
     private final List<ServiceNode> workerNodes;   // 子 Agent 节点列表
     private final Map<Long, ServiceNode> workersByID;
+    private final String workerFingerprint;        // 主管与子Agent（id+描述）的指纹，用于任务计划缓存
     private Long orchestratorId;
+    private PlanCache planCache;                   // 任务计划语义缓存，为null时不缓存
+    private DagScheduler dagScheduler;             // 任务图调度器
+    private GraphTopologyCache topologyCache;      // 任务图拓扑缓存，为null时每次计算
 
     public Orchestrator(Long orchestratorId, ServiceNode supervisorNode, List<ServiceNode> workerNodes) {
         if (supervisorNode.getRole() != AgentRole.SUPERVISOR) {
@@ -51,6 +66,10 @@ public class Orchestrator {
                         ServiceNode::getId,
                         n -> n
                 ));
+        this.workerFingerprint = EmbeddingCache.hash(supervisorNode.getId() + "|" + workerNodes.stream()
+                .sorted(Comparator.comparing(ServiceNode::getId))
+                .map(n -> n.getId() + "=" + n.getClientDescription())
+                .collect(Collectors.joining("|")));
     }
 
     /**
@@ -61,6 +80,18 @@ public class Orchestrator {
      * @return 任务计划
      */
     public TaskPlan plan(String userRequest, UserContext userContext) {
+        return plan(userRequest, userContext, null);
+    }
+
+    /**
+     * Step 1: 主管生成任务计划，流式输出过程中每解析出一个任务就回调
+     *
+     * @param userRequest 用户请求
+     * @param userContext 用户上下文（用于发送事件）
+     * @param onTask      任务回调（在token回调线程上执行），可为null；命中计划缓存时不回调
+     * @return 任务计划（以完整响应的解析结果为准）
+     */
+    public TaskPlan plan(String userRequest, UserContext userContext, Consumer<Task> onTask) {
         log.info("多agent执行中 Supervisor开始生成任务计划: userRequest={}", userRequest);
         if (userContext != null) {
             userContext.emit(UserContext.TaskStatusEvent.builder()
@@ -73,11 +104,25 @@ public class Orchestrator {
             throw new IllegalStateException("Supervisor AiService 未初始化");
         }
 
-        // 获取历史对话记忆
-        String historyContext = "";
-        if (userContext != null && userContext.getUserId() != null && userContext.getSessionId() != null) {
-            historyContext = com.example.ddd.domain.agent.service.execute.memory.InMemory.getInstance()
-                    .formatHistoryForPrompt(userContext.getUserId(), userContext.getSessionId(), 10);
+        // 获取历史对话记忆（本次执行的快照）
+        String historyContext = userContext != null ? userContext.getHistoryContext() : "";
+
+        // 同一用户语义相近的请求在相同子Agent与最近历史下复用已生成的计划
+        String userId = userContext != null ? userContext.getUserId() : null;
+        PlanCache.Lookup cached = planCache != null
+                ? planCache.lookup(orchestratorId, workerFingerprint, userId, userRequest, historyContext) : null;
+        if (cached != null && cached.isHit()) {
+            TaskPlan taskPlan = JSON.parseObject(cached.getPlanJson(), TaskPlan.class);
+            log.info("多agent执行中 任务计划命中缓存: summary={}, totalTasks={}",
+                    taskPlan.getSummary(), taskPlan.getTotalTasks());
+            if (userContext != null) {
+                userContext.emit(UserContext.TaskStatusEvent.builder()
+                        .type(EventType.PLAN_READY)
+                        .message(taskPlan.getSummary())
+                        .content(cached.getPlanJson())
+                        .build());
+            }
+            return taskPlan;
         }
 
         String planningPrompt = """
@@ -87,19 +132,20 @@ public class Orchestrator {
                   "chatHistory(作为记忆联系上下午，不要从记忆中汇总问题)":%s
                 }
                 """.formatted(userRequest, subWorkersDesc(), historyContext);
-        TokenStream chat = supAi.chat(planningPrompt);
-        CountDownLatch latch = new CountDownLatch(1);
-        StringBuilder builder = new StringBuilder();
-        chat.onPartialResponse(token -> {
-
-        });
-
-        chat.onCompleteResponse(e -> {
-            AiMessage aiMessage = e.aiMessage();
-            builder.append(aiMessage.text());
-            latch.countDown();
-        });
-        chat.onError(error -> {
+        String response;
+        try {
+            TokenStream chat = supAi.chat(planningPrompt);
+            Consumer<String> onToken = onTask != null ? new StreamingPlanParser(onTask) : null;
+            CompletableFuture<String> future = TokenStreams.toFuture(chat, onToken, supervisorNode.getResponseTimeout());
+            try (UserContext.Registration ignored = userContext != null
+                    ? userContext.onCancel(() -> future.cancel(true)) : null) {
+                response = TokenStreams.await(future);
+            }
+        } catch (Exception error) {
+            if (userContext != null && userContext.isCancelled()) {
+                log.info("多agent执行中 执行已取消，停止生成任务计划");
+                throw new CancellationException("执行已取消");
+            }
             log.error("多agent执行中 Supervisor生成计划失败: error={}", error.getMessage(), error);
             if (userContext != null) {
                 userContext.emit(UserContext.TaskStatusEvent.builder()
@@ -108,12 +154,9 @@ public class Orchestrator {
                         .error(error.getMessage())
                         .build());
             }
-            throw new RuntimeException(error);
-        });
-        chat.start();
+            throw new RuntimeException("Supervisor生成计划失败: " + error.getMessage(), error);
+        }
         try {
-            latch.await();
-            String response = builder.toString();
             log.info("多agent执行中 Supervisor返回的计划: response={}", response);
             TaskPlan taskPlan = JSON.parseObject(response, TaskPlan.class);
             if (taskPlan == null) {
@@ -121,11 +164,15 @@ public class Orchestrator {
             }
             log.info("多agent执行中 任务计划生成成功: summary={}, totalTasks={}",
                     taskPlan.getSummary(), taskPlan.getTotalTasks());
+            String planJson = JSON.toJSON(taskPlan);
+            if (planCache != null) {
+                planCache.put(cached, planJson);
+            }
             if (userContext != null) {
                 userContext.emit(UserContext.TaskStatusEvent.builder()
                         .type(EventType.PLAN_READY)
                         .message(taskPlan.getSummary())
-                        .content(JSON.toJSON(taskPlan))
+                        .content(planJson)
                         .build());
             }
             return taskPlan;
@@ -154,17 +201,17 @@ public class Orchestrator {
 
 
     /**
-     * Step 2: 根据 TaskPlan 构建 StateGraph
+     * Step 2: 根据 TaskPlan 构建任务图
      * 使用 GraphBuilder 构建图，执行器作为节点
      */
-    public CompiledGraph<WorkspaceState> buildGraph(TaskPlan taskPlan, UserContext userContext) throws GraphStateException {
+    public TaskGraph buildGraph(TaskPlan taskPlan, UserContext userContext) throws GraphStateException {
         log.info("多agent执行中 开始构建执行图: totalTasks={}", taskPlan.getTotalTasks());
         return GraphBuilder.build(taskPlan, this, userContext);
     }
 
     /**
      * Step 3: 执行完整流程
-     * 1. 主管生成任务计划
+     * 1. 主管生成任务计划（流式解析出的入口任务提前派发）
      * 2. 构建执行图
      * 3. 执行图
      *
@@ -173,29 +220,46 @@ public class Orchestrator {
      * @return 执行结果流
      */
     public void execute(String userRequest, UserContext userContext) throws GraphStateException {
+        DagScheduler.Run run = null;
+        UserContext.Registration cancelRegistration = null;
         try {
             log.info("开始执行任务流程: {}", userRequest);
-            TaskPlan taskPlan = plan(userRequest, userContext);
+            Map<String, Object> init = new HashMap<>();
+            init.put("userMessage", userRequest);
+
+            // 添加历史对话到 state（与规划阶段使用同一快照）
+            if (userContext != null) {
+                String historyContext = userContext.getHistoryContext();
+                if (!historyContext.isEmpty()) {
+                    init.put("historyContext", historyContext);
+                }
+            }
+
+            run = dagScheduler.open(init);
+            DagScheduler.Run earlyRun = run;
+            // 取消、计划生成失败或任务图构建失败时终止运行：不再派发任务，并中断已提前派发、仍在执行或等待许可的任务
+            if (userContext != null) {
+                cancelRegistration = userContext.onCancel(() -> earlyRun.abort(new CancellationException("执行已取消")));
+            }
+            TaskPlan taskPlan = plan(userRequest, userContext,
+                    dagScheduler.isEarlyDispatch() ? task -> dispatchEarly(earlyRun, task, userContext) : null);
             log.info("任务计划生成完成: {}", taskPlan.getSummary());
-            CompiledGraph<WorkspaceState> graph = buildGraph(taskPlan, userContext);
+            TaskGraph graph = buildGraph(taskPlan, userContext);
             if (graph != null) {
                 log.info("执行图构建完成");
-                Map<String, Object> init = new HashMap<>();
-                init.put("userMessage", userRequest);
-
-                // 添加历史对话到 state
-                if (userContext != null && userContext.getUserId() != null && userContext.getSessionId() != null) {
-                    String historyContext = com.example.ddd.domain.agent.service.execute.memory.InMemory.getInstance()
-                            .formatHistoryForPrompt(userContext.getUserId(), userContext.getSessionId(), 10);
-                    if (!historyContext.isEmpty()) {
-                        init.put("historyContext", historyContext);
-                    }
-                }
-
                 log.info("开始执行图");
-                graph.invoke(init);
+                run.await(graph);
+            } else {
+                run.abort(new IllegalStateException("任务计划中没有任务"));
             }
         } catch (Exception e) {
+            if (run != null) {
+                run.abort(e);
+            }
+            if (userContext != null && userContext.isCancelled()) {
+                log.info("任务流程已取消: {}", userRequest);
+                return;
+            }
             if (userContext != null) {
                 userContext.emit(UserContext.TaskStatusEvent.builder()
                         .type(EventType.EXECUTION_FAILED)
@@ -204,6 +268,26 @@ public class Orchestrator {
                         .build());
             }
             log.error("执行任务流程失败: {}", e.getMessage(), e);
+        } finally {
+            if (cancelRegistration != null) {
+                cancelRegistration.close();
+            }
+        }
+    }
+
+    /**
+     * 计划生成过程中派发入口任务（不依赖其他任务输出的任务），其余任务等完整计划构建成图后再调度
+     */
+    private void dispatchEarly(DagScheduler.Run run, Task task, UserContext userContext) {
+        Task.TaskInputs inputs = task.getInputs();
+        boolean root = inputs == null || inputs.getFromTask() == null
+                || inputs.getFromTask().stream().allMatch(StringUtils::isBlank);
+        ServiceNode worker = workersByID.get(task.getAgentId());
+        if (!root || StringUtils.isBlank(task.getId()) || worker == null) {
+            return;
+        }
+        if (run.start(task.getId(), ExecutorFactory.create(task, worker, userContext))) {
+            log.info("多agent执行中 计划生成中提前派发入口任务: taskId={}, agentId={}", task.getId(), task.getAgentId());
         }
     }
 
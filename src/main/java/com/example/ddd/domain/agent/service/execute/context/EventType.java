@@ -67,6 +67,16 @@ public enum EventType {
      */
     EXECUTION_FAILED("execution_failed", 4001),
 
+    /**
+     * 执行已取消（客户端断开未重连）
+     */
+    EXECUTION_CANCELLED("execution_cancelled", 4002),
+
+    /**
+     * 断线重连补齐时缺失的事件（写入压力下被采样或丢弃），id 为缺失区间的最后一个序号
+     */
+    EVENTS_MISSING("events_missing", 4003),
+
     /**
      * 错误
      */
@@ -0,0 +1,21 @@
+package com.example.ddd.domain.agent.service.execute.context;
+
+/**
+ * 事件缓冲区已满（客户端读取过慢）时对流式token事件的处理策略
+ * 非流式事件（任务开始/完成/失败等）始终等待缓冲区腾出空间，超时后才丢弃
+ */
+public enum OverflowPolicy {
+    /**
+     * 丢弃新的token事件，任务继续执行
+     */
+    DROP_LATEST,
+    /**
+     * 等待缓冲区腾出空间，超时（或执行已取消、线程被中断）后丢弃：
+     * 投递队列已满时阻塞产生事件的线程；正在投递的线程等待客户端读取，期间其他线程的事件在投递队列中排队
+     */
+    BLOCK,
+    /**
+     * 以错误结束事件流
+     */
+    ERROR
+}
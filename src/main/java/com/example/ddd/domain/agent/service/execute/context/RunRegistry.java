@@ -0,0 +1,60 @@
+package com.example.ddd.domain.agent.service.execute.context;
+
+import com.example.ddd.configuration.config.StreamProperties;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行中（及刚结束）的 UserContext 注册表，供断线重连按 runId 找回事件流
+ * 执行结束后保留 retentionSeconds，之后只能从执行记录中重放
+ */
+@Slf4j
+@Singleton
+public class RunRegistry {
+
+    /**
+     * 过期清理的最小间隔（毫秒）
+     */
+    private static final long SWEEP_INTERVAL_MILLIS = 10_000;
+
+    @Inject
+    private StreamProperties streamProperties;
+
+    private final Map<Long, UserContext> runs = new ConcurrentHashMap<>();
+    private volatile long lastSweep;
+
+    public void register(UserContext userContext) {
+        if (userContext.getRunId() == null) {
+            return;
+        }
+        sweep();
+        runs.put(userContext.getRunId(), userContext);
+    }
+
+    /**
+     * @return 执行上下文，不存在或已过期时返回null
+     */
+    public UserContext get(Long runId) {
+        sweep();
+        return runId != null ? runs.get(runId) : null;
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < SWEEP_INTERVAL_MILLIS) {
+            return;
+        }
+        lastSweep = now;
+        long expireBefore = now - TimeUnit.SECONDS.toMillis(streamProperties.getRetentionSeconds());
+        int before = runs.size();
+        runs.values().removeIf(context -> context.isTerminated() && context.getTerminatedAt() < expireBefore);
+        if (runs.size() < before) {
+            log.debug("清理已结束的执行上下文: removed={}, remaining={}", before - runs.size(), runs.size());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.ddd.domain.agent.service.execute.context;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 流式token合并器
+ * 把模型逐个返回的token合并成帧再发送：累计 frameTokens 个token，或距本帧第一个token超过 frameMillis 时发送一帧；
+ * frameTokens <= 1 时每个token单独发送（与合并前一致）
+ * 关闭时发送剩余内容，调用方应在发送任务完成事件之前关闭
+ * 定时刷新在 boundedElastic 上执行：发送可能在投递时等待客户端读取，不能占用 parallel 的计算线程
+ */
+@Slf4j
+public class TokenCoalescer implements Consumer<String>, AutoCloseable {
+    private final UserContext userContext;
+    private final String taskId;
+    private final int frameTokens;
+    private final long frameMillis;
+    /**
+     * 模型回调线程与定时刷新线程互斥，保证帧的顺序
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final StringBuilder buffer = new StringBuilder();
+    private int count;
+    private Disposable timer;
+    private boolean closed;
+
+    public TokenCoalescer(UserContext userContext, String taskId, int frameTokens, long frameMillis) {
+        this.userContext = userContext;
+        this.taskId = taskId;
+        this.frameTokens = frameTokens;
+        this.frameMillis = frameMillis;
+    }
+
+    @Override
+    public void accept(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        if (frameTokens <= 1) {
+            send(token);
+            return;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            buffer.append(token);
+            count++;
+            if (count >= frameTokens) {
+                flushLocked();
+            } else if (timer == null && frameMillis > 0) {
+                timer = Schedulers.boundedElastic().schedule(this::flushOnTimer, frameMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushOnTimer() {
+        lock.lock();
+        try {
+            timer = null;
+            flushLocked();
+        } catch (Exception e) {
+            log.error("定时发送token帧失败: taskId={}", taskId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLocked() {
+        if (timer != null) {
+            timer.dispose();
+            timer = null;
+        }
+        if (count == 0) {
+            return;
+        }
+        String content = buffer.toString();
+        buffer.setLength(0);
+        count = 0;
+        send(content);
+    }
+
+    private void send(String content) {
+        userContext.emit(UserContext.TaskStatusEvent.builder()
+                .type(EventType.STREAMING)
+                .taskId(taskId)
+                .content(content)
+                .build());
+    }
+
+    /**
+     * 发送剩余内容，之后到达的token被忽略
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (!closed) {
+                flushLocked();
+                closed = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
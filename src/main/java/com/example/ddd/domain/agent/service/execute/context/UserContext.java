@@ -1,28 +1,155 @@
 package com.example.ddd.domain.agent.service.execute.context;
 
+import com.example.ddd.domain.agent.service.execute.memory.InMemory;
 import io.micronaut.serde.annotation.Serdeable;
 import lombok.extern.slf4j.Slf4j;
-import reactor.core.publisher.FluxSink;
-
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-
-
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 单次任务执行的用户上下文
+ * 事件写入有界的 unicast sink，由 SSE 订阅方按需拉取，不为每个请求创建分发线程；
+ * 缓冲区已满时 token 事件按 {@link OverflowPolicy} 处理，状态事件等待至多 blockTimeout
+ * 序号分配在锁内完成，事件随后进入与缓冲区同样大小的投递队列，由一个投递线程在锁外按序号顺序写入 sink；
+ * 投递队列已满时在产生事件的线程上按 {@link OverflowPolicy} 等待或丢弃，监听器在产生事件的线程上、锁外调用
+ * 每个事件带单调递增的序号并保留在有界的重放缓冲区中，客户端断线后可通过 {@link #reattach(long)} 从断点继续；
+ * 断开超过 cancelGraceMillis 仍未重连时取消执行，通过 {@link #onCancel(Runnable)} 注册的回调依次中止规划、调度和模型调用
+ */
 @Slf4j
 public class UserContext {
-    private final BlockingQueue<TaskStatusEvent> eventQueue;
-    private final AtomicBoolean running = new AtomicBoolean(false);
-    private Thread dispatcherThread;
-    private FluxSink<TaskStatusEvent> emitter;
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_FRAME_TOKENS = 16;
+    public static final long DEFAULT_FRAME_MILLIS = 30;
+    public static final int DEFAULT_REPLAY_BUFFER_SIZE = 2048;
+    public static final long DEFAULT_CANCEL_GRACE_MILLIS = 10_000;
+    /**
+     * 请求可覆盖合并参数，上限避免客户端把输出攒得过久
+     */
+    private static final int MAX_FRAME_TOKENS = 1024;
+    private static final long MAX_FRAME_MILLIS = 1000;
+    /**
+     * 缓冲区已满时的重试间隔
+     */
+    private static final long RETRY_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 当前订阅方的事件流，重新连接时替换
+     */
+    private Sinks.Many<TaskStatusEvent> sink;
+    /**
+     * 多个任务线程并发发送事件：序号分配、序列化、写入重放缓冲区和投递队列在同一把锁内完成，保证顺序一致
+     */
+    private final ReentrantLock emitLock = new ReentrantLock();
+    /**
+     * 待投递的事件和结束信号（按序号顺序入队），同一时刻只有一个线程投递，投递时不持有 emitLock
+     * 事件入队前先占用 outboxPermits，投递完成后释放，队列中的事件数不超过 bufferSize
+     */
+    private final Queue<Runnable> outbox = new ConcurrentLinkedQueue<>();
+    private final Semaphore outboxPermits;
+    private final ReentrantLock deliverLock = new ReentrantLock();
+    /**
+     * 当前 sink 在重连时已经重放到的序号（由 emitLock 保护），投递时跳过，避免重复
+     */
+    private long replayedThrough;
+    /**
+     * 投递线程已写入 sink（或因 sink 不可用放弃写入）的最大序号（由 emitLock 保护）
+     */
+    private long deliveredThrough;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * 最近的事件（按序号递增），超出容量时丢弃最早的
+     */
+    private final ArrayDeque<TaskStatusEvent> replay;
+    private final int replayBufferSize;
+    private long sequence;
+    private volatile boolean terminated;
+    private volatile long terminatedAt;
+    private Long runId;
+    /**
+     * 客户端断开后等待重连的时间（毫秒），超时取消执行；<0 表示断开后不取消
+     */
+    private volatile long cancelGraceMillis = DEFAULT_CANCEL_GRACE_MILLIS;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final List<Runnable> cancelHooks = new CopyOnWriteArrayList<>();
+    /**
+     * 订阅代次（由 emitLock 保护），只有当前订阅方断开才会触发取消
+     */
+    private long attachGeneration;
+    private Disposable pendingCancel;
+    /**
+     * 流式token合并：每帧最多token数、最长等待时间（毫秒）
+     */
+    private int frameTokens = DEFAULT_FRAME_TOKENS;
+    private long frameMillis = DEFAULT_FRAME_MILLIS;
+    /**
+     * 事件序列化器，设置后事件在 emitLock 内串行序列化一次（实现方可以复用缓冲区），SSE 直接写出序列化结果
+     */
+    private Function<TaskStatusEvent, String> serializer;
+    /**
+     * 事件监听器（如执行记录），在产生事件的线程上调用，emit 返回前已调用完；
+     * 多个任务线程可能并发调用且顺序不保证与序号一致，实现方需线程安全且不得阻塞
+     */
+    private final List<Consumer<TaskStatusEvent>> listeners = new CopyOnWriteArrayList<>();
 
     // 用户ID和会话ID
     private String userId;
     private String sessionId;
+    /**
+     * 本次执行的历史对话快照（首次使用时生成，规划与各任务共用）
+     */
+    private volatile String historyContext;
 
     public UserContext() {
-        this.eventQueue = new LinkedBlockingQueue<>();
+        this(DEFAULT_BUFFER_SIZE, OverflowPolicy.DROP_LATEST, DEFAULT_BLOCK_TIMEOUT_MILLIS, DEFAULT_REPLAY_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize         事件缓冲区大小
+     * @param overflowPolicy     缓冲区已满时 token 事件的处理策略
+     * @param blockTimeoutMillis 缓冲区已满时的最长等待时间（毫秒）
+     * @param replayBufferSize   断线重连可重放的最近事件数
+     */
+    public UserContext(int bufferSize, OverflowPolicy overflowPolicy, long blockTimeoutMillis, int replayBufferSize) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.sink = newSink(this.bufferSize);
+        this.outboxPermits = new Semaphore(this.bufferSize);
+        this.replayBufferSize = Math.max(0, replayBufferSize);
+        this.replay = new ArrayDeque<>(Math.min(this.replayBufferSize, 256));
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.DROP_LATEST;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, blockTimeoutMillis));
+    }
+
+    private static Sinks.Many<TaskStatusEvent> newSink(int capacity) {
+        return Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(capacity));
+    }
+
+    public Long getRunId() {
+        return runId;
+    }
+
+    public void setRunId(Long runId) {
+        this.runId = runId;
     }
 
     public String getUserId() {
@@ -42,106 +169,438 @@ public class UserContext {
     }
 
     /**
-     * 启动事件分发器（守护线程）
-     * 从队列中取出事件并通过 FluxSink 发送
+     * 设置流式token合并参数
      *
-     * @param emitter FluxSink 用于发送事件
+     * @param frameTokens 每帧最多token数，<=1 表示逐token发送
+     * @param frameMillis 每帧最长等待时间（毫秒），<=0 表示只按token数合并
+     */
+    public void setTokenFrame(int frameTokens, long frameMillis) {
+        this.frameTokens = Math.min(frameTokens, MAX_FRAME_TOKENS);
+        this.frameMillis = Math.min(frameMillis, MAX_FRAME_MILLIS);
+    }
+
+    /**
+     * 创建任务的token合并器
      */
-    public void startEventDispatcher(FluxSink<TaskStatusEvent> emitter) {
-        if (this.emitter != null) {
-            log.warn("事件分发器已经启动，忽略重复启动");
+    public TokenCoalescer tokenCoalescer(String taskId) {
+        return new TokenCoalescer(this, taskId, frameTokens, frameMillis);
+    }
+
+    public void setSerializer(Function<TaskStatusEvent, String> serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * 设置客户端断开后等待重连的时间
+     *
+     * @param cancelGraceMillis 毫秒，0 表示断开立即取消，<0 表示断开后不取消
+     */
+    public void setCancelGraceMillis(long cancelGraceMillis) {
+        this.cancelGraceMillis = cancelGraceMillis;
+    }
+
+    /**
+     * 执行是否已取消
+     */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * 注册取消回调（如取消模型调用的future），已取消时立即执行
+     * 回调在触发取消的线程上执行，实现方不得阻塞
+     *
+     * @return 注销句柄，操作结束后关闭
+     */
+    public Registration onCancel(Runnable hook) {
+        cancelHooks.add(hook);
+        if (cancelled.get() && cancelHooks.remove(hook)) {
+            hook.run();
+        }
+        return () -> cancelHooks.remove(hook);
+    }
+
+    /**
+     * 取消执行：发送取消事件后执行全部取消回调，重复调用无效
+     *
+     * @param reason 取消原因
+     */
+    public void cancel(String reason) {
+        if (terminated || !cancelled.compareAndSet(false, true)) {
             return;
         }
-        this.emitter = emitter;
-        this.running.set(true);
-        this.dispatcherThread = new Thread(() -> {
-            log.debug("事件分发器守护线程启动");
+        log.info("取消执行: runId={}, reason={}", runId, reason);
+        emit(TaskStatusEvent.builder()
+                .type(EventType.EXECUTION_CANCELLED)
+                .message(reason)
+                .build());
+        // 与 onCancel 竞争时以 remove 成功的一方执行，每个回调只执行一次
+        for (Runnable hook : cancelHooks) {
+            if (!cancelHooks.remove(hook)) {
+                continue;
+            }
             try {
-                while (running.get() || !eventQueue.isEmpty()) {
-                    try {
-                        TaskStatusEvent event = eventQueue.poll(1, TimeUnit.SECONDS);
-                        if (event != null) {
-                            if (emitter != null && !emitter.isCancelled()) {
-                                emitter.next(event);
-                                log.debug("事件分发器发送事件到前端: type={}, taskId={}, message={}", event.getType(), event.getTaskId(), event.getMessage());
-                            } else {
-                                log.warn("Emitter已取消或为空，停止事件分发: type={}, taskId={}", event.getType(), event.getTaskId());
-                                break;
-                            }
-                        }
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.debug("事件分发器被中断");
-                        break;
-                    } catch (Exception e) {
-                        log.error("事件分发器发送事件失败: {}", e.getMessage(), e);
-                    }
-                }
-                if (emitter != null && !emitter.isCancelled()) {
-                    emitter.complete();
-                    log.debug("事件分发器完成");
-                }
+                hook.run();
             } catch (Exception e) {
-                log.error("事件分发器异常: {}", e.getMessage(), e);
-                if (emitter != null && !emitter.isCancelled()) {
-                    emitter.error(e);
+                log.error("取消回调异常: runId={}", runId, e);
+            }
+        }
+    }
+
+    /**
+     * 取消回调的注销句柄
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 添加事件监听器，客户端读取过慢时被丢弃的事件同样会通知监听器
+     */
+    public void addListener(Consumer<TaskStatusEvent> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 获取本次执行的历史对话上下文
+     * 同一次执行只按token预算格式化一次，执行过程中新增的对话不会进入快照
+     *
+     * @return 格式化的历史对话，没有用户/会话或没有历史时为空字符串
+     */
+    public String getHistoryContext() {
+        String history = historyContext;
+        if (history == null) {
+            synchronized (this) {
+                history = historyContext;
+                if (history == null) {
+                    history = userId != null && sessionId != null
+                            ? InMemory.getInstance().formatHistoryForPrompt(userId, sessionId)
+                            : "";
+                    historyContext = history;
                 }
             }
-        }, "UserContext-EventDispatcher");
-        this.dispatcherThread.setDaemon(true);
-        this.dispatcherThread.start();
-        log.debug("事件分发器守护线程已启动");
+        }
+        return history;
     }
 
     /**
-     * 停止事件分发器
+     * 事件流（只允许一个订阅方；订阅前发送的事件在缓冲区中保留）
      */
-    public void stopEventDispatcher() {
-        if (running.compareAndSet(true, false)) {
-            log.debug("停止事件分发器");
-            if (dispatcherThread != null) {
-                dispatcherThread.interrupt();
+    public Flux<TaskStatusEvent> asFlux() {
+        emitLock.lock();
+        try {
+            return watch(sink.asFlux(), ++attachGeneration);
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    /**
+     * 订阅方取消订阅（客户端断开）时开始计时，期间未重连则取消执行
+     */
+    private Flux<TaskStatusEvent> watch(Flux<TaskStatusEvent> events, long generation) {
+        return events.doOnCancel(() -> detached(generation));
+    }
+
+    private void detached(long generation) {
+        long grace = cancelGraceMillis;
+        emitLock.lock();
+        try {
+            if (generation != attachGeneration || terminated || cancelled.get() || grace < 0) {
+                return;
             }
+            log.info("客户端已断开: runId={}, cancelGraceMillis={}", runId, grace);
+            if (grace > 0) {
+                // 取消会发送事件并执行取消回调，不占用 parallel 的计算线程
+                pendingCancel = Schedulers.boundedElastic().schedule(
+                        () -> cancel("客户端断开后未重连"), grace, TimeUnit.MILLISECONDS);
+                return;
+            }
+        } finally {
+            emitLock.unlock();
         }
+        cancel("客户端已断开");
     }
 
     /**
-     * 发送事件到队列（线程安全）
+     * 断线重连：返回序号大于 lastEventId 的事件，之后继续接收新事件（执行已结束时重放完即结束）
+     * 原订阅方的事件流随之结束
+     *
+     * @param lastEventId 客户端已收到的最后一个事件序号，0表示从头开始
+     */
+    public Replay reattach(long lastEventId) {
+        emitLock.lock();
+        try {
+            List<TaskStatusEvent> backlog = replay.stream()
+                    .filter(event -> event.getId() > lastEventId)
+                    .toList();
+            Sinks.Many<TaskStatusEvent> next = newSink(bufferSize + backlog.size());
+            backlog.forEach(next::tryEmitNext);
+            long oldest;
+            if (terminated) {
+                oldest = replay.isEmpty() ? sequence + 1 : replay.peekFirst().getId();
+                next.tryEmitComplete();
+            } else {
+                sink.tryEmitComplete();
+                sink = next;
+                // 投递队列中不超过已重放序号的事件跳过；不在重放缓冲区中的（未保留或已淘汰）照常投递到新的 sink，
+                // 已淘汰的那部分序号小于 oldest，由执行记录补齐，投递时同样跳过
+                replayedThrough = backlog.isEmpty() ? lastEventId : backlog.get(backlog.size() - 1).getId();
+                oldest = replay.isEmpty() ? Math.max(lastEventId, deliveredThrough) + 1 : replay.peekFirst().getId();
+            }
+            // 在等待期内重连，不再取消
+            if (pendingCancel != null) {
+                pendingCancel.dispose();
+                pendingCancel = null;
+            }
+            log.info("事件流重新连接: runId={}, lastEventId={}, replayed={}, oldestBuffered={}",
+                    runId, lastEventId, backlog.size(), oldest);
+            return new Replay(oldest, watch(next.asFlux(), ++attachGeneration));
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    /**
+     * 重连结果
+     *
+     * @param oldestBufferedId 新事件流能提供的最早事件序号（重放缓冲区中最早的事件，或尚未投递的第一个事件），
+     *                         小于该序号的事件需要从执行记录中补齐
+     * @param events           重放事件 + 后续事件
+     */
+    public record Replay(long oldestBufferedId, Flux<TaskStatusEvent> events) {
+    }
+
+    /**
+     * 执行是否已结束
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * 执行结束时间（毫秒），未结束时为0
+     */
+    public long getTerminatedAt() {
+        return terminatedAt;
+    }
+
+    /**
+     * 发送事件（线程安全）
+     * 锁内只分配序号、序列化并入队，监听器和写入 sink 在锁外执行；
+     * 投递队列已满时先在当前线程按策略等待或丢弃（丢弃的事件仍进入重放缓冲区并通知监听器），事件顺序不变
      *
      * @param event 事件数据
      */
     public void emit(TaskStatusEvent event) {
+        if (event == null) {
+            log.warn("尝试发送空事件，忽略");
+            return;
+        }
+        OverflowPolicy policy = event.getType() == EventType.STREAMING ? overflowPolicy : OverflowPolicy.BLOCK;
+        boolean queued = !terminated && reserve(policy);
+        emitLock.lock();
         try {
-            if (event == null) {
-                log.warn("尝试发送空事件，忽略");
+            if (terminated) {
+                if (queued) {
+                    outboxPermits.release();
+                }
+                log.debug("事件流已结束，丢弃事件: type={}, taskId={}", event.getType(), event.getTaskId());
                 return;
             }
-            boolean offered = eventQueue.offer(event);
-            if (offered) {
-                log.debug("事件已加入队列: type={}, taskId={}, message={}", event.getType(), event.getTaskId(), event.getMessage());
+            event.setId(++sequence);
+            if (serializer != null && event.payload() == null) {
+                event.payload(serializer.apply(event));
+            }
+            if (replayBufferSize > 0) {
+                if (replay.size() >= replayBufferSize) {
+                    replay.pollFirst();
+                }
+                replay.addLast(event);
+            }
+            if (queued) {
+                outbox.add(() -> deliver(event));
+            } else if (policy == OverflowPolicy.ERROR) {
+                log.warn("事件缓冲区已满，结束事件流: type={}, taskId={}", event.getType(), event.getTaskId());
+                sink.tryEmitError(new IllegalStateException("事件缓冲区已满，客户端读取过慢"));
             } else {
-                log.warn("事件队列已满，无法添加事件: type={}, taskId={}", event.getType(), event.getTaskId());
+                drop(event);
             }
-        } catch (Exception e) {
-            log.error("添加事件到队列失败: {}", e.getMessage(), e);
+        } finally {
+            emitLock.unlock();
         }
+        for (Consumer<TaskStatusEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.error("事件监听器异常: type={}, taskId={}", event.getType(), event.getTaskId(), e);
+            }
+        }
+        drain();
     }
 
     /**
-     * 发送完成事件（标记停止，等待队列处理完）
+     * 占用投递队列的一个位置；队列已满时只有 BLOCK 策略等待，至多 blockTimeout
+     *
+     * @return 是否占用成功，失败时事件不投递
      */
-    public void complete() {
-        log.info("标记事件分发器完成，当前队列大小: {}, 等待队列处理完", eventQueue.size());
-        stopEventDispatcher();
-        if (dispatcherThread != null && dispatcherThread.isAlive()) {
+    private boolean reserve(OverflowPolicy policy) {
+        if (outboxPermits.tryAcquire()) {
+            return true;
+        }
+        if (policy != OverflowPolicy.BLOCK || stopWaiting()) {
+            return false;
+        }
+        try {
+            return outboxPermits.tryAcquire(blockTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 执行已取消或当前线程被中断（调度器取消任务）时不再等待缓冲区，避免中断后反复重试
+     */
+    private boolean stopWaiting() {
+        return cancelled.get() || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * 投递队列中的事件；已有线程在投递时直接返回，由该线程继续投递
+     * 释放投递锁后再检查一次队列，避免入队与释放之间的事件无人投递
+     */
+    private void drain() {
+        while (!outbox.isEmpty() && deliverLock.tryLock()) {
+            try {
+                Runnable next;
+                while ((next = outbox.poll()) != null) {
+                    next.run();
+                }
+            } finally {
+                deliverLock.unlock();
+            }
+        }
+    }
+
+    private void deliver(TaskStatusEvent event) {
+        try {
+            send(event);
+        } finally {
+            outboxPermits.release();
+        }
+    }
+
+    private void send(TaskStatusEvent event) {
+        OverflowPolicy policy = event.getType() == EventType.STREAMING ? overflowPolicy : OverflowPolicy.BLOCK;
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (true) {
+            Sinks.EmitResult result;
+            // 只在写入时持锁，与重连切换 sink 互斥；等待在锁外进行
+            emitLock.lock();
             try {
-                dispatcherThread.join(5000);
-                log.debug("事件分发器线程已结束，最终队列大小: {}", eventQueue.size());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("等待事件分发器线程被中断");
+                if (event.getId() <= replayedThrough) {
+                    return;
+                }
+                result = sink.tryEmitNext(event);
+                if (result != Sinks.EmitResult.FAIL_OVERFLOW) {
+                    deliveredThrough = event.getId();
+                }
+                if (result == Sinks.EmitResult.FAIL_OVERFLOW && policy == OverflowPolicy.ERROR) {
+                    log.warn("事件缓冲区已满，结束事件流: type={}, taskId={}", event.getType(), event.getTaskId());
+                    sink.tryEmitError(new IllegalStateException("事件缓冲区已满，客户端读取过慢"));
+                    return;
+                }
+            } finally {
+                emitLock.unlock();
+            }
+            if (result.isSuccess()) {
+                log.debug("事件已发送: id={}, type={}, taskId={}", event.getId(), event.getType(), event.getTaskId());
+                return;
+            }
+            if (result != Sinks.EmitResult.FAIL_OVERFLOW) {
+                // 客户端已断开，事件保留在重放缓冲区中等待重连
+                log.debug("事件流不可用: id={}, type={}, result={}", event.getId(), event.getType(), result);
+                return;
+            }
+            if (policy == OverflowPolicy.DROP_LATEST || System.nanoTime() - deadline >= 0 || stopWaiting()) {
+                drop(event);
+                return;
+            }
+            LockSupport.parkNanos(RETRY_PARK_NANOS);
+        }
+    }
+
+    private void drop(TaskStatusEvent event) {
+        long count = dropped.incrementAndGet();
+        if (event.getType() != EventType.STREAMING || count == 1 || count % 100 == 0) {
+            log.warn("事件缓冲区已满，丢弃事件（可通过重连补齐）: id={}, type={}, dropped={}", event.getId(), event.getType(), count);
+        }
+    }
+
+    /**
+     * 结束事件流（已缓冲和尚在投递队列中的事件会先发送完）
+     */
+    public void complete() {
+        emitLock.lock();
+        try {
+            if (!terminate()) {
+                return;
             }
+            outbox.add(() -> {
+                emitLock.lock();
+                try {
+                    Sinks.EmitResult result = sink.tryEmitComplete();
+                    log.debug("事件流完成: result={}, events={}, dropped={}", result, sequence, dropped.get());
+                } finally {
+                    emitLock.unlock();
+                }
+            });
+        } finally {
+            emitLock.unlock();
         }
+        drain();
+    }
+
+    /**
+     * 以错误结束事件流（尚在投递队列中的事件会先发送完）
+     */
+    public void fail(Throwable error) {
+        emitLock.lock();
+        try {
+            if (!terminate()) {
+                return;
+            }
+            outbox.add(() -> {
+                emitLock.lock();
+                try {
+                    Sinks.EmitResult result = sink.tryEmitError(error);
+                    log.debug("事件流异常结束: result={}, error={}", result, error.getMessage());
+                } finally {
+                    emitLock.unlock();
+                }
+            });
+        } finally {
+            emitLock.unlock();
+        }
+        drain();
+    }
+
+    /**
+     * @return 是否由本次调用结束，已结束时返回false
+     */
+    private boolean terminate() {
+        if (terminated) {
+            return false;
+        }
+        terminated = true;
+        terminatedAt = System.currentTimeMillis();
+        if (pendingCancel != null) {
+            pendingCancel.dispose();
+            pendingCancel = null;
+        }
+        return true;
     }
 
     /**
@@ -162,11 +621,16 @@ public class UserContext {
      */
     @Serdeable
     public static class TaskStatusEvent {
+        private Long id;                  // 执行内单调递增的事件序号
         private EventType type;
         private String taskId;
         private String message;
         private String content;
         private String error;
+        /**
+         * 序列化后的事件（不参与序列化）
+         */
+        private transient String payload;
 
         /**
          * 创建事件构建器
@@ -175,6 +639,14 @@ public class UserContext {
             return new Builder();
         }
 
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
         public EventType getType() {
             return type;
         }
@@ -229,6 +701,17 @@ public class UserContext {
             this.error = error;
         }
 
+        /**
+         * 序列化后的事件，未设置序列化器时为null
+         */
+        public String payload() {
+            return payload;
+        }
+
+        void payload(String payload) {
+            this.payload = payload;
+        }
+
         /**
          * 事件构建器
          */
@@ -1,10 +1,12 @@
 package com.example.ddd.domain.agent.service.execute.executor;
 
 
+import com.example.ddd.common.utils.TokenStreams;
 import com.example.ddd.domain.agent.service.armory.ServiceNode;
 import com.example.ddd.domain.agent.service.execute.context.UserContext;
 import com.example.ddd.domain.agent.service.execute.graph.WorkspaceState;
 import com.example.ddd.domain.agent.service.execute.task.Task;
+import dev.langchain4j.service.TokenStream;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -12,6 +14,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * 基础任务执行器
@@ -35,6 +39,21 @@ public abstract class BaseTaskExecutor implements TaskExecutor {
         return userContext;
     }
 
+    /**
+     * 等待模型回答，执行被取消时立即取消future（不再处理后续token）并抛出 CancellationException
+     *
+     * @param onToken 每个token的回调，可为null
+     */
+    protected String awaitTokens(TokenStream tokenStream, Consumer<String> onToken) {
+        CompletableFuture<String> future = TokenStreams.toFuture(tokenStream, onToken, serviceNode.getResponseTimeout());
+        if (userContext == null) {
+            return TokenStreams.await(future);
+        }
+        try (UserContext.Registration ignored = userContext.onCancel(() -> future.cancel(true))) {
+            return TokenStreams.await(future);
+        }
+    }
+
     /**
      * 获取用户输入文本
      */
@@ -58,23 +77,19 @@ public abstract class BaseTaskExecutor implements TaskExecutor {
                 taskSpecificInput = userMessage;
             } else if (task.getInputs().getFromTask() != null && !task.getInputs().getFromTask().isEmpty()) {
                 List<String> fromTaskIds = task.getInputs().getFromTask();
-                Optional<Map<String, Object>> scratchpad = state.scratchpad();
-                if (scratchpad.isPresent()) {
-                    Map<String, Object> data = scratchpad.get();
-                    StringBuilder combinedInput = new StringBuilder();
-                    for (String fromTaskId : fromTaskIds) {
-                        Object taskResult = data.get("task_" + fromTaskId);
-                        if (taskResult != null) {
-                            if (combinedInput.length() > 0) {
-                                combinedInput.append("\n\n");
-                            }
-                            combinedInput.append("来自任务 ").append(fromTaskId).append(":\n");
-                            combinedInput.append(taskResult);
+                StringBuilder combinedInput = new StringBuilder();
+                for (String fromTaskId : fromTaskIds) {
+                    Optional<Object> taskResult = state.taskResult(fromTaskId);
+                    if (taskResult.isPresent()) {
+                        if (combinedInput.length() > 0) {
+                            combinedInput.append("\n\n");
                         }
+                        combinedInput.append("来自任务 ").append(fromTaskId).append(":\n");
+                        combinedInput.append(taskResult.get());
                     }
-                    if (combinedInput.length() > 0) {
-                        taskSpecificInput = combinedInput.toString();
-                    }
+                }
+                if (combinedInput.length() > 0) {
+                    taskSpecificInput = combinedInput.toString();
                 }
             }
         }
@@ -98,6 +113,7 @@ public abstract class BaseTaskExecutor implements TaskExecutor {
     /**
      * 获取记忆上下文（仅对 Supervisor、Researcher、Summarizer）
      * Agent ID: 1=Supervisor, 2=Researcher, 4=Summarizer
+     * 使用本次执行的历史快照，各任务之间不重复格式化
      */
     protected String getMemoryContext() {
         if (userContext == null || userContext.getUserId() == null || userContext.getSessionId() == null) {
@@ -107,9 +123,7 @@ public abstract class BaseTaskExecutor implements TaskExecutor {
         Long agentId = task.getAgentId();
         // 只对 Supervisor(1)、Researcher(2)、Summarizer(4) 获取记忆
         if (agentId != null && (agentId == 1L || agentId == 2L || agentId == 4L)) {
-            com.example.ddd.domain.agent.service.execute.memory.InMemory memory =
-                    com.example.ddd.domain.agent.service.execute.memory.InMemory.getInstance();
-            return memory.formatHistoryForPrompt(userContext.getUserId(), userContext.getSessionId(), 10);
+            return userContext.getHistoryContext();
         }
 
         return null;
@@ -117,13 +131,10 @@ public abstract class BaseTaskExecutor implements TaskExecutor {
 
     /**
      * 保存任务结果到state
+     * 只返回本任务的结果，由调度器按键合并到 scratchpad，不复制整个 scratchpad
      */
     protected Map<String, Object> saveTaskResult(WorkspaceState state, String result) {
-        Map<String, Object> scratchpad = new HashMap<>(state.scratchpad().orElse(new HashMap<>()));
-        scratchpad.put("task_" + task.getId(), result);
-        Map<String, Object> resultMap = new HashMap<>();
-        resultMap.put("scratchpad", scratchpad);
-        return resultMap;
+        return WorkspaceState.taskResultUpdate(task.getId(), result != null ? result : "");
     }
 }
 
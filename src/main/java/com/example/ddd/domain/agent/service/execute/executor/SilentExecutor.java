@@ -6,13 +6,12 @@ import com.example.ddd.domain.agent.service.execute.context.EventType;
 import com.example.ddd.domain.agent.service.execute.context.UserContext;
 import com.example.ddd.domain.agent.service.execute.graph.WorkspaceState;
 import com.example.ddd.domain.agent.service.execute.task.Task;
-import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.internal.Json;
 import dev.langchain4j.service.TokenStream;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
 
 /**
  * 静默执行器
@@ -54,67 +53,26 @@ public class SilentExecutor extends BaseTaskExecutor {
         }
 
         try {
-
             TokenStream tokenStream = aiService.chat(Json.toJson(taskInput));
-            StringBuilder resultBuilder = new StringBuilder();
-            CountDownLatch latch = new CountDownLatch(1);
-            tokenStream.onPartialResponse(token -> {
-
-            });
-            tokenStream.onCompleteResponse(e -> {
-                AiMessage aiMessage = e.aiMessage();
-                if (aiMessage != null && aiMessage.text() != null) {
-                    resultBuilder.append(aiMessage.text());
-                }
-                if (userContext != null) {
-                    userContext.emit(UserContext.TaskStatusEvent.builder()
-                            .type(EventType.TASK_COMPLETE)
-                            .taskId(task.getId())
-                            .message("任务执行完成")
-                            .build());
-                }
-                latch.countDown();
-            });
-
-            tokenStream.onError(error -> {
-                log.error("静默执行器执行失败: taskId={}, error={}", task.getId(), error.getMessage());
-
-                // 发送任务失败事件
-                if (userContext != null) {
-                    userContext.emit(UserContext.TaskStatusEvent.builder()
-                            .type(EventType.TASK_FAILED)
-                            .taskId(task.getId())
-                            .message("任务执行失败")
-                            .error(error.getMessage())
-                            .build());
-                }
-
-                latch.countDown();
-            });
-            tokenStream.start();
-            try {
-                latch.await();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("等待token流完成被中断: taskId={}", task.getId());
-                // 发送中断事件
-                if (userContext != null) {
-                    userContext.emit(UserContext.TaskStatusEvent.builder()
-                            .type(EventType.TASK_FAILED)
-                            .taskId(task.getId())
-                            .message("任务执行被中断")
-                            .error("等待token流完成被中断")
-                            .build());
-                }
-                throw new RuntimeException("等待token流完成被中断: taskId=" + task.getId(), e);
+            String result = awaitTokens(tokenStream, null);
+            if (userContext != null) {
+                userContext.emit(UserContext.TaskStatusEvent.builder()
+                        .type(EventType.TASK_COMPLETE)
+                        .taskId(task.getId())
+                        .message("任务执行完成")
+                        .build());
             }
-            String result = resultBuilder.toString();
             Map<String, Object> stateUpdate = saveTaskResult(state, result);
             log.info("静默执行器完成: taskId={}, resultLength={}", task.getId(), result.length());
             stateUpdate.put("currentAgent", serviceNode.getRole());
             stateUpdate.put("taskId", task.getId());
             return stateUpdate;
         } catch (Exception e) {
+            // 执行被取消或运行已终止（其他任务失败），不是本任务失败
+            if (e instanceof CancellationException || userContext.isCancelled()) {
+                log.info("静默执行器已取消: taskId={}", task.getId());
+                throw e;
+            }
             log.error("静默执行器运行时异常: taskId={}, error={}", task.getId(), e.getMessage(), e);
             userContext.emit(UserContext.TaskStatusEvent.builder()
                     .type("task_failed")
@@ -4,18 +4,15 @@ import com.example.ddd.common.utils.JSON;
 import com.example.ddd.domain.agent.service.armory.AiService;
 import com.example.ddd.domain.agent.service.armory.ServiceNode;
 import com.example.ddd.domain.agent.service.execute.context.EventType;
+import com.example.ddd.domain.agent.service.execute.context.TokenCoalescer;
 import com.example.ddd.domain.agent.service.execute.context.UserContext;
 import com.example.ddd.domain.agent.service.execute.graph.WorkspaceState;
 import com.example.ddd.domain.agent.service.execute.task.Task;
-import dev.langchain4j.data.message.AiMessage;
-import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.service.TokenStream;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
 
 /**
  * 流式输出执行器
@@ -55,65 +52,19 @@ public class StreamingExecutor extends BaseTaskExecutor {
             throw new IllegalStateException("ServiceNode的AiService为空: taskId=" + task.getId());
         }
         try {
-            TokenStream tokenStream = aiService.chat(JSON.toJSON(taskInput));
-            StringBuilder resultBuilder = new StringBuilder();
-            List<ChatMessage> messages = new ArrayList<>();
-            CountDownLatch latch = new CountDownLatch(1);
-            tokenStream.onPartialResponse(token -> {
-                resultBuilder.append(token);
-                if (userContext != null) {
-                    userContext.emit(UserContext.TaskStatusEvent.builder()
-                            .type(EventType.STREAMING)
-                            .taskId(task.getId())
-                            .content(token)
-                            .build());
-                }
-            });
-            tokenStream.onCompleteResponse(e -> {
-                AiMessage aiMessage = e.aiMessage();
-                if (aiMessage != null) {
-                    messages.add(aiMessage);
-
-                }
-                if (userContext != null) {
-                    userContext.emit(UserContext.TaskStatusEvent.builder()
-                            .type(EventType.TASK_COMPLETE)
-                            .taskId(task.getId())
-                            .message("任务执行完成")
-                            .build());
-                }
-                latch.countDown();
-            });
-            tokenStream.onError(error -> {
-                log.error("流式输出执行器执行失败: taskId={}, error={}", task.getId(), error.getMessage());
-                if (userContext != null) {
-                    userContext.emit(UserContext.TaskStatusEvent.builder()
-                            .type(EventType.TASK_FAILED)
-                            .taskId(task.getId())
-                            .message("任务执行失败")
-                            .error(error.getMessage())
-                            .build());
-                }
-                latch.countDown();
-            });
-            tokenStream.start();
-            try {
-                latch.await();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("等待token流完成被中断: taskId={}", task.getId());
-                // 发送中断事件
-                if (userContext != null) {
-                    userContext.emit(UserContext.TaskStatusEvent.builder()
-                            .type(EventType.TASK_FAILED)
-                            .taskId(task.getId())
-                            .message("任务执行被中断")
-                            .error("等待token流完成被中断")
-                            .build());
-                }
-                throw new RuntimeException("等待token流完成被中断: taskId=" + task.getId(), e);
+            String result;
+            // token合并成帧发送，关闭时发送剩余内容（在任务完成事件之前）
+            try (TokenCoalescer coalescer = userContext != null ? userContext.tokenCoalescer(task.getId()) : null) {
+                TokenStream tokenStream = aiService.chat(JSON.toJSON(taskInput));
+                result = awaitTokens(tokenStream, coalescer);
+            }
+            if (userContext != null) {
+                userContext.emit(UserContext.TaskStatusEvent.builder()
+                        .type(EventType.TASK_COMPLETE)
+                        .taskId(task.getId())
+                        .message("任务执行完成")
+                        .build());
             }
-            String result = resultBuilder.toString();
             Map<String, Object> stateUpdate = saveTaskResult(state, result);
             log.info("流式输出执行器完成: taskId={}, resultLength={}", task.getId(), result.length());
             // 保存对话到 InMemory（用户输入和最终回答）
@@ -131,6 +82,11 @@ public class StreamingExecutor extends BaseTaskExecutor {
             }
             return stateUpdate;
         } catch (Exception e) {
+            // 执行被取消或运行已终止（其他任务失败），不是本任务失败
+            if (e instanceof CancellationException || userContext != null && userContext.isCancelled()) {
+                log.info("流式输出执行器已取消: taskId={}", task.getId());
+                throw e;
+            }
             log.error("流式输出执行器运行时异常: taskId={}, error={}", task.getId(), e.getMessage(), e);
             if (userContext != null) {
                 userContext.emit(UserContext.TaskStatusEvent.builder()
@@ -0,0 +1,363 @@
+package com.example.ddd.domain.agent.service.execute.graph;
+
+import com.example.ddd.configuration.config.SchedulerProperties;
+import com.example.ddd.domain.agent.service.execute.executor.TaskExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 任务图调度器
+ * - 前置任务全部完成后立即派发后续任务，互不依赖的任务在虚拟线程上并行执行
+ * - 入口任务可在任务图确定之前提前派发（规划与执行重叠）
+ * - 单次运行并发上限 + 全局并发上限，避免一次扇出过大的计划占满下游模型配额
+ * - 任一节点失败或运行被终止时，中断执行中的兄弟节点（模型调用随之取消），不再继续消耗调用
+ * - 运行结束后输出关键路径耗时
+ */
+@Slf4j
+@Singleton
+public class DagScheduler {
+
+    @Inject
+    private SchedulerProperties schedulerProperties;
+
+    private final ExecutorService executorService = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("GraphNodeExecutor-", 0).factory());
+    /**
+     * 全局并发许可（所有运行共享）
+     */
+    private Semaphore globalPermits;
+
+    @PostConstruct
+    void init() {
+        globalPermits = new Semaphore(Math.max(1, schedulerProperties.getGlobalMaxConcurrency()), true);
+    }
+
+    @PreDestroy
+    void close() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * 是否在计划生成过程中提前派发入口任务
+     */
+    public boolean isEarlyDispatch() {
+        return schedulerProperties.isEarlyDispatch();
+    }
+
+    /**
+     * 执行任务图
+     *
+     * @param graph 任务图
+     * @param init  初始状态
+     * @return 执行结束后的状态
+     */
+    public Map<String, Object> run(TaskGraph graph, Map<String, Object> init) {
+        return open(init).await(graph);
+    }
+
+    /**
+     * 开启一次运行，任务图确定之前即可通过 {@link Run#start} 提前派发入口任务
+     *
+     * @param init 初始状态
+     * @return 运行句柄
+     */
+    public Run open(Map<String, Object> init) {
+        return new Run(init);
+    }
+
+    /**
+     * 单次运行
+     * 任务图在 await 时才绑定，之前提前派发的入口任务照常执行，完成情况在绑定时补记
+     */
+    public class Run {
+        private final Map<String, Object> data = new ConcurrentHashMap<>();
+        private final Map<String, Object> scratchpad = new ConcurrentHashMap<>();
+        private final Map<String, Object> scratchpadView = Collections.unmodifiableMap(scratchpad);
+        private final Map<String, TaskExecutor> executors = new ConcurrentHashMap<>();
+        private final Map<String, long[]> timings = new ConcurrentHashMap<>();
+        /**
+         * 执行中（含等待许可）的节点线程，运行失败或终止时逐个中断
+         */
+        private final Map<String, Thread> running = new ConcurrentHashMap<>();
+        private final Semaphore runPermits = new Semaphore(Math.max(1, schedulerProperties.getRunMaxConcurrency()));
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        // 以下字段由 this 保护
+        private final Set<String> started = new HashSet<>();
+        private final Set<String> completed = new HashSet<>();
+        private final Map<String, Integer> remaining = new HashMap<>();
+        private TaskGraph graph;
+        private int pending;
+
+        Run(Map<String, Object> init) {
+            data.putAll(init);
+            done.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    cancelRunning();
+                }
+            });
+        }
+
+        /**
+         * 提前派发入口任务（无前置依赖），任务图绑定后调用无效
+         *
+         * @return 是否已派发
+         */
+        public boolean start(String taskId, TaskExecutor executor) {
+            synchronized (this) {
+                if (graph != null || done.isDone() || started.contains(taskId)) {
+                    return false;
+                }
+                started.add(taskId);
+                executors.put(taskId, executor);
+            }
+            dispatch(taskId);
+            return true;
+        }
+
+        /**
+         * 终止运行：不再派发新任务，中断执行中和等待许可的节点，await 立即以该异常返回
+         */
+        public void abort(Throwable cause) {
+            done.completeExceptionally(cause);
+        }
+
+        /**
+         * 绑定完整的任务图并等待执行完成
+         * 提前派发的任务沿用其执行器，不会重复执行
+         *
+         * @return 执行结束后的状态
+         */
+        public Map<String, Object> await(TaskGraph graph) {
+            List<String> ready = new ArrayList<>();
+            boolean finished;
+            synchronized (this) {
+                this.graph = graph;
+                graph.getExecutors().forEach(executors::putIfAbsent);
+                graph.getDependencies().forEach((taskId, deps) -> remaining.put(taskId, deps.size()));
+                for (String taskId : graph.getExecutors().keySet()) {
+                    if (!completed.contains(taskId)) {
+                        pending++;
+                    }
+                }
+                for (String taskId : completed) {
+                    ready.addAll(release(taskId));
+                }
+                for (String taskId : graph.rootTasks()) {
+                    if (!started.contains(taskId)) {
+                        ready.add(taskId);
+                    }
+                }
+                started.addAll(ready);
+                finished = pending == 0;
+            }
+            ready.forEach(this::dispatch);
+            if (finished) {
+                done.complete(null);
+            }
+            try {
+                done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待任务图执行完成被中断", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+            } finally {
+                report();
+            }
+            return snapshot();
+        }
+
+        private void dispatch(String taskId) {
+            if (done.isDone()) {
+                return;
+            }
+            executorService.execute(() -> runTask(taskId));
+        }
+
+        private void runTask(String taskId) {
+            boolean runAcquired = false;
+            boolean globalAcquired = false;
+            running.put(taskId, Thread.currentThread());
+            try {
+                // 登记之后再检查，终止时的中断不会漏掉本线程
+                if (done.isDone()) {
+                    return;
+                }
+                runPermits.acquire();
+                runAcquired = true;
+                globalPermits.acquire();
+                globalAcquired = true;
+                if (done.isDone()) {
+                    return;
+                }
+                long begin = System.nanoTime() - startNanos;
+                log.debug("执行节点: taskId={}, thread={}", taskId, Thread.currentThread().getName());
+                TaskExecutor executor = executors.get(taskId);
+                Map<String, Object> update = executor.apply(new WorkspaceState(view()));
+                merge(update);
+                timings.put(taskId, new long[]{begin, System.nanoTime() - startNanos});
+            } catch (InterruptedException e) {
+                if (!done.isDone()) {
+                    done.completeExceptionally(new RuntimeException("节点执行被中断: taskId=" + taskId, e));
+                }
+                return;
+            } catch (Exception e) {
+                if (done.isDone()) {
+                    // 运行已取消或其他节点已失败，本节点的异常只是随之中止
+                    log.info("运行已终止，节点中止: taskId={}, error={}", taskId, e.getMessage());
+                    return;
+                }
+                log.error("节点执行异常: taskId={}", taskId, e);
+                done.completeExceptionally(new RuntimeException("节点执行失败: taskId=" + taskId, e));
+                return;
+            } finally {
+                running.remove(taskId);
+                // 中断只用于中止本节点，线程归还前清除中断标记
+                Thread.interrupted();
+                if (globalAcquired) {
+                    globalPermits.release();
+                }
+                if (runAcquired) {
+                    runPermits.release();
+                }
+            }
+            List<String> ready;
+            boolean finished;
+            synchronized (this) {
+                completed.add(taskId);
+                // 任务图尚未绑定，或提前派发的任务不在最终的任务图中
+                if (graph == null || !graph.getExecutors().containsKey(taskId)) {
+                    return;
+                }
+                ready = release(taskId);
+                started.addAll(ready);
+                finished = --pending == 0;
+            }
+            ready.forEach(this::dispatch);
+            if (finished) {
+                done.complete(null);
+            }
+        }
+
+        /**
+         * 中断执行中的节点：等待许可的节点直接退出，等待模型回答的节点取消模型调用（见 TokenStreams.await）
+         */
+        private void cancelRunning() {
+            running.forEach((taskId, thread) -> {
+                log.info("运行已终止，中断执行中的节点: taskId={}", taskId);
+                thread.interrupt();
+            });
+        }
+
+        /**
+         * 任务完成后减少后续任务的未完成前置数，返回可以派发的后续任务（调用方持有 this）
+         */
+        private List<String> release(String taskId) {
+            List<String> ready = new ArrayList<>();
+            for (String dependent : graph.getDependents().getOrDefault(taskId, List.of())) {
+                if (remaining.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+            return ready;
+        }
+
+        /**
+         * 按 WorkspaceState 的通道规则合并：scratchpad 按键合并，其余非null值覆盖
+         */
+        @SuppressWarnings("unchecked")
+        private void merge(Map<String, Object> update) {
+            if (update == null) {
+                return;
+            }
+            update.forEach((key, value) -> {
+                if (WorkspaceState.SCRATCHPAD.equals(key) && value instanceof Map<?, ?> map) {
+                    scratchpad.putAll((Map<String, Object>) map);
+                } else if (value != null) {
+                    data.put(key, value);
+                }
+            });
+        }
+
+        /**
+         * 任务读取的状态：scratchpad 以只读视图共享，不按任务复制
+         * 前置任务的结果在派发后续任务之前已写入，后续任务一定能读到
+         */
+        private Map<String, Object> view() {
+            Map<String, Object> state = new HashMap<>(data);
+            state.put(WorkspaceState.SCRATCHPAD, scratchpadView);
+            return state;
+        }
+
+        /**
+         * 运行结束后的状态副本
+         */
+        private Map<String, Object> snapshot() {
+            Map<String, Object> state = new HashMap<>(data);
+            state.put(WorkspaceState.SCRATCHPAD, new HashMap<>(scratchpad));
+            return state;
+        }
+
+        /**
+         * 输出关键路径耗时：最长的「前置任务结束 -> 本任务结束」链路
+         */
+        private void report() {
+            TaskGraph graph;
+            synchronized (this) {
+                graph = this.graph;
+            }
+            long wall = System.nanoTime() - startNanos;
+            Map<String, Long> finish = new HashMap<>();
+            Map<String, String> previous = new HashMap<>();
+            long busy = 0;
+            String last = null;
+            for (List<String> level : graph.getLevels()) {
+                for (String taskId : level) {
+                    long[] timing = timings.get(taskId);
+                    if (timing == null) {
+                        continue;
+                    }
+                    long duration = timing[1] - timing[0];
+                    busy += duration;
+                    long upstream = 0;
+                    for (String dep : graph.getDependencies().get(taskId)) {
+                        Long depFinish = finish.get(dep);
+                        if (depFinish != null && depFinish > upstream) {
+                            upstream = depFinish;
+                            previous.put(taskId, dep);
+                        }
+                    }
+                    finish.put(taskId, upstream + duration);
+                    if (last == null || finish.get(taskId) > finish.get(last)) {
+                        last = taskId;
+                    }
+                }
+            }
+            List<String> criticalPath = new ArrayList<>();
+            for (String taskId = last; taskId != null; taskId = previous.get(taskId)) {
+                criticalPath.add(0, taskId);
+            }
+            log.info("多agent执行中 任务图执行结束: tasks={}, completed={}, wallMs={}, criticalPathMs={}, busyMs={}, criticalPath={}",
+                    graph.size(), timings.size(), wall / 1_000_000,
+                    last == null ? 0 : finish.get(last) / 1_000_000, busy / 1_000_000, criticalPath);
+        }
+    }
+}
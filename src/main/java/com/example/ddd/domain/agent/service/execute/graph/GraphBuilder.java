@@ -9,51 +9,43 @@ import com.example.ddd.domain.agent.service.execute.task.Task;
 import com.example.ddd.domain.agent.service.execute.task.TaskPlan;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.bsc.langgraph4j.CompiledGraph;
 import org.bsc.langgraph4j.GraphStateException;
-import org.bsc.langgraph4j.StateGraph;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
 
 /**
  * 图构建器
- * 根据 TaskPlan 和 Orchestrator 构建执行图
+ * 根据 TaskPlan 和 Orchestrator 构建任务图，按 inputs.fromTask 计算依赖和拓扑层级
+ * 拓扑与任务内容、用户上下文无关，结构相同的计划通过 {@link GraphTopologyCache} 共享；
+ * 执行器在每次运行时绑定本次任务内容和用户上下文创建
  */
 @Slf4j
 public class GraphBuilder {
-    // 线程池用于异步执行节点
-    private static final ExecutorService executorService = Executors.newCachedThreadPool(r -> {
-        Thread t = new Thread(r, "GraphNodeExecutor-" + System.currentTimeMillis());
-        return t;
-    });
 
     /**
-     * 根据 TaskPlan 和 Orchestrator 构建执行图
+     * 根据 TaskPlan 和 Orchestrator 构建任务图
      *
      * @param taskPlan     任务计划
      * @param orchestrator 编排器（包含 supervisor 和 worker 节点）
-     * @return 编译后的图
+     * @return 任务图
      */
-    public static CompiledGraph<WorkspaceState> build(TaskPlan taskPlan, Orchestrator orchestrator) throws GraphStateException {
+    public static TaskGraph build(TaskPlan taskPlan, Orchestrator orchestrator) throws GraphStateException {
         return build(taskPlan, orchestrator, null);
     }
 
     /**
-     * 根据 TaskPlan 和 Orchestrator 构建执行图（带UserContext）
+     * 根据 TaskPlan 和 Orchestrator 构建任务图（带UserContext）
      *
      * @param taskPlan     任务计划
      * @param orchestrator 编排器（包含 supervisor 和 worker 节点）
      * @param userContext  用户上下文
-     * @return 编译后的图
+     * @return 任务图
      */
-    public static CompiledGraph<WorkspaceState> build(TaskPlan taskPlan, Orchestrator orchestrator, UserContext userContext) throws GraphStateException {
+    public static TaskGraph build(TaskPlan taskPlan, Orchestrator orchestrator, UserContext userContext) throws GraphStateException {
         if (taskPlan == null) {
             throw new IllegalArgumentException("TaskPlan 不能为空");
         }
@@ -65,102 +57,140 @@ public class GraphBuilder {
         }
 
         Map<Long, ServiceNode> workersByID = orchestrator.getWorkersByID();
-        return build(taskPlan, workersByID, userContext);
+        return build(taskPlan, workersByID, userContext, orchestrator.getTopologyCache());
     }
 
     /**
-     * 根据 TaskPlan 和 ServiceNode 列表构建执行图
+     * 根据 TaskPlan 和 ServiceNode 列表构建任务图
      *
      * @param taskPlan 任务计划
-     * @return 编译后的图
+     * @return 任务图
      */
-    public static CompiledGraph<WorkspaceState> build(TaskPlan taskPlan,
-                                                      Map<Long, ServiceNode> workersByID)
+    public static TaskGraph build(TaskPlan taskPlan,
+                                  Map<Long, ServiceNode> workersByID)
             throws GraphStateException {
         return build(taskPlan, workersByID, null);
     }
 
     /**
-     * 根据 TaskPlan 和 ServiceNode 列表构建执行图（带UserContext）
+     * 根据 TaskPlan 和 ServiceNode 列表构建任务图（带UserContext）
      *
      * @param taskPlan    任务计划
      * @param workersByID ServiceNode映射
      * @param userContext 用户上下文
-     * @return 编译后的图
+     * @return 任务图
      */
-    public static CompiledGraph<WorkspaceState> build(TaskPlan taskPlan,
-                                                      Map<Long, ServiceNode> workersByID,
-                                                      UserContext userContext)
+    public static TaskGraph build(TaskPlan taskPlan,
+                                  Map<Long, ServiceNode> workersByID,
+                                  UserContext userContext)
+            throws GraphStateException {
+        return build(taskPlan, workersByID, userContext, null);
+    }
+
+    /**
+     * 根据 TaskPlan 和 ServiceNode 列表构建任务图（带UserContext和拓扑缓存）
+     *
+     * @param taskPlan      任务计划
+     * @param workersByID   ServiceNode映射
+     * @param userContext   用户上下文
+     * @param topologyCache 拓扑缓存，为null时每次计算
+     * @return 任务图
+     */
+    public static TaskGraph build(TaskPlan taskPlan,
+                                  Map<Long, ServiceNode> workersByID,
+                                  UserContext userContext,
+                                  GraphTopologyCache topologyCache)
             throws GraphStateException {
 
         if (taskPlan == null || taskPlan.getTasks() == null || taskPlan.getTasks().isEmpty()) {
             throw new IllegalArgumentException("TaskPlan 不能为空");
         }
 
-        StateGraph<WorkspaceState> graph = new StateGraph<>(WorkspaceState::new);
+        GraphTopology topology = topologyCache != null
+                ? topologyCache.get(taskPlan.getTasks()) : topology(taskPlan.getTasks());
+        Map<String, TaskExecutor> executors = new LinkedHashMap<>();
         for (Task task : taskPlan.getTasks()) {
-            TaskExecutor executor = ExecutorFactory.create(task, workersByID.get(task.getAgentId()), userContext);
-            // 创建真正异步的 NodeAction
-            graph.addNode(task.getId(), state -> {
-                // 在独立线程中执行，实现真正的异步
-                return CompletableFuture.supplyAsync(() -> {
-                    try {
-                        log.debug("异步执行节点: taskId={}, thread={}", task.getId(), Thread.currentThread().getName());
-                        return executor.apply(state);
-                    } catch (Exception e) {
-                        log.error("节点执行异常: taskId={}", task.getId(), e);
-                        throw new RuntimeException("节点执行失败: taskId=" + task.getId(), e);
-                    }
-                }, executorService);
-            });
+            executors.put(task.getId(), ExecutorFactory.create(task, workersByID.get(task.getAgentId()), userContext));
         }
-        Map<String, Task.TaskInputs> inputMap =
-                taskPlan.getTasks().stream().collect(Collectors.toMap(Task::getId, Task::getInputs));
-        Set<String> allNodes = inputMap.keySet();
-        Set<String> allTargets = new HashSet<>();
-        for (Map.Entry<String, Task.TaskInputs> entry : inputMap.entrySet()) {
-            String taskId = entry.getKey();
-            Task.TaskInputs inputs = entry.getValue();
-            if (inputs != null && inputs.getFromTask() != null && !inputs.getFromTask().isEmpty()) {
-                List<String> fromTasks = inputs.getFromTask();
-                for (String fromTask : fromTasks) {
-                    if (StringUtils.isNotBlank(fromTask)) {
-                        graph.addEdge(fromTask, taskId);
-                        allTargets.add(taskId);
-                    }
+        return new TaskGraph(executors, topology);
+    }
+
+    static List<String> fromTasks(Task task) {
+        Task.TaskInputs inputs = task.getInputs();
+        if (inputs == null || inputs.getFromTask() == null) {
+            return List.of();
+        }
+        return inputs.getFromTask().stream().filter(StringUtils::isNotBlank).distinct().toList();
+    }
+
+    /**
+     * 校验任务ID与依赖、计算拓扑层级
+     */
+    static GraphTopology topology(List<Task> tasks) throws GraphStateException {
+        List<String> taskIds = new ArrayList<>(tasks.size());
+        Map<String, List<String>> dependencies = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (Task task : tasks) {
+            if (dependencies.containsKey(task.getId())) {
+                throw new GraphStateException("任务ID重复: " + task.getId());
+            }
+            taskIds.add(task.getId());
+            dependencies.put(task.getId(), new ArrayList<>());
+            dependents.put(task.getId(), new ArrayList<>());
+        }
+        for (Task task : tasks) {
+            for (String fromTask : fromTasks(task)) {
+                if (!dependencies.containsKey(fromTask)) {
+                    throw new GraphStateException("任务 " + task.getId() + " 依赖的任务不存在: " + fromTask);
                 }
+                dependencies.get(task.getId()).add(fromTask);
+                dependents.get(fromTask).add(task.getId());
             }
         }
 
-        List<String> rootNodes = allNodes.stream()
-                .filter(node -> !allTargets.contains(node))
-                .toList();
-
-        if (rootNodes.isEmpty()) {
+        List<List<String>> levels = levels(taskIds, dependencies, dependents);
+        if (levels.isEmpty()) {
             throw new GraphStateException("任务图中没有找到入口任务（无前置依赖的任务）");
         }
+        log.info("多agent执行中 任务图构建完成: totalTasks={}, levels={}", taskIds.size(), levels);
+        return new GraphTopology(taskIds, dependencies, dependents, levels);
+    }
 
-        if (rootNodes.size() > 1) {
-            System.out.println("⚠ 多个入口任务，将全部从 START 指向它们：" + rootNodes);
-        }
-        for (String root : rootNodes) {
-            graph.addEdge(StateGraph.START, root);
+    /**
+     * 拓扑分层（Kahn算法），存在循环依赖时抛出异常
+     */
+    private static List<List<String>> levels(List<String> taskIds,
+                                             Map<String, List<String>> dependencies,
+                                             Map<String, List<String>> dependents) throws GraphStateException {
+        Map<String, Integer> inDegree = new HashMap<>();
+        List<String> current = new ArrayList<>();
+        for (String taskId : taskIds) {
+            int degree = dependencies.get(taskId).size();
+            inDegree.put(taskId, degree);
+            if (degree == 0) {
+                current.add(taskId);
+            }
         }
-        Set<String> nodesWithTargets = new HashSet<>();
-        for (Task task : taskPlan.getTasks()) {
-            if (task.getInputs() != null && task.getInputs().getFromTask() != null && !task.getInputs().getFromTask().isEmpty()) {
-                nodesWithTargets.addAll(task.getInputs().getFromTask());
+
+        List<List<String>> levels = new ArrayList<>();
+        int visited = 0;
+        while (!current.isEmpty()) {
+            levels.add(current);
+            visited += current.size();
+            List<String> next = new ArrayList<>();
+            for (String taskId : current) {
+                for (String dependent : dependents.get(taskId)) {
+                    if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                        next.add(dependent);
+                    }
+                }
             }
+            current = next;
         }
-        List<String> leafNodes = allNodes.stream()
-                .filter(node -> !nodesWithTargets.contains(node))
-                .toList();
-        for (String leaf : leafNodes) {
-            graph.addEdge(leaf, StateGraph.END);
+        if (visited < taskIds.size() && !levels.isEmpty()) {
+            List<String> cyclic = taskIds.stream().filter(id -> inDegree.get(id) > 0).toList();
+            throw new GraphStateException("任务图存在循环依赖: " + cyclic);
         }
-        return graph.compile();
+        return levels;
     }
-
-
 }
-
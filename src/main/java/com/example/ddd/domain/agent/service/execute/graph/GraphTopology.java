@@ -0,0 +1,47 @@
+package com.example.ddd.domain.agent.service.execute.graph;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 任务图拓扑
+ * 只包含任务ID、依赖关系和拓扑层级，与具体的任务内容、用户上下文无关
+ * 构建后不可变
+ */
+@Getter
+public class GraphTopology {
+    /**
+     * 任务ID列表（保持计划中的顺序）
+     */
+    private final List<String> taskIds;
+    /**
+     * 任务ID -> 前置任务ID列表
+     */
+    private final Map<String, List<String>> dependencies;
+    /**
+     * 任务ID -> 后续任务ID列表
+     */
+    private final Map<String, List<String>> dependents;
+    /**
+     * 拓扑层级，第0层为入口任务
+     */
+    private final List<List<String>> levels;
+
+    public GraphTopology(List<String> taskIds,
+                         Map<String, List<String>> dependencies,
+                         Map<String, List<String>> dependents,
+                         List<List<String>> levels) {
+        this.taskIds = List.copyOf(taskIds);
+        this.dependencies = copy(dependencies);
+        this.dependents = copy(dependents);
+        this.levels = levels.stream().map(List::copyOf).toList();
+    }
+
+    private static Map<String, List<String>> copy(Map<String, List<String>> edges) {
+        return Map.copyOf(edges.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> List.copyOf(e.getValue()))));
+    }
+}
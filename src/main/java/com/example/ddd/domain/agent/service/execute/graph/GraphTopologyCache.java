@@ -0,0 +1,98 @@
+package com.example.ddd.domain.agent.service.execute.graph;
+
+import com.example.ddd.configuration.config.SchedulerProperties;
+import com.example.ddd.domain.agent.service.execute.task.Task;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.bsc.langgraph4j.GraphStateException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务图拓扑缓存
+ * - 按结构（任务ID顺序 + 各任务的前置任务）缓存校验和分层结果，结构相同的计划共享同一个不可变的 {@link GraphTopology}
+ * - 最多保留 topologyCacheSize 个，超出时淘汰最久未使用的；为0时不缓存
+ * - 校验失败（ID重复、依赖不存在、循环依赖）的计划不缓存，每次重新校验
+ */
+@Singleton
+public class GraphTopologyCache {
+
+    @Inject
+    private SchedulerProperties schedulerProperties;
+
+    private final Map<String, GraphTopology> topologies = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * 获取任务的拓扑，结构相同时返回缓存的实例
+     */
+    public GraphTopology get(List<Task> tasks) throws GraphStateException {
+        int capacity = schedulerProperties.getTopologyCacheSize();
+        if (capacity <= 0) {
+            return GraphBuilder.topology(tasks);
+        }
+        String key = key(tasks);
+        synchronized (topologies) {
+            GraphTopology cached = topologies.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        // 在锁外计算，并发的相同结构各自计算一次，先写入的保留
+        GraphTopology topology = GraphBuilder.topology(tasks);
+        synchronized (topologies) {
+            GraphTopology existing = topologies.putIfAbsent(key, topology);
+            Iterator<String> it = topologies.keySet().iterator();
+            while (topologies.size() > capacity && it.hasNext()) {
+                it.next();
+                it.remove();
+                evicted.incrementAndGet();
+            }
+            return existing != null ? existing : topology;
+        }
+    }
+
+    /**
+     * 缓存指标：命中/未命中次数、淘汰数、当前数量
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("capacity", schedulerProperties.getTopologyCacheSize());
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("evicted", evicted.get());
+        synchronized (topologies) {
+            metrics.put("size", topologies.size());
+        }
+        return metrics;
+    }
+
+    /**
+     * 结构键：按计划顺序拼接任务ID及其前置任务，ID带长度前缀，任意字符都不会混淆
+     */
+    static String key(List<Task> tasks) {
+        StringBuilder key = new StringBuilder(tasks.size() * 16);
+        for (Task task : tasks) {
+            append(key, task.getId());
+            key.append('<');
+            for (String fromTask : GraphBuilder.fromTasks(task)) {
+                append(key, fromTask);
+            }
+            key.append(';');
+        }
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, String id) {
+        String value = String.valueOf(id);
+        key.append(value.length()).append(':').append(value);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ddd.domain.agent.service.execute.graph;
+
+import com.example.ddd.domain.agent.service.execute.executor.TaskExecutor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务图
+ * 由 TaskPlan 编译而来：共享的拓扑（依赖关系和拓扑层级）+ 本次运行的执行器
+ * 同一层级内的任务互不依赖，可以并行执行
+ */
+@Getter
+public class TaskGraph {
+    /**
+     * 任务ID -> 执行器（保持计划中的顺序），绑定本次运行的任务内容和用户上下文
+     */
+    private final Map<String, TaskExecutor> executors;
+    /**
+     * 拓扑（不可变，结构相同的计划通过 GraphTopologyCache 共享）
+     */
+    private final GraphTopology topology;
+
+    public TaskGraph(Map<String, TaskExecutor> executors, GraphTopology topology) {
+        this.executors = executors;
+        this.topology = topology;
+    }
+
+    /**
+     * 任务ID -> 前置任务ID列表
+     */
+    public Map<String, List<String>> getDependencies() {
+        return topology.getDependencies();
+    }
+
+    /**
+     * 任务ID -> 后续任务ID列表
+     */
+    public Map<String, List<String>> getDependents() {
+        return topology.getDependents();
+    }
+
+    /**
+     * 拓扑层级，第0层为入口任务
+     */
+    public List<List<String>> getLevels() {
+        return topology.getLevels();
+    }
+
+    /**
+     * 入口任务（无前置依赖）
+     */
+    public List<String> rootTasks() {
+        List<List<String>> levels = topology.getLevels();
+        return levels.isEmpty() ? List.of() : levels.get(0);
+    }
+
+    public int size() {
+        return executors.size();
+    }
+}
@@ -3,11 +3,20 @@ package com.example.ddd.domain.agent.service.execute.graph;
 import dev.langchain4j.data.message.ChatMessage;
 import org.bsc.langgraph4j.prebuilt.MessagesState;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
+/**
+ * 任务图执行状态
+ * 通道合并规则（由 DagScheduler 应用）：
+ * - scratchpad：按键合并，每个任务只写入自己的 task_{taskId}，并行的兄弟任务互不覆盖
+ * - 其余通道：非null值覆盖
+ */
 public class WorkspaceState extends MessagesState<ChatMessage> {
 
+    public static final String SCRATCHPAD = "scratchpad";
+
     public WorkspaceState(Map<String, Object> initData) {
         super(initData);
     }
@@ -16,8 +25,28 @@ public class WorkspaceState extends MessagesState<ChatMessage> {
         return this.value("userMessage");
     }
 
-    // 临时数据，例如当前处理的 todoId 等
+    // 临时数据，例如当前处理的 todoId 等（只读视图）
     public Optional<Map<String, Object>> scratchpad() {
-        return this.value("scratchpad");
+        return this.value(SCRATCHPAD);
+    }
+
+    /**
+     * 读取任务结果
+     */
+    public Optional<Object> taskResult(String taskId) {
+        return scratchpad().map(scratchpad -> scratchpad.get(taskResultKey(taskId)));
+    }
+
+    /**
+     * 生成只包含本任务结果的状态更新（可继续写入其他通道）
+     */
+    public static Map<String, Object> taskResultUpdate(String taskId, Object result) {
+        Map<String, Object> update = new HashMap<>();
+        update.put(SCRATCHPAD, Map.of(taskResultKey(taskId), result));
+        return update;
+    }
+
+    private static String taskResultKey(String taskId) {
+        return "task_" + taskId;
     }
 }
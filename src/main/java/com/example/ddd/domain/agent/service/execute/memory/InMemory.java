@@ -1,34 +1,128 @@
 package com.example.ddd.domain.agent.service.execute.memory;
 
+import com.example.ddd.configuration.config.MemoryProperties;
+import com.example.ddd.domain.agent.adapter.repository.IAgentMemoryRepository;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import io.micronaut.context.annotation.Context;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * 内存中的对话历史管理
- * 使用 Map 存储，key 为 userId + sessionId
+ * 对话历史管理，key 为 userId + sessionId
+ * - 内存：每个会话只保留最近 maxMessagesPerSession 条；会话数超过 maxSessions 时淘汰最久未访问的，闲置超过 idleTtlSeconds 的定期清理
+ * - 持久化：新消息进入有界队列，由后台线程批量写入 agent_memory；队列已满时不阻塞调用方，该消息只保留在内存中
+ * - 加载：被淘汰或重启后的会话在下次访问时由后台线程从数据库加载最近的消息，并与该会话尚未写库的消息合并，
+ *   不需要先写库，也不占用写库锁；添加消息不等待加载，读取历史时才等待
+ * 执行器不是容器管理的 Bean，仍通过 {@link #getInstance()} 访问
  */
 @Slf4j
+@Context
 public class InMemory {
 
-    private static final InMemory instance = new InMemory();
+    /**
+     * 闲置会话及过期记录的清理间隔（毫秒）
+     */
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000;
+    private static final long PURGE_INTERVAL_MILLIS = 3_600_000;
+
+    private static final String HISTORY_HEADER = "以下是历史对话：\n\n";
+
+    private static volatile InMemory instance;
+
+    @Inject
+    private MemoryProperties memoryProperties;
+    @Inject
+    private IAgentMemoryRepository agentMemoryRepository;
+    @Inject
+    private DSLContextFactory dslContextFactory;
 
     /**
-     * 对话历史存储
+     * 对话历史存储（按访问顺序排列，超出容量时淘汰最久未访问的会话）
      * Key: userId + "_" + sessionId
-     * Value: 对话消息列表
      */
-    private final Map<String, List<ConversationMessage>> memoryMap = new ConcurrentHashMap<>();
+    private Map<String, Session> sessions;
+    /**
+     * 待写入数据库的消息
+     */
+    private BlockingQueue<PendingMessage> pending;
+    /**
+     * 已添加但尚未写库的消息（按会话），加载会话时与数据库中的消息合并
+     */
+    private final Map<String, List<ConversationMessage>> unpersisted = new ConcurrentHashMap<>();
+    /**
+     * 写库与清除会话互斥，避免清除后又写入该会话的消息
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * 写入队列已满而未持久化的消息数
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * 历史对话的token估算（与 TextSplitter 使用同一编码，仅用于预算控制）
+     */
+    private final TokenCountEstimator tokenCountEstimator = new OpenAiTokenCountEstimator("text-embedding-3-small");
+    private Thread flusher;
+    private ExecutorService loader;
+    private volatile boolean running;
 
-    private InMemory() {
+    public static InMemory getInstance() {
+        InMemory memory = instance;
+        if (memory == null) {
+            throw new IllegalStateException("对话记忆尚未初始化");
+        }
+        return memory;
     }
 
-    public static InMemory getInstance() {
-        return instance;
+    @PostConstruct
+    void init() {
+        int maxSessions = Math.max(1, memoryProperties.getMaxSessions());
+        sessions = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > maxSessions;
+            }
+        };
+        pending = new ArrayBlockingQueue<>(Math.max(1, memoryProperties.getFlushBatchSize()) * 16);
+        running = true;
+        loader = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("MemoryLoader-", 0).factory());
+        flusher = Thread.ofVirtual().name("MemoryFlusher").start(this::flushLoop);
+        instance = this;
+        log.info("对话记忆已初始化: persistent={}, maxMessagesPerSession={}, maxSessions={}",
+                memoryProperties.isPersistent(), memoryProperties.getMaxMessagesPerSession(), maxSessions);
+    }
+
+    @PreDestroy
+    void close() {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+        flushPending();
     }
 
     /**
@@ -39,12 +133,7 @@ public class InMemory {
      * @return 对话历史列表
      */
     public List<ConversationMessage> getHistory(String userId, String sessionId) {
-        String key = buildKey(userId, sessionId);
-        List<ConversationMessage> history = memoryMap.get(key);
-        if (history == null) {
-            return new ArrayList<>();
-        }
-        return new ArrayList<>(history);
+        return getRecentHistory(userId, sessionId, Integer.MAX_VALUE);
     }
 
     /**
@@ -56,12 +145,12 @@ public class InMemory {
      * @return 对话历史列表
      */
     public List<ConversationMessage> getRecentHistory(String userId, String sessionId, int limit) {
-        List<ConversationMessage> history = getHistory(userId, sessionId);
-        if (history.size() <= limit) {
-            return history;
+        if (limit <= 0) {
+            return new ArrayList<>();
         }
-        // 返回最近的 N 条
-        return new ArrayList<>(history.subList(Math.max(0, history.size() - limit), history.size()));
+        Session session = session(buildKey(userId, sessionId));
+        awaitLoaded(session);
+        return session.recent(limit);
     }
 
     /**
@@ -83,9 +172,11 @@ public class InMemory {
         }
 
         String key = buildKey(userId, sessionId);
-        memoryMap.computeIfAbsent(key, k -> new ArrayList<>()).add(
-                new ConversationMessage(role, content, System.currentTimeMillis())
-        );
+        ConversationMessage message = new ConversationMessage(role, content, System.currentTimeMillis());
+        session(key).append(message, memoryProperties.getMaxMessagesPerSession());
+        if (memoryProperties.isPersistent()) {
+            enqueue(new PendingMessage(key, message));
+        }
 
         log.debug("添加对话记忆: key={}, role={}, contentLength={}", key, role, content.length());
     }
@@ -105,18 +196,71 @@ public class InMemory {
         }
 
         StringBuilder sb = new StringBuilder();
-        sb.append("以下是历史对话：\n\n");
+        sb.append(HISTORY_HEADER);
         for (ConversationMessage msg : history) {
-            if ("USER".equalsIgnoreCase(msg.getRole())) {
-                sb.append("用户: ").append(msg.getContent()).append("\n");
-            } else if ("ASSISTANT".equalsIgnoreCase(msg.getRole())) {
-                sb.append("助手: ").append(msg.getContent()).append("\n");
+            String line = formatLine(msg);
+            if (line != null) {
+                sb.append(line);
+            }
+        }
+        sb.append("\n");
+        return sb.toString();
+    }
+
+    /**
+     * 按token预算格式化对话历史：从最近的消息往前取，整条放不下时停止；
+     * 最近一条本身就超出预算时截取其开头部分，保证至少带上最近的上下文
+     *
+     * @param userId    用户ID
+     * @param sessionId 会话ID
+     * @return 格式化的对话历史字符串，预算为0或没有历史时返回空字符串
+     */
+    public String formatHistoryForPrompt(String userId, String sessionId) {
+        int budget = memoryProperties.getHistoryTokenBudget();
+        if (budget <= 0) {
+            return "";
+        }
+        List<ConversationMessage> history = getRecentHistory(userId, sessionId, memoryProperties.getMaxMessagesPerSession());
+        ArrayDeque<String> lines = new ArrayDeque<>();
+        int remaining = budget;
+        for (int i = history.size() - 1; i >= 0 && remaining > 0; i--) {
+            String line = formatLine(history.get(i));
+            if (line == null) {
+                continue;
+            }
+            int tokens = tokenCountEstimator.estimateTokenCountInText(line);
+            if (tokens <= remaining) {
+                lines.addFirst(line);
+                remaining -= tokens;
+                continue;
+            }
+            if (lines.isEmpty()) {
+                // 按token比例截取字符数（近似值）
+                int chars = Math.max(1, (int) ((long) line.length() * remaining / tokens));
+                lines.addFirst(line.substring(0, Math.min(chars, line.length())).stripTrailing() + "…\n");
             }
+            break;
         }
+        if (lines.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(HISTORY_HEADER);
+        lines.forEach(sb::append);
         sb.append("\n");
         return sb.toString();
     }
 
+    private static String formatLine(ConversationMessage msg) {
+        if ("USER".equalsIgnoreCase(msg.getRole())) {
+            return "用户: " + msg.getContent() + "\n";
+        } else if ("ASSISTANT".equalsIgnoreCase(msg.getRole())) {
+            return "助手: " + msg.getContent() + "\n";
+        }
+        return null;
+    }
+
     /**
      * 构建 Map 的 key
      */
@@ -132,10 +276,278 @@ public class InMemory {
      */
     public void clearHistory(String userId, String sessionId) {
         String key = buildKey(userId, sessionId);
-        memoryMap.remove(key);
+        synchronized (sessions) {
+            sessions.remove(key);
+        }
+        if (memoryProperties.isPersistent()) {
+            flushLock.lock();
+            try {
+                pending.removeIf(message -> message.sessionKey().equals(key));
+                unpersisted.remove(key);
+                dslContextFactory.execute(dsl -> agentMemoryRepository.deleteMessages(dsl, key));
+            } finally {
+                flushLock.unlock();
+            }
+        }
         log.debug("清除对话记忆: key={}", key);
     }
 
+    /**
+     * 获取会话，不在内存中时创建并（持久化开启时）在后台开始从数据库加载，不等待加载完成
+     */
+    private Session session(String key) {
+        Session session;
+        synchronized (sessions) {
+            session = sessions.computeIfAbsent(key, k -> new Session());
+        }
+        session.touch();
+        if (!session.loaded) {
+            session.lock.lock();
+            try {
+                if (!memoryProperties.isPersistent()) {
+                    session.loaded = true;
+                } else if (!session.loaded && session.loading == null) {
+                    session.loading = CompletableFuture.runAsync(() -> load(key, session), loader);
+                }
+            } finally {
+                session.lock.unlock();
+            }
+        }
+        return session;
+    }
+
+    /**
+     * 等待会话加载完成（加载失败时按空会话处理，不抛出）
+     */
+    private void awaitLoaded(Session session) {
+        CompletableFuture<Void> loading = session.loading;
+        if (!session.loaded && loading != null) {
+            loading.join();
+        }
+    }
+
+    /**
+     * 在加载线程上执行：先取该会话未写库的消息，再查数据库，二者去重合并；
+     * 未写库的消息在写库结束后才移除，所以先取快照再查询不会漏掉消息
+     */
+    private void load(String key, Session session) {
+        try {
+            int limit = Math.max(1, memoryProperties.getMaxMessagesPerSession());
+            List<ConversationMessage> unflushed = unpersisted(key);
+            List<ConversationMessage> stored = dslContextFactory.callable(dsl ->
+                    agentMemoryRepository.queryRecentMessages(dsl, key, limit));
+            session.merge(stored, unflushed, limit);
+            log.debug("加载对话记忆: key={}, stored={}, unflushed={}", key, stored.size(), unflushed.size());
+        } catch (Exception e) {
+            // 加载失败时按空会话处理，避免影响对话
+            log.error("加载对话记忆失败: key={}", key, e);
+        } finally {
+            session.loaded = true;
+        }
+    }
+
+    /**
+     * 写入待持久化队列；队列已满时不阻塞调用方，也不在调用方线程写库，该消息只保留在内存中
+     */
+    private void enqueue(PendingMessage message) {
+        unpersisted.compute(message.sessionKey(), (key, messages) -> {
+            List<ConversationMessage> list = messages != null ? messages : new ArrayList<>();
+            list.add(message.message());
+            return list;
+        });
+        if (!pending.offer(message)) {
+            persisted(List.of(message));
+            log.error("对话记忆写入队列已满，该消息不持久化: key={}, dropped={}",
+                    message.sessionKey(), dropped.incrementAndGet());
+        }
+    }
+
+    /**
+     * 会话尚未写库的消息快照
+     */
+    private List<ConversationMessage> unpersisted(String key) {
+        List<ConversationMessage> snapshot = new ArrayList<>();
+        unpersisted.computeIfPresent(key, (k, messages) -> {
+            snapshot.addAll(messages);
+            return messages;
+        });
+        return snapshot;
+    }
+
+    /**
+     * 写库结束（无论成功与否）后移除未写库记录
+     */
+    private void persisted(List<PendingMessage> batch) {
+        for (PendingMessage message : batch) {
+            unpersisted.computeIfPresent(message.sessionKey(), (key, messages) -> {
+                messages.removeIf(m -> m == message.message());
+                return messages.isEmpty() ? null : messages;
+            });
+        }
+    }
+
+    private void flushLoop() {
+        long lastSweep = System.currentTimeMillis();
+        long lastPurge = 0;
+        while (running) {
+            try {
+                PendingMessage first = pending.poll(Math.max(1, memoryProperties.getFlushMillis()), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    flushLock.lock();
+                    try {
+                        List<PendingMessage> batch = new ArrayList<>();
+                        batch.add(first);
+                        pending.drainTo(batch, Math.max(1, memoryProperties.getFlushBatchSize()) - 1);
+                        write(batch);
+                    } finally {
+                        flushLock.unlock();
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SWEEP_INTERVAL_MILLIS) {
+                    lastSweep = now;
+                    sweepIdle(now);
+                }
+                if (memoryProperties.isPersistent() && memoryProperties.getPersistTtlDays() > 0
+                        && now - lastPurge >= PURGE_INTERVAL_MILLIS) {
+                    lastPurge = now;
+                    int purged = dslContextFactory.callable(dsl -> agentMemoryRepository.deleteExpiredMessages(dsl));
+                    if (purged > 0) {
+                        log.info("清理过期对话记忆: count={}", purged);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("对话记忆后台任务异常", e);
+            }
+        }
+    }
+
+    /**
+     * 将队列中的消息全部写库
+     */
+    private void flushPending() {
+        int batchSize = Math.max(1, memoryProperties.getFlushBatchSize());
+        flushLock.lock();
+        try {
+            List<PendingMessage> batch = new ArrayList<>(batchSize);
+            while (pending.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<PendingMessage> batch) {
+        int ttlDays = memoryProperties.getPersistTtlDays();
+        Long expiresAt = ttlDays > 0 ? System.currentTimeMillis() / 1000 + TimeUnit.DAYS.toSeconds(ttlDays) : null;
+        try {
+            dslContextFactory.execute(dsl -> agentMemoryRepository.saveMessages(dsl, batch, expiresAt));
+        } catch (Exception e) {
+            // 内存中仍保留这些消息，只影响淘汰/重启后的历史
+            log.error("对话记忆写库失败，丢弃本批次: size={}", batch.size(), e);
+        } finally {
+            persisted(batch);
+        }
+    }
+
+    private void sweepIdle(long now) {
+        long idleBefore = now - TimeUnit.SECONDS.toMillis(memoryProperties.getIdleTtlSeconds());
+        int removed = 0;
+        synchronized (sessions) {
+            Iterator<Session> iterator = sessions.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().lastAccess < idleBefore) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.debug("淘汰闲置对话记忆: count={}", removed);
+        }
+    }
+
+    /**
+     * 单个会话的消息环形缓冲区
+     */
+    private static class Session {
+        private final ArrayDeque<ConversationMessage> messages = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean loaded;
+        private volatile CompletableFuture<Void> loading;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        void append(ConversationMessage message, int maxMessages) {
+            lock.lock();
+            try {
+                messages.addLast(message);
+                while (messages.size() > Math.max(1, maxMessages)) {
+                    messages.pollFirst();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 合并数据库中的消息、未写库的消息和加载期间新添加的消息，按时间排序后保留最近 maxMessages 条
+         * 数据库只保存秒级时间戳，按（角色，秒，内容）去重
+         */
+        void merge(List<ConversationMessage> stored, List<ConversationMessage> unflushed, int maxMessages) {
+            lock.lock();
+            try {
+                Map<String, ConversationMessage> merged = new LinkedHashMap<>();
+                for (List<ConversationMessage> source : List.of(stored, unflushed, new ArrayList<>(messages))) {
+                    for (ConversationMessage message : source) {
+                        merged.putIfAbsent(message.getRole() + "\0" + message.getTimestamp() / 1000
+                                + "\0" + message.getContent(), message);
+                    }
+                }
+                List<ConversationMessage> sorted = new ArrayList<>(merged.values());
+                sorted.sort(Comparator.comparingLong(message -> message.getTimestamp() / 1000));
+                messages.clear();
+                messages.addAll(sorted.subList(Math.max(0, sorted.size() - maxMessages), sorted.size()));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<ConversationMessage> recent(int limit) {
+            lock.lock();
+            try {
+                int skip = Math.max(0, messages.size() - limit);
+                List<ConversationMessage> result = new ArrayList<>(messages.size() - skip);
+                Iterator<ConversationMessage> iterator = messages.iterator();
+                for (int i = 0; iterator.hasNext(); i++) {
+                    ConversationMessage message = iterator.next();
+                    if (i >= skip) {
+                        result.add(message);
+                    }
+                }
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 待写库的消息
+     *
+     * @param sessionKey 会话key（userId_sessionId）
+     */
+    public record PendingMessage(String sessionKey, ConversationMessage message) {
+    }
+
     /**
      * 对话消息
      */
@@ -152,4 +564,3 @@ public class InMemory {
         }
     }
 }
-
@@ -0,0 +1,357 @@
+package com.example.ddd.domain.agent.service.execute.record;
+
+import com.example.ddd.common.utils.IdGenerator;
+import com.example.ddd.configuration.config.RecorderProperties;
+import com.example.ddd.domain.agent.adapter.repository.IOrchestratorRunRepository;
+import com.example.ddd.domain.agent.model.entity.OrchestratorMessageEntity;
+import com.example.ddd.domain.agent.model.entity.OrchestratorRunEntity;
+import com.example.ddd.domain.agent.model.valobj.OrchestratorRunStatus;
+import com.example.ddd.domain.agent.service.execute.context.EventType;
+import com.example.ddd.domain.agent.service.execute.context.UserContext;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orchestrator执行记录器
+ * - 监听 UserContext 的事件流，把执行与事件写入 orchestrator_run / orchestrator_message
+ * - 记录只进入有界队列（offer，不阻塞执行线程），由后台虚拟线程按数量/时间批量写库
+ * - 队列使用率超过 samplingWatermark 时流式token消息按 samplingRate 采样；队列已满时丢弃并计数
+ * - 执行状态快照不进入该队列，每次执行只保留最新一份，随下一批写库，不会因队列已满被丢弃
+ * - 断线重连读取事件前先等待队列中已有的记录写库，序号缺失的区间以 {@link EventType#EVENTS_MISSING} 事件标出
+ */
+@Slf4j
+@Singleton
+public class RunRecorder {
+
+    private static final String EXECUTION_MODE = "DAG";
+    /**
+     * 读取事件前等待队列写库的最长时间
+     */
+    private static final long FLUSH_TIMEOUT_MILLIS = 2000;
+
+    @Inject
+    private RecorderProperties recorderProperties;
+    @Inject
+    private IOrchestratorRunRepository orchestratorRunRepository;
+    @Inject
+    private DSLContextFactory dslContextFactory;
+    @Inject
+    private IdGenerator idGenerator;
+
+    private BlockingQueue<Object> queue;
+    /**
+     * 待写入的执行状态快照（按执行ID，新快照覆盖未写入的旧快照），数量不超过执行中的执行数
+     */
+    private final Map<Long, OrchestratorRunEntity> runSnapshots = new ConcurrentHashMap<>();
+    private int samplingThreshold;
+    private final AtomicLong dropped = new AtomicLong();
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    void init() {
+        if (!recorderProperties.isEnabled()) {
+            log.info("Orchestrator执行记录未启用");
+            return;
+        }
+        int capacity = Math.max(1, recorderProperties.getQueueCapacity());
+        queue = new ArrayBlockingQueue<>(capacity);
+        samplingThreshold = (int) (capacity * Math.min(1.0, Math.max(0.0, recorderProperties.getSamplingWatermark())));
+        running = true;
+        writer = Thread.ofVirtual().name("RunRecorder").start(this::writeLoop);
+    }
+
+    @PreDestroy
+    void close() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 开始记录一次执行，执行ID取 userContext 的 runId（未设置时生成）
+     *
+     * @return 执行记录句柄；未启用时返回null
+     */
+    public Run start(Long orchestratorId, String userRequest, UserContext userContext) {
+        if (!running) {
+            return null;
+        }
+        Long runId = userContext.getRunId() != null ? userContext.getRunId() : idGenerator.nextSnowflakeId();
+        Run run = new Run(runId, orchestratorId, userContext.getUserId(),
+                userContext.getSessionId(), userRequest, System.currentTimeMillis());
+        userContext.addListener(event -> record(run, event));
+        runSnapshots.put(runId, run.snapshot(OrchestratorRunStatus.RUNNING, null));
+        return run;
+    }
+
+    /**
+     * 结束记录
+     * 在执行返回后调用：监听器在产生事件的线程上同步执行，执行期间发出的事件此时都已计入状态和统计
+     *
+     * @param status 结束状态，为null时根据执行期间的事件判断成功或失败
+     */
+    public void finish(Run run, OrchestratorRunStatus status) {
+        if (run == null || !run.finished.compareAndSet(false, true)) {
+            return;
+        }
+        OrchestratorRunStatus finalStatus = status != null ? status
+                : run.failed ? OrchestratorRunStatus.FAILED : OrchestratorRunStatus.SUCCEEDED;
+        runSnapshots.put(run.getId(), run.snapshot(finalStatus, System.currentTimeMillis()));
+    }
+
+    private void record(Run run, UserContext.TaskStatusEvent event) {
+        EventType type = event.getType();
+        int count = run.sequence.incrementAndGet();
+        // 与SSE事件ID一致，断线重连时据此补齐内存中已淘汰的事件
+        int sequence = event.getId() != null ? event.getId().intValue() : count;
+        if (type == EventType.TASK_START) {
+            run.totalTasks.incrementAndGet();
+        } else if (type == EventType.TASK_COMPLETE) {
+            run.completedTasks.incrementAndGet();
+        } else if (type == EventType.TASK_FAILED || type == EventType.PLANNING_FAILED || type == EventType.PLAN_PARSE_FAILED
+                || type == EventType.EXECUTION_FAILED || type == EventType.ERROR) {
+            run.failed = true;
+        }
+        // 写入压力大时流式token只保留部分，序号保留空洞以便分析时识别采样
+        if (type == EventType.STREAMING && queue.size() >= samplingThreshold
+                && sequence % Math.max(1, recorderProperties.getSamplingRate()) != 0) {
+            run.sampled.incrementAndGet();
+            return;
+        }
+        OrchestratorMessageEntity message = new OrchestratorMessageEntity();
+        message.setRunId(run.getId());
+        message.setTaskId(event.getTaskId());
+        message.setAgentRole(agentRole(type));
+        message.setMessageType(type != null ? type.getValue() : "unknown");
+        message.setContent(event.getContent());
+        message.setMessage(event.getMessage());
+        message.setError(event.getError());
+        message.setTimestamp(System.currentTimeMillis());
+        message.setSequence(sequence);
+        offer(message);
+    }
+
+    /**
+     * 查询已记录的事件，用于断线重连时补齐内存中已淘汰的部分
+     * 查询前先等待队列中已有的记录写库；写入压力下被采样/丢弃的事件不在其中，
+     * 缺失的序号区间以 EVENTS_MISSING 事件代替（beforeId 为 Long.MAX_VALUE 时不检查最后一条之后的区间）
+     *
+     * @param afterId  不含
+     * @param beforeId 不含
+     */
+    public List<UserContext.TaskStatusEvent> loadEvents(Long runId, long afterId, long beforeId) {
+        if (!recorderProperties.isEnabled() || beforeId - afterId <= 1) {
+            return List.of();
+        }
+        flush();
+        int limit = (int) Math.min(Integer.MAX_VALUE, beforeId - afterId - 1);
+        List<OrchestratorMessageEntity> messages = dslContextFactory.callable(dsl -> orchestratorRunRepository.queryMessages(
+                dsl, runId, (int) afterId, (int) Math.min(Integer.MAX_VALUE, beforeId), limit));
+        List<UserContext.TaskStatusEvent> events = new ArrayList<>(messages.size());
+        long expected = afterId + 1;
+        for (OrchestratorMessageEntity message : messages) {
+            long sequence = message.getSequence();
+            if (sequence > expected) {
+                events.add(missing(expected, sequence - 1));
+            }
+            UserContext.TaskStatusEvent event = UserContext.TaskStatusEvent.builder()
+                    .type(message.getMessageType())
+                    .taskId(message.getTaskId())
+                    .message(message.getMessage())
+                    .content(message.getContent())
+                    .error(message.getError())
+                    .build();
+            event.setId(sequence);
+            events.add(event);
+            expected = sequence + 1;
+        }
+        if (beforeId != Long.MAX_VALUE && expected < beforeId) {
+            events.add(missing(expected, beforeId - 1));
+        }
+        return events;
+    }
+
+    /**
+     * 等待此前进入队列的记录写库，最多等待 FLUSH_TIMEOUT_MILLIS，超时后按已写入的部分读取
+     * 在队列中放入一个屏障，写入线程写完屏障之前的记录后完成它
+     */
+    void flush() {
+        if (!running) {
+            return;
+        }
+        CompletableFuture<Void> barrier = new CompletableFuture<>();
+        try {
+            if (queue.offer(barrier, FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                barrier.get(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // 按已写入的部分读取
+        }
+        log.warn("等待执行记录写库超时，补齐的事件可能不完整: queued={}", queue.size());
+    }
+
+    private static UserContext.TaskStatusEvent missing(long fromId, long toId) {
+        UserContext.TaskStatusEvent event = UserContext.TaskStatusEvent.builder()
+                .type(EventType.EVENTS_MISSING)
+                .message("事件 " + fromId + "-" + toId + " 未记录（写入压力下被采样或丢弃）")
+                .build();
+        event.setId(toId);
+        return event;
+    }
+
+    /**
+     * 规划事件归主管，任务与流式输出归子Agent，其余为系统事件
+     */
+    private static String agentRole(EventType type) {
+        if (type == null) {
+            return "SYSTEM";
+        }
+        int category = type.getCode() / 1000;
+        if (category == 1) {
+            return "SUPERVISOR";
+        }
+        return category == 2 || category == 3 ? "WORKER" : "SYSTEM";
+    }
+
+    private void offer(Object record) {
+        if (!queue.offer(record)) {
+            long count = dropped.incrementAndGet();
+            if (count == 1 || count % 1000 == 0) {
+                log.warn("执行记录队列已满，丢弃记录: dropped={}", count);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        int batchSize = Math.max(1, recorderProperties.getBatchSize());
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty() || !runSnapshots.isEmpty()) {
+            try {
+                Object first = queue.poll(Math.max(1, recorderProperties.getFlushMillis()), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                // 在取出队列记录之后取快照，屏障之前结束的执行随屏障所在批次写库
+                List<OrchestratorRunEntity> runs = takeRunSnapshots();
+                if (batch.isEmpty() && runs.isEmpty()) {
+                    continue;
+                }
+                write(runs, batch);
+                for (Object record : batch) {
+                    if (record instanceof CompletableFuture<?> barrier) {
+                        barrier.complete(null);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 关闭时写完剩余记录
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private List<OrchestratorRunEntity> takeRunSnapshots() {
+        List<OrchestratorRunEntity> runs = new ArrayList<>();
+        for (Long runId : runSnapshots.keySet()) {
+            OrchestratorRunEntity snapshot = runSnapshots.remove(runId);
+            if (snapshot != null) {
+                runs.add(snapshot);
+            }
+        }
+        return runs;
+    }
+
+    private void write(List<OrchestratorRunEntity> runs, List<Object> batch) {
+        List<OrchestratorMessageEntity> messages = new ArrayList<>();
+        for (Object record : batch) {
+            if (record instanceof OrchestratorMessageEntity message) {
+                messages.add(message);
+            }
+        }
+        try {
+            dslContextFactory.execute(dsl -> {
+                orchestratorRunRepository.saveRuns(dsl, runs);
+                orchestratorRunRepository.saveMessages(dsl, messages);
+            });
+        } catch (Exception e) {
+            log.error("执行记录写库失败，丢弃本批次: runs={}, messages={}", runs.size(), messages.size(), e);
+        }
+    }
+
+    /**
+     * 一次执行的记录句柄
+     */
+    @Getter
+    public static class Run {
+        private final Long id;
+        private final Long orchestratorId;
+        private final String userId;
+        private final String sessionId;
+        private final String goal;
+        private final long startTime;
+        private final AtomicInteger sequence = new AtomicInteger();
+        private final AtomicInteger totalTasks = new AtomicInteger();
+        private final AtomicInteger completedTasks = new AtomicInteger();
+        private final AtomicInteger sampled = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean failed;
+
+        Run(Long id, Long orchestratorId, String userId, String sessionId, String goal, long startTime) {
+            this.id = id;
+            this.orchestratorId = orchestratorId;
+            this.userId = userId;
+            this.sessionId = sessionId;
+            this.goal = goal;
+            this.startTime = startTime;
+        }
+
+        OrchestratorRunEntity snapshot(OrchestratorRunStatus status, Long endTime) {
+            OrchestratorRunEntity entity = new OrchestratorRunEntity();
+            entity.setId(id);
+            entity.setOrchestratorId(orchestratorId);
+            entity.setUserId(userId);
+            entity.setSessionId(sessionId);
+            entity.setGoal(goal);
+            entity.setStatus(status);
+            entity.setStartTime(startTime);
+            entity.setEndTime(endTime);
+            entity.setTotalTasks(totalTasks.get());
+            entity.setCompletedTasks(completedTasks.get());
+            entity.setExecutionMode(EXECUTION_MODE);
+            entity.setMessageCount(sequence.get());
+            entity.setSampledCount(sampled.get());
+            return entity;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.ddd.domain.agent.service.execute.task;
+
+import com.example.ddd.configuration.config.PlanCacheProperties;
+import com.example.ddd.domain.agent.service.embedding.EmbeddingCache;
+import com.example.ddd.domain.agent.service.embedding.EmbeddingService;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务计划语义缓存
+ * - 作用域：orchestratorId + 子Agent指纹 + 历史窗口哈希（按 historyWindowChars 取历史的范围）+ 用户ID，
+ *   子Agent、历史窗口或用户不同的请求互不命中（shareAcrossUsers 时不区分用户）；
+ *   按完整历史区分时每轮对话的作用域都不同，只有首轮能命中，因此带历史的请求直接跳过
+ * - 作用域内按用户请求向量的余弦相似度匹配，超过 similarityThreshold 时复用已生成的计划JSON
+ * - 条目超过 ttlSeconds 后失效；Orchestrator重新装配时整体失效
+ */
+@Slf4j
+@Singleton
+public class PlanCache {
+
+    @Inject
+    private PlanCacheProperties planCacheProperties;
+    @Inject
+    private EmbeddingService embeddingService;
+
+    private final Map<String, Scope> scopes = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * 查找语义相近的计划
+     *
+     * @param fingerprint    子Agent指纹
+     * @param userId         用户ID，按用户隔离时为null则不使用缓存
+     * @param historyContext 本次执行的历史对话快照
+     * @return 查找结果（未命中时 planJson 为null，可用于随后写入）；未启用、该作用域不缓存或向量化失败时返回null
+     */
+    public Lookup lookup(Long orchestratorId, String fingerprint, String userId, String userRequest, String historyContext) {
+        if (!planCacheProperties.isEnabled() || orchestratorId == null || userRequest == null || userRequest.isBlank()) {
+            return null;
+        }
+        String userKey = planCacheProperties.isShareAcrossUsers() ? "*" : userId;
+        String historyKey = historyKey(historyContext);
+        if (userKey == null || historyKey == null) {
+            return null;
+        }
+        // 历史窗口哈希不含分隔符，用户ID放在最后，作用域键不会混淆
+        String scopeKey = orchestratorId + ":" + fingerprint + ":" + historyKey + ":" + userKey;
+        float[] embedding;
+        try {
+            embedding = normalize(embeddingService.embed(userRequest));
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            log.warn("任务计划缓存 用户请求向量化失败，跳过缓存: orchestratorId={}, error={}", orchestratorId, e.getMessage());
+            return null;
+        }
+        Scope scope;
+        synchronized (scopes) {
+            scope = scopes.get(scopeKey);
+        }
+        String planJson = scope != null ? scope.match(embedding) : null;
+        if (planJson != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return new Lookup(scopeKey, embedding, planJson);
+    }
+
+    /**
+     * 写入计划（在对应作用域未命中后调用）
+     */
+    public void put(Lookup lookup, String planJson) {
+        if (lookup == null || planJson == null) {
+            return;
+        }
+        Scope scope;
+        synchronized (scopes) {
+            scope = scopes.computeIfAbsent(lookup.scopeKey, k -> new Scope());
+            int maxScopes = Math.max(1, planCacheProperties.getMaxScopes());
+            Iterator<Map.Entry<String, Scope>> it = scopes.entrySet().iterator();
+            while (scopes.size() > maxScopes && it.hasNext()) {
+                Map.Entry<String, Scope> eldest = it.next();
+                if (eldest.getValue() != scope) {
+                    evicted.addAndGet(eldest.getValue().size());
+                    it.remove();
+                }
+            }
+        }
+        scope.add(lookup.embedding, planJson);
+        stores.incrementAndGet();
+    }
+
+    /**
+     * 清除Orchestrator的全部缓存计划（子Agent或配置变化时调用）
+     */
+    public void invalidate(Long orchestratorId) {
+        String prefix = orchestratorId + ":";
+        int removed = 0;
+        synchronized (scopes) {
+            Iterator<Map.Entry<String, Scope>> it = scopes.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Scope> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    removed += entry.getValue().size();
+                    it.remove();
+                }
+            }
+        }
+        if (removed > 0) {
+            log.info("任务计划缓存 已清除: orchestratorId={}, entries={}", orchestratorId, removed);
+        }
+    }
+
+    /**
+     * 缓存指标：命中/未命中次数、命中率、写入/过期/淘汰条目数、当前条目数
+     */
+    public Map<String, Object> metrics() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        int scopeCount;
+        int entryCount = 0;
+        synchronized (scopes) {
+            scopeCount = scopes.size();
+            for (Scope scope : scopes.values()) {
+                entryCount += scope.size();
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", planCacheProperties.isEnabled());
+        metrics.put("hits", hitCount);
+        metrics.put("misses", missCount);
+        metrics.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        metrics.put("stores", stores.get());
+        metrics.put("expired", expired.get());
+        metrics.put("evicted", evicted.get());
+        metrics.put("errors", errors.get());
+        metrics.put("scopes", scopeCount);
+        metrics.put("entries", entryCount);
+        return metrics;
+    }
+
+    /**
+     * 作用域中的历史部分
+     *
+     * @return 历史窗口的哈希，不区分历史或没有历史时为 "-"；按完整历史区分且有历史时返回null（不缓存）
+     */
+    private String historyKey(String historyContext) {
+        int window = planCacheProperties.getHistoryWindowChars();
+        if (window == 0 || historyContext == null || historyContext.isEmpty()) {
+            return "-";
+        }
+        if (window < 0) {
+            return null;
+        }
+        String recent = historyContext.length() > window
+                ? historyContext.substring(historyContext.length() - window) : historyContext;
+        return EmbeddingCache.hash(recent);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return vector.clone();
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 查找结果，未命中时携带作用域与请求向量，写入时不再重复向量化
+     */
+    public static final class Lookup {
+        private final String scopeKey;
+        private final float[] embedding;
+        private final String planJson;
+
+        Lookup(String scopeKey, float[] embedding, String planJson) {
+            this.scopeKey = scopeKey;
+            this.embedding = embedding;
+            this.planJson = planJson;
+        }
+
+        public boolean isHit() {
+            return planJson != null;
+        }
+
+        public String getPlanJson() {
+            return planJson;
+        }
+    }
+
+    private static final class Entry {
+        private final float[] embedding;
+        private final String planJson;
+        private final long createdAt;
+        private long lastHitAt;
+
+        Entry(float[] embedding, String planJson, long createdAt) {
+            this.embedding = embedding;
+            this.planJson = planJson;
+            this.createdAt = createdAt;
+            this.lastHitAt = createdAt;
+        }
+    }
+
+    /**
+     * 一个作用域内的计划，条目数有限，线性扫描即可
+     */
+    private final class Scope {
+        private final List<Entry> entries = new ArrayList<>();
+
+        synchronized String match(float[] embedding) {
+            long now = System.currentTimeMillis();
+            long ttlMillis = TimeUnit.SECONDS.toMillis(planCacheProperties.getTtlSeconds());
+            Entry best = null;
+            double bestScore = planCacheProperties.getSimilarityThreshold();
+            Iterator<Entry> it = entries.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (now - entry.createdAt > ttlMillis) {
+                    it.remove();
+                    expired.incrementAndGet();
+                    continue;
+                }
+                double score = dot(embedding, entry.embedding);
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            best.lastHitAt = now;
+            return best.planJson;
+        }
+
+        synchronized void add(float[] embedding, String planJson) {
+            long now = System.currentTimeMillis();
+            entries.add(new Entry(embedding, planJson, now));
+            int max = Math.max(1, planCacheProperties.getMaxEntriesPerScope());
+            while (entries.size() > max) {
+                Entry eldest = entries.get(0);
+                for (Entry entry : entries) {
+                    if (entry.lastHitAt < eldest.lastHitAt) {
+                        eldest = entry;
+                    }
+                }
+                entries.remove(eldest);
+                evicted.incrementAndGet();
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.ddd.domain.agent.service.execute.task;
+
+import com.example.ddd.common.utils.JSON;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * 任务计划增量解析器
+ * - 逐token喂入Supervisor的流式输出，根对象 tasks 数组中的任务对象一闭合就回调，无需等待整个计划生成完
+ * - 跳过第一个 '{' 之前的说明文字和代码块标记，根对象闭合后忽略剩余内容
+ * - 解析出错时停止增量解析并记录日志，最终计划仍以完整响应的解析结果为准
+ * 非线程安全，token回调本身是串行的
+ */
+@Slf4j
+public class StreamingPlanParser implements Consumer<String> {
+
+    private final Consumer<Task> onTask;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private boolean started;
+    private boolean finished;
+    private int depth;
+    private String field;
+    private boolean inTasks;
+    private TokenBuffer current;
+    private int parsed;
+
+    /**
+     * @param onTask 每解析出一个任务时的回调（在token回调线程上执行）
+     */
+    public StreamingPlanParser(Consumer<Task> onTask) {
+        this.onTask = onTask;
+        try {
+            this.parser = JSON.objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("创建增量JSON解析器失败", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    @Override
+    public void accept(String token) {
+        if (finished || token == null || token.isEmpty()) {
+            return;
+        }
+        String input = token;
+        if (!started) {
+            int begin = token.indexOf('{');
+            if (begin < 0) {
+                return;
+            }
+            started = true;
+            input = token.substring(begin);
+        }
+        try {
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken jsonToken;
+            while (!finished && (jsonToken = parser.nextToken()) != null && jsonToken != JsonToken.NOT_AVAILABLE) {
+                handle(jsonToken);
+            }
+        } catch (Exception e) {
+            finished = true;
+            log.warn("多agent执行中 任务计划增量解析失败，等待完整响应: parsed={}, error={}", parsed, e.getMessage());
+        }
+    }
+
+    /**
+     * 已解析出的任务数
+     */
+    public int getParsed() {
+        return parsed;
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (current != null) {
+            current.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            if (depth == 2) {
+                Task task = JSON.objectMapper.readValue(current.asParser(), Task.class);
+                current = null;
+                parsed++;
+                emit(task);
+            }
+            return;
+        }
+        switch (token) {
+            case START_OBJECT -> {
+                depth++;
+                // 根对象 -> tasks 数组 -> 任务对象
+                if (inTasks && depth == 3) {
+                    current = new TokenBuffer(parser);
+                    current.copyCurrentEvent(parser);
+                }
+            }
+            case START_ARRAY -> {
+                depth++;
+                if (depth == 2 && "tasks".equals(field)) {
+                    inTasks = true;
+                }
+            }
+            case END_ARRAY -> {
+                if (depth == 2) {
+                    inTasks = false;
+                }
+                depth--;
+            }
+            case END_OBJECT -> {
+                depth--;
+                if (depth == 0) {
+                    finished = true;
+                }
+            }
+            case FIELD_NAME -> {
+                if (depth == 1) {
+                    field = parser.currentName();
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void emit(Task task) {
+        try {
+            onTask.accept(task);
+        } catch (Exception e) {
+            log.warn("多agent执行中 处理增量解析出的任务失败: taskId={}, error={}", task.getId(), e.getMessage());
+        }
+    }
+}
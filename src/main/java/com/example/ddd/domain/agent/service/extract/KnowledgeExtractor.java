@@ -0,0 +1,312 @@
+package com.example.ddd.domain.agent.service.extract;
+
+import com.example.ddd.configuration.config.ExtractionProperties;
+import com.example.ddd.configuration.config.OpenAIProperties;
+import com.example.ddd.domain.agent.model.valobj.EntityDTO;
+import com.example.ddd.domain.agent.model.valobj.ExtractionResult;
+import com.example.ddd.domain.agent.model.valobj.RelationDTO;
+import com.example.ddd.domain.agent.service.chunk.ChunkStrategy;
+import com.example.ddd.domain.agent.service.chunk.TextSplitter;
+import com.example.ddd.domain.kg.service.EntityResolver;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.internal.Json;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 知识抽取器（map-reduce）
+ * - map：文档按 chunkSize（token）切分，各片段并行调用LLM抽取实体和关系，所有导入共享 maxConcurrency 个并发许可
+ * - reduce：按「规范化名称 + 类型」合并实体（描述取最长、句子去重），关系按 主体-关系-客体 去重
+ * 短文档只有一个片段，等同于整篇抽取；单个片段输出的JSON不合法时重试，仍失败则整个抽取失败（由导入任务重试）
+ */
+@Slf4j
+@Singleton
+public class KnowledgeExtractor {
+
+    /**
+     * 合并后每个实体最多保留的句子数
+     */
+    private static final int MAX_SENTENCES = 5;
+
+    private static final String SYSTEM_PROMPT = """
+            你是一个专业的「信息抽取服务」，用于从自然语言文本中构建知识图谱。
+            你的任务是从给定文本中抽取「实体」和「实体之间的关系（三元组）」并返回 JSON。
+            
+            请严格遵守以下要求：
+            
+            1. 严格依据提供的文本内容抽取，不要引入文本中没有出现的事实或外部知识。
+            2. 最终输出必须是**合法 JSON 对象**，字段名固定为：entities, relations。
+               - 不能输出任何解释性文字、注释、说明、前后缀。
+               - 不能输出 Markdown 代码块标记（例如 ```json 或 ```）。
+               - 如果解析失败会导致系统报错，所以一定要保证 JSON 严格合法。
+            
+            ------------------------------
+            【实体抽取要求】
+            ------------------------------
+            
+            3. entities 是数组，每个元素包含以下字段：
+               - name: 实体名称（字符串，使用规范、完整的名词短语）
+               - type: 实体类型（字符串，优先从下面这些中选择，没有合适的再自定义）：
+                   Tech, System, Service, API, DB, Table, Queue, Topic,
+                   Module, Component, Job, Task,
+                   Person, Role, Org,
+                   Concept, Event, Rule, Config, Env, Metric, ErrorCode, Other
+               - description: 对该实体的简短中文描述（字符串，可以为空字符串）
+               - sentences: 该实体在文档中出现的句子列表（数组，直接从原文中截取完整句子，最多 5 句）
+            
+            4. 实体抽取原则：
+               - 使用**规范化名称**，避免碎片化。
+                 - ❌ “系统的” → 不是实体
+                 - ✔ “推荐系统” → 是实体
+               - 多个同义称呼指向同一实体时，请统一为一个 name，如：
+                 - “AI” / “人工智能” → 统一为 “人工智能”
+               - 不要把代词（如“它”、“该系统”、“本文”）当作实体。
+               - 尽量抽取对理解系统、架构、业务流程有价值的实体，忽略噪音名词。
+            
+            ------------------------------
+            【关系抽取要求】
+            ------------------------------
+            
+            5. relations 是数组，每个元素包含：
+               - subject_name: 主体实体名称（要能在 entities 里找到对应 name）
+               - subject_type: 主体实体类型（要与 entities 中该实体的 type 一致）
+               - relation_type: 关系类型（字符串，必须为**大写下划线命名**）
+               - object_name: 客体实体名称（要能在 entities 里找到对应 name）
+               - object_type: 客体实体类型（要与 entities 中该实体的 type 一致）
+               - evidence_text: 原文中支持这个关系的关键句子或短语（从文本中截取，尽量短但能表达关系）
+            
+            6. relation_type 使用规范：
+               - 尽量从以下关系类型中选择（不强制，但强烈推荐统一）：
+                   USES_TECH        // 使用某种技术/组件/工具
+                   DEPENDS_ON       // 依赖于
+                   CALLS_API        // 调用接口/方法
+                   BELONGS_TO       // 从属关系（模块属于系统、表属于库等）
+                   PART_OF          // 组成关系（是……的一部分）
+                   IMPLEMENTS       // 实现某种接口/规范
+                   EXTENDS          // 继承/扩展
+                   PRODUCES         // 产生某种数据/消息/结果
+                   CONSUMES         // 消费某种数据/消息
+                   STORES_IN_DB     // 把数据存储在某个数据库或表中
+                   RUNS_ON          // 运行在某个环境/平台上
+                   COMMUNICATES_WITH// 与……通信
+                   MANAGED_BY       // 由……管理/维护
+                   OWNED_BY         // 归属于某个团队/组织
+                   LOCATED_IN       // 位于某个环境/机房/区域
+                   WORKS_AT         // 某人就职/工作于某组织
+                   CAUSED_BY        // 由……导致
+                   SOLVES           // 解决某个问题
+                   ASSOCIATED_WITH  // 无法精确归类但存在较强关联时使用
+            
+               - 如果上述列表中都不合适，可以自定义新的 relation_type，
+                 但仍然必须使用全大写 + 下划线，比如：HANDLES_ERROR, SCHEDULED_BY。
+            
+            7. 关系抽取原则：
+               - 关系可以来自**同一句**，也可以来自**同一段落中多句综合后的含义**，
+                 但 evidence_text 必须能在原文中找到。
+               - 尽量抽取**对理解系统架构、数据流、调用链路有帮助**的关系，
+                 比如“谁调用谁”、“谁依赖谁”、“数据存到哪里”、“由谁负责”等。
+               - 不要为了凑数而抽取非常抽象、泛泛而谈的关系。
+            
+            ------------------------------
+            【空结果约定】
+            ------------------------------
+            
+            8. 如果文本中确实找不到任何有价值的实体或关系，请返回：
+               {
+                 "entities": [],
+                 "relations": []
+               }
+            
+            ------------------------------
+            【输出格式要求（重要）】
+            ------------------------------
+            
+            9. 最终只输出一个 JSON 对象，形如：
+               {
+                 "entities": [ ... ],
+                 "relations": [ ... ]
+               }
+            
+            10. 不能输出除 JSON 以外的任何内容（例如“好的，结果如下：”之类的文字）。
+            
+            """;
+
+    @Inject
+    private OpenAIProperties openAIProperties;
+    @Inject
+    private ExtractionProperties extractionProperties;
+    @Inject
+    private TextSplitter textSplitter;
+
+    private final ExecutorService executorService = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("KnowledgeExtractor-", 0).factory());
+    private Semaphore permits;
+    private ChatModel chatModel;
+
+    @PostConstruct
+    void init() {
+        permits = new Semaphore(Math.max(1, extractionProperties.getMaxConcurrency()), true);
+        chatModel = OpenAiChatModel.builder()
+                .apiKey(openAIProperties.getKey())
+                .baseUrl(openAIProperties.getUrl())
+                .modelName(openAIProperties.getModel())
+                .build();
+    }
+
+    @PreDestroy
+    void close() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * 从文档中抽取实体和关系
+     *
+     * @param text 文档内容
+     * @return 合并去重后的实体和关系
+     */
+    public ExtractionResult extract(String text) {
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.RECURSIVE,
+                extractionProperties.getChunkSize(), extractionProperties.getChunkOverlap()).toList();
+        if (chunks.isEmpty()) {
+            return new ExtractionResult(List.of(), List.of());
+        }
+        long begin = System.currentTimeMillis();
+        List<ExtractionResult> partials;
+        if (chunks.size() == 1) {
+            partials = List.of(extractChunk(chunks.get(0), 0));
+        } else {
+            List<CompletableFuture<ExtractionResult>> futures = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                String chunk = chunks.get(i);
+                int index = i;
+                futures.add(CompletableFuture.supplyAsync(() -> extractChunk(chunk, index), executorService));
+            }
+            try {
+                partials = futures.stream().map(CompletableFuture::join).toList();
+            } catch (CompletionException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException("知识抽取失败", e.getCause());
+            }
+        }
+        ExtractionResult result = merge(partials);
+        log.info("知识抽取完成: chunks={}, entities={}, relations={}, costMs={}",
+                chunks.size(), result.getEntities().size(), result.getRelations().size(), System.currentTimeMillis() - begin);
+        return result;
+    }
+
+    /**
+     * 抽取单个片段（受并发许可约束，JSON不合法时重试）
+     */
+    private ExtractionResult extractChunk(String chunk, int index) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待知识抽取许可被中断", e);
+        }
+        try {
+            int maxAttempts = Math.max(1, extractionProperties.getMaxAttempts());
+            RuntimeException lastError = null;
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                try {
+                    String response = chatModel.chat(SystemMessage.from(SYSTEM_PROMPT), UserMessage.from("""
+                            请你把以下内容按照Systemprompt进行整合
+                            内容：%s
+                            """.formatted(chunk))).aiMessage().text();
+                    return Json.fromJson(stripCodeFence(response), ExtractionResult.class);
+                } catch (RuntimeException e) {
+                    lastError = e;
+                    log.warn("片段知识抽取失败: chunk={}, attempt={}/{}, error={}", index, attempt, maxAttempts, e.getMessage());
+                }
+            }
+            throw new RuntimeException("片段知识抽取失败: chunk=" + index, lastError);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 合并各片段的抽取结果
+     */
+    static ExtractionResult merge(List<ExtractionResult> partials) {
+        // 规范化键 -> 合并后的实体；规范化名称 -> 合并后实体名称（关系只有名称，按名称对齐）
+        Map<String, EntityDTO> entities = new LinkedHashMap<>();
+        Map<String, String> names = new LinkedHashMap<>();
+        for (ExtractionResult partial : partials) {
+            if (partial == null || partial.getEntities() == null) {
+                continue;
+            }
+            for (EntityDTO entity : partial.getEntities()) {
+                if (entity == null || entity.getName() == null || entity.getName().isBlank()) {
+                    continue;
+                }
+                EntityDTO merged = entities.computeIfAbsent(EntityResolver.key(entity.getName(), entity.getType()), key -> {
+                    EntityDTO first = new EntityDTO(entity.getName(), entity.getType(), entity.getDescription());
+                    first.setSentences(new ArrayList<>());
+                    return first;
+                });
+                if (entity.getDescription() != null
+                        && (merged.getDescription() == null || entity.getDescription().length() > merged.getDescription().length())) {
+                    merged.setDescription(entity.getDescription());
+                }
+                if (entity.getSentences() != null) {
+                    for (String sentence : entity.getSentences()) {
+                        if (merged.getSentences().size() >= MAX_SENTENCES) {
+                            break;
+                        }
+                        if (!merged.getSentences().contains(sentence)) {
+                            merged.getSentences().add(sentence);
+                        }
+                    }
+                }
+                names.putIfAbsent(EntityResolver.key(entity.getName(), null), merged.getName());
+            }
+        }
+        Map<String, RelationDTO> relations = new LinkedHashMap<>();
+        for (ExtractionResult partial : partials) {
+            if (partial == null || partial.getRelations() == null) {
+                continue;
+            }
+            for (RelationDTO relation : partial.getRelations()) {
+                if (relation == null || relation.getSubjectName() == null || relation.getObjectName() == null) {
+                    continue;
+                }
+                String subjectName = names.getOrDefault(EntityResolver.key(relation.getSubjectName(), null), relation.getSubjectName());
+                String objectName = names.getOrDefault(EntityResolver.key(relation.getObjectName(), null), relation.getObjectName());
+                String key = EntityResolver.key(subjectName, null) + "\u0001" + relation.getRelationType()
+                        + "\u0001" + EntityResolver.key(objectName, null);
+                relations.putIfAbsent(key, new RelationDTO(subjectName, relation.getSubjectType(), relation.getRelationType(),
+                        objectName, relation.getObjectType(), relation.getEvidenceText()));
+            }
+        }
+        return new ExtractionResult(new ArrayList<>(entities.values()), new ArrayList<>(relations.values()));
+    }
+
+    /**
+     * 去掉模型偶尔输出的 ```json 代码块标记，只保留最外层JSON对象
+     */
+    private static String stripCodeFence(String response) {
+        if (response == null) {
+            return "{}";
+        }
+        int start = response.indexOf('{');
+        int end = response.lastIndexOf('}');
+        return start >= 0 && end > start ? response.substring(start, end + 1) : response;
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.ddd.domain.agent.service.job;
+
+import com.example.ddd.common.utils.IdGenerator;
+import com.example.ddd.configuration.config.ImportJobProperties;
+import com.example.ddd.domain.agent.adapter.repository.IDocImportJobRepository;
+import com.example.ddd.domain.agent.model.entity.DocImportJobEntity;
+import com.example.ddd.domain.agent.model.valobj.DocImportJobStatus;
+import com.example.ddd.domain.agent.service.RagService;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文档导入任务服务
+ * - 提交：写入 doc_import_job 后立即返回，(ragId, docId) 相同的任务只保留一个
+ * - 执行：每个实例启动 workers 个工作线程，以 FOR UPDATE SKIP LOCKED 领取任务，多实例之间互不阻塞
+ * - 失败：按指数退避重新入队，尝试次数用尽后置为 FAILED；参数错误（如文档不存在）不重试
+ * - 失联：心跳超过 staleSeconds 的执行中任务由任意实例回收并重新入队
+ */
+@Slf4j
+@Singleton
+public class DocImportJobService {
+
+    @Inject
+    private IDocImportJobRepository docImportJobRepository;
+    @Inject
+    private DSLContextFactory dslContextFactory;
+    @Inject
+    private RagService ragService;
+    @Inject
+    private IdGenerator idGenerator;
+    @Inject
+    private ImportJobProperties importJobProperties;
+
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        int count = importJobProperties.getWorkers();
+        if (count <= 0) {
+            log.info("文档导入工作线程未启用");
+            return;
+        }
+        running = true;
+        workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("DocImportWorker-", 0).factory());
+        for (int i = 0; i < count; i++) {
+            String workerId = instanceId + "#" + i;
+            workers.execute(() -> loop(workerId));
+        }
+        log.info("文档导入工作线程已启动: instance={}, workers={}", instanceId, count);
+    }
+
+    @PreDestroy
+    void close() {
+        running = false;
+        if (workers != null) {
+            // 执行中的任务被中断后由失联回收重新入队
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交导入任务
+     *
+     * @param force 是否强制重新导入（已成功的任务也重新执行）
+     * @return 任务（已存在且未重新入队时返回现有任务）
+     */
+    public DocImportJobEntity submit(Long ragId, String docId, boolean force) {
+        if (ragId == null || docId == null || docId.isBlank()) {
+            throw new IllegalArgumentException("ragId和docId不能为空");
+        }
+        return dslContextFactory.callable(dsl -> {
+            DocImportJobEntity job = docImportJobRepository.enqueue(dsl, idGenerator.nextSnowflakeId(), ragId, docId,
+                    Math.max(1, importJobProperties.getMaxAttempts()), force);
+            if (job != null) {
+                log.info("文档导入任务已入队: jobId={}, ragId={}, docId={}", job.getId(), ragId, docId);
+                return job;
+            }
+            return docImportJobRepository.queryByKey(dsl, ragId, docId);
+        });
+    }
+
+    /**
+     * 查询任务
+     */
+    public DocImportJobEntity getJob(Long jobId) {
+        return dslContextFactory.callable(dsl -> docImportJobRepository.queryById(dsl, jobId));
+    }
+
+    /**
+     * 查询RAG下最近的任务
+     */
+    public List<DocImportJobEntity> listJobs(Long ragId, int limit) {
+        return dslContextFactory.callable(dsl -> docImportJobRepository.queryByRagId(dsl, ragId, limit));
+    }
+
+    private void loop(String workerId) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                recoverStale();
+                List<DocImportJobEntity> jobs = dslContextFactory.callable(dsl -> docImportJobRepository.claim(dsl, workerId, 1));
+                if (jobs.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(importJobProperties.getPollMillis());
+                    continue;
+                }
+                for (DocImportJobEntity job : jobs) {
+                    process(workerId, job);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("文档导入工作线程异常: workerId={}", workerId, e);
+                sleepQuietly(importJobProperties.getPollMillis());
+            }
+        }
+    }
+
+    private void process(String workerId, DocImportJobEntity job) {
+        long begin = System.currentTimeMillis();
+        log.info("开始执行文档导入任务: jobId={}, ragId={}, docId={}, attempt={}/{}",
+                job.getId(), job.getRagId(), job.getDocId(), job.getAttempts(), job.getMaxAttempts());
+        try {
+            ragService.importDocument(job.getRagId(), job.getDocId(), (progress, stage) -> {
+                boolean owned = dslContextFactory.callable(dsl ->
+                        docImportJobRepository.updateProgress(dsl, job.getId(), workerId, progress, stage));
+                if (!owned) {
+                    log.warn("文档导入任务已被回收，结果以重新执行为准: jobId={}, workerId={}", job.getId(), workerId);
+                }
+            });
+            dslContextFactory.callable(dsl -> docImportJobRepository.complete(dsl, job.getId(), workerId, "完成"));
+            log.info("文档导入任务完成: jobId={}, costMs={}", job.getId(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            boolean retryable = !isInvalidArgument(e) && job.getAttempts() < job.getMaxAttempts();
+            DocImportJobStatus status = retryable ? DocImportJobStatus.PENDING : DocImportJobStatus.FAILED;
+            long nextRunAt = System.currentTimeMillis() / 1000 + (retryable ? backoffSeconds(job.getAttempts()) : 0);
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            dslContextFactory.callable(dsl ->
+                    docImportJobRepository.fail(dsl, job.getId(), workerId, status, nextRunAt, error));
+            log.error("文档导入任务失败: jobId={}, attempt={}/{}, status={}, nextRunAt={}",
+                    job.getId(), job.getAttempts(), job.getMaxAttempts(), status, nextRunAt, e);
+        }
+    }
+
+    /**
+     * 回收失联任务（各工作线程每轮都会尝试，UPDATE 本身是幂等的）
+     */
+    private void recoverStale() {
+        int recovered = dslContextFactory.callable(dsl ->
+                docImportJobRepository.recoverStale(dsl, importJobProperties.getStaleSeconds()));
+        if (recovered > 0) {
+            log.warn("回收失联的文档导入任务: count={}", recovered);
+        }
+    }
+
+    /**
+     * 指数退避 + 最多20%的随机抖动，避免失败任务同时重试
+     */
+    private long backoffSeconds(int attempts) {
+        long base = Math.max(1, importJobProperties.getBackoffSeconds());
+        long backoff = Math.min(importJobProperties.getMaxBackoffSeconds(), base << Math.min(20, Math.max(0, attempts - 1)));
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+    }
+
+    private static boolean isInvalidArgument(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IllegalArgumentException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
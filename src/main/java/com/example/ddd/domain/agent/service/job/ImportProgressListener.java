@@ -0,0 +1,17 @@
+package com.example.ddd.domain.agent.service.job;
+
+/**
+ * 文档导入进度回调
+ */
+@FunctionalInterface
+public interface ImportProgressListener {
+
+    ImportProgressListener NONE = (progress, stage) -> {
+    };
+
+    /**
+     * @param progress 进度（0-100）
+     * @param stage    当前阶段
+     */
+    void onProgress(int progress, String stage);
+}
@@ -40,7 +40,7 @@ public class DocService {
         docPO.setType(request.getType() != null ? request.getType() : 0);
         docPO.setOwner(request.getUserId());
         DocPO result = dslContext.callable(dsl -> {
-            return docRepository.insert(dslContext, docPO);
+            return docRepository.insert(dsl, docPO);
         });
         return convertToView(result);
     }
@@ -0,0 +1,194 @@
+package com.example.ddd.domain.kg.service;
+
+import com.example.ddd.common.utils.IdGenerator;
+import com.example.ddd.domain.agent.model.valobj.EntityDTO;
+import com.example.ddd.infrastructure.adapter.repository.KgEntityRepository;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import com.example.ddd.infrastructure.dao.po.KgEntityPO;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.DSLContext;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 知识图谱实体消歧
+ * 抽取出的实体先按「规范化名称 + 类型」在内存索引中精确匹配，未命中再按向量在同类型实体中取最近邻（相似度不低于阈值），
+ * 都未命中才分配新ID，使图谱规模随概念数而不是文档数增长
+ * - 索引只保存 id/name/type，启动时从 kg_entity 预热，之后随实体新增、修改、删除增量维护
+ * - 向量兜底走 kg_entity 的 HNSW 索引，不在内存中保存实体向量
+ */
+@Slf4j
+@Singleton
+public class EntityResolver {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Value("${kg.resolver.enabled:true}")
+    private boolean enabled;
+    @Value("${kg.resolver.similarity-threshold:0.92}")
+    private double similarityThreshold;
+
+    @Inject
+    private DSLContextFactory dslContextFactory;
+    @Inject
+    private KgEntityRepository kgEntityRepository;
+    @Inject
+    private IdGenerator idGenerator;
+
+    /**
+     * 规范化键 -> 规范实体
+     */
+    private final Map<String, Canonical> index = new ConcurrentHashMap<>();
+    private volatile boolean warmed;
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        Thread.ofVirtual().name("EntityResolverWarmUp").start(this::warmUp);
+    }
+
+    /**
+     * 从 kg_entity 加载索引，失败时下次消歧前重试
+     */
+    public void warmUp() {
+        if (warmed) {
+            return;
+        }
+        synchronized (this) {
+            if (warmed) {
+                return;
+            }
+            try {
+                long begin = System.currentTimeMillis();
+                List<KgEntityPO> entities = dslContextFactory.callable(dsl -> kgEntityRepository.queryAllKeys(dsl));
+                // 已有重复数据时保留ID最小的实体作为规范实体
+                for (KgEntityPO entity : entities) {
+                    index.putIfAbsent(key(entity.getName(), entity.getType()),
+                            new Canonical(entity.getId(), entity.getName(), entity.getType()));
+                }
+                warmed = true;
+                log.info("实体消歧索引预热完成: entityCount={}, keyCount={}, costMs={}",
+                        entities.size(), index.size(), System.currentTimeMillis() - begin);
+            } catch (Exception e) {
+                log.warn("实体消歧索引预热失败，将在下次消歧时重试: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 将抽取出的实体映射到规范实体
+     *
+     * @param dsl        当前工作单元（向量兜底查询使用）
+     * @param entities   抽取出的实体
+     * @param embeddings 实体名称向量，与 entities 一一对应（可为null，为null时不做向量兜底）
+     * @return 与 entities 顺序一致的消歧结果，同一批次中键相同的实体得到同一个结果
+     */
+    public List<Resolution> resolve(DSLContext dsl, List<EntityDTO> entities, List<float[]> embeddings) {
+        warmUp();
+        Resolution[] resolutions = new Resolution[entities.size()];
+        Map<String, Resolution> batch = new HashMap<>();
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < entities.size(); i++) {
+            EntityDTO entity = entities.get(i);
+            String key = key(entity.getName(), entity.getType());
+            Resolution resolution = batch.get(key);
+            if (resolution == null && enabled) {
+                Canonical canonical = index.get(key);
+                if (canonical != null) {
+                    resolution = new Resolution(canonical.id(), canonical.name(), canonical.type(), false);
+                    batch.put(key, resolution);
+                }
+            }
+            if (resolution != null) {
+                resolutions[i] = resolution;
+            } else if (!batch.containsKey(key)) {
+                batch.put(key, null);
+                pending.add(i);
+            }
+        }
+
+        List<KgEntityPO> nearest = enabled && embeddings != null && !pending.isEmpty()
+                ? kgEntityRepository.queryNearestByType(dsl,
+                pending.stream().map(embeddings::get).toList(),
+                pending.stream().map(i -> normalizeType(entities.get(i).getType())).toList(),
+                similarityThreshold)
+                : null;
+        int matched = 0;
+        for (int p = 0; p < pending.size(); p++) {
+            int i = pending.get(p);
+            EntityDTO entity = entities.get(i);
+            KgEntityPO match = nearest != null ? nearest.get(p) : null;
+            Resolution resolution;
+            if (match != null) {
+                resolution = new Resolution(match.getId(), match.getName(), match.getType(), false);
+                // 别名指向已存在的实体，直接登记，下次走精确匹配
+                index.putIfAbsent(key(entity.getName(), entity.getType()),
+                        new Canonical(match.getId(), match.getName(), match.getType()));
+                matched++;
+            } else {
+                resolution = new Resolution(idGenerator.nextSnowflakeId(), entity.getName(), entity.getType(), true);
+            }
+            batch.put(key(entity.getName(), entity.getType()), resolution);
+        }
+        for (int i = 0; i < resolutions.length; i++) {
+            if (resolutions[i] == null) {
+                resolutions[i] = batch.get(key(entities.get(i).getName(), entities.get(i).getType()));
+            }
+        }
+        log.debug("实体消歧完成: total={}, exact={}, similar={}, created={}",
+                entities.size(), entities.size() - pending.size(), matched, pending.size() - matched);
+        return List.of(resolutions);
+    }
+
+    /**
+     * 登记实体（新增实体入库成功后调用）
+     */
+    public void register(Long id, String name, String type) {
+        index.putIfAbsent(key(name, type), new Canonical(id, name, type));
+    }
+
+    /**
+     * 移除实体及其别名键（实体删除或改名后调用）
+     */
+    public void unregister(Long id) {
+        index.values().removeIf(canonical -> canonical.id().equals(id));
+    }
+
+    /**
+     * 规范化键：NFKC + 小写 + 合并空白，类型同样小写
+     */
+    public static String key(String name, String type) {
+        String normalized = name == null ? "" : WHITESPACE.matcher(
+                Normalizer.normalize(name, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+        return normalizeType(type) + "\u0000" + normalized;
+    }
+
+    private static String normalizeType(String type) {
+        return type == null ? "" : type.strip().toLowerCase(Locale.ROOT);
+    }
+
+    private record Canonical(Long id, String name, String type) {
+    }
+
+    /**
+     * 消歧结果
+     *
+     * @param id      规范实体ID
+     * @param name    规范实体名称
+     * @param type    规范实体类型
+     * @param created 是否为新实体（需要入库）
+     */
+    public record Resolution(Long id, String name, String type, boolean created) {
+    }
+}
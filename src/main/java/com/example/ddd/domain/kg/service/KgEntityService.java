@@ -1,6 +1,7 @@
 package com.example.ddd.domain.kg.service;
 
 import com.example.ddd.common.utils.IdGenerator;
+import com.example.ddd.domain.agent.service.embedding.EmbeddingService;
 import com.example.ddd.infrastructure.adapter.repository.KgEntityRepository;
 import com.example.ddd.infrastructure.config.DSLContextFactory;
 import com.example.ddd.infrastructure.dao.IKgEntityDao;
@@ -27,6 +28,10 @@ public class KgEntityService {
     private IKgEntityDao kgEntityDao;
     @Inject
     private IdGenerator idGenerator;
+    @Inject
+    private EmbeddingService embeddingService;
+    @Inject
+    private EntityResolver entityResolver;
 
     /**
      * 查询所有知识图谱实体
@@ -65,8 +70,10 @@ public class KgEntityService {
         kgEntityPO.setName(request.getName());
         kgEntityPO.setType(request.getType());
         kgEntityPO.setDescription(request.getDescription());
-        kgEntityPO.setEmbedding(request.getEmbedding());
-        KgEntityPO result = dslContext.callable(dsl -> kgEntityRepository.insert(dslContext, kgEntityPO));
+        // 未传入向量时按实体名称生成
+        kgEntityPO.setEmbedding(request.getEmbedding() != null ? request.getEmbedding() : embeddingService.embed(request.getName()));
+        KgEntityPO result = dslContext.callable(dsl -> kgEntityRepository.insert(dsl, kgEntityPO));
+        entityResolver.register(result.getId(), result.getName(), result.getType());
         return convertToView(result);
     }
 
@@ -93,12 +100,17 @@ public class KgEntityService {
         }
         if (request.getEmbedding() != null) {
             kgEntityPO.setEmbedding(request.getEmbedding());
+        } else if (request.getName() != null) {
+            // 名称变化后重新生成向量
+            kgEntityPO.setEmbedding(embeddingService.embed(request.getName()));
         }
 
         dslContext.callable(dsl -> {
             kgEntityDao.update(dsl, kgEntityPO);
             return null;
         });
+        entityResolver.unregister(id);
+        entityResolver.register(id, kgEntityPO.getName(), kgEntityPO.getType());
 
         return convertToView(kgEntityPO);
     }
@@ -111,6 +123,7 @@ public class KgEntityService {
             kgEntityDao.deleteById(dsl, id);
             return null;
         });
+        entityResolver.unregister(id);
     }
 
     /**
@@ -0,0 +1,65 @@
+package com.example.ddd.infrastructure.adapter.repository;
+
+import com.example.ddd.domain.agent.adapter.repository.IAgentMemoryRepository;
+import com.example.ddd.domain.agent.service.execute.memory.InMemory;
+import com.example.ddd.infrastructure.dao.IAgentMemoryDao;
+import com.example.ddd.infrastructure.dao.po.AgentMemoryPO;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+
+import java.util.List;
+
+/**
+ * 对话记忆仓储实现
+ * 对话消息以 memory_type = 'CONVERSATION' 存入 agent_memory：session_id 为会话key，memory_key 为角色，memory_value 为内容
+ */
+@Singleton
+public class AgentMemoryRepository implements IAgentMemoryRepository {
+
+    private static final String MEMORY_TYPE_CONVERSATION = "CONVERSATION";
+
+    @Inject
+    private IAgentMemoryDao agentMemoryDao;
+
+    @Override
+    public int saveMessages(DSLContext dslContext, List<InMemory.PendingMessage> messages, Long expiresAt) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        List<AgentMemoryPO> list = messages.stream()
+                .map(pending -> {
+                    AgentMemoryPO po = new AgentMemoryPO();
+                    po.setSessionId(pending.sessionKey());
+                    po.setMemoryKey(pending.message().getRole());
+                    po.setMemoryValue(pending.message().getContent());
+                    po.setMemoryType(MEMORY_TYPE_CONVERSATION);
+                    po.setExpiresAt(expiresAt);
+                    po.setCreatedAt(pending.message().getTimestamp() / 1000); // 秒级时间戳
+                    return po;
+                })
+                .toList();
+        return agentMemoryDao.batchInsert(dslContext, list);
+    }
+
+    @Override
+    public List<InMemory.ConversationMessage> queryRecentMessages(DSLContext dslContext, String sessionKey, int limit) {
+        return agentMemoryDao.queryRecent(dslContext, sessionKey, MEMORY_TYPE_CONVERSATION, now(), limit).stream()
+                .map(po -> new InMemory.ConversationMessage(po.getMemoryKey(), po.getMemoryValue(), po.getCreatedAt() * 1000))
+                .toList();
+    }
+
+    @Override
+    public int deleteMessages(DSLContext dslContext, String sessionKey) {
+        return agentMemoryDao.deleteBySessionId(dslContext, sessionKey, MEMORY_TYPE_CONVERSATION);
+    }
+
+    @Override
+    public int deleteExpiredMessages(DSLContext dslContext) {
+        return agentMemoryDao.deleteExpired(dslContext, MEMORY_TYPE_CONVERSATION, now());
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000; // 秒级时间戳
+    }
+}
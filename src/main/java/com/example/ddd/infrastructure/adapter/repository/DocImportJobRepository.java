@@ -0,0 +1,110 @@
+package com.example.ddd.infrastructure.adapter.repository;
+
+import com.example.ddd.domain.agent.adapter.repository.IDocImportJobRepository;
+import com.example.ddd.domain.agent.model.entity.DocImportJobEntity;
+import com.example.ddd.domain.agent.model.valobj.DocImportJobStatus;
+import com.example.ddd.infrastructure.dao.IDocImportJobDao;
+import com.example.ddd.infrastructure.dao.po.DocImportJobPO;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+
+import java.util.List;
+
+/**
+ * 文档导入任务仓储实现
+ */
+@Singleton
+public class DocImportJobRepository implements IDocImportJobRepository {
+
+    /**
+     * last_error 最大保存长度
+     */
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    @Inject
+    private IDocImportJobDao docImportJobDao;
+
+    @Override
+    public DocImportJobEntity enqueue(DSLContext dslContext, Long id, Long ragId, String docId, int maxAttempts, boolean force) {
+        DocImportJobPO po = docImportJobDao.enqueue(dslContext, id, ragId, docId, maxAttempts, now(), force);
+        return po != null ? convertToEntity(po) : null;
+    }
+
+    @Override
+    public List<DocImportJobEntity> claim(DSLContext dslContext, String workerId, int limit) {
+        return docImportJobDao.claim(dslContext, workerId, limit, now()).stream()
+                .map(this::convertToEntity)
+                .toList();
+    }
+
+    @Override
+    public boolean updateProgress(DSLContext dslContext, Long id, String workerId, int progress, String stage) {
+        return docImportJobDao.updateProgress(dslContext, id, workerId, progress, stage, now()) > 0;
+    }
+
+    @Override
+    public boolean complete(DSLContext dslContext, Long id, String workerId, String stage) {
+        return docImportJobDao.complete(dslContext, id, workerId, stage, now()) > 0;
+    }
+
+    @Override
+    public boolean fail(DSLContext dslContext, Long id, String workerId, DocImportJobStatus status, long nextRunAt, String error) {
+        return docImportJobDao.fail(dslContext, id, workerId, status.name(), nextRunAt, truncate(error), now()) > 0;
+    }
+
+    @Override
+    public int recoverStale(DSLContext dslContext, long staleSeconds) {
+        long now = now();
+        return docImportJobDao.recoverStale(dslContext, now - staleSeconds, "工作线程心跳超时，任务已重新入队", now);
+    }
+
+    @Override
+    public DocImportJobEntity queryById(DSLContext dslContext, Long id) {
+        DocImportJobPO po = docImportJobDao.queryById(dslContext, id);
+        return po != null ? convertToEntity(po) : null;
+    }
+
+    @Override
+    public DocImportJobEntity queryByKey(DSLContext dslContext, Long ragId, String docId) {
+        DocImportJobPO po = docImportJobDao.queryByKey(dslContext, ragId, docId);
+        return po != null ? convertToEntity(po) : null;
+    }
+
+    @Override
+    public List<DocImportJobEntity> queryByRagId(DSLContext dslContext, Long ragId, int limit) {
+        return docImportJobDao.queryByRagId(dslContext, ragId, limit).stream()
+                .map(this::convertToEntity)
+                .toList();
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000; // 秒级时间戳
+    }
+
+    private static String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    private DocImportJobEntity convertToEntity(DocImportJobPO po) {
+        DocImportJobEntity entity = new DocImportJobEntity();
+        entity.setId(po.getId());
+        entity.setRagId(po.getRagId());
+        entity.setDocId(po.getDocId());
+        entity.setStatus(DocImportJobStatus.valueOf(po.getStatus()));
+        entity.setProgress(po.getProgress());
+        entity.setStage(po.getStage());
+        entity.setAttempts(po.getAttempts());
+        entity.setMaxAttempts(po.getMaxAttempts());
+        entity.setNextRunAt(po.getNextRunAt());
+        entity.setLockedBy(po.getLockedBy());
+        entity.setLockedAt(po.getLockedAt());
+        entity.setLastError(po.getLastError());
+        entity.setCreatedAt(po.getCreatedAt());
+        entity.setUpdatedAt(po.getUpdatedAt());
+        return entity;
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.ddd.infrastructure.adapter.repository;
 
-import com.example.ddd.infrastructure.config.DSLContextFactory;
 import com.example.ddd.infrastructure.dao.IDocDao;
 import com.example.ddd.infrastructure.dao.po.DocPO;
 import com.example.ddd.trigger.response.DocView;
@@ -40,7 +39,7 @@ public class DocRepository {
         return view;
     }
 
-    public DocPO insert(DSLContextFactory dslContext, DocPO docPO) {
-        return docDao.insert(dslContext.createDsl(), docPO);
+    public DocPO insert(DSLContext dsl, DocPO docPO) {
+        return docDao.insert(dsl, docPO);
     }
 }
@@ -0,0 +1,36 @@
+package com.example.ddd.infrastructure.adapter.repository;
+
+import com.example.ddd.domain.agent.adapter.repository.IEmbeddingCacheRepository;
+import com.example.ddd.infrastructure.dao.IEmbeddingCacheDao;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 向量缓存仓储实现
+ */
+@Singleton
+public class EmbeddingCacheRepository implements IEmbeddingCacheRepository {
+
+    @Inject
+    private IEmbeddingCacheDao embeddingCacheDao;
+
+    @Override
+    public Map<String, float[]> queryByHashes(DSLContext dslContext, String model, Collection<String> textHashes) {
+        if (textHashes == null || textHashes.isEmpty()) {
+            return Map.of();
+        }
+        return embeddingCacheDao.queryByHashes(dslContext, model, textHashes);
+    }
+
+    @Override
+    public int batchInsert(DSLContext dslContext, String model, Map<String, float[]> embeddings) {
+        if (embeddings == null || embeddings.isEmpty()) {
+            return 0;
+        }
+        return embeddingCacheDao.batchInsert(dslContext, model, embeddings);
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.ddd.infrastructure.adapter.repository;
 
-import com.example.ddd.infrastructure.config.DSLContextFactory;
 import com.example.ddd.infrastructure.dao.IKgEntityDao;
 import com.example.ddd.infrastructure.dao.po.KgEntityPO;
 import com.example.ddd.trigger.response.KgEntityView;
@@ -45,8 +44,8 @@ public class KgEntityRepository {
         return kgEntityPOList.stream().map(this::convertToView).toList();
     }
 
-    public KgEntityPO insert(DSLContextFactory dslContext, KgEntityPO kgEntityPO) {
-        return kgEntityDao.insert(dslContext.createDsl(), kgEntityPO);
+    public KgEntityPO insert(DSLContext dsl, KgEntityPO kgEntityPO) {
+        return kgEntityDao.insert(dsl, kgEntityPO);
     }
 
     private KgEntityView convertToView(KgEntityPO kgEntityPO) {
@@ -69,6 +68,20 @@ public class KgEntityRepository {
         return kgEntityDao.similaritySearch(dsl, queryEmbedding, limit, similarityThreshold);
     }
 
+    /**
+     * 查询所有实体的 id/name/type，用于预热实体消歧索引
+     */
+    public List<KgEntityPO> queryAllKeys(DSLContext dsl) {
+        return kgEntityDao.queryAllKeys(dsl);
+    }
+
+    /**
+     * 按类型查询每个向量的最近邻实体，未达到阈值的位置为null
+     */
+    public List<KgEntityPO> queryNearestByType(DSLContext dsl, List<float[]> embeddings, List<String> types, double similarityThreshold) {
+        return kgEntityDao.queryNearestByType(dsl, embeddings, types, similarityThreshold);
+    }
+
     /**
      * 查询所有实体
      */
@@ -7,8 +7,10 @@ import jakarta.inject.Singleton;
 import org.neo4j.driver.Values;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 知识图谱关系仓储
@@ -16,6 +18,11 @@ import java.util.Map;
  */
 @Singleton
 public class KgRelationRepository {
+
+    /**
+     * 单条 UNWIND 语句的最大行数
+     */
+    private static final int UNWIND_BATCH_SIZE = 1000;
     
     @Inject
     private Neo4jDriverFactory neo4jDriverFactory;
@@ -47,6 +54,7 @@ public class KgRelationRepository {
 
     /**
      * 创建文档到实体的关系（在Neo4j中），并存储实体出现的句子
+     * 实体节点和文档->实体关系各用一条 UNWIND 语句批量写入，按 UNWIND_BATCH_SIZE 分批
      * 
      * @param docId 文档ID
      * @param ragId RAG ID（可选，用于关联文档和RAG）
@@ -62,7 +70,21 @@ public class KgRelationRepository {
         if (entityIds == null || entityIds.isEmpty()) {
             return;
         }
-        
+        // 实体ID -> 名称的反向索引，避免每个实体遍历一次entityIdMap
+        Map<Long, String> entityNameMap = new HashMap<>(entityIdMap.size() * 2);
+        entityIdMap.forEach((name, id) -> entityNameMap.putIfAbsent(id, name));
+
+        List<Map<String, Object>> rows = new ArrayList<>(entityIds.size());
+        for (Long entityId : entityIds) {
+            String entityName = entityNameMap.get(entityId);
+            Map<String, Object> row = new HashMap<>();
+            row.put("entityId", entityId);
+            row.put("name", entityName);
+            row.put("type", entityName != null ? entityTypeMap.getOrDefault(entityName, "Unknown") : null);
+            row.put("sentences", toJsonArray(entitySentencesMap.getOrDefault(entityId, List.of())));
+            rows.add(row);
+        }
+
         neo4jDriverFactory.execute(tx -> {
             // 创建或更新文档节点，存储ragId
             if (ragId != null) {
@@ -80,61 +102,20 @@ public class KgRelationRepository {
                     Values.parameters("docId", docId)
                 );
             }
-            
-            // 为每个实体创建文档->实体的关系，并存储句子
-            // 先确保实体节点存在（使用MERGE）
-            for (Long entityId : entityIds) {
-                // 从entityIdMap中找到对应的实体名称和类型
-                String entityName = null;
-                String entityType = "Unknown";
-                for (Map.Entry<String, Long> entry : entityIdMap.entrySet()) {
-                    if (entry.getValue().equals(entityId)) {
-                        entityName = entry.getKey();
-                        entityType = entityTypeMap.getOrDefault(entityName, "Unknown");
-                        break;
-                    }
-                }
-                
-                // 如果找到了实体名称，先创建或更新实体节点
-                if (entityName != null) {
-                    tx.run("""
-                        MERGE (e:Entity {id: $entityId})
-                        SET e.name = $name, e.type = $type
-                        """,
-                        Values.parameters(
-                            "entityId", entityId,
-                            "name", entityName,
-                            "type", entityType
-                        )
-                    );
-                } else {
-                    // 如果找不到实体名称，至少确保实体节点存在
-                    tx.run("""
-                        MERGE (e:Entity {id: $entityId})
-                        """,
-                        Values.parameters("entityId", entityId)
-                    );
-                }
-                
-                // 创建文档->实体的关系
-                List<String> sentences = entitySentencesMap.getOrDefault(entityId, List.of());
-                String sentencesJson = sentences.isEmpty() ? "[]" : 
-                    "[" + sentences.stream()
-                        .map(s -> "\"" + s.replace("\"", "\\\"").replace("\n", "\\n") + "\"")
-                        .collect(java.util.stream.Collectors.joining(",")) + "]";
-                
+
+            // 确保实体节点存在（找不到名称的实体只MERGE节点，不覆盖已有属性），再创建文档->实体的关系
+            for (List<Map<String, Object>> batch : partition(rows)) {
                 tx.run("""
                     MATCH (d:Document {id: $docId})
-                    MATCH (e:Entity {id: $entityId})
+                    UNWIND $rows AS row
+                    MERGE (e:Entity {id: row.entityId})
+                    FOREACH (_ IN CASE WHEN row.name IS NULL THEN [] ELSE [1] END |
+                        SET e.name = row.name, e.type = row.type)
                     MERGE (d)-[r:CONTAINS_ENTITY]->(e)
                     SET r.createdAt = timestamp(),
-                        r.sentences = $sentences
+                        r.sentences = row.sentences
                     """,
-                    Values.parameters(
-                        "docId", docId,
-                        "entityId", entityId,
-                        "sentences", sentencesJson
-                    )
+                    Values.parameters("docId", docId, "rows", batch)
                 );
             }
         });
@@ -142,6 +123,7 @@ public class KgRelationRepository {
 
     /**
      * 批量创建实体节点和关系
+     * 实体节点和实体关系各用一条 UNWIND 语句批量写入，按 UNWIND_BATCH_SIZE 分批
      * 
      * @param entityIdMap 实体名称到ID的映射
      * @param entityTypeMap 实体名称到类型的映射
@@ -153,46 +135,75 @@ public class KgRelationRepository {
         if (relations == null || relations.isEmpty()) {
             return;
         }
+        List<Map<String, Object>> entityRows = new ArrayList<>(entityIdMap.size());
+        for (Map.Entry<String, Long> entry : entityIdMap.entrySet()) {
+            entityRows.add(Map.of(
+                    "id", entry.getValue(),
+                    "name", entry.getKey(),
+                    "type", entityTypeMap.getOrDefault(entry.getKey(), "Unknown")
+            ));
+        }
+        List<Map<String, Object>> relationRows = new ArrayList<>(relations.size());
+        for (RelationDTO relation : relations) {
+            Long subjectId = entityIdMap.get(relation.getSubjectName());
+            Long objectId = entityIdMap.get(relation.getObjectName());
+            if (subjectId != null && objectId != null && relation.getRelationType() != null) {
+                relationRows.add(Map.of(
+                        "subjectId", subjectId,
+                        "objectId", objectId,
+                        "relationType", relation.getRelationType(),
+                        "evidence", relation.getEvidenceText() != null ? relation.getEvidenceText() : ""
+                ));
+            }
+        }
         neo4jDriverFactory.execute(tx -> {
-            for (Map.Entry<String, Long> entry : entityIdMap.entrySet()) {
-                String entityName = entry.getKey();
-                Long entityId = entry.getValue();
-                String entityType = entityTypeMap.getOrDefault(entityName, "Unknown");
+            // Entity.id 有唯一约束，按id合并；已存在的节点保留规范名称，不被抽取出的别名覆盖
+            for (List<Map<String, Object>> batch : partition(entityRows)) {
                 tx.run("""
-                    MERGE (e:Entity {id: $id, name: $name})
-                    SET e.type = $type
+                    UNWIND $rows AS row
+                    MERGE (e:Entity {id: row.id})
+                    ON CREATE SET e.name = row.name, e.type = row.type
                     """,
-                    Values.parameters(
-                        "id", entityId,
-                        "name", entityName,
-                        "type", entityType
-                    )
+                    Values.parameters("rows", batch)
                 );
             }
-            for (RelationDTO relation : relations) {
-                Long subjectId = entityIdMap.get(relation.getSubjectName());
-                Long objectId = entityIdMap.get(relation.getObjectName());
-                if (subjectId != null && objectId != null) {
-                    String relationType = relation.getRelationType();
-                    String evidence = relation.getEvidenceText() != null ? relation.getEvidenceText() : "";
-                    tx.run("""
-                        MATCH (s:Entity {id: $subjectId})
-                        MATCH (o:Entity {id: $objectId})
-                        MERGE (s)-[r:RELATION {type: $relationType, evidence: $evidence}]->(o)
-                        SET r.createdAt = timestamp()
-                        """,
-                        Values.parameters(
-                            "subjectId", subjectId,
-                            "objectId", objectId,
-                            "relationType", relationType,
-                            "evidence", evidence
-                        )
-                    );
-                }
+            for (List<Map<String, Object>> batch : partition(relationRows)) {
+                tx.run("""
+                    UNWIND $rows AS row
+                    MATCH (s:Entity {id: row.subjectId})
+                    MATCH (o:Entity {id: row.objectId})
+                    MERGE (s)-[r:RELATION {type: row.relationType, evidence: row.evidence}]->(o)
+                    SET r.createdAt = timestamp()
+                    """,
+                    Values.parameters("rows", batch)
+                );
             }
         });
     }
 
+    /**
+     * 按 UNWIND_BATCH_SIZE 切分参数行，避免单条语句的参数过大
+     */
+    private static List<List<Map<String, Object>>> partition(List<Map<String, Object>> rows) {
+        List<List<Map<String, Object>>> batches = new ArrayList<>();
+        for (int from = 0; from < rows.size(); from += UNWIND_BATCH_SIZE) {
+            batches.add(rows.subList(from, Math.min(from + UNWIND_BATCH_SIZE, rows.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * 句子列表转JSON数组字符串（与查询时的解析格式保持一致）
+     */
+    private static String toJsonArray(List<String> sentences) {
+        if (sentences.isEmpty()) {
+            return "[]";
+        }
+        return "[" + sentences.stream()
+                .map(s -> "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"")
+                .collect(Collectors.joining(",")) + "]";
+    }
+
     /**
      * 根据文档ID查询关联的实体和句子（已废弃，改用从PostgreSQL查询实体信息）
      * 
@@ -8,10 +8,25 @@ import com.example.ddd.infrastructure.dao.po.AgentPO;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.example.jooq.tables.Agent.AGENT;
+import static com.example.jooq.tables.AgentMcp.AGENT_MCP;
+import static com.example.jooq.tables.AgentModel.AGENT_MODEL;
+import static com.example.jooq.tables.AgentRag.AGENT_RAG;
+import static com.example.jooq.tables.Mcp.MCP;
+import static com.example.jooq.tables.Model.MODEL;
+import static com.example.jooq.tables.Orchestrator.ORCHESTRATOR;
+import static com.example.jooq.tables.OrchestratorAgent.ORCHESTRATOR_AGENT;
+import static com.example.jooq.tables.Rag.RAG;
+
 /**
  * Orchestrator仓储实现（原Agent仓储）
  */
@@ -52,6 +67,60 @@ public class OrchestratorRepository implements IOrchestratorRepository {
         return agentDao.deleteById(dslContext, id);
     }
 
+    /**
+     * 查询Orchestrator配置指纹
+     * 一次查询取出 orchestrator、各agent关联（agent_id, role, seq）及其 model/rag/mcp 关联的 (id, updated_at) 元组，
+     * 排序后取SHA-256：关联表没有updated_at，交换角色、改为关联其他（包括更旧的）配置时元组本身会变化
+     */
+    @Override
+    public String queryConfigFingerprint(DSLContext dslContext, Long orchestratorId) {
+        var agentIds = DSL.select(ORCHESTRATOR_AGENT.AGENT_ID)
+                .from(ORCHESTRATOR_AGENT)
+                .where(ORCHESTRATOR_AGENT.ORCHESTRATOR_ID.eq(orchestratorId));
+
+        var tuples = DSL.select(DSL.inline("orchestrator"), ORCHESTRATOR.ID, DSL.castNull(Long.class),
+                        DSL.castNull(Long.class), ORCHESTRATOR.UPDATED_AT)
+                .from(ORCHESTRATOR)
+                .where(ORCHESTRATOR.ID.eq(orchestratorId))
+                .unionAll(DSL.select(DSL.inline("agent"), ORCHESTRATOR_AGENT.AGENT_ID, ORCHESTRATOR_AGENT.ROLE,
+                                ORCHESTRATOR_AGENT.SEQ.cast(Long.class), AGENT.UPDATED_AT)
+                        .from(ORCHESTRATOR_AGENT)
+                        .leftJoin(AGENT).on(AGENT.ID.eq(ORCHESTRATOR_AGENT.AGENT_ID))
+                        .where(ORCHESTRATOR_AGENT.ORCHESTRATOR_ID.eq(orchestratorId)))
+                .unionAll(DSL.select(DSL.inline("model"), AGENT_MODEL.AGENT_ID, AGENT_MODEL.MODEL_ID,
+                                DSL.castNull(Long.class), MODEL.UPDATED_AT)
+                        .from(AGENT_MODEL)
+                        .leftJoin(MODEL).on(MODEL.ID.eq(AGENT_MODEL.MODEL_ID))
+                        .where(AGENT_MODEL.AGENT_ID.in(agentIds)))
+                .unionAll(DSL.select(DSL.inline("rag"), AGENT_RAG.AGENT_ID, AGENT_RAG.RAG_ID,
+                                DSL.castNull(Long.class), RAG.UPDATED_AT)
+                        .from(AGENT_RAG)
+                        .leftJoin(RAG).on(RAG.ID.eq(AGENT_RAG.RAG_ID))
+                        .where(AGENT_RAG.AGENT_ID.in(agentIds)))
+                .unionAll(DSL.select(DSL.inline("mcp"), AGENT_MCP.AGENT_ID, AGENT_MCP.MCP_ID,
+                                DSL.castNull(Long.class), MCP.UPDATED_AT)
+                        .from(AGENT_MCP)
+                        .leftJoin(MCP).on(MCP.ID.eq(AGENT_MCP.MCP_ID))
+                        .where(AGENT_MCP.AGENT_ID.in(agentIds)));
+
+        List<String> rows = dslContext.fetch(tuples).map(record -> record.intoList().stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(",")));
+        if (rows.isEmpty()) {
+            return null;
+        }
+        return sha256(rows.stream().sorted().collect(Collectors.joining("|")));
+    }
+
+    private static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
     // 转换方法
     private AgentPO convertToPO(OrchestratorEntity entity) {
         if (entity == null) return null;
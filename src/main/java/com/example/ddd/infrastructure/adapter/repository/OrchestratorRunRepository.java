@@ -0,0 +1,126 @@
+package com.example.ddd.infrastructure.adapter.repository;
+
+import com.example.ddd.common.utils.JSON;
+import com.example.ddd.domain.agent.adapter.repository.IOrchestratorRunRepository;
+import com.example.ddd.domain.agent.model.entity.OrchestratorMessageEntity;
+import com.example.ddd.domain.agent.model.entity.OrchestratorRunEntity;
+import com.example.ddd.infrastructure.dao.IOrchestratorRunDao;
+import com.example.ddd.infrastructure.dao.po.OrchestratorMessagePO;
+import com.example.ddd.infrastructure.dao.po.OrchestratorRunPO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+import org.jooq.JSONB;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orchestrator执行记录仓储实现
+ * 表中时间为秒级时间戳，毫秒级的耗时与事件时间放在 metadata 中供事后分析
+ */
+@Singleton
+public class OrchestratorRunRepository implements IOrchestratorRunRepository {
+
+    @Inject
+    private IOrchestratorRunDao orchestratorRunDao;
+
+    @Override
+    public int saveRuns(DSLContext dslContext, List<OrchestratorRunEntity> runs) {
+        if (runs == null || runs.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis() / 1000; // 秒级时间戳
+        List<OrchestratorRunPO> list = runs.stream()
+                .map(run -> convertToPO(run, now))
+                .toList();
+        return orchestratorRunDao.batchSaveRuns(dslContext, list);
+    }
+
+    @Override
+    public int saveMessages(DSLContext dslContext, List<OrchestratorMessageEntity> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        List<OrchestratorMessagePO> list = messages.stream()
+                .map(this::convertToPO)
+                .toList();
+        return orchestratorRunDao.batchInsertMessages(dslContext, list);
+    }
+
+    @Override
+    public List<OrchestratorMessageEntity> queryMessages(DSLContext dslContext, Long runId, int afterSequence, int beforeSequence, int limit) {
+        return orchestratorRunDao.queryMessages(dslContext, runId, afterSequence, beforeSequence, limit).stream()
+                .map(this::convertToEntity)
+                .toList();
+    }
+
+    private OrchestratorRunPO convertToPO(OrchestratorRunEntity run, long now) {
+        OrchestratorRunPO po = new OrchestratorRunPO();
+        po.setId(run.getId());
+        po.setOrchestratorId(run.getOrchestratorId());
+        po.setSessionId(run.getSessionId());
+        po.setUserId(run.getUserId());
+        po.setGoal(run.getGoal());
+        po.setStatus(run.getStatus().name());
+        po.setStartTime(run.getStartTime() / 1000);
+        po.setEndTime(run.getEndTime() != null ? run.getEndTime() / 1000 : null);
+        po.setTotalTasks(run.getTotalTasks());
+        po.setCompletedTasks(run.getCompletedTasks());
+        po.setExecutionMode(run.getExecutionMode());
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("startTimeMillis", run.getStartTime());
+        if (run.getEndTime() != null) {
+            metadata.put("durationMillis", run.getEndTime() - run.getStartTime());
+        }
+        metadata.put("messageCount", run.getMessageCount());
+        metadata.put("sampledCount", run.getSampledCount());
+        po.setMetadata(JSONB.valueOf(JSON.toJSON(metadata)));
+        po.setCreatedAt(run.getStartTime() / 1000);
+        po.setUpdatedAt(now);
+        return po;
+    }
+
+    private OrchestratorMessagePO convertToPO(OrchestratorMessageEntity message) {
+        OrchestratorMessagePO po = new OrchestratorMessagePO();
+        po.setRunId(message.getRunId());
+        po.setTaskId(message.getTaskId());
+        po.setAgentRole(message.getAgentRole());
+        po.setMessageType(message.getMessageType());
+        po.setContent(message.getContent());
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("timestampMillis", message.getTimestamp());
+        if (message.getMessage() != null) {
+            metadata.put("message", message.getMessage());
+        }
+        if (message.getError() != null) {
+            metadata.put("error", message.getError());
+        }
+        po.setMetadata(JSONB.valueOf(JSON.toJSON(metadata)));
+        po.setTimestamp(message.getTimestamp() / 1000);
+        po.setSequence(message.getSequence());
+        return po;
+    }
+
+    private OrchestratorMessageEntity convertToEntity(OrchestratorMessagePO po) {
+        OrchestratorMessageEntity entity = new OrchestratorMessageEntity();
+        entity.setRunId(po.getRunId());
+        entity.setTaskId(po.getTaskId());
+        entity.setAgentRole(po.getAgentRole());
+        entity.setMessageType(po.getMessageType());
+        entity.setContent(po.getContent());
+        entity.setSequence(po.getSequence());
+        Map<String, Object> metadata = po.getMetadata() != null
+                ? JSON.parseObject(po.getMetadata().data(), new TypeReference<Map<String, Object>>() {
+                })
+                : Map.of();
+        Object timestamp = metadata.get("timestampMillis");
+        entity.setTimestamp(timestamp instanceof Number number ? number.longValue()
+                : po.getTimestamp() != null ? po.getTimestamp() * 1000 : null);
+        entity.setMessage((String) metadata.get("message"));
+        entity.setError((String) metadata.get("error"));
+        return entity;
+    }
+}
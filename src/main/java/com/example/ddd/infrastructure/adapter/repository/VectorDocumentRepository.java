@@ -3,6 +3,8 @@ package com.example.ddd.infrastructure.adapter.repository;
 import com.example.ddd.common.utils.JSON;
 import com.example.ddd.domain.agent.adapter.repository.IVectorDocumentRepository;
 import com.example.ddd.domain.agent.model.entity.VectorDocumentEntity;
+import com.example.ddd.domain.agent.model.valobj.VectorSearchField;
+import com.example.ddd.domain.agent.model.valobj.VectorSearchQuery;
 import com.example.ddd.infrastructure.dao.IVectorDocumentDao;
 import com.example.ddd.infrastructure.dao.po.VectorDocumentPO;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -12,8 +14,10 @@ import org.jooq.DSLContext;
 import org.jooq.JSONB;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -63,6 +67,18 @@ public class VectorDocumentRepository implements IVectorDocumentRepository {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<VectorDocumentEntity> search(DSLContext dslContext, VectorSearchQuery query) {
+        Set<String> columns = query.getFields().stream()
+                .map(VectorSearchField::getColumn)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        return vectorDocumentDao.search(dslContext, query.getRagId(), query.getQueryEmbedding(), query.getLimit(),
+                        query.getSimilarityThreshold(), columns, query.getEfSearch(), query.getProbes())
+                .stream()
+                .map(this::convertToEntity)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public int deleteByRagId(DSLContext dslContext, Long ragId) {
         return vectorDocumentDao.deleteByRagId(dslContext, ragId);
@@ -130,6 +146,7 @@ public class VectorDocumentRepository implements IVectorDocumentRepository {
         entity.setChunkIndex(po.getChunkIndex());
         entity.setCreatedAt(po.getCreatedAt());
         entity.setUpdatedAt(po.getUpdatedAt());
+        entity.setSimilarity(po.getSimilarity());
         return entity;
     }
 }
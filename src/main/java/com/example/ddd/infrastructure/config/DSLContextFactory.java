@@ -1,62 +1,115 @@
 package com.example.ddd.infrastructure.config;
 
+import io.micronaut.context.annotation.Value;
 import io.micronaut.data.connection.annotation.Connectable;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.util.Map;
 
+@Slf4j
 @Singleton
 public class DSLContextFactory {
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
     public final SQLDialect sqlDialect = SQLDialect.POSTGRES;
     @Inject
     private DataSource dataSource;
+    @Inject
+    private PoolMetrics poolMetrics;
+    /**
+     * 单个工作单元占用连接超过该时间时告警（毫秒），通常意味着在连接内做了远程调用
+     */
+    @Value("${agent.db.hold-warn-millis:1000}")
+    private long holdWarnMillis;
 
+    /**
+     * 创建绑定新连接的DSLContext，调用方负责关闭连接；业务代码请使用 execute / callable
+     */
     public AgentDSL createDsl() {
-        try {
-            // 这里获取的 connection 是 Micronaut 的代理连接（ContextualConnection）
-            // 它需要在 @Connectable 上下文中才能正常工作
-            Connection connection = dataSource.getConnection();
-            return new AgentDSL(connection, sqlDialect);
-        } catch (Exception e) {
-            throw new RuntimeException("创建DSLContext失败", e);
-        }
+        return new AgentDSL(getConnection(), sqlDialect);
     }
 
+    /**
+     * 在一个连接、一个事务内执行（无返回值）
+     * DAO 通过 DSLContext 的 ConnectionProvider 借用该连接，不会另行获取
+     */
     @Connectable
     public void execute(ExecuteOperation executeOperation) {
-        AgentDSL dsl = createDsl();
+        long begin = System.nanoTime();
+        Connection connection = getConnection();
         try {
-            dsl.execute(executeOperation);
+            new AgentDSL(connection, sqlDialect).execute(executeOperation);
         } finally {
-            closeConnection(dsl);
+            closeConnection(connection);
+            checkHoldTime(begin);
         }
     }
 
+    /**
+     * 在一个连接、一个事务内执行（有返回值）
+     */
     @Connectable
     public <T> T callable(CallableOperation<T> executeOperation) {
-        AgentDSL dsl = createDsl();
+        long begin = System.nanoTime();
+        Connection connection = getConnection();
         try {
-            return dsl.callable(executeOperation);
+            return new AgentDSL(connection, sqlDialect).callable(executeOperation);
         } finally {
-            closeConnection(dsl);
+            closeConnection(connection);
+            checkHoldTime(begin);
         }
     }
 
-    private void closeConnection(AgentDSL dsl) {
-        if (dsl != null) {
-            try {
-                Connection connection = dsl.configuration().connectionProvider().acquire();
-                if (connection != null && !connection.isClosed()) {
-                    dsl.configuration().connectionProvider().release(connection);
-                    connection.close();
-                }
-            } catch (Exception e) {
-                // 忽略关闭连接时的异常
+    /**
+     * 连接池指标
+     */
+    public Map<String, Object> poolMetrics() {
+        return poolMetrics.snapshot();
+    }
+
+    private Connection getConnection() {
+        try {
+            // 这里获取的 connection 是 Micronaut 的代理连接（ContextualConnection）
+            // 它需要在 @Connectable 上下文中才能正常工作
+            return dataSource.getConnection();
+        } catch (Exception e) {
+            throw new RuntimeException("创建DSLContext失败", e);
+        }
+    }
+
+    /**
+     * 连接占用时间守卫：超过 holdWarnMillis 时记录调用方并告警
+     */
+    private void checkHoldTime(long begin) {
+        long holdMillis = (System.nanoTime() - begin) / 1_000_000;
+        if (holdMillis < holdWarnMillis) {
+            return;
+        }
+        String caller = STACK_WALKER.walk(frames -> frames
+                .map(StackWalker.StackFrame::getClassName)
+                .filter(name -> !name.startsWith(DSLContextFactory.class.getName()) && !name.startsWith("io.micronaut."))
+                .findFirst()
+                .orElse("unknown"));
+        poolMetrics.recordLongHold(caller, holdMillis);
+        log.warn("数据库连接占用时间过长: caller={}, holdMs={}, thresholdMs={}", caller, holdMillis, holdWarnMillis);
+    }
+
+    /**
+     * 关闭本次获取的连接（归还连接池）
+     */
+    private void closeConnection(Connection connection) {
+        try {
+            if (!connection.isClosed()) {
+                connection.close();
             }
+        } catch (Exception e) {
+            // 忽略关闭连接时的异常
         }
     }
 
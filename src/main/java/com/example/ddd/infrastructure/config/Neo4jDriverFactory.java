@@ -5,18 +5,32 @@ import io.micronaut.context.annotation.Factory;
 import io.micronaut.context.annotation.Value;
 import jakarta.annotation.PreDestroy;
 import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
 import org.neo4j.driver.AuthTokens;
 import org.neo4j.driver.Driver;
 import org.neo4j.driver.GraphDatabase;
 import org.neo4j.driver.TransactionContext;
 
+import java.util.List;
+
 /**
  * Neo4j Driver工厂类
  * 负责创建和管理Neo4j Driver实例
  */
+@Slf4j
 @Factory
 public class Neo4jDriverFactory {
 
+    /**
+     * 启动时确保存在的约束和索引（IF NOT EXISTS，可重复执行）
+     * MERGE (e:Entity {id: ...}) / MERGE (d:Document {id: ...}) 依赖唯一约束走索引查找，否则每行都是全标签扫描
+     */
+    private static final List<String> SCHEMA_STATEMENTS = List.of(
+            "CREATE CONSTRAINT entity_id_unique IF NOT EXISTS FOR (e:Entity) REQUIRE e.id IS UNIQUE",
+            "CREATE CONSTRAINT document_id_unique IF NOT EXISTS FOR (d:Document) REQUIRE d.id IS UNIQUE",
+            "CREATE INDEX document_rag_id IF NOT EXISTS FOR (d:Document) ON (d.ragId)"
+    );
+
     @Value("${neo4j.uri:bolt://localhost:7687}")
     private String uri;
 
@@ -43,10 +57,27 @@ public class Neo4jDriverFactory {
             try (var session = driver.session()) {
                 session.run("RETURN 1").consume();
             }
+            initSchema();
         }
         return driver;
     }
 
+    /**
+     * 创建约束和索引（Schema语句需在自动提交事务中执行）
+     * 已有重复数据导致约束创建失败时只记录日志，不影响启动
+     */
+    private void initSchema() {
+        try (var session = driver.session()) {
+            for (String statement : SCHEMA_STATEMENTS) {
+                try {
+                    session.run(statement).consume();
+                } catch (Exception e) {
+                    log.warn("Neo4j约束/索引创建失败: {}, error={}", statement, e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * 创建AgentNeo4jDriver包装实例
      */
@@ -0,0 +1,112 @@
+package com.example.ddd.infrastructure.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import jakarta.inject.Singleton;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 连接池指标
+ * 作为 Hikari 的 MetricsTrackerFactory 注册（见 DatasourceConfigurationListener），
+ * 统计获取连接的等待时间、连接占用时间、获取超时次数，以及池的实时状态；
+ * 另外按调用方统计超过占用阈值的工作单元（见 DSLContextFactory）
+ */
+@Singleton
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+    /**
+     * 调用方 -> [次数, 最长占用毫秒]
+     */
+    private final Map<String, long[]> longHolds = new ConcurrentHashMap<>();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        Tracker tracker = new Tracker(poolStats);
+        trackers.put(poolName, tracker);
+        return tracker;
+    }
+
+    /**
+     * 记录一次超过占用阈值的工作单元
+     */
+    public void recordLongHold(String caller, long holdMillis) {
+        longHolds.compute(caller, (key, value) -> {
+            long[] stats = value != null ? value : new long[2];
+            stats[0]++;
+            stats[1] = Math.max(stats[1], holdMillis);
+            return stats;
+        });
+    }
+
+    /**
+     * 所有连接池的指标快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        trackers.forEach((poolName, tracker) -> result.put(poolName, tracker.snapshot()));
+        Map<String, Object> holds = new LinkedHashMap<>();
+        longHolds.forEach((caller, stats) -> holds.put(caller, Map.of("count", stats[0], "maxMs", stats[1])));
+        result.put("longHolds", holds);
+        return result;
+    }
+
+    private static class Tracker implements IMetricsTracker {
+        private final PoolStats poolStats;
+        private final AtomicLong acquireCount = new AtomicLong();
+        private final AtomicLong acquireNanos = new AtomicLong();
+        private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLong usageCount = new AtomicLong();
+        private final AtomicLong usageMillis = new AtomicLong();
+        private final LongAccumulator maxUsageMillis = new LongAccumulator(Math::max, 0);
+        private final AtomicLong timeouts = new AtomicLong();
+
+        Tracker(PoolStats poolStats) {
+            this.poolStats = poolStats;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquireCount.incrementAndGet();
+            acquireNanos.addAndGet(elapsedAcquiredNanos);
+            maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usageCount.incrementAndGet();
+            usageMillis.addAndGet(elapsedBorrowedMillis);
+            maxUsageMillis.accumulate(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.incrementAndGet();
+        }
+
+        Map<String, Object> snapshot() {
+            long acquired = acquireCount.get();
+            long used = usageCount.get();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("active", poolStats.getActiveConnections());
+            result.put("idle", poolStats.getIdleConnections());
+            result.put("total", poolStats.getTotalConnections());
+            result.put("max", poolStats.getMaxConnections());
+            result.put("pendingThreads", poolStats.getPendingThreads());
+            result.put("acquireCount", acquired);
+            result.put("acquireAvgMs", acquired == 0 ? 0 : acquireNanos.get() / acquired / 1_000_000.0);
+            result.put("acquireMaxMs", maxAcquireNanos.get() / 1_000_000.0);
+            result.put("usageCount", used);
+            result.put("usageAvgMs", used == 0 ? 0 : (double) usageMillis.get() / used);
+            result.put("usageMaxMs", maxUsageMillis.get());
+            result.put("timeouts", timeouts.get());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.ddd.infrastructure.dao;
+
+import com.example.ddd.infrastructure.dao.po.AgentMemoryPO;
+import com.example.jooq.tables.records.AgentMemoryRecord;
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStep7;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.jooq.tables.AgentMemory.AGENT_MEMORY;
+
+/**
+ * Agent记忆数据访问对象
+ */
+@Singleton
+public class IAgentMemoryDao {
+
+    /**
+     * 批量插入（一条多行INSERT）
+     */
+    public int batchInsert(DSLContext dslContext, List<AgentMemoryPO> list) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        InsertValuesStep7<AgentMemoryRecord, String, String, String, String, Long, Long, Long> insert = dslContext
+                .insertInto(AGENT_MEMORY,
+                        AGENT_MEMORY.SESSION_ID, AGENT_MEMORY.MEMORY_KEY, AGENT_MEMORY.MEMORY_VALUE, AGENT_MEMORY.MEMORY_TYPE,
+                        AGENT_MEMORY.EXPIRES_AT, AGENT_MEMORY.CREATED_AT, AGENT_MEMORY.UPDATED_AT);
+        for (AgentMemoryPO po : list) {
+            insert = insert.values(po.getSessionId(), po.getMemoryKey(), po.getMemoryValue(), po.getMemoryType(),
+                    po.getExpiresAt(), po.getCreatedAt(), po.getCreatedAt());
+        }
+        return insert.execute();
+    }
+
+    /**
+     * 查询会话最近N条未过期记忆（按写入顺序返回）
+     *
+     * @param now 当前时间（秒）
+     */
+    public List<AgentMemoryPO> queryRecent(DSLContext dslContext, String sessionId, String memoryType, long now, int limit) {
+        List<AgentMemoryPO> list = new ArrayList<>(dslContext
+                .select(AGENT_MEMORY.ID, AGENT_MEMORY.SESSION_ID, AGENT_MEMORY.MEMORY_KEY, AGENT_MEMORY.MEMORY_VALUE,
+                        AGENT_MEMORY.MEMORY_TYPE, AGENT_MEMORY.CREATED_AT)
+                .from(AGENT_MEMORY)
+                .where(AGENT_MEMORY.SESSION_ID.eq(sessionId))
+                .and(AGENT_MEMORY.MEMORY_TYPE.eq(memoryType))
+                .and(AGENT_MEMORY.EXPIRES_AT.isNull().or(AGENT_MEMORY.EXPIRES_AT.gt(now)))
+                .orderBy(AGENT_MEMORY.ID.desc())
+                .limit(limit)
+                .fetchInto(AgentMemoryPO.class));
+        Collections.reverse(list);
+        return list;
+    }
+
+    /**
+     * 删除会话的记忆
+     */
+    public int deleteBySessionId(DSLContext dslContext, String sessionId, String memoryType) {
+        return dslContext.deleteFrom(AGENT_MEMORY)
+                .where(AGENT_MEMORY.SESSION_ID.eq(sessionId))
+                .and(AGENT_MEMORY.MEMORY_TYPE.eq(memoryType))
+                .execute();
+    }
+
+    /**
+     * 删除过期记忆
+     *
+     * @param now 当前时间（秒）
+     */
+    public int deleteExpired(DSLContext dslContext, String memoryType, long now) {
+        return dslContext.deleteFrom(AGENT_MEMORY)
+                .where(AGENT_MEMORY.MEMORY_TYPE.eq(memoryType))
+                .and(AGENT_MEMORY.EXPIRES_AT.lt(now))
+                .execute();
+    }
+}
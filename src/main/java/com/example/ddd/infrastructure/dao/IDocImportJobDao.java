@@ -0,0 +1,245 @@
+package com.example.ddd.infrastructure.dao;
+
+import com.example.ddd.infrastructure.dao.po.DocImportJobPO;
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 文档导入任务数据访问对象
+ * 任务以 (rag_id, doc_id) 为幂等键；领取使用 FOR UPDATE SKIP LOCKED，多个工作线程/实例之间互不阻塞
+ */
+@Singleton
+public class IDocImportJobDao {
+
+    private static final String COLUMNS = "id, rag_id, doc_id, status, progress, stage, attempts, max_attempts, " +
+            "next_run_at, locked_by, locked_at, last_error, created_at, updated_at";
+    /**
+     * 提交任务：不存在则新建；已存在且失败时重新入队；其他状态保持不变（RETURNING 无结果）
+     */
+    private static final String ENQUEUE_SQL = "INSERT INTO doc_import_job " +
+            "(id, rag_id, doc_id, status, max_attempts, next_run_at, created_at, updated_at) " +
+            "VALUES (?, ?, ?, 'PENDING', ?, ?, ?, ?) " +
+            "ON CONFLICT (rag_id, doc_id) DO UPDATE SET " + requeueSet() +
+            "WHERE doc_import_job.status = 'FAILED' " +
+            "RETURNING " + COLUMNS;
+    /**
+     * 强制重新导入：除执行中的任务外都重新入队
+     */
+    private static final String FORCE_ENQUEUE_SQL = "INSERT INTO doc_import_job " +
+            "(id, rag_id, doc_id, status, max_attempts, next_run_at, created_at, updated_at) " +
+            "VALUES (?, ?, ?, 'PENDING', ?, ?, ?, ?) " +
+            "ON CONFLICT (rag_id, doc_id) DO UPDATE SET " + requeueSet() +
+            "WHERE doc_import_job.status <> 'RUNNING' " +
+            "RETURNING " + COLUMNS;
+    private static final String CLAIM_SQL = "UPDATE doc_import_job " +
+            "SET status = 'RUNNING', locked_by = ?, locked_at = ?, attempts = attempts + 1, progress = 0, stage = NULL, updated_at = ? " +
+            "WHERE id IN (" +
+            "SELECT id FROM doc_import_job " +
+            "WHERE status = 'PENDING' AND next_run_at <= ? " +
+            "ORDER BY next_run_at, id " +
+            "LIMIT ? " +
+            "FOR UPDATE SKIP LOCKED) " +
+            "RETURNING " + COLUMNS;
+    private static final String UPDATE_PROGRESS_SQL = "UPDATE doc_import_job " +
+            "SET progress = ?, stage = ?, locked_at = ?, updated_at = ? " +
+            "WHERE id = ? AND locked_by = ? AND status = 'RUNNING'";
+    private static final String COMPLETE_SQL = "UPDATE doc_import_job " +
+            "SET status = 'SUCCEEDED', progress = 100, stage = ?, locked_by = NULL, locked_at = NULL, last_error = NULL, updated_at = ? " +
+            "WHERE id = ? AND locked_by = ? AND status = 'RUNNING'";
+    private static final String FAIL_SQL = "UPDATE doc_import_job " +
+            "SET status = ?, next_run_at = ?, last_error = ?, locked_by = NULL, locked_at = NULL, updated_at = ? " +
+            "WHERE id = ? AND locked_by = ? AND status = 'RUNNING'";
+    /**
+     * 回收失联任务：心跳超时的执行中任务重新入队，尝试次数用尽的直接置为失败
+     */
+    private static final String RECOVER_STALE_SQL = "UPDATE doc_import_job " +
+            "SET status = CASE WHEN attempts >= max_attempts THEN 'FAILED' ELSE 'PENDING' END, " +
+            "next_run_at = ?, last_error = ?, locked_by = NULL, locked_at = NULL, updated_at = ? " +
+            "WHERE status = 'RUNNING' AND locked_at < ?";
+    private static final String QUERY_BY_ID_SQL = "SELECT " + COLUMNS + " FROM doc_import_job WHERE id = ?";
+    private static final String QUERY_BY_KEY_SQL = "SELECT " + COLUMNS + " FROM doc_import_job WHERE rag_id = ? AND doc_id = ?";
+    private static final String QUERY_BY_RAG_ID_SQL = "SELECT " + COLUMNS + " FROM doc_import_job " +
+            "WHERE rag_id = ? ORDER BY created_at DESC, id DESC LIMIT ?";
+
+    private static String requeueSet() {
+        return "status = 'PENDING', progress = 0, stage = NULL, attempts = 0, max_attempts = EXCLUDED.max_attempts, " +
+                "next_run_at = EXCLUDED.next_run_at, locked_by = NULL, locked_at = NULL, last_error = NULL, " +
+                "updated_at = EXCLUDED.updated_at ";
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param force 是否强制重新导入（已成功的任务也重新入队）
+     * @return 新建或重新入队的任务；任务已在等待/执行中（或已成功且非强制）时返回null
+     */
+    public DocImportJobPO enqueue(DSLContext dsl, Long id, Long ragId, String docId, int maxAttempts, long now, boolean force) {
+        try {
+            return JdbcExecutor.queryOne(dsl, force ? FORCE_ENQUEUE_SQL : ENQUEUE_SQL, ps -> {
+                ps.setLong(1, id);
+                ps.setLong(2, ragId);
+                ps.setString(3, docId);
+                ps.setInt(4, maxAttempts);
+                ps.setLong(5, now);
+                ps.setLong(6, now);
+                ps.setLong(7, now);
+            }, this::map);
+        } catch (SQLException e) {
+            throw new RuntimeException("提交文档导入任务失败", e);
+        }
+    }
+
+    /**
+     * 领取可执行的任务
+     */
+    public List<DocImportJobPO> claim(DSLContext dsl, String workerId, int limit, long now) {
+        try {
+            return JdbcExecutor.query(dsl, CLAIM_SQL, ps -> {
+                ps.setString(1, workerId);
+                ps.setLong(2, now);
+                ps.setLong(3, now);
+                ps.setLong(4, now);
+                ps.setInt(5, limit);
+            }, this::map);
+        } catch (SQLException e) {
+            throw new RuntimeException("领取文档导入任务失败", e);
+        }
+    }
+
+    /**
+     * 更新进度（同时作为心跳）
+     *
+     * @return 影响行数，0表示任务已不归该工作线程所有
+     */
+    public int updateProgress(DSLContext dsl, Long id, String workerId, int progress, String stage, long now) {
+        try {
+            return JdbcExecutor.update(dsl, UPDATE_PROGRESS_SQL, ps -> {
+                ps.setInt(1, progress);
+                ps.setString(2, stage);
+                ps.setLong(3, now);
+                ps.setLong(4, now);
+                ps.setLong(5, id);
+                ps.setString(6, workerId);
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("更新文档导入任务进度失败", e);
+        }
+    }
+
+    /**
+     * 标记成功
+     */
+    public int complete(DSLContext dsl, Long id, String workerId, String stage, long now) {
+        try {
+            return JdbcExecutor.update(dsl, COMPLETE_SQL, ps -> {
+                ps.setString(1, stage);
+                ps.setLong(2, now);
+                ps.setLong(3, id);
+                ps.setString(4, workerId);
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("更新文档导入任务状态失败", e);
+        }
+    }
+
+    /**
+     * 标记失败
+     *
+     * @param status    PENDING（等待重试）或 FAILED
+     * @param nextRunAt 下次可执行时间（秒）
+     */
+    public int fail(DSLContext dsl, Long id, String workerId, String status, long nextRunAt, String error, long now) {
+        try {
+            return JdbcExecutor.update(dsl, FAIL_SQL, ps -> {
+                ps.setString(1, status);
+                ps.setLong(2, nextRunAt);
+                ps.setString(3, error);
+                ps.setLong(4, now);
+                ps.setLong(5, id);
+                ps.setString(6, workerId);
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("更新文档导入任务状态失败", e);
+        }
+    }
+
+    /**
+     * 回收心跳早于 staleBefore 的执行中任务
+     *
+     * @return 回收的任务数
+     */
+    public int recoverStale(DSLContext dsl, long staleBefore, String error, long now) {
+        try {
+            return JdbcExecutor.update(dsl, RECOVER_STALE_SQL, ps -> {
+                ps.setLong(1, now);
+                ps.setString(2, error);
+                ps.setLong(3, now);
+                ps.setLong(4, staleBefore);
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("回收文档导入任务失败", e);
+        }
+    }
+
+    /**
+     * 根据ID查询任务
+     */
+    public DocImportJobPO queryById(DSLContext dsl, Long id) {
+        try {
+            return JdbcExecutor.queryOne(dsl, QUERY_BY_ID_SQL, ps -> ps.setLong(1, id), this::map);
+        } catch (SQLException e) {
+            throw new RuntimeException("查询文档导入任务失败", e);
+        }
+    }
+
+    /**
+     * 根据幂等键查询任务
+     */
+    public DocImportJobPO queryByKey(DSLContext dsl, Long ragId, String docId) {
+        try {
+            return JdbcExecutor.queryOne(dsl, QUERY_BY_KEY_SQL, ps -> {
+                ps.setLong(1, ragId);
+                ps.setString(2, docId);
+            }, this::map);
+        } catch (SQLException e) {
+            throw new RuntimeException("查询文档导入任务失败", e);
+        }
+    }
+
+    /**
+     * 查询RAG下最近的任务
+     */
+    public List<DocImportJobPO> queryByRagId(DSLContext dsl, Long ragId, int limit) {
+        try {
+            return JdbcExecutor.query(dsl, QUERY_BY_RAG_ID_SQL, ps -> {
+                ps.setLong(1, ragId);
+                ps.setInt(2, limit);
+            }, this::map);
+        } catch (SQLException e) {
+            throw new RuntimeException("查询文档导入任务失败", e);
+        }
+    }
+
+    private DocImportJobPO map(ResultSet rs) throws SQLException {
+        DocImportJobPO po = new DocImportJobPO();
+        po.setId(rs.getLong("id"));
+        po.setRagId(rs.getLong("rag_id"));
+        po.setDocId(rs.getString("doc_id"));
+        po.setStatus(rs.getString("status"));
+        po.setProgress(rs.getInt("progress"));
+        po.setStage(rs.getString("stage"));
+        po.setAttempts(rs.getInt("attempts"));
+        po.setMaxAttempts(rs.getInt("max_attempts"));
+        po.setNextRunAt(rs.getLong("next_run_at"));
+        po.setLockedBy(rs.getString("locked_by"));
+        po.setLockedAt(rs.getObject("locked_at", Long.class));
+        po.setLastError(rs.getString("last_error"));
+        po.setCreatedAt(rs.getObject("created_at", Long.class));
+        po.setUpdatedAt(rs.getObject("updated_at", Long.class));
+        return po;
+    }
+}
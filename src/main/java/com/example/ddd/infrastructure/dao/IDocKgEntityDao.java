@@ -3,6 +3,7 @@ package com.example.ddd.infrastructure.dao;
 import jakarta.inject.Singleton;
 import org.jooq.DSLContext;
 
+import java.sql.SQLException;
 import java.util.List;
 
 /**
@@ -11,6 +12,15 @@ import java.util.List;
 @Singleton
 public class IDocKgEntityDao {
 
+    // 使用原生SQL，因为jOOQ表类可能需要重新生成；不插入created_at，使用表的默认值
+    private static final String BATCH_INSERT_SQL = "INSERT INTO doc_kg_entity (doc_id, kg_entity_id) " +
+            "VALUES (?, ?) " +
+            "ON CONFLICT (doc_id, kg_entity_id) DO NOTHING";
+    private static final String QUERY_ENTITY_IDS_BY_DOC_ID_SQL = "SELECT kg_entity_id FROM doc_kg_entity WHERE doc_id = ?";
+    private static final String QUERY_DOC_IDS_BY_ENTITY_ID_SQL = "SELECT doc_id FROM doc_kg_entity WHERE kg_entity_id = ?";
+    private static final String DELETE_BY_DOC_ID_SQL = "DELETE FROM doc_kg_entity WHERE doc_id = ?";
+    private static final String DELETE_BY_ENTITY_ID_SQL = "DELETE FROM doc_kg_entity WHERE kg_entity_id = ?";
+
     /**
      * 批量插入文档-实体关联
      */
@@ -18,22 +28,12 @@ public class IDocKgEntityDao {
         if (entityIds == null || entityIds.isEmpty()) {
             return;
         }
-        
-        // 使用原生SQL插入，因为jOOQ表类可能需要重新生成
-        // 不插入created_at，使用表的默认值
-        String sql = "INSERT INTO doc_kg_entity (doc_id, kg_entity_id) " +
-                "VALUES (?, ?) " +
-                "ON CONFLICT (doc_id, kg_entity_id) DO NOTHING";
-        
-        try (var connection = dsl.configuration().connectionProvider().acquire()) {
-            var ps = connection.prepareStatement(sql);
-            for (Long entityId : entityIds) {
+        try {
+            JdbcExecutor.batch(dsl, BATCH_INSERT_SQL, entityIds, (ps, entityId) -> {
                 ps.setString(1, docId);
                 ps.setLong(2, entityId);
-                ps.addBatch();
-            }
-            ps.executeBatch();
-        } catch (java.sql.SQLException e) {
+            });
+        } catch (SQLException e) {
             throw new RuntimeException("批量插入文档-实体关联失败", e);
         }
     }
@@ -42,52 +42,35 @@ public class IDocKgEntityDao {
      * 根据文档ID查询关联的实体ID列表
      */
     public List<Long> queryEntityIdsByDocId(DSLContext dsl, String docId) {
-        String sql = "SELECT kg_entity_id FROM doc_kg_entity WHERE doc_id = ?";
-        List<Long> result = new java.util.ArrayList<>();
-        
-        try (var connection = dsl.configuration().connectionProvider().acquire()) {
-            var ps = connection.prepareStatement(sql);
-            ps.setString(1, docId);
-            var rs = ps.executeQuery();
-            while (rs.next()) {
-                result.add(rs.getLong("kg_entity_id"));
-            }
-        } catch (java.sql.SQLException e) {
+        try {
+            return JdbcExecutor.query(dsl, QUERY_ENTITY_IDS_BY_DOC_ID_SQL,
+                    ps -> ps.setString(1, docId),
+                    rs -> rs.getLong("kg_entity_id"));
+        } catch (SQLException e) {
             throw new RuntimeException("查询文档关联实体失败", e);
         }
-        return result;
     }
 
     /**
      * 根据实体ID查询关联的文档ID列表
      */
     public List<String> queryDocIdsByEntityId(DSLContext dsl, Long entityId) {
-        String sql = "SELECT doc_id FROM doc_kg_entity WHERE kg_entity_id = ?";
-        List<String> result = new java.util.ArrayList<>();
-        
-        try (var connection = dsl.configuration().connectionProvider().acquire()) {
-            var ps = connection.prepareStatement(sql);
-            ps.setLong(1, entityId);
-            var rs = ps.executeQuery();
-            while (rs.next()) {
-                result.add(rs.getString("doc_id"));
-            }
-        } catch (java.sql.SQLException e) {
+        try {
+            return JdbcExecutor.query(dsl, QUERY_DOC_IDS_BY_ENTITY_ID_SQL,
+                    ps -> ps.setLong(1, entityId),
+                    rs -> rs.getString("doc_id"));
+        } catch (SQLException e) {
             throw new RuntimeException("查询实体关联文档失败", e);
         }
-        return result;
     }
 
     /**
      * 删除文档的所有关联
      */
     public int deleteByDocId(DSLContext dsl, String docId) {
-        String sql = "DELETE FROM doc_kg_entity WHERE doc_id = ?";
-        try (var connection = dsl.configuration().connectionProvider().acquire()) {
-            var ps = connection.prepareStatement(sql);
-            ps.setString(1, docId);
-            return ps.executeUpdate();
-        } catch (java.sql.SQLException e) {
+        try {
+            return JdbcExecutor.update(dsl, DELETE_BY_DOC_ID_SQL, ps -> ps.setString(1, docId));
+        } catch (SQLException e) {
             throw new RuntimeException("删除文档关联失败", e);
         }
     }
@@ -96,14 +79,10 @@ public class IDocKgEntityDao {
      * 删除实体的所有关联
      */
     public int deleteByEntityId(DSLContext dsl, Long entityId) {
-        String sql = "DELETE FROM doc_kg_entity WHERE kg_entity_id = ?";
-        try (var connection = dsl.configuration().connectionProvider().acquire()) {
-            var ps = connection.prepareStatement(sql);
-            ps.setLong(1, entityId);
-            return ps.executeUpdate();
-        } catch (java.sql.SQLException e) {
+        try {
+            return JdbcExecutor.update(dsl, DELETE_BY_ENTITY_ID_SQL, ps -> ps.setLong(1, entityId));
+        } catch (SQLException e) {
             throw new RuntimeException("删除实体关联失败", e);
         }
     }
 }
-
@@ -0,0 +1,76 @@
+package com.example.ddd.infrastructure.dao;
+
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 向量缓存数据访问对象
+ * 向量以 float32 大端序列化为 BYTEA 存储，不依赖 pgvector 维度
+ */
+@Singleton
+public class IEmbeddingCacheDao {
+
+    private static final String QUERY_BY_HASHES_SQL = "SELECT text_hash, embedding FROM embedding_cache WHERE model = ? AND text_hash = ANY(?)";
+    private static final String BATCH_INSERT_SQL = "INSERT INTO embedding_cache (model, text_hash, embedding) VALUES (?, ?, ?) " +
+            "ON CONFLICT (model, text_hash) DO NOTHING";
+
+    /**
+     * 按文本哈希批量查询
+     *
+     * @return 文本哈希 -> 向量
+     */
+    public Map<String, float[]> queryByHashes(DSLContext dslContext, String model, Collection<String> textHashes) {
+        try {
+            return JdbcExecutor.withConnection(dslContext, connection -> {
+                Map<String, float[]> result = new HashMap<>();
+                try (PreparedStatement ps = connection.prepareStatement(QUERY_BY_HASHES_SQL)) {
+                    ps.setString(1, model);
+                    ps.setArray(2, connection.createArrayOf("text", textHashes.toArray()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            result.put(rs.getString("text_hash"), decode(rs.getBytes("embedding")));
+                        }
+                    }
+                }
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("查询向量缓存失败", e);
+        }
+    }
+
+    /**
+     * 批量写入，已存在的记录保持不变
+     */
+    public int batchInsert(DSLContext dslContext, String model, Map<String, float[]> embeddings) {
+        try {
+            return JdbcExecutor.batch(dslContext, BATCH_INSERT_SQL, embeddings.entrySet(), (ps, entry) -> {
+                ps.setString(1, model);
+                ps.setString(2, entry.getKey());
+                ps.setBytes(3, encode(entry.getValue()));
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("写入向量缓存失败", e);
+        }
+    }
+
+    private static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -3,9 +3,13 @@ package com.example.ddd.infrastructure.dao;
 import com.example.ddd.infrastructure.dao.po.KgEntityPO;
 import jakarta.inject.Singleton;
 import org.jooq.DSLContext;
+import org.postgresql.util.PGobject;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.example.jooq.tables.KgEntity.KG_ENTITY;
@@ -15,6 +19,30 @@ import static com.example.jooq.tables.KgEntity.KG_ENTITY;
  */
 @Singleton
 public class IKgEntityDao {
+    /**
+     * 相似度搜索（结果中不需要embedding，只取需要的列）
+     */
+    private static final String SIMILARITY_SEARCH_SQL = "SELECT id, name, type, description, 1 - (embedding <=> ?) as similarity " +
+            "FROM kg_entity " +
+            "WHERE (1 - (embedding <=> ?)) >= ? " +
+            "ORDER BY embedding <=> ? " +
+            "LIMIT ?";
+    /**
+     * 实体消歧索引只需要 id/name/type，不读取embedding
+     */
+    private static final String QUERY_ALL_KEYS_SQL = "SELECT id, name, type FROM kg_entity ORDER BY id";
+    /**
+     * 同类型下的最近邻实体，相似度不足阈值时无结果
+     */
+    private static final String NEAREST_BY_TYPE_SQL = "SELECT id, name, type FROM (" +
+            "SELECT id, name, type, 1 - (embedding <=> ?) AS similarity " +
+            "FROM kg_entity " +
+            "WHERE lower(type) = ? AND embedding IS NOT NULL " +
+            "ORDER BY embedding <=> ? " +
+            "LIMIT 1) t " +
+            "WHERE similarity >= ?";
+    private static final String BATCH_INSERT_SQL = "INSERT INTO kg_entity (id, name, type, description, embedding) " +
+            "VALUES (?, ?, ?, ?, ?)";
 
     /**
      * 插入知识图谱实体
@@ -95,38 +123,88 @@ public class IKgEntityDao {
      * @return 相似实体列表，按相似度降序排列
      */
     public List<KgEntityPO> similaritySearch(DSLContext dslContext, float[] queryEmbedding, int limit, double similarityThreshold) {
-        String sql = "SELECT *, 1 - (embedding <=> ?::vector) as similarity " +
-                "FROM kg_entity " +
-                "WHERE (1 - (embedding <=> ?::vector)) >= ? " +
-                "ORDER BY embedding <=> ?::vector " +
-                "LIMIT ?";
-        
-        List<KgEntityPO> result = new java.util.ArrayList<>();
-        
-        try (var connection = dslContext.configuration().connectionProvider().acquire()) {
-            java.sql.PreparedStatement ps = connection.prepareStatement(sql);
-            String embeddingStr = arrayToString(queryEmbedding);
-            
-            ps.setString(1, embeddingStr);
-            ps.setString(2, embeddingStr);
-            ps.setDouble(3, similarityThreshold);
-            ps.setString(4, embeddingStr);
-            ps.setInt(5, limit);
-            
-            java.sql.ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
+        try {
+            PGobject embedding = PgVectorCodec.encoder().encode(queryEmbedding);
+            return JdbcExecutor.query(dslContext, SIMILARITY_SEARCH_SQL, ps -> {
+                ps.setObject(1, embedding);
+                ps.setObject(2, embedding);
+                ps.setDouble(3, similarityThreshold);
+                ps.setObject(4, embedding);
+                ps.setInt(5, limit);
+            }, rs -> {
                 KgEntityPO po = new KgEntityPO();
                 po.setId(rs.getLong("id"));
                 po.setName(rs.getString("name"));
                 po.setType(rs.getString("type"));
                 po.setDescription(rs.getString("description"));
-                // embedding字段暂时不设置，因为查询结果中不需要
-                result.add(po);
-            }
-        } catch (java.sql.SQLException e) {
+                // embedding字段不设置，因为查询结果中不需要
+                return po;
+            });
+        } catch (SQLException e) {
             throw new RuntimeException("执行知识图谱相似度搜索失败", e);
         }
-        return result;
+    }
+
+    /**
+     * 查询所有实体的 id/name/type（按ID升序）
+     */
+    public List<KgEntityPO> queryAllKeys(DSLContext dslContext) {
+        try {
+            return JdbcExecutor.query(dslContext, QUERY_ALL_KEYS_SQL, JdbcExecutor.StatementBinder.NONE, rs -> {
+                KgEntityPO po = new KgEntityPO();
+                po.setId(rs.getLong("id"));
+                po.setName(rs.getString("name"));
+                po.setType(rs.getString("type"));
+                return po;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("查询知识图谱实体索引失败", e);
+        }
+    }
+
+    /**
+     * 为每个向量查询同类型下相似度不低于阈值的最近邻实体（同一连接、同一预编译语句逐条执行）
+     *
+     * @param embeddings          查询向量
+     * @param types               实体类型（小写），与 embeddings 一一对应
+     * @param similarityThreshold 相似度阈值
+     * @return 与输入顺序一致，未命中的位置为null
+     */
+    public List<KgEntityPO> queryNearestByType(DSLContext dslContext, List<float[]> embeddings, List<String> types,
+                                               double similarityThreshold) {
+        try {
+            return JdbcExecutor.withConnection(dslContext, connection -> {
+                PgVectorCodec.Encoder encoder = PgVectorCodec.encoder();
+                List<KgEntityPO> result = new ArrayList<>(embeddings.size());
+                try (PreparedStatement ps = connection.prepareStatement(NEAREST_BY_TYPE_SQL)) {
+                    for (int i = 0; i < embeddings.size(); i++) {
+                        PGobject embedding = encoder.encode(embeddings.get(i));
+                        if (embedding == null) {
+                            result.add(null);
+                            continue;
+                        }
+                        ps.setObject(1, embedding);
+                        ps.setString(2, types.get(i));
+                        ps.setObject(3, embedding);
+                        ps.setDouble(4, similarityThreshold);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) {
+                                KgEntityPO po = new KgEntityPO();
+                                po.setId(rs.getLong("id"));
+                                po.setName(rs.getString("name"));
+                                po.setType(rs.getString("type"));
+                                result.add(po);
+                            } else {
+                                result.add(null);
+                            }
+                        }
+                    }
+                }
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("查询最近邻知识图谱实体失败", e);
+        }
     }
 
     /**
@@ -137,45 +215,19 @@ public class IKgEntityDao {
         if (list == null || list.isEmpty()) {
             return;
         }
-        String sql = "INSERT INTO kg_entity (id, name, type, description, embedding) " +
-                "VALUES (?, ?, ?, ?, ?::vector)";
-        try (var connection = dsl.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            for (KgEntityPO po : list) {
+        try {
+            PgVectorCodec.Encoder encoder = PgVectorCodec.encoder();
+            JdbcExecutor.batch(dsl, BATCH_INSERT_SQL, list, (ps, po) -> {
                 ps.setLong(1, po.getId());
                 ps.setString(2, po.getName());
                 ps.setString(3, po.getType());
                 ps.setString(4, po.getDescription());
                 Object embeddingObj = po.getEmbedding();
-                if (embeddingObj != null && embeddingObj instanceof float[]) {
-                    ps.setString(5, arrayToString((float[]) embeddingObj));
-                } else {
-                    ps.setString(5, null);
-                }
-                ps.addBatch();
-            }
-            ps.executeBatch();
+                ps.setObject(5, embeddingObj instanceof float[] vector ? encoder.encode(vector) : null, Types.OTHER);
+            });
         } catch (SQLException e) {
             throw new RuntimeException("批量插入知识图谱实体失败", e);
         }
     }
-    
-    /**
-     * 将float[]转换为pgvector格式的字符串: "[0.1,0.2,0.3]"
-     */
-    private String arrayToString(float[] array) {
-        if (array == null || array.length == 0) {
-            return "[]";
-        }
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < array.length; i++) {
-            if (i > 0) {
-                sb.append(",");
-            }
-            sb.append(array[i]);
-        }
-        sb.append("]");
-        return sb.toString();
-    }
 }
 
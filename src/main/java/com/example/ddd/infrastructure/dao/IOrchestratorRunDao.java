@@ -0,0 +1,98 @@
+package com.example.ddd.infrastructure.dao;
+
+import com.example.ddd.infrastructure.dao.po.OrchestratorMessagePO;
+import com.example.ddd.infrastructure.dao.po.OrchestratorRunPO;
+import com.example.jooq.tables.records.OrchestratorMessageRecord;
+import com.example.jooq.tables.records.OrchestratorRunRecord;
+import jakarta.inject.Singleton;
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStep14;
+import org.jooq.InsertValuesStep8;
+import org.jooq.JSONB;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.jooq.tables.OrchestratorMessage.ORCHESTRATOR_MESSAGE;
+import static com.example.jooq.tables.OrchestratorRun.ORCHESTRATOR_RUN;
+import static org.jooq.impl.DSL.excluded;
+
+/**
+ * Orchestrator执行记录数据访问对象
+ * 执行记录由异步写入器批量写入：开始与结束使用同一条 upsert，结束记录先于开始记录到达时也能完整落库
+ */
+@Singleton
+public class IOrchestratorRunDao {
+
+    /**
+     * 批量保存执行记录（不存在则插入，已存在则更新状态与统计）
+     * 同一条多行INSERT不能两次更新同一行，同一执行只保留最后一份
+     */
+    public int batchSaveRuns(DSLContext dslContext, List<OrchestratorRunPO> list) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        Map<Long, OrchestratorRunPO> latest = new LinkedHashMap<>();
+        for (OrchestratorRunPO po : list) {
+            latest.put(po.getId(), po);
+        }
+        InsertValuesStep14<OrchestratorRunRecord, Long, Long, String, String, String, String, Long, Long, Integer, Integer,
+                String, JSONB, Long, Long> insert = dslContext.insertInto(ORCHESTRATOR_RUN,
+                ORCHESTRATOR_RUN.ID, ORCHESTRATOR_RUN.ORCHESTRATOR_ID, ORCHESTRATOR_RUN.SESSION_ID, ORCHESTRATOR_RUN.USER_ID,
+                ORCHESTRATOR_RUN.GOAL, ORCHESTRATOR_RUN.STATUS, ORCHESTRATOR_RUN.START_TIME, ORCHESTRATOR_RUN.END_TIME,
+                ORCHESTRATOR_RUN.TOTAL_TASKS, ORCHESTRATOR_RUN.COMPLETED_TASKS, ORCHESTRATOR_RUN.EXECUTION_MODE,
+                ORCHESTRATOR_RUN.METADATA, ORCHESTRATOR_RUN.CREATED_AT, ORCHESTRATOR_RUN.UPDATED_AT);
+        for (OrchestratorRunPO po : latest.values()) {
+            insert = insert.values(po.getId(), po.getOrchestratorId(), po.getSessionId(), po.getUserId(),
+                    po.getGoal(), po.getStatus(), po.getStartTime(), po.getEndTime(),
+                    po.getTotalTasks(), po.getCompletedTasks(), po.getExecutionMode(),
+                    po.getMetadata(), po.getCreatedAt(), po.getUpdatedAt());
+        }
+        return insert.onConflict(ORCHESTRATOR_RUN.ID)
+                .doUpdate()
+                .set(ORCHESTRATOR_RUN.STATUS, excluded(ORCHESTRATOR_RUN.STATUS))
+                .set(ORCHESTRATOR_RUN.END_TIME, excluded(ORCHESTRATOR_RUN.END_TIME))
+                .set(ORCHESTRATOR_RUN.TOTAL_TASKS, excluded(ORCHESTRATOR_RUN.TOTAL_TASKS))
+                .set(ORCHESTRATOR_RUN.COMPLETED_TASKS, excluded(ORCHESTRATOR_RUN.COMPLETED_TASKS))
+                .set(ORCHESTRATOR_RUN.METADATA, excluded(ORCHESTRATOR_RUN.METADATA))
+                .set(ORCHESTRATOR_RUN.UPDATED_AT, excluded(ORCHESTRATOR_RUN.UPDATED_AT))
+                .execute();
+    }
+
+    /**
+     * 批量插入消息记录（一条多行INSERT）
+     */
+    public int batchInsertMessages(DSLContext dslContext, List<OrchestratorMessagePO> list) {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        InsertValuesStep8<OrchestratorMessageRecord, Long, String, String, String, String, JSONB, Long, Integer> insert = dslContext
+                .insertInto(ORCHESTRATOR_MESSAGE,
+                        ORCHESTRATOR_MESSAGE.RUN_ID, ORCHESTRATOR_MESSAGE.TASK_ID, ORCHESTRATOR_MESSAGE.AGENT_ROLE,
+                        ORCHESTRATOR_MESSAGE.MESSAGE_TYPE, ORCHESTRATOR_MESSAGE.CONTENT, ORCHESTRATOR_MESSAGE.METADATA,
+                        ORCHESTRATOR_MESSAGE.TIMESTAMP, ORCHESTRATOR_MESSAGE.SEQUENCE);
+        for (OrchestratorMessagePO po : list) {
+            insert = insert.values(po.getRunId(), po.getTaskId(), po.getAgentRole(),
+                    po.getMessageType(), po.getContent(), po.getMetadata(),
+                    po.getTimestamp(), po.getSequence());
+        }
+        return insert.execute();
+    }
+
+    /**
+     * 查询执行内序号在 (afterSequence, beforeSequence) 之间的消息
+     */
+    public List<OrchestratorMessagePO> queryMessages(DSLContext dslContext, Long runId, int afterSequence, int beforeSequence, int limit) {
+        return dslContext.select(ORCHESTRATOR_MESSAGE.RUN_ID, ORCHESTRATOR_MESSAGE.TASK_ID, ORCHESTRATOR_MESSAGE.AGENT_ROLE,
+                        ORCHESTRATOR_MESSAGE.MESSAGE_TYPE, ORCHESTRATOR_MESSAGE.CONTENT, ORCHESTRATOR_MESSAGE.METADATA,
+                        ORCHESTRATOR_MESSAGE.TIMESTAMP, ORCHESTRATOR_MESSAGE.SEQUENCE)
+                .from(ORCHESTRATOR_MESSAGE)
+                .where(ORCHESTRATOR_MESSAGE.RUN_ID.eq(runId))
+                .and(ORCHESTRATOR_MESSAGE.SEQUENCE.gt(afterSequence))
+                .and(ORCHESTRATOR_MESSAGE.SEQUENCE.lt(beforeSequence))
+                .orderBy(ORCHESTRATOR_MESSAGE.SEQUENCE)
+                .limit(limit)
+                .fetchInto(OrchestratorMessagePO.class);
+    }
+}
@@ -4,92 +4,72 @@ import com.example.ddd.infrastructure.dao.po.VectorDocumentPO;
 import jakarta.inject.Singleton;
 import org.jooq.DSLContext;
 import org.jooq.JSONB;
+import org.postgresql.util.PGobject;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 向量文档数据访问对象
- * 使用原生SQL处理pgvector类型
+ * 使用原生SQL处理pgvector类型，向量编解码见 PgVectorCodec，语句执行见 JdbcExecutor
  */
 @Singleton
 public class IVectorDocumentDao {
+    /**
+     * 不含向量的列
+     */
+    private static final String COLUMNS = "embedding_id, rag_id, text, metadata, chunk_index, created_at, updated_at";
+    /**
+     * 含向量的列（二进制读取）
+     */
+    private static final String COLUMNS_WITH_EMBEDDING = COLUMNS + ", " + PgVectorCodec.binaryColumn("embedding");
+    /**
+     * search 允许投影的列
+     */
+    private static final Set<String> SEARCH_COLUMNS = Set.of("text", "metadata", "chunk_index", "embedding", "created_at", "updated_at");
+
+    private static final String INSERT_SQL = "INSERT INTO vector_document (rag_id, text, embedding, metadata, chunk_index) " +
+            "VALUES (?, ?, ?, ?::jsonb, ?)";
+    private static final String INSERT_RETURNING_SQL = INSERT_SQL + " RETURNING " + COLUMNS_WITH_EMBEDDING;
+    private static final String QUERY_BY_ID_SQL = "SELECT " + COLUMNS_WITH_EMBEDDING + " FROM vector_document WHERE embedding_id = ?::uuid";
+    private static final String QUERY_BY_ID_WITHOUT_EMBEDDING_SQL = "SELECT " + COLUMNS + " FROM vector_document WHERE embedding_id = ?::uuid";
+    private static final String QUERY_BY_RAG_ID_SQL = "SELECT " + COLUMNS_WITH_EMBEDDING + " FROM vector_document WHERE rag_id = ? ORDER BY chunk_index";
+    private static final String SIMILARITY_SEARCH_SQL = "SELECT " + COLUMNS_WITH_EMBEDDING + ", 1 - (embedding <=> ?) as similarity " +
+            "FROM vector_document " +
+            "WHERE rag_id = ? AND (1 - (embedding <=> ?)) >= ? " +
+            "ORDER BY embedding <=> ? " +
+            "LIMIT ?";
+    private static final String DELETE_BY_RAG_ID_SQL = "DELETE FROM vector_document WHERE rag_id = ?";
+    private static final String DELETE_BY_ID_SQL = "DELETE FROM vector_document WHERE embedding_id = ?::uuid";
+    private static final String SET_LOCAL_SQL = "SELECT set_config(?, ?, true)";
 
     /**
      * 插入向量文档
      */
     public VectorDocumentPO insert(DSLContext dslContext, VectorDocumentPO vectorDocumentPO) {
-        String sql = "INSERT INTO vector_document (rag_id, text, embedding, metadata, chunk_index) " +
-                "VALUES (?, ?, ?::vector, ?::jsonb, ?) RETURNING embedding_id, rag_id, text, embedding, metadata, chunk_index, created_at, updated_at";
-        
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setLong(1, vectorDocumentPO.getRagId());
-            ps.setString(2, vectorDocumentPO.getContent());
-            
-            // 将float[]转换为pgvector格式的字符串: "[0.1,0.2,0.3]"
-            if (vectorDocumentPO.getEmbedding() != null) {
-                ps.setString(3, arrayToString(vectorDocumentPO.getEmbedding()));
-            } else {
-                ps.setString(3, null);
-            }
-            
-            // 设置metadata
-            if (vectorDocumentPO.getMetadata() != null) {
-                // JSONB对象已经有data()方法可以直接获取JSON字符串
-                ps.setString(4, vectorDocumentPO.getMetadata().data());
-            } else {
-                ps.setString(4, null);
-            }
-            
-            ps.setInt(5, vectorDocumentPO.getChunkIndex() != null ? vectorDocumentPO.getChunkIndex() : 0);
-            
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return mapResultSetToPO(rs);
-            }
+        try {
+            PgVectorCodec.Encoder encoder = PgVectorCodec.encoder();
+            return JdbcExecutor.queryOne(dslContext, INSERT_RETURNING_SQL,
+                    ps -> bindInsert(ps, vectorDocumentPO, encoder),
+                    rs -> mapResultSetToPO(rs, true));
         } catch (SQLException e) {
             throw new RuntimeException("插入向量文档失败", e);
         }
-        return null;
     }
 
     /**
      * 批量插入向量文档
      */
     public int batchInsert(DSLContext dslContext, List<VectorDocumentPO> documents) {
-        String sql = "INSERT INTO vector_document (rag_id, text, embedding, metadata, chunk_index) " +
-                "VALUES (?, ?, ?::vector, ?::jsonb, ?)";
-        
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            
-            for (VectorDocumentPO doc : documents) {
-                ps.setLong(1, doc.getRagId());
-                ps.setString(2, doc.getContent());
-                
-                if (doc.getEmbedding() != null) {
-                    ps.setString(3, arrayToString(doc.getEmbedding()));
-                } else {
-                    ps.setString(3, null);
-                }
-                
-                if (doc.getMetadata() != null) {
-                    // JSONB对象已经有data()方法可以直接获取JSON字符串
-                    ps.setString(4, doc.getMetadata().data());
-                } else {
-                    ps.setString(4, null);
-                }
-                
-                ps.setInt(5, doc.getChunkIndex() != null ? doc.getChunkIndex() : 0);
-                ps.addBatch();
-            }
-            
-            return ps.executeBatch().length;
+        try {
+            PgVectorCodec.Encoder encoder = PgVectorCodec.encoder();
+            return JdbcExecutor.batch(dslContext, INSERT_SQL, documents, (ps, doc) -> bindInsert(ps, doc, encoder));
         } catch (SQLException e) {
             throw new RuntimeException("批量插入向量文档失败", e);
         }
@@ -99,57 +79,39 @@ public class IVectorDocumentDao {
      * 根据ID查询向量文档
      */
     public VectorDocumentPO queryById(DSLContext dslContext, Long id) {
-        String sql = "SELECT * FROM vector_document WHERE embedding_id = ?::uuid";
-        
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, id.toString());
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return mapResultSetToPO(rs);
-            }
+        try {
+            return JdbcExecutor.queryOne(dslContext, QUERY_BY_ID_SQL,
+                    ps -> ps.setString(1, id.toString()),
+                    rs -> mapResultSetToPO(rs, true));
         } catch (SQLException e) {
             throw new RuntimeException("根据ID查询向量文档失败", e);
         }
-        return null;
     }
 
     /**
-     * 根据embeddingId（String）查询向量文档
+     * 根据embeddingId（String）查询向量文档（不含向量）
      */
     public VectorDocumentPO queryByEmbeddingId(DSLContext dslContext, String embeddingId) {
-        String sql = "SELECT * FROM vector_document WHERE embedding_id = ?::uuid";
-        
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, embeddingId);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                return mapResultSetToPO(rs);
-            }
+        try {
+            return JdbcExecutor.queryOne(dslContext, QUERY_BY_ID_WITHOUT_EMBEDDING_SQL,
+                    ps -> ps.setString(1, embeddingId),
+                    rs -> mapResultSetToPO(rs, false));
         } catch (SQLException e) {
             throw new RuntimeException("根据embeddingId查询向量文档失败", e);
         }
-        return null;
     }
 
     /**
      * 根据RAG ID查询所有向量文档
      */
     public List<VectorDocumentPO> queryByRagId(DSLContext dslContext, Long ragId) {
-        String sql = "SELECT * FROM vector_document WHERE rag_id = ? ORDER BY chunk_index";
-        List<VectorDocumentPO> result = new ArrayList<>();
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setLong(1, ragId);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                result.add(mapResultSetToPO(rs));
-            }
+        try {
+            return JdbcExecutor.query(dslContext, QUERY_BY_RAG_ID_SQL,
+                    ps -> ps.setLong(1, ragId),
+                    rs -> mapResultSetToPO(rs, true));
         } catch (SQLException e) {
             throw new RuntimeException("根据RAG ID查询向量文档失败", e);
         }
-        return result;
     }
 
     /**
@@ -160,49 +122,86 @@ public class IVectorDocumentDao {
      * @param similarityThreshold 相似度阈值（0-1之间，值越大要求越相似）
      * @return 相似文档列表，按相似度降序排列
      */
-    public List<VectorDocumentPO> similaritySearch(DSLContext dslContext, Long ragId, 
-                                                    float[] queryEmbedding, int limit, 
+    public List<VectorDocumentPO> similaritySearch(DSLContext dslContext, Long ragId,
+                                                    float[] queryEmbedding, int limit,
                                                     double similarityThreshold) {
-        String sql = "SELECT *, 1 - (embedding <=> ?::vector) as similarity " +
-                "FROM vector_document " +
-                "WHERE rag_id = ? AND (1 - (embedding <=> ?::vector)) >= ? " +
-                "ORDER BY embedding <=> ?::vector " +
-                "LIMIT ?";
-        
-        List<VectorDocumentPO> result = new ArrayList<>();
-        
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            String embeddingStr = arrayToString(queryEmbedding);
-            
-            ps.setString(1, embeddingStr);
-            ps.setLong(2, ragId);
-            ps.setString(3, embeddingStr);
-            ps.setDouble(4, similarityThreshold);
-            ps.setString(5, embeddingStr);
-            ps.setInt(6, limit);
-            
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                VectorDocumentPO po = mapResultSetToPO(rs);
-                result.add(po);
+        try {
+            PGobject embedding = PgVectorCodec.encoder().encode(queryEmbedding);
+            return JdbcExecutor.query(dslContext, SIMILARITY_SEARCH_SQL, ps -> {
+                ps.setObject(1, embedding);
+                ps.setLong(2, ragId);
+                ps.setObject(3, embedding);
+                ps.setDouble(4, similarityThreshold);
+                ps.setObject(5, embedding);
+                ps.setInt(6, limit);
+            }, rs -> mapResultSetToPO(rs, true));
+        } catch (SQLException e) {
+            throw new RuntimeException("执行相似度搜索失败", e);
+        }
+    }
+
+    /**
+     * 按列投影的向量相似度搜索
+     * 查询向量只绑定一次（CTE），排序使用标量子查询以便命中HNSW/IVFFlat索引；
+     * 先按距离取前 limit 条再按阈值过滤，结果与先过滤再取前 limit 条一致
+     *
+     * @param columns             需要返回的列（embedding_id、rag_id、similarity 总是返回）
+     * @param efSearch            hnsw.ef_search，为空时不设置
+     * @param probes              ivfflat.probes，为空时不设置
+     * @return 相似文档列表，按相似度降序排列
+     */
+    public List<VectorDocumentPO> search(DSLContext dslContext, Long ragId, float[] queryEmbedding,
+                                         int limit, double similarityThreshold, Set<String> columns,
+                                         Integer efSearch, Integer probes) {
+        StringBuilder projection = new StringBuilder("embedding_id, rag_id");
+        for (String column : columns) {
+            if (!SEARCH_COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("不支持的检索列: " + column);
             }
+            projection.append(", ").append("embedding".equals(column) ? PgVectorCodec.binaryColumn(column) : column);
+        }
+        String sql = "WITH q AS (SELECT CAST(? AS vector) AS v) " +
+                "SELECT * FROM (" +
+                "SELECT " + projection + ", 1 - (embedding <=> (SELECT v FROM q)) AS similarity " +
+                "FROM vector_document WHERE rag_id = ? " +
+                "ORDER BY embedding <=> (SELECT v FROM q) LIMIT ?" +
+                ") hits WHERE similarity >= ? ORDER BY similarity DESC";
+
+        try {
+            PGobject embedding = PgVectorCodec.encoder().encode(queryEmbedding);
+            return JdbcExecutor.withConnection(dslContext, connection -> {
+                // 事务内生效（set_config 第三个参数为 true），不影响连接池中的其他请求
+                if (efSearch != null) {
+                    setLocal(connection, "hnsw.ef_search", efSearch);
+                }
+                if (probes != null) {
+                    setLocal(connection, "ivfflat.probes", probes);
+                }
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setObject(1, embedding);
+                    ps.setLong(2, ragId);
+                    ps.setInt(3, limit);
+                    ps.setDouble(4, similarityThreshold);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        List<VectorDocumentPO> result = new ArrayList<>();
+                        while (rs.next()) {
+                            result.add(mapProjection(rs, columns));
+                        }
+                        return result;
+                    }
+                }
+            });
         } catch (SQLException e) {
             throw new RuntimeException("执行相似度搜索失败", e);
         }
-        return result;
     }
 
     /**
      * 根据RAG ID删除所有向量文档
      */
     public int deleteByRagId(DSLContext dslContext, Long ragId) {
-        String sql = "DELETE FROM vector_document WHERE rag_id = ?";
-        
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setLong(1, ragId);
-            return ps.executeUpdate();
+        try {
+            return JdbcExecutor.update(dslContext, DELETE_BY_RAG_ID_SQL, ps -> ps.setLong(1, ragId));
         } catch (SQLException e) {
             throw new RuntimeException("根据RAG ID删除向量文档失败", e);
         }
@@ -212,88 +211,88 @@ public class IVectorDocumentDao {
      * 根据ID删除向量文档
      */
     public int deleteById(DSLContext dslContext, String embeddingId) {
-        String sql = "DELETE FROM vector_document WHERE embedding_id = ?::uuid";
-        
-        try (Connection connection = dslContext.configuration().connectionProvider().acquire()) {
-            PreparedStatement ps = connection.prepareStatement(sql);
-            ps.setString(1, embeddingId);
-            return ps.executeUpdate();
+        try {
+            return JdbcExecutor.update(dslContext, DELETE_BY_ID_SQL, ps -> ps.setString(1, embeddingId));
         } catch (SQLException e) {
             throw new RuntimeException("根据ID删除向量文档失败", e);
         }
     }
 
-    /**
-     * 将float[]转换为pgvector格式字符串
-     */
-    private String arrayToString(float[] array) {
-        if (array == null || array.length == 0) {
-            return null;
-        }
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < array.length; i++) {
-            if (i > 0) {
-                sb.append(",");
-            }
-            sb.append(array[i]);
+    private void setLocal(Connection connection, String name, int value) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(SET_LOCAL_SQL)) {
+            ps.setString(1, name);
+            ps.setString(2, String.valueOf(value));
+            ps.execute();
         }
-        sb.append("]");
-        return sb.toString();
+    }
+
+    private void bindInsert(PreparedStatement ps, VectorDocumentPO doc, PgVectorCodec.Encoder encoder) throws SQLException {
+        ps.setLong(1, doc.getRagId());
+        ps.setString(2, doc.getContent());
+        ps.setObject(3, encoder.encode(doc.getEmbedding()), Types.OTHER);
+        // JSONB对象已经有data()方法可以直接获取JSON字符串
+        ps.setString(4, doc.getMetadata() != null ? doc.getMetadata().data() : null);
+        ps.setInt(5, doc.getChunkIndex() != null ? doc.getChunkIndex() : 0);
     }
 
     /**
-     * 将pgvector格式字符串转换为float[]
+     * 将投影查询的ResultSet映射为VectorDocumentPO，未选择的列保持为空
      */
-    private float[] stringToArray(String str) {
-        if (str == null || str.isEmpty()) {
-            return null;
+    private VectorDocumentPO mapProjection(ResultSet rs, Set<String> columns) throws SQLException {
+        VectorDocumentPO po = new VectorDocumentPO();
+        po.setEmbeddingId(rs.getString("embedding_id"));
+        po.setRagId(rs.getLong("rag_id"));
+        if (columns.contains("text")) {
+            po.setContent(rs.getString("text"));
+        }
+        if (columns.contains("metadata")) {
+            String metadataStr = rs.getString("metadata");
+            if (metadataStr != null && !metadataStr.isEmpty()) {
+                po.setMetadata(JSONB.valueOf(metadataStr));
+            }
         }
-        // 移除方括号并分割
-        str = str.trim();
-        if (str.startsWith("[") && str.endsWith("]")) {
-            str = str.substring(1, str.length() - 1);
+        if (columns.contains("chunk_index")) {
+            po.setChunkIndex(rs.getInt("chunk_index"));
         }
-        String[] parts = str.split(",");
-        float[] result = new float[parts.length];
-        for (int i = 0; i < parts.length; i++) {
-            result[i] = Float.parseFloat(parts[i].trim());
+        if (columns.contains("embedding")) {
+            po.setEmbedding(PgVectorCodec.decode(rs.getBytes("embedding")));
         }
-        return result;
+        if (columns.contains("created_at")) {
+            po.setCreatedAt(rs.getLong("created_at"));
+        }
+        if (columns.contains("updated_at")) {
+            po.setUpdatedAt(rs.getLong("updated_at"));
+        }
+        po.setSimilarity(rs.getDouble("similarity"));
+        return po;
     }
 
     /**
      * 将ResultSet映射为VectorDocumentPO
+     *
+     * @param withEmbedding 结果集中是否包含（二进制）embedding列
      */
-    private VectorDocumentPO mapResultSetToPO(ResultSet rs) throws SQLException {
+    private VectorDocumentPO mapResultSetToPO(ResultSet rs, boolean withEmbedding) throws SQLException {
         VectorDocumentPO po = new VectorDocumentPO();
-        // UUID转换为Long：使用UUID的hashCode，或者使用字符串的hashCode
-        // 注意：这里假设id字段是Long类型，但实际数据库是UUID
-        // 如果需要保持UUID，应该将id字段改为String类型
-        String uuidStr = rs.getString("embedding_id");
-        if (uuidStr != null) {
-            // 使用UUID字符串的hashCode作为Long ID（临时方案）
-            // 更好的方案是将VectorDocumentPO.id改为String类型
-            po.setEmbeddingId(uuidStr);
-        }
+        // embedding_id 为UUID，直接以字符串保存
+        po.setEmbeddingId(rs.getString("embedding_id"));
         po.setRagId(rs.getLong("rag_id"));
         po.setContent(rs.getString("text"));
-        
-        // 处理embedding向量
-        String embeddingStr = rs.getString("embedding");
-        if (embeddingStr != null) {
-            po.setEmbedding(stringToArray(embeddingStr));
+
+        // 处理embedding向量（vector_send 二进制格式）
+        if (withEmbedding) {
+            po.setEmbedding(PgVectorCodec.decode(rs.getBytes("embedding")));
         }
-        
+
         // 处理metadata JSONB
         String metadataStr = rs.getString("metadata");
         if (metadataStr != null && !metadataStr.isEmpty()) {
             po.setMetadata(JSONB.valueOf(metadataStr));
         }
-        
+
         po.setChunkIndex(rs.getInt("chunk_index"));
         po.setCreatedAt(rs.getLong("created_at"));
         po.setUpdatedAt(rs.getLong("updated_at"));
         return po;
     }
 }
-
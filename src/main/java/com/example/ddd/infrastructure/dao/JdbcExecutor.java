@@ -0,0 +1,126 @@
+package com.example.ddd.infrastructure.dao;
+
+import org.jooq.ConnectionProvider;
+import org.jooq.DSLContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 原生JDBC执行器
+ * - 连接通过 DSLContext 的 ConnectionProvider 获取并归还（不关闭），同一工作单元（事务）内始终使用同一个连接
+ * - PreparedStatement / ResultSet 全部 try-with-resources 关闭
+ * - SQL 以常量传入，配合 pgjdbc 的服务端预编译语句缓存（preparedStatementCacheQueries）复用执行计划
+ */
+public final class JdbcExecutor {
+
+    private JdbcExecutor() {
+    }
+
+    /**
+     * 查询多行
+     */
+    public static <T> List<T> query(DSLContext dslContext, String sql, StatementBinder binder, RowMapper<T> mapper) throws SQLException {
+        return withConnection(dslContext, connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                binder.bind(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<T> result = new ArrayList<>();
+                    while (rs.next()) {
+                        result.add(mapper.map(rs));
+                    }
+                    return result;
+                }
+            }
+        });
+    }
+
+    /**
+     * 查询单行，无结果返回null
+     */
+    public static <T> T queryOne(DSLContext dslContext, String sql, StatementBinder binder, RowMapper<T> mapper) throws SQLException {
+        return withConnection(dslContext, connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                binder.bind(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? mapper.map(rs) : null;
+                }
+            }
+        });
+    }
+
+    /**
+     * 执行增删改
+     *
+     * @return 影响行数
+     */
+    public static int update(DSLContext dslContext, String sql, StatementBinder binder) throws SQLException {
+        return withConnection(dslContext, connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                binder.bind(ps);
+                return ps.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * 批量执行
+     *
+     * @return 批次中的语句数
+     */
+    public static <E> int batch(DSLContext dslContext, String sql, Collection<E> items, BatchBinder<E> binder) throws SQLException {
+        if (items == null || items.isEmpty()) {
+            return 0;
+        }
+        return withConnection(dslContext, connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                for (E item : items) {
+                    binder.bind(ps, item);
+                    ps.addBatch();
+                }
+                return ps.executeBatch().length;
+            }
+        });
+    }
+
+    /**
+     * 在工作单元的连接上执行多条语句（例如先 set_config 再查询）
+     */
+    public static <T> T withConnection(DSLContext dslContext, ConnectionCallback<T> callback) throws SQLException {
+        ConnectionProvider provider = dslContext.configuration().connectionProvider();
+        Connection connection = provider.acquire();
+        try {
+            return callback.doInConnection(connection);
+        } finally {
+            provider.release(connection);
+        }
+    }
+
+    @FunctionalInterface
+    public interface StatementBinder {
+        StatementBinder NONE = ps -> {
+        };
+
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface BatchBinder<E> {
+        void bind(PreparedStatement ps, E item) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T doInConnection(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.ddd.infrastructure.dao;
+
+import org.postgresql.util.PGobject;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+
+/**
+ * pgvector 编解码
+ * - 读：查询时用 vector_send(embedding) 取二进制格式（int16维度 + int16保留 + float4大端数组），直接解码为 float[]，不做文本解析
+ * - 写：以 PGobject(type=vector) 绑定参数，同一条语句内复用一个 StringBuilder（按向量维度预留容量），不再需要 ?::vector 转换
+ */
+public final class PgVectorCodec {
+
+    /**
+     * 单个分量文本的最大长度（Float.toString 最长15个字符，加分隔符）
+     */
+    private static final int MAX_ELEMENT_CHARS = 16;
+
+    private PgVectorCodec() {
+    }
+
+    /**
+     * 二进制读取的列表达式，例如 vector_send(embedding) AS embedding
+     */
+    public static String binaryColumn(String column) {
+        return "vector_send(" + column + ") AS " + column;
+    }
+
+    /**
+     * 解码 vector_send 的结果
+     */
+    public static float[] decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int dimension = buffer.getShort() & 0xFFFF;
+        buffer.getShort();
+        float[] vector = new float[dimension];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * 创建编码器，批量写入时在循环外创建一次
+     */
+    public static Encoder encoder() {
+        return new Encoder();
+    }
+
+    /**
+     * 向量参数编码器（非线程安全）
+     */
+    public static final class Encoder {
+        private final StringBuilder builder = new StringBuilder();
+
+        private Encoder() {
+        }
+
+        /**
+         * 编码为 PGobject，null 或空数组返回 null
+         */
+        public PGobject encode(float[] vector) throws SQLException {
+            if (vector == null || vector.length == 0) {
+                return null;
+            }
+            builder.setLength(0);
+            builder.ensureCapacity(vector.length * MAX_ELEMENT_CHARS + 2);
+            builder.append('[');
+            for (int i = 0; i < vector.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(vector[i]);
+            }
+            builder.append(']');
+            PGobject object = new PGobject();
+            object.setType("vector");
+            object.setValue(builder.toString());
+            return object;
+        }
+    }
+}
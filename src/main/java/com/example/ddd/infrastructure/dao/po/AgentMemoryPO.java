@@ -0,0 +1,16 @@
+package com.example.ddd.infrastructure.dao.po;
+
+import com.example.jooq.tables.records.AgentMemoryRecord;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Agent记忆持久化对象
+ */
+@Getter
+@Setter
+@Serdeable
+public class AgentMemoryPO extends AgentMemoryRecord {
+
+}
@@ -0,0 +1,28 @@
+package com.example.ddd.infrastructure.dao.po;
+
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 文档导入任务持久化对象
+ */
+@Getter
+@Setter
+@Serdeable
+public class DocImportJobPO {
+    private Long id;
+    private Long ragId;
+    private String docId;
+    private String status;
+    private Integer progress;
+    private String stage;
+    private Integer attempts;
+    private Integer maxAttempts;
+    private Long nextRunAt;
+    private String lockedBy;
+    private Long lockedAt;
+    private String lastError;
+    private Long createdAt;
+    private Long updatedAt;
+}
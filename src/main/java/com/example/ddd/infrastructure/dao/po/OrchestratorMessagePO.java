@@ -0,0 +1,16 @@
+package com.example.ddd.infrastructure.dao.po;
+
+import com.example.jooq.tables.records.OrchestratorMessageRecord;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Orchestrator消息记录持久化对象
+ */
+@Getter
+@Setter
+@Serdeable
+public class OrchestratorMessagePO extends OrchestratorMessageRecord {
+
+}
@@ -0,0 +1,16 @@
+package com.example.ddd.infrastructure.dao.po;
+
+import com.example.jooq.tables.records.OrchestratorRunRecord;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Orchestrator执行记录持久化对象
+ */
+@Getter
+@Setter
+@Serdeable
+public class OrchestratorRunPO extends OrchestratorRunRecord {
+
+}
@@ -22,5 +22,6 @@ public class VectorDocumentPO {
     private Integer chunkIndex;
     private Long createdAt;
     private Long updatedAt;
+    private Double similarity; // 相似度（仅检索结果有值）
 }
 
@@ -0,0 +1,47 @@
+package com.example.ddd.trigger.controller;
+
+import com.example.ddd.domain.agent.service.execute.graph.GraphTopologyCache;
+import com.example.ddd.domain.agent.service.execute.task.PlanCache;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import jakarta.inject.Inject;
+
+import java.util.Map;
+
+/**
+ * 运行指标Controller
+ */
+@Controller("/monitor")
+public class MonitorController {
+    @Inject
+    private DSLContextFactory dslContextFactory;
+    @Inject
+    private PlanCache planCache;
+    @Inject
+    private GraphTopologyCache topologyCache;
+
+    /**
+     * 数据库连接池指标：活跃/空闲/等待线程数、获取连接等待时间、连接占用时间、超时次数
+     */
+    @Get("/db-pool")
+    public Map<String, Object> dbPool() {
+        return dslContextFactory.poolMetrics();
+    }
+
+    /**
+     * 任务计划缓存指标：命中/未命中次数、命中率、写入/过期/淘汰条目数
+     */
+    @Get("/plan-cache")
+    public Map<String, Object> planCache() {
+        return planCache.metrics();
+    }
+
+    /**
+     * 任务图拓扑缓存指标：命中/未命中次数、淘汰数、当前数量
+     */
+    @Get("/topology-cache")
+    public Map<String, Object> topologyCache() {
+        return topologyCache.metrics();
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.ddd.trigger.controller;
 
+import com.example.ddd.domain.agent.model.entity.DocImportJobEntity;
 import com.example.ddd.domain.agent.model.entity.VectorDocumentEntity;
 import com.example.ddd.domain.agent.service.RagService;
+import com.example.ddd.domain.agent.service.embedding.EmbeddingCache;
+import com.example.ddd.domain.agent.service.job.DocImportJobService;
 import com.example.ddd.trigger.request.RagAddDocumentRequest;
 import com.example.ddd.trigger.request.RagSearchRequest;
 import io.micronaut.http.HttpStatus;
@@ -24,6 +27,10 @@ import java.util.Map;
 public class RagController {
     @Inject
     private RagService ragService;
+    @Inject
+    private EmbeddingCache embeddingCache;
+    @Inject
+    private DocImportJobService docImportJobService;
 
     /**
      * 添加文档到RAG知识库
@@ -110,7 +117,9 @@ public class RagController {
                 request.getRagId(),
                 request.getQueryText(),
                 request.getLimit() != null ? request.getLimit() : 10,
-                request.getSimilarityThreshold() != null ? request.getSimilarityThreshold() : 0.6
+                request.getSimilarityThreshold() != null ? request.getSimilarityThreshold() : 0.6,
+                request.getEfSearch(),
+                request.getProbes()
         );
         return Map.of(
                 "success", true,
@@ -175,22 +184,71 @@ public class RagController {
     }
 
 
+    /**
+     * 提交文档导入任务（异步执行，通过任务接口查询进度）
+     *
+     * @param ragId   RAG ID
+     * @param request docId；force=true 时已成功导入的文档也重新导入
+     * @return 任务信息
+     */
     @Post("/{ragId}/documents/import")
+    @Status(HttpStatus.ACCEPTED)
     public Map<String, Object> importDocument(
             @PathVariable Long ragId,
-            @Body Map<String, String> request) {
-        String docId = request.get("docId");
+            @Body Map<String, Object> request) {
+        String docId = (String) request.get("docId");
+        boolean force = Boolean.TRUE.equals(request.get("force"));
 
-        ragService.importDocument(
-                ragId,
-                docId
+        DocImportJobEntity job = docImportJobService.submit(ragId, docId, force);
+
+        return Map.of(
+                "success", true,
+                "ragId", ragId,
+                "docId", docId,
+                "jobId", job.getId(),
+                "status", job.getStatus(),
+                "message", "文档导入任务已提交"
         );
+    }
 
+    /**
+     * 查询文档导入任务的状态和进度
+     *
+     * @param jobId 任务ID
+     * @return 任务信息
+     */
+    @Get("/import/jobs/{jobId}")
+    public Map<String, Object> getImportJob(@PathVariable Long jobId) {
+        DocImportJobEntity job = docImportJobService.getJob(jobId);
+        if (job == null) {
+            return Map.of(
+                    "success", false,
+                    "message", "未找到导入任务: " + jobId
+            );
+        }
+        return Map.of(
+                "success", true,
+                "job", job
+        );
+    }
+
+    /**
+     * 查询RAG下最近的文档导入任务
+     *
+     * @param ragId RAG ID
+     * @param limit 返回数量（默认50）
+     * @return 任务列表
+     */
+    @Get("/{ragId}/import/jobs")
+    public Map<String, Object> listImportJobs(
+            @PathVariable Long ragId,
+            @QueryValue(value = "limit", defaultValue = "50") Integer limit) {
+        List<DocImportJobEntity> jobs = docImportJobService.listJobs(ragId, limit);
         return Map.of(
                 "success", true,
                 "ragId", ragId,
-                "docId", docId != null ? docId : "",
-                "message", "文档导入成功"
+                "jobs", jobs,
+                "count", jobs.size()
         );
     }
 
@@ -297,6 +355,16 @@ public class RagController {
         );
     }
 
+    /**
+     * 向量缓存命中统计
+     *
+     * @return 各级命中数、未命中数和命中率
+     */
+    @Get("/embedding/cache/stats")
+    public Map<String, Object> embeddingCacheStats() {
+        return embeddingCache.stats();
+    }
+
     /**
      * 健康检查
      *
@@ -1,21 +1,41 @@
 package com.example.ddd.trigger.controller;
 
 import com.example.ddd.common.utils.BeanUtil;
-import com.example.ddd.domain.agent.model.entity.ArmoryCommandEntity;
-import com.example.ddd.domain.agent.service.armory.DynamicContext;
-import com.example.ddd.domain.agent.service.armory.RootNode;
-import com.example.ddd.domain.agent.service.execute.Orchestrator;
+import com.example.ddd.common.utils.IdGenerator;
+import com.example.ddd.configuration.config.StreamProperties;
+import com.example.ddd.domain.agent.model.valobj.OrchestratorRunStatus;
+import com.example.ddd.domain.agent.service.armory.ArmoryService;
+import com.example.ddd.domain.agent.service.execute.context.RunRegistry;
 import com.example.ddd.domain.agent.service.execute.context.UserContext;
+import com.example.ddd.domain.agent.service.execute.record.RunRecorder;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.annotation.Body;
 import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Header;
+import io.micronaut.http.annotation.PathVariable;
 import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.http.sse.Event;
+import io.micronaut.json.JsonMapper;
 import io.micronaut.serde.annotation.Serdeable;
 import jakarta.inject.Inject;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.bsc.langgraph4j.GraphStateException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 任务执行Controller
@@ -26,9 +46,29 @@ import reactor.core.publisher.Flux;
 public class TaskExecuteController {
 
     @Inject
-    private BeanUtil beanUtil;
+    private ArmoryService armoryService;
+    @Inject
+    private StreamProperties streamProperties;
+    @Inject
+    private JsonMapper jsonMapper;
+    @Inject
+    private RunRecorder runRecorder;
     @Inject
-    RootNode rootNode;
+    private RunRegistry runRegistry;
+    @Inject
+    private IdGenerator idGenerator;
+
+    /**
+     * 事件序列化缓冲区初始大小及保留上限（字节）
+     */
+    private static final int SERIALIZE_BUFFER_BYTES = 1024;
+    private static final int MAX_RETAINED_SERIALIZE_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * 执行编排流程（虚拟线程，阻塞等待模型响应不占用平台线程）
+     */
+    private final ExecutorService executeExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("TaskExecute-", 0).factory());
 
     /**
      * 执行任务
@@ -37,62 +77,191 @@ public class TaskExecuteController {
      * @return SSE事件流
      */
     @Post(value = "/execute", produces = MediaType.TEXT_EVENT_STREAM)
-    public Flux<UserContext.TaskStatusEvent> execute(@Body TaskExecuteRequest request) {
-        ArmoryCommandEntity armoryCommandEntity = new ArmoryCommandEntity();
-        armoryCommandEntity.setOrchestratorId(request.getOrchestratorId());
-        rootNode.handle(armoryCommandEntity, new DynamicContext());
+    public Flux<Event<String>> execute(@Body TaskExecuteRequest request) {
         log.info("多agent执行中 收到任务执行请求: orchestratorId={}, message={}", request.getOrchestratorId(), request.getMessage());
-        return Flux.create(emitter -> {
-            Orchestrator orchestrator = getOrchestrator(request.getOrchestratorId());
-            if (orchestrator == null) {
-                emitter.error(new IllegalStateException("无法获取Orchestrator，请先调用 /armory 构建"));
-                return;
+        return Flux.defer(() -> {
+            BeanUtil.OrchestratorLease lease = acquireOrchestrator(request.getOrchestratorId());
+            if (lease == null) {
+                return Flux.error(new IllegalStateException("无法获取Orchestrator，请检查orchestrator配置"));
             }
-            UserContext userContext = new UserContext();
-            
-            // 设置用户ID和会话ID
-            String userId = request.getUserId() != null ? request.getUserId() : "default_user";
-            String sessionId = request.getSessionId() != null ? request.getSessionId() : 
-                    java.util.UUID.randomUUID().toString();
-            userContext.setUserId(userId);
-            userContext.setSessionId(sessionId);
-            
-            // 保存用户输入到 InMemory
-            if (request.getMessage() != null && !request.getMessage().trim().isEmpty()) {
-                com.example.ddd.domain.agent.service.execute.memory.InMemory.getInstance()
-                        .addMessage(userId, sessionId, "USER", request.getMessage());
+            try {
+                return start(lease, request);
+            } catch (RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * 创建执行上下文并在订阅后开始执行，租约由执行线程在结束时释放
+     */
+    private Flux<Event<String>> start(BeanUtil.OrchestratorLease lease, TaskExecuteRequest request) {
+        UserContext userContext = new UserContext(streamProperties.getBufferSize(),
+                streamProperties.getOverflow(), streamProperties.getBlockTimeoutMillis(),
+                streamProperties.getReplayBufferSize());
+        userContext.setRunId(idGenerator.nextSnowflakeId());
+
+        // 设置用户ID和会话ID
+        String userId = request.getUserId() != null ? request.getUserId() : "default_user";
+        String sessionId = request.getSessionId() != null ? request.getSessionId() :
+                java.util.UUID.randomUUID().toString();
+        userContext.setUserId(userId);
+        userContext.setSessionId(sessionId);
+        userContext.setTokenFrame(
+                request.getFrameTokens() != null ? request.getFrameTokens() : streamProperties.getFrameTokens(),
+                request.getFrameMillis() != null ? request.getFrameMillis() : streamProperties.getFrameMillis());
+        userContext.setSerializer(reusableSerializer());
+        userContext.setCancelGraceMillis(streamProperties.getCancelGraceMillis());
+
+        // 保存用户输入到 InMemory
+        if (request.getMessage() != null && !request.getMessage().trim().isEmpty()) {
+            com.example.ddd.domain.agent.service.execute.memory.InMemory.getInstance()
+                    .addMessage(userId, sessionId, "USER", request.getMessage());
+        }
+
+        // 订阅后再开始执行，执行线程只负责写入事件，由订阅方按需拉取
+        runRegistry.register(userContext);
+        return toSse(userContext.getRunId(), userContext.asFlux())
+                .doOnSubscribe(subscription -> executeExecutor.execute(() -> run(lease, request, userContext)));
+    }
+
+    /**
+     * 断线重连
+     * 从 Last-Event-ID（或 lastEventId 参数）之后继续接收事件：内存中的事件直接重放，更早的从执行记录补齐（未记录的区间发送 events_missing）；
+     * 执行未结束时继续推送后续事件，不会重新执行
+     *
+     * @param runId             执行ID（SSE事件ID的前半部分）
+     * @param lastEventIdHeader 客户端收到的最后一个SSE事件ID，格式 runId-序号 或 序号
+     * @param lastEventId       同上，用于无法设置请求头的客户端
+     */
+    @Get(value = "/runs/{runId}/events", produces = MediaType.TEXT_EVENT_STREAM)
+    public Flux<Event<String>> resume(@PathVariable Long runId,
+                                      @Nullable @Header("Last-Event-ID") String lastEventIdHeader,
+                                      @Nullable @QueryValue String lastEventId) {
+        long after = parseSequence(lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+        log.info("多agent执行中 收到断线重连请求: runId={}, lastEventId={}", runId, after);
+        return Flux.defer(() -> {
+            UserContext userContext = runRegistry.get(runId);
+            if (userContext == null) {
+                // 已不在内存中（执行结束较久或实例重启），只能从执行记录重放
+                return toSse(runId, loadEvents(runId, after, Long.MAX_VALUE));
             }
-            
-            userContext.startEventDispatcher(emitter);
-            new Thread(() -> {
-                try {
-                    orchestrator.execute(request.getMessage(), userContext);
-                    userContext.complete();
-                } catch (GraphStateException e) {
-                    log.error("执行任务失败: {}", e.getMessage(), e);
-                    userContext.error("执行任务失败: " + e.getMessage());
-                    userContext.stopEventDispatcher();
-                    emitter.error(e);
-                } catch (Exception e) {
-                    log.error("执行任务异常: {}", e.getMessage(), e);
-                    userContext.error("执行任务异常: " + e.getMessage());
-                    userContext.stopEventDispatcher();
-                    emitter.error(e);
-                }
-            }, "UserContext-EventDispatcher-Wait").start();
+            // 先切换订阅再补齐：切换后产生的事件进入新的缓冲区；已被重放缓冲区淘汰的事件从执行记录读取，
+            // 读取前等待记录写库，写入压力下未记录的区间以 events_missing 事件标出
+            UserContext.Replay replay = userContext.reattach(after);
+            return toSse(runId, Flux.concat(loadEvents(runId, after, replay.oldestBufferedId()), replay.events()));
         });
     }
 
     /**
-     * 获取Orchestrator实例
-     * 从BeanUtil中获取已构建的Orchestrator
+     * 从执行记录读取 (afterId, beforeId) 之间的事件（查库不在事件循环线程上执行）
+     */
+    private Flux<UserContext.TaskStatusEvent> loadEvents(Long runId, long afterId, long beforeId) {
+        return Mono.fromCallable(() -> runRecorder.loadEvents(runId, afterId, beforeId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    private Flux<Event<String>> toSse(Long runId, Flux<UserContext.TaskStatusEvent> events) {
+        return events.map(event -> Event.of(event.payload() != null ? event.payload() : serialize(event))
+                .id(runId + "-" + event.getId()));
+    }
+
+    /**
+     * 解析事件序号，非法值按0处理（从头开始）
+     */
+    private static long parseSequence(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return 0;
+        }
+        String sequence = lastEventId.substring(lastEventId.lastIndexOf('-') + 1).trim();
+        try {
+            return Math.max(0, Long.parseLong(sequence));
+        } catch (NumberFormatException e) {
+            log.warn("Last-Event-ID格式错误，从头重放: lastEventId={}", lastEventId);
+            return 0;
+        }
+    }
+
+    /**
+     * 每次执行一个序列化缓冲区，UserContext 在发送锁内串行调用，缓冲区在事件之间复用；
+     * 偶尔出现的超大事件之后丢弃缓冲区，避免长期占用内存
+     */
+    private Function<UserContext.TaskStatusEvent, String> reusableSerializer() {
+        ByteArrayOutputStream[] buffer = {new ByteArrayOutputStream(SERIALIZE_BUFFER_BYTES)};
+        return event -> {
+            ByteArrayOutputStream out = buffer[0];
+            out.reset();
+            try {
+                jsonMapper.writeValue(out, event);
+            } catch (IOException e) {
+                throw new UncheckedIOException("事件序列化失败", e);
+            }
+            String payload = out.toString(StandardCharsets.UTF_8);
+            if (out.size() > MAX_RETAINED_SERIALIZE_BUFFER_BYTES) {
+                buffer[0] = new ByteArrayOutputStream(SERIALIZE_BUFFER_BYTES);
+            }
+            return payload;
+        };
+    }
+
+    private String serialize(UserContext.TaskStatusEvent event) {
+        try {
+            return jsonMapper.writeValueAsString(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException("事件序列化失败", e);
+        }
+    }
+
+    private void run(BeanUtil.OrchestratorLease lease, TaskExecuteRequest request, UserContext userContext) {
+        RunRecorder.Run run = runRecorder.start(request.getOrchestratorId(), request.getMessage(), userContext);
+        try {
+            lease.getOrchestrator().execute(request.getMessage(), userContext);
+            runRecorder.finish(run, userContext.isCancelled() ? OrchestratorRunStatus.CANCELLED : null);
+            userContext.complete();
+        } catch (GraphStateException e) {
+            log.error("执行任务失败: {}", e.getMessage(), e);
+            userContext.error("执行任务失败: " + e.getMessage());
+            runRecorder.finish(run, OrchestratorRunStatus.FAILED);
+            userContext.fail(e);
+        } catch (Exception e) {
+            log.error("执行任务异常: {}", e.getMessage(), e);
+            userContext.error("执行任务异常: " + e.getMessage());
+            runRecorder.finish(run, OrchestratorRunStatus.FAILED);
+            userContext.fail(e);
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * 使Orchestrator缓存失效
+     * 修改orchestrator/agent/model/rag/mcp配置后可主动调用，下次执行时重新装配
+     *
+     * @param orchestratorId Orchestrator ID
+     * @return 处理结果
+     */
+    @Post("/orchestrator/{orchestratorId}/invalidate")
+    public Map<String, Object> invalidate(@PathVariable Long orchestratorId) {
+        armoryService.invalidate(orchestratorId);
+        return Map.of(
+                "success", true,
+                "orchestratorId", orchestratorId,
+                "message", "Orchestrator缓存已失效"
+        );
+    }
+
+    /**
+     * 获取并持有Orchestrator实例
+     * 配置未变化时直接复用已构建的Orchestrator，否则重新装配
      */
-    private Orchestrator getOrchestrator(Long orchestratorId) {
-        Orchestrator orchestrator = beanUtil.getOrchestrator(orchestratorId);
-        if (orchestrator == null) {
-            log.error("多agent执行中 orchestratorId={} 没有Orchestrator，请先调用 /armory 构建", orchestratorId);
+    private BeanUtil.OrchestratorLease acquireOrchestrator(Long orchestratorId) {
+        BeanUtil.OrchestratorLease lease = armoryService.acquireOrchestrator(orchestratorId);
+        if (lease == null) {
+            log.error("多agent执行中 orchestratorId={} 装配Orchestrator失败", orchestratorId);
         }
-        return orchestrator;
+        return lease;
     }
 
     /**
@@ -105,6 +274,8 @@ public class TaskExecuteController {
         private String message;
         private String userId;      // 用户ID（可选，如果不传则使用默认值）
         private String sessionId;   // 会话ID（可选，如果不传则自动生成）
+        private Integer frameTokens; // 流式输出每帧最多token数（可选，1表示逐token发送）
+        private Long frameMillis;    // 流式输出每帧最长等待毫秒数（可选）
     }
 
 
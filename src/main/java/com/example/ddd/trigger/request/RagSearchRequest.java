@@ -30,6 +30,16 @@ public class RagSearchRequest {
      * 相似度阈值（默认0.6）
      */
     private Double similarityThreshold = 0.6;
+
+    /**
+     * HNSW索引的 ef_search（可选，越大召回越高、越慢）
+     */
+    private Integer efSearch;
+
+    /**
+     * IVFFlat索引的 probes（可选，越大召回越高、越慢）
+     */
+    private Integer probes;
 }
 
 
@@ -0,0 +1,161 @@
+package com.example.ddd.common.utils;
+
+import com.example.ddd.domain.agent.model.entity.McpEntity;
+import com.example.ddd.domain.agent.service.execute.Orchestrator;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.context.Qualifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Orchestrator版本失效测试类
+ */
+class BeanUtilTest {
+
+    private static final Long ORCHESTRATOR_ID = 1L;
+
+    @Mock
+    private ApplicationContext applicationContext;
+    @InjectMocks
+    private BeanUtil beanUtil;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testInvalidate_DestroysBeansAfterLeaseReleased() {
+        StreamingChatModel chatModel = mock(StreamingChatModel.class);
+        BeanUtil.OrchestratorLease lease = beanUtil.acquireOrchestrator(ORCHESTRATOR_ID, "v1",
+                () -> build(chatModel));
+        assertNotNull(lease);
+
+        beanUtil.invalidateOrchestrator(ORCHESTRATOR_ID);
+        // 执行中的请求仍在使用旧版本
+        verify(applicationContext, never()).destroyBean(any(Object.class));
+        assertNull(beanUtil.getOrchestrator(ORCHESTRATOR_ID, "v1"));
+
+        lease.close();
+        verify(applicationContext, times(1)).destroyBean(chatModel);
+
+        // 重复关闭不会重复销毁
+        lease.close();
+        verify(applicationContext, times(1)).destroyBean(any(Object.class));
+    }
+
+    @Test
+    void testInvalidate_WithoutLeaseDestroysImmediately() {
+        StreamingChatModel chatModel = mock(StreamingChatModel.class);
+        beanUtil.getOrCreateOrchestrator(ORCHESTRATOR_ID, "v1", () -> build(chatModel));
+
+        beanUtil.invalidateOrchestrator(ORCHESTRATOR_ID);
+
+        verify(applicationContext, times(1)).destroyBean(chatModel);
+    }
+
+    @Test
+    void testVersionChange_OldAndNewVersionCoexist() {
+        StreamingChatModel oldModel = mock(StreamingChatModel.class);
+        StreamingChatModel newModel = mock(StreamingChatModel.class);
+        BeanUtil.OrchestratorLease oldLease = beanUtil.acquireOrchestrator(ORCHESTRATOR_ID, "v1",
+                () -> build(oldModel));
+        BeanUtil.OrchestratorLease newLease = beanUtil.acquireOrchestrator(ORCHESTRATOR_ID, "v2",
+                () -> build(newModel));
+
+        assertNotSame(oldLease.getOrchestrator(), newLease.getOrchestrator());
+        assertSame(newLease.getOrchestrator(), beanUtil.getOrchestrator(ORCHESTRATOR_ID, "v2"));
+        verify(applicationContext, never()).destroyBean(any(Object.class));
+
+        oldLease.close();
+        verify(applicationContext, times(1)).destroyBean(oldModel);
+        verify(applicationContext, never()).destroyBean(newModel);
+
+        newLease.close();
+        // 当前版本未退役，释放后保留
+        verify(applicationContext, never()).destroyBean(newModel);
+    }
+
+    @Test
+    void testSameVersion_ReusesOrchestrator() {
+        BeanUtil.OrchestratorLease first = beanUtil.acquireOrchestrator(ORCHESTRATOR_ID, "v1",
+                () -> build(mock(StreamingChatModel.class)));
+        BeanUtil.OrchestratorLease second = beanUtil.acquireOrchestrator(ORCHESTRATOR_ID, "v1", () -> {
+            fail("配置未变化时不应重新装配");
+            return null;
+        });
+
+        assertSame(first.getOrchestrator(), second.getOrchestrator());
+    }
+
+    @Test
+    void testSharedEmbeddingModel_NotDestroyed() {
+        EmbeddingModel sharedModel = mock(EmbeddingModel.class);
+        beanUtil.getOrCreateOrchestrator(ORCHESTRATOR_ID, "v1", () -> {
+            beanUtil.registerEmbeddingModel(ORCHESTRATOR_ID, 100L, sharedModel);
+            assertSame(sharedModel, beanUtil.getEmbeddingModel(ORCHESTRATOR_ID, 100L));
+            return build(mock(StreamingChatModel.class));
+        });
+
+        beanUtil.invalidateOrchestrator(ORCHESTRATOR_ID);
+
+        verify(applicationContext, never()).destroyBean(sharedModel);
+    }
+
+    @Test
+    void testBuildFailure_DestroysPartialBeans() {
+        StreamingChatModel chatModel = mock(StreamingChatModel.class);
+        assertThrows(IllegalStateException.class, () ->
+                beanUtil.getOrCreateOrchestrator(ORCHESTRATOR_ID, "v1", () -> {
+                    beanUtil.registerChatModel(ORCHESTRATOR_ID, 10L, chatModel);
+                    throw new IllegalStateException("装配失败");
+                }));
+
+        verify(applicationContext, times(1)).destroyBean(chatModel);
+        assertNull(beanUtil.getOrchestrator(ORCHESTRATOR_ID));
+    }
+
+    @Test
+    void testMcpConfig_ScopedToOrchestratorVersion() {
+        McpEntity oldConfig = new McpEntity();
+        oldConfig.setBaseUrl("http://localhost:8081/mcp");
+        McpEntity newConfig = new McpEntity();
+        newConfig.setBaseUrl("http://localhost:8082/mcp");
+        beanUtil.getOrCreateOrchestrator(ORCHESTRATOR_ID, "v1", () -> {
+            beanUtil.registerMcp(ORCHESTRATOR_ID, 20L, oldConfig);
+            return build(mock(StreamingChatModel.class));
+        });
+        // MCP配置变化后重新装配，新配置以新版本注册，旧配置随旧版本销毁
+        beanUtil.getOrCreateOrchestrator(ORCHESTRATOR_ID, "v2", () -> {
+            beanUtil.registerMcp(ORCHESTRATOR_ID, 20L, newConfig);
+            return build(mock(StreamingChatModel.class));
+        });
+
+        verify(applicationContext, times(1)).destroyBean(oldConfig);
+        verify(applicationContext, never()).destroyBean(newConfig);
+        verify(applicationContext, times(2)).registerSingleton(eq(McpEntity.class), any(McpEntity.class), any(Qualifier.class));
+    }
+
+    /**
+     * 模拟装配链：注册本版本的ChatModel并登记Orchestrator
+     */
+    private Orchestrator build(StreamingChatModel chatModel) {
+        beanUtil.registerChatModel(ORCHESTRATOR_ID, 10L, chatModel);
+        Orchestrator orchestrator = mock(Orchestrator.class);
+        beanUtil.registerOrchestrator(ORCHESTRATOR_ID, orchestrator);
+        return orchestrator;
+    }
+}
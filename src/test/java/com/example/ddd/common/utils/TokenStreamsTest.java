@@ -0,0 +1,103 @@
+package com.example.ddd.common.utils;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.service.TokenStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * TokenStream 适配测试类
+ */
+class TokenStreamsTest {
+
+    private TokenStream tokenStream;
+    private final List<String> tokens = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        tokenStream = mock(TokenStream.class, RETURNS_SELF);
+    }
+
+    @Test
+    void testToFuture_CompletesWithFullAnswer() {
+        CompletableFuture<String> future = TokenStreams.toFuture(tokenStream, tokens::add, Duration.ofSeconds(5));
+        partialHandler().accept("你好");
+        partialHandler().accept("世界");
+        completeHandler().accept(ChatResponse.builder().aiMessage(AiMessage.from("你好世界")).build());
+
+        assertEquals("你好世界", TokenStreams.await(future));
+        assertEquals(List.of("你好", "世界"), tokens);
+    }
+
+    @Test
+    void testAwait_CancelPropagatesUnwrapped() {
+        CompletableFuture<String> future = TokenStreams.toFuture(tokenStream, tokens::add, null);
+        future.cancel(true);
+        partialHandler().accept("取消后的token");
+
+        assertThrows(CancellationException.class, () -> TokenStreams.await(future));
+        assertTrue(tokens.isEmpty());
+    }
+
+    @Test
+    void testAwait_InterruptCancelsFuture() {
+        CompletableFuture<String> future = TokenStreams.toFuture(tokenStream, null, null);
+        Thread.currentThread().interrupt();
+
+        assertThrows(CancellationException.class, () -> TokenStreams.await(future));
+        assertTrue(future.isCancelled());
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    void testAwait_TimeoutIsReported() {
+        CompletableFuture<String> future = TokenStreams.toFuture(tokenStream, null, Duration.ofMillis(20));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> TokenStreams.await(future));
+        assertEquals("模型响应超时", error.getMessage());
+    }
+
+    @Test
+    void testAwait_ErrorIsUnwrapped() {
+        CompletableFuture<String> future = TokenStreams.toFuture(tokenStream, null, null);
+        errorHandler().accept(new IllegalStateException("模型调用失败"));
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> TokenStreams.await(future));
+        assertEquals("模型调用失败", error.getMessage());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<String> partialHandler() {
+        ArgumentCaptor<Consumer<String>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(tokenStream).onPartialResponse(captor.capture());
+        return captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<ChatResponse> completeHandler() {
+        ArgumentCaptor<Consumer<ChatResponse>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(tokenStream).onCompleteResponse(captor.capture());
+        return captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<Throwable> errorHandler() {
+        ArgumentCaptor<Consumer<Throwable>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(tokenStream).onError(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.ddd.domain.agent.service.chunk;
+
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文档切分器测试类
+ */
+class TextSplitterTest {
+
+    private final TextSplitter textSplitter = new TextSplitter();
+    private final TokenCountEstimator estimator = new OpenAiTokenCountEstimator("text-embedding-3-small");
+
+    @Test
+    void testSplit_OverlapSmallerThanSize() {
+        String text = IntStream.range(0, 200).mapToObj(i -> "word" + i).collect(Collectors.joining(" "));
+
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.TOKEN, 20, 5).toList();
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(estimator.estimateTokenCountInText(chunk) <= 20, "片段超过chunkSize: " + chunk);
+        }
+        for (int i = 1; i < chunks.size(); i++) {
+            // 后一个片段以前一个片段末尾的内容开头
+            String firstWord = chunks.get(i).split(" ")[0];
+            assertTrue(chunks.get(i - 1).contains(firstWord), "相邻片段没有重叠: " + chunks.get(i - 1) + " | " + chunks.get(i));
+            assertNotEquals(chunks.get(i - 1), chunks.get(i));
+        }
+        assertTrue(chunks.get(0).startsWith("word0 "));
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("word199"));
+    }
+
+    @Test
+    void testSplit_OverlapNotSmallerThanSizeIsClamped() {
+        String text = IntStream.range(0, 100).mapToObj(i -> "word" + i).collect(Collectors.joining(" "));
+
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.TOKEN, 16, 16).toList();
+
+        assertTrue(chunks.size() > 1);
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("word99"));
+    }
+
+    @Test
+    void testSplit_ZeroOverlapCoversTextOnce() {
+        String text = IntStream.range(0, 100).mapToObj(i -> "word" + i).collect(Collectors.joining(" "));
+
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.TOKEN, 16, 0).toList();
+
+        assertEquals(text, String.join(" ", chunks));
+    }
+
+    @Test
+    void testSplit_UnitLargerThanChunkIsRefined() {
+        // 一个段落、一个句子，超过 chunkSize 时逐级细分到token单元
+        String sentence = IntStream.range(0, 120).mapToObj(i -> "token" + i).collect(Collectors.joining(" "));
+
+        List<String> chunks = textSplitter.split(sentence, ChunkStrategy.RECURSIVE, 30, 0).toList();
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(estimator.estimateTokenCountInText(chunk) <= 30, "片段超过chunkSize: " + chunk);
+        }
+        assertEquals(sentence, String.join(" ", chunks));
+    }
+
+    @Test
+    void testSplit_SingleAtomLargerThanChunkIsKept() {
+        String atom = "x".repeat(400);
+
+        List<String> chunks = textSplitter.split("开始 " + atom + " 结束", ChunkStrategy.TOKEN, 10, 0).toList();
+
+        assertTrue(chunks.contains(atom), "超长token单元应单独成片段而不是丢失");
+        assertEquals("开始", chunks.get(0));
+        assertEquals("结束", chunks.get(chunks.size() - 1));
+    }
+
+    @Test
+    void testSplit_CjkSentences() {
+        List<String> sentences = IntStream.range(0, 40)
+                .mapToObj(i -> "这是第" + i + "个用于测试中文切分的句子。")
+                .toList();
+        String text = String.join("", sentences);
+
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.SENTENCE, 100, 30).toList();
+
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(estimator.estimateTokenCountInText(chunk) <= 100, "片段超过chunkSize: " + chunk);
+            // 按句切分，片段以完整的句子结尾
+            assertTrue(chunk.endsWith("。"), "片段切开了句子: " + chunk);
+        }
+        for (String sentence : sentences) {
+            assertTrue(chunks.stream().anyMatch(chunk -> chunk.contains(sentence)), "句子丢失: " + sentence);
+        }
+    }
+
+    @Test
+    void testSplit_CjkTokenStrategy() {
+        String text = "向量检索增强生成".repeat(30);
+
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.TOKEN, 12, 0).toList();
+
+        assertEquals(text, String.join("", chunks));
+        for (String chunk : chunks) {
+            assertTrue(estimator.estimateTokenCountInText(chunk) <= 12, "片段超过chunkSize: " + chunk);
+        }
+    }
+
+    @Test
+    void testSplit_BlankParagraphsSkipped() {
+        String text = "第一段内容。\n\n\n   \n\n\t\n第二段内容。\n\n";
+
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.RECURSIVE, 512, 64).toList();
+
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).startsWith("第一段内容。"));
+        assertTrue(chunks.get(0).endsWith("第二段内容。"));
+        chunks.forEach(chunk -> assertFalse(chunk.isBlank()));
+    }
+
+    @Test
+    void testSplit_BlankParagraphsNeverProduceEmptyChunks() {
+        String paragraph = IntStream.range(0, 30).mapToObj(i -> "word" + i).collect(Collectors.joining(" "));
+        String text = paragraph + "\n\n \n\n\n" + paragraph + "\n\n\n\n";
+
+        List<String> chunks = textSplitter.split(text, ChunkStrategy.RECURSIVE, 20, 4).toList();
+
+        assertFalse(chunks.isEmpty());
+        chunks.forEach(chunk -> {
+            assertFalse(chunk.isBlank());
+            assertEquals(chunk.strip(), chunk);
+        });
+    }
+
+    @Test
+    void testSplit_BlankText() {
+        assertEquals(0, textSplitter.split("  \n\n\t ", ChunkStrategy.RECURSIVE, 100, 10).count());
+        assertEquals(0, textSplitter.split(null, ChunkStrategy.RECURSIVE, 100, 10).count());
+    }
+}
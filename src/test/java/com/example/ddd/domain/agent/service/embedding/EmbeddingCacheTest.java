@@ -0,0 +1,123 @@
+package com.example.ddd.domain.agent.service.embedding;
+
+import com.example.ddd.configuration.config.EmbeddingProperties;
+import com.example.ddd.domain.agent.adapter.repository.IEmbeddingCacheRepository;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 向量缓存测试类
+ */
+class EmbeddingCacheTest {
+
+    private static final String MODEL = "text-embedding-3-small";
+
+    @Spy
+    private EmbeddingProperties embeddingProperties = new EmbeddingProperties();
+    @Mock
+    private IEmbeddingCacheRepository embeddingCacheRepository;
+    @Mock
+    private DSLContextFactory dslContextFactory;
+    @InjectMocks
+    private EmbeddingCache embeddingCache;
+
+    /**
+     * 模拟 embedding_cache 表
+     */
+    private final Map<String, float[]> table = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        embeddingProperties.setCacheSize(100);
+        embeddingProperties.setBatchSize(2);
+        embeddingProperties.setPersistentCache(true);
+        embeddingCache.init();
+        when(dslContextFactory.callable(any())).thenAnswer(invocation ->
+                invocation.<DSLContextFactory.CallableOperation<?>>getArgument(0).callable(null));
+        when(embeddingCacheRepository.queryByHashes(any(), eq(MODEL), anyCollection())).thenAnswer(invocation -> {
+            Collection<String> hashes = invocation.getArgument(2);
+            Map<String, float[]> found = new HashMap<>();
+            hashes.stream().filter(table::containsKey).forEach(hash -> found.put(hash, table.get(hash).clone()));
+            return found;
+        });
+    }
+
+    @Test
+    void testGetAll_ReturnsCopies() {
+        embeddingCache.putAll(MODEL, Map.of("h1", new float[]{1f, 2f}));
+
+        float[] first = embeddingCache.getAll(MODEL, List.of("h1")).get("h1");
+        first[0] = 99f;
+
+        assertArrayEquals(new float[]{1f, 2f}, embeddingCache.getAll(MODEL, List.of("h1")).get("h1"));
+        assertArrayEquals(new float[]{1f, 2f}, embeddingCache.getFromMemory(MODEL, "h1"));
+    }
+
+    @Test
+    void testPutAll_StoresCopy() {
+        float[] vector = {1f, 2f};
+        embeddingCache.putAll(MODEL, Map.of("h1", vector));
+
+        vector[0] = 99f;
+
+        assertArrayEquals(new float[]{1f, 2f}, embeddingCache.getFromMemory(MODEL, "h1"));
+    }
+
+    @Test
+    void testGetFromMemory_DoesNotQueryTable() {
+        table.put("h1", new float[]{1f});
+
+        assertNull(embeddingCache.getFromMemory(MODEL, "h1"));
+
+        verify(dslContextFactory, never()).callable(any());
+    }
+
+    @Test
+    void testGetAll_QueriesTableInBatchesAndBackfillsMemory() {
+        for (int i = 0; i < 5; i++) {
+            table.put("h" + i, new float[]{i});
+        }
+        List<String> hashes = List.of("h0", "h1", "h2", "h3", "h4", "missing");
+
+        Map<String, float[]> found = embeddingCache.getAll(MODEL, hashes);
+
+        assertEquals(5, found.size());
+        assertArrayEquals(new float[]{3f}, found.get("h3"));
+        // 6个未命中，batchSize=2，分3批查询
+        verify(embeddingCacheRepository, times(3)).queryByHashes(any(), eq(MODEL), anyCollection());
+
+        // 回填一级缓存后不再查表
+        assertArrayEquals(new float[]{4f}, embeddingCache.getFromMemory(MODEL, "h4"));
+        embeddingCache.getAll(MODEL, List.of("h0", "h1"));
+        verify(embeddingCacheRepository, times(3)).queryByHashes(any(), eq(MODEL), anyCollection());
+    }
+
+    @Test
+    void testGetAll_TableFailureTreatedAsMiss() {
+        doThrow(new IllegalStateException("数据库不可用"))
+                .when(embeddingCacheRepository).queryByHashes(any(), eq(MODEL), anyCollection());
+
+        assertTrue(embeddingCache.getAll(MODEL, List.of("h1")).isEmpty());
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.ddd.domain.agent.service.execute.context;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 任务执行上下文测试类
+ */
+class UserContextTest {
+
+    @Test
+    void testEmit_SlowListenerDoesNotBlockOtherEmitters() throws Exception {
+        UserContext context = new UserContext();
+        CountDownLatch listenerEntered = new CountDownLatch(1);
+        CountDownLatch listenerReleased = new CountDownLatch(1);
+        context.addListener(event -> {
+            if (event.getId() == 1) {
+                listenerEntered.countDown();
+                await(listenerReleased);
+            }
+        });
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> context.emit(event("first")));
+        assertTrue(listenerEntered.await(5, TimeUnit.SECONDS));
+        // 第一个事件的监听器仍在执行，第二个发送方入队后立即返回
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> context.emit(event("second")));
+        second.get(1, TimeUnit.SECONDS);
+        assertFalse(first.isDone());
+
+        listenerReleased.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        context.complete();
+
+        List<UserContext.TaskStatusEvent> events = context.asFlux().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of("first", "second"), events.stream().map(UserContext.TaskStatusEvent::getMessage).toList());
+        assertEquals(List.of(1L, 2L), events.stream().map(UserContext.TaskStatusEvent::getId).toList());
+    }
+
+    @Test
+    void testEmit_BlockWaitDoesNotHoldLock() throws Exception {
+        UserContext context = new UserContext(1, OverflowPolicy.BLOCK, 3000, 16);
+        context.emit(event("first"));
+        // 缓冲区已满（无订阅方），第二个状态事件等待缓冲区腾出空间
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> context.emit(event("second")));
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        // 等待期间重连不被阻塞
+        long begin = System.nanoTime();
+        UserContext.Replay replay = context.reattach(0);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 1000);
+
+        // 等待中的事件已随重放写入新的事件流，不会重复发送
+        blocked.get(5, TimeUnit.SECONDS);
+        context.complete();
+        List<UserContext.TaskStatusEvent> events = replay.events().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(1L, 2L), events.stream().map(UserContext.TaskStatusEvent::getId).toList());
+    }
+
+    @Test
+    void testComplete_DeliversQueuedEventsFirst() throws Exception {
+        UserContext context = new UserContext();
+        CountDownLatch listenerReleased = new CountDownLatch(1);
+        CountDownLatch listenerEntered = new CountDownLatch(1);
+        context.addListener(event -> {
+            if (event.getId() == 1) {
+                listenerEntered.countDown();
+                await(listenerReleased);
+            }
+        });
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> context.emit(event("first")));
+        assertTrue(listenerEntered.await(5, TimeUnit.SECONDS));
+        context.emit(event("second"));
+        context.complete();
+        // 结束后发送的事件被丢弃
+        context.emit(event("late"));
+
+        listenerReleased.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        List<UserContext.TaskStatusEvent> events = context.asFlux().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of("first", "second"), events.stream().map(UserContext.TaskStatusEvent::getMessage).toList());
+    }
+
+    @Test
+    void testEmit_FullOutboxBlocksEmitter() throws Exception {
+        UserContext context = new UserContext(1, OverflowPolicy.BLOCK, 3000, 16);
+        context.emit(event("first"));
+        // 缓冲区已满，投递线程等待客户端读取，占用投递队列唯一的位置
+        CompletableFuture<Void> delivering = CompletableFuture.runAsync(() -> context.emit(event("second")));
+        Thread.sleep(100);
+        // 投递队列已满，后续发送方在自己的线程上等待，不再无限入队
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> context.emit(event("third")));
+        Thread.sleep(100);
+        assertFalse(delivering.isDone());
+        assertFalse(waiting.isDone());
+
+        CompletableFuture<List<UserContext.TaskStatusEvent>> received =
+                context.asFlux().collectList().toFuture();
+        delivering.get(5, TimeUnit.SECONDS);
+        waiting.get(5, TimeUnit.SECONDS);
+        context.complete();
+
+        assertEquals(List.of(1L, 2L, 3L), received.get(5, TimeUnit.SECONDS).stream()
+                .map(UserContext.TaskStatusEvent::getId).toList());
+    }
+
+    @Test
+    void testEmit_FullOutboxDropsTokensAndNotifiesListeners() throws Exception {
+        UserContext context = new UserContext(1, OverflowPolicy.DROP_LATEST, 3000, 16);
+        List<Long> seen = new CopyOnWriteArrayList<>();
+        context.addListener(event -> seen.add(event.getId()));
+        context.emit(event("first"));
+        CompletableFuture<Void> delivering = CompletableFuture.runAsync(() -> context.emit(event("second")));
+        Thread.sleep(100);
+
+        long begin = System.nanoTime();
+        context.emit(UserContext.TaskStatusEvent.builder().type(EventType.STREAMING).content("token").build());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 1000);
+        // 被丢弃的token仍分配序号、通知监听器，可通过重连补齐
+        assertTrue(seen.contains(3L));
+
+        CompletableFuture<List<UserContext.TaskStatusEvent>> received =
+                context.asFlux().collectList().toFuture();
+        delivering.get(5, TimeUnit.SECONDS);
+        context.complete();
+        assertEquals(List.of(1L, 2L), received.get(5, TimeUnit.SECONDS).stream()
+                .map(UserContext.TaskStatusEvent::getId).toList());
+    }
+
+    @Test
+    void testEmit_InterruptedDelivererStopsWaiting() throws Exception {
+        UserContext context = new UserContext(1, OverflowPolicy.BLOCK, 2000, 16);
+        context.emit(event("first"));
+        AtomicLong elapsedMillis = new AtomicLong();
+        AtomicBoolean stillInterrupted = new AtomicBoolean();
+
+        // 调度器取消任务时中断任务线程，投递不再等待缓冲区
+        Thread task = new Thread(() -> {
+            Thread.currentThread().interrupt();
+            long begin = System.nanoTime();
+            context.emit(event("second"));
+            context.emit(event("third"));
+            elapsedMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+            stillInterrupted.set(Thread.currentThread().isInterrupted());
+        });
+        task.start();
+        task.join(5000);
+
+        assertTrue(elapsedMillis.get() < 1000);
+        assertTrue(stillInterrupted.get());
+    }
+
+    @Test
+    void testCancel_DoesNotWaitForFullBuffer() {
+        UserContext context = new UserContext(1, OverflowPolicy.BLOCK, 2000, 16);
+        context.emit(event("first"));
+
+        long begin = System.nanoTime();
+        context.cancel("测试取消");
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 1000);
+        assertTrue(context.isCancelled());
+    }
+
+    @Test
+    void testReattach_ReplaysEventsAfterLastIdAndContinues() {
+        UserContext context = new UserContext();
+        Flux<UserContext.TaskStatusEvent> original = context.asFlux();
+        for (int i = 1; i <= 3; i++) {
+            context.emit(event("e" + i));
+        }
+
+        UserContext.Replay replay = context.reattach(1);
+        context.emit(event("e4"));
+        context.complete();
+
+        assertEquals(1, replay.oldestBufferedId());
+        List<UserContext.TaskStatusEvent> events = replay.events().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(2L, 3L, 4L), events.stream().map(UserContext.TaskStatusEvent::getId).toList());
+        // 原订阅方的事件流随之结束，只收到切换前的事件
+        List<UserContext.TaskStatusEvent> before = original.collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(1L, 2L, 3L), before.stream().map(UserContext.TaskStatusEvent::getId).toList());
+    }
+
+    @Test
+    void testReattach_EvictedEventsReportedByOldestBufferedId() {
+        UserContext context = new UserContext(16, OverflowPolicy.DROP_LATEST, 0, 2);
+        for (int i = 1; i <= 5; i++) {
+            context.emit(event("e" + i));
+        }
+        context.complete();
+
+        UserContext.Replay replay = context.reattach(0);
+
+        // 1-3 已被重放缓冲区淘汰，需要从执行记录补齐
+        assertEquals(4, replay.oldestBufferedId());
+        List<UserContext.TaskStatusEvent> events = replay.events().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(4L, 5L), events.stream().map(UserContext.TaskStatusEvent::getId).toList());
+    }
+
+    @Test
+    void testReattach_WithoutReplayBufferDeliversQueuedEvents() throws Exception {
+        UserContext context = new UserContext(1, OverflowPolicy.BLOCK, 3000, 0);
+        context.emit(event("first"));
+        // 第二个事件在投递队列中等待缓冲区，重放缓冲区不保留事件
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> context.emit(event("second")));
+        Thread.sleep(100);
+
+        UserContext.Replay replay = context.reattach(0);
+        blocked.get(5, TimeUnit.SECONDS);
+        context.complete();
+
+        // 已投递到原事件流的事件从执行记录补齐，尚未投递的事件写入新的事件流
+        assertEquals(2, replay.oldestBufferedId());
+        List<UserContext.TaskStatusEvent> events = replay.events().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(2L), events.stream().map(UserContext.TaskStatusEvent::getId).toList());
+    }
+
+    @Test
+    void testDetach_CancelsAfterGracePeriod() throws Exception {
+        UserContext context = new UserContext();
+        context.setCancelGraceMillis(50);
+        AtomicInteger hookRuns = new AtomicInteger();
+        context.onCancel(hookRuns::incrementAndGet);
+
+        Disposable subscription = context.asFlux().subscribe();
+        subscription.dispose();
+        assertFalse(context.isCancelled());
+
+        waitUntil(context::isCancelled);
+        assertEquals(1, hookRuns.get());
+        // 取消事件进入重放缓冲区，重连后可以看到
+        List<UserContext.TaskStatusEvent> events = context.reattach(0).events()
+                .take(1).collectList().block(Duration.ofSeconds(5));
+        assertEquals(EventType.EXECUTION_CANCELLED, events.get(0).getType());
+    }
+
+    @Test
+    void testReattach_WithinGracePeriodKeepsRunning() throws Exception {
+        UserContext context = new UserContext();
+        context.setCancelGraceMillis(100);
+
+        context.asFlux().subscribe().dispose();
+        context.reattach(0);
+        Thread.sleep(300);
+
+        assertFalse(context.isCancelled());
+    }
+
+    @Test
+    void testDetach_StaleSubscriptionIgnored() throws Exception {
+        UserContext context = new UserContext();
+        context.setCancelGraceMillis(0);
+        Disposable original = context.asFlux().subscribe();
+        Disposable resumed = context.reattach(0).events().subscribe();
+
+        // 原订阅方在重连之后才断开，不影响执行
+        original.dispose();
+        assertFalse(context.isCancelled());
+
+        resumed.dispose();
+        assertTrue(context.isCancelled());
+    }
+
+    @Test
+    void testDetach_NegativeGraceNeverCancels() throws Exception {
+        UserContext context = new UserContext();
+        context.setCancelGraceMillis(-1);
+
+        context.asFlux().subscribe().dispose();
+        Thread.sleep(50);
+
+        assertFalse(context.isCancelled());
+    }
+
+    @Test
+    void testDetach_AfterCompleteDoesNotCancel() {
+        UserContext context = new UserContext();
+        context.setCancelGraceMillis(0);
+        Disposable subscription = context.asFlux().subscribe();
+        context.complete();
+
+        subscription.dispose();
+
+        assertFalse(context.isCancelled());
+    }
+
+    @Test
+    void testCancel_RunsEachHookOnceAndSkipsClosedRegistrations() {
+        UserContext context = new UserContext();
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        AtomicInteger afterFailure = new AtomicInteger();
+        context.onCancel(first::incrementAndGet);
+        context.onCancel(closed::incrementAndGet).close();
+        context.onCancel(() -> {
+            throw new IllegalStateException("回调失败");
+        });
+        context.onCancel(afterFailure::incrementAndGet);
+
+        context.cancel("测试取消");
+        context.cancel("重复取消");
+
+        assertTrue(context.isCancelled());
+        assertEquals(1, first.get());
+        assertEquals(0, closed.get());
+        assertEquals(1, afterFailure.get());
+
+        // 已取消后注册的回调立即执行
+        AtomicInteger late = new AtomicInteger();
+        context.onCancel(late::incrementAndGet);
+        assertEquals(1, late.get());
+    }
+
+    static UserContext.TaskStatusEvent event(String message) {
+        return UserContext.TaskStatusEvent.builder()
+                .type(EventType.TASK_RUNNING)
+                .message(message)
+                .build();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
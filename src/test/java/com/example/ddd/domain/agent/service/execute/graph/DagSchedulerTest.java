@@ -0,0 +1,322 @@
+package com.example.ddd.domain.agent.service.execute.graph;
+
+import com.example.ddd.configuration.config.SchedulerProperties;
+import com.example.ddd.domain.agent.service.armory.ServiceNode;
+import com.example.ddd.domain.agent.service.execute.executor.TaskExecutor;
+import com.example.ddd.domain.agent.service.execute.task.Task;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 任务图调度器测试类
+ */
+class DagSchedulerTest {
+
+    @Spy
+    private SchedulerProperties schedulerProperties = new SchedulerProperties();
+    @InjectMocks
+    private DagScheduler dagScheduler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dagScheduler.close();
+    }
+
+    @Test
+    void testRun_DependentsStartAfterAllPredecessorsFinish() {
+        dagScheduler.init();
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        Map<String, TaskExecutor> executors = new LinkedHashMap<>();
+        for (String taskId : List.of("a", "b", "c", "d")) {
+            executors.put(taskId, new FakeExecutor(state -> {
+                events.add("start:" + taskId);
+                Thread.sleep(20);
+                events.add("end:" + taskId);
+                return WorkspaceState.taskResultUpdate(taskId, "result-" + taskId);
+            }));
+        }
+        TaskGraph graph = graph(executors, Map.of(
+                "a", List.of(),
+                "b", List.of(),
+                "c", List.of("a", "b"),
+                "d", List.of("c")));
+
+        Map<String, Object> result = dagScheduler.run(graph, Map.of("userMessage", "hello"));
+
+        assertTrue(events.indexOf("start:c") > events.indexOf("end:a"));
+        assertTrue(events.indexOf("start:c") > events.indexOf("end:b"));
+        assertTrue(events.indexOf("start:d") > events.indexOf("end:c"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> scratchpad = (Map<String, Object>) result.get(WorkspaceState.SCRATCHPAD);
+        assertEquals(4, scratchpad.size());
+        assertEquals("result-d", scratchpad.get("task_d"));
+        assertEquals("hello", result.get("userMessage"));
+    }
+
+    @Test
+    void testRun_DependentReadsPredecessorResult() {
+        dagScheduler.init();
+        Map<String, TaskExecutor> executors = new LinkedHashMap<>();
+        executors.put("a", new FakeExecutor(state -> WorkspaceState.taskResultUpdate("a", "from-a")));
+        executors.put("b", new FakeExecutor(state ->
+                WorkspaceState.taskResultUpdate("b", state.taskResult("a").orElse("missing") + "+b")));
+        TaskGraph graph = graph(executors, Map.of("a", List.of(), "b", List.of("a")));
+
+        Map<String, Object> result = dagScheduler.run(graph, Map.of());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> scratchpad = (Map<String, Object>) result.get(WorkspaceState.SCRATCHPAD);
+        assertEquals("from-a+b", scratchpad.get("task_b"));
+    }
+
+    @Test
+    void testRun_FailureStopsDependents() {
+        dagScheduler.init();
+        AtomicBoolean dependentRan = new AtomicBoolean();
+        Map<String, TaskExecutor> executors = new LinkedHashMap<>();
+        executors.put("a", new FakeExecutor(state -> {
+            throw new IllegalStateException("模型调用失败");
+        }));
+        executors.put("b", new FakeExecutor(state -> {
+            dependentRan.set(true);
+            return Map.of();
+        }));
+        TaskGraph graph = graph(executors, Map.of("a", List.of(), "b", List.of("a")));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> dagScheduler.run(graph, Map.of()));
+
+        assertTrue(error.getMessage().contains("taskId=a"));
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertFalse(dependentRan.get());
+    }
+
+    @Test
+    void testRun_FailureInterruptsRunningSiblings() throws Exception {
+        dagScheduler.init();
+        CountDownLatch siblingStarted = new CountDownLatch(1);
+        CompletableFuture<Boolean> siblingInterrupted = new CompletableFuture<>();
+        Map<String, TaskExecutor> executors = new LinkedHashMap<>();
+        executors.put("slow", new FakeExecutor(state -> {
+            siblingStarted.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                siblingInterrupted.complete(false);
+            } catch (InterruptedException e) {
+                siblingInterrupted.complete(true);
+                throw e;
+            }
+            return Map.of();
+        }));
+        executors.put("failing", new FakeExecutor(state -> {
+            siblingStarted.await();
+            throw new IllegalStateException("模型调用失败");
+        }));
+        TaskGraph graph = graph(executors, Map.of("slow", List.of(), "failing", List.of()));
+
+        assertThrows(RuntimeException.class, () -> dagScheduler.run(graph, Map.of()));
+
+        assertTrue(siblingInterrupted.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testRun_RespectsRunConcurrencyLimit() {
+        schedulerProperties.setRunMaxConcurrency(2);
+        dagScheduler.init();
+        ConcurrencyProbe probe = new ConcurrencyProbe();
+        Map<String, TaskExecutor> executors = new LinkedHashMap<>();
+        Map<String, List<String>> dependencies = new HashMap<>();
+        for (int i = 0; i < 6; i++) {
+            executors.put("t" + i, probe.executor());
+            dependencies.put("t" + i, List.of());
+        }
+
+        dagScheduler.run(graph(executors, dependencies), Map.of());
+
+        assertEquals(6, probe.completed.get());
+        assertTrue(probe.max.get() <= 2, "单次运行并发超过上限: " + probe.max.get());
+    }
+
+    @Test
+    void testRun_RespectsGlobalConcurrencyLimit() throws Exception {
+        schedulerProperties.setGlobalMaxConcurrency(3);
+        schedulerProperties.setRunMaxConcurrency(4);
+        dagScheduler.init();
+        ConcurrencyProbe probe = new ConcurrencyProbe();
+        List<CompletableFuture<Map<String, Object>>> runs = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            Map<String, TaskExecutor> executors = new LinkedHashMap<>();
+            Map<String, List<String>> dependencies = new HashMap<>();
+            for (int i = 0; i < 4; i++) {
+                executors.put("t" + i, probe.executor());
+                dependencies.put("t" + i, List.of());
+            }
+            TaskGraph graph = graph(executors, dependencies);
+            runs.add(CompletableFuture.supplyAsync(() -> dagScheduler.run(graph, Map.of())));
+        }
+
+        CompletableFuture.allOf(runs.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(8, probe.completed.get());
+        assertTrue(probe.max.get() <= 3, "全局并发超过上限: " + probe.max.get());
+    }
+
+    @Test
+    void testAwait_EarlyDispatchedTaskRunsOnce() {
+        dagScheduler.init();
+        AtomicInteger rootRuns = new AtomicInteger();
+        FakeExecutor root = new FakeExecutor(state -> {
+            rootRuns.incrementAndGet();
+            return WorkspaceState.taskResultUpdate("a", "from-a");
+        });
+        DagScheduler.Run run = dagScheduler.open(Map.of());
+        assertTrue(run.start("a", root));
+        assertFalse(run.start("a", root));
+
+        Map<String, TaskExecutor> executors = new LinkedHashMap<>();
+        executors.put("a", new FakeExecutor(state -> {
+            fail("提前派发的任务不应按任务图重新执行");
+            return Map.of();
+        }));
+        executors.put("b", new FakeExecutor(state ->
+                WorkspaceState.taskResultUpdate("b", state.taskResult("a").orElse("missing") + "+b")));
+        Map<String, Object> result = run.await(graph(executors, Map.of("a", List.of(), "b", List.of("a"))));
+
+        assertEquals(1, rootRuns.get());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> scratchpad = (Map<String, Object>) result.get(WorkspaceState.SCRATCHPAD);
+        assertEquals("from-a+b", scratchpad.get("task_b"));
+    }
+
+    @Test
+    void testAbort_InterruptsEarlyDispatchedTasks() throws Exception {
+        schedulerProperties.setRunMaxConcurrency(1);
+        dagScheduler.init();
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        DagScheduler.Run run = dagScheduler.open(Map.of());
+        run.start("early", new FakeExecutor(state -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                interrupted.complete(false);
+            } catch (InterruptedException e) {
+                interrupted.complete(true);
+                throw e;
+            }
+            return Map.of();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // 单次运行并发为1，第二个入口任务在等待许可
+        run.start("queued", new FakeExecutor(state -> {
+            queuedRan.set(true);
+            return Map.of();
+        }));
+
+        // 计划生成后构建任务图失败，Orchestrator 以该异常终止运行
+        IllegalStateException cause = new IllegalStateException("任务计划无效");
+        run.abort(cause);
+
+        assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+        assertSame(cause, assertThrows(IllegalStateException.class, () -> run.await(graph(Map.of(), Map.of()))));
+        assertFalse(run.start("late", new FakeExecutor(state -> Map.of())));
+        Thread.sleep(50);
+        assertFalse(queuedRan.get());
+    }
+
+    /**
+     * 按依赖关系构建任务图（拓扑层级按Kahn算法计算）
+     */
+    static TaskGraph graph(Map<String, TaskExecutor> executors, Map<String, List<String>> dependencies) {
+        List<String> taskIds = new ArrayList<>(executors.keySet());
+        Map<String, List<String>> dependents = new HashMap<>();
+        taskIds.forEach(taskId -> dependents.put(taskId, new ArrayList<>()));
+        dependencies.forEach((taskId, deps) -> deps.forEach(dep -> dependents.get(dep).add(taskId)));
+        List<List<String>> levels = new ArrayList<>();
+        List<String> placed = new ArrayList<>();
+        while (placed.size() < taskIds.size()) {
+            List<String> level = taskIds.stream()
+                    .filter(taskId -> !placed.contains(taskId))
+                    .filter(taskId -> placed.containsAll(dependencies.get(taskId)))
+                    .toList();
+            levels.add(level);
+            placed.addAll(level);
+        }
+        return new TaskGraph(executors, new GraphTopology(taskIds, dependencies, dependents, levels));
+    }
+
+    /**
+     * 节点逻辑
+     */
+    interface Body {
+        Map<String, Object> apply(WorkspaceState state) throws Exception;
+    }
+
+    /**
+     * 测试用执行器，不调用模型
+     */
+    static class FakeExecutor implements TaskExecutor {
+        private final Body body;
+
+        FakeExecutor(Body body) {
+            this.body = body;
+        }
+
+        @Override
+        public Map<String, Object> apply(WorkspaceState state) throws Exception {
+            return body.apply(state);
+        }
+
+        @Override
+        public Task getTask() {
+            return null;
+        }
+
+        @Override
+        public ServiceNode getServiceNode() {
+            return null;
+        }
+    }
+
+    /**
+     * 记录同时执行的节点数峰值
+     */
+    static class ConcurrencyProbe {
+        private final AtomicInteger current = new AtomicInteger();
+        private final AtomicInteger max = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+
+        FakeExecutor executor() {
+            return new FakeExecutor(state -> {
+                max.accumulateAndGet(current.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                current.decrementAndGet();
+                completed.incrementAndGet();
+                return Map.of();
+            });
+        }
+    }
+}
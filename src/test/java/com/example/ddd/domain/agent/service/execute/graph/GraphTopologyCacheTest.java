@@ -0,0 +1,96 @@
+package com.example.ddd.domain.agent.service.execute.graph;
+
+import com.example.ddd.configuration.config.SchedulerProperties;
+import com.example.ddd.domain.agent.service.execute.task.Task;
+import org.bsc.langgraph4j.GraphStateException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 任务图拓扑缓存测试类
+ */
+class GraphTopologyCacheTest {
+
+    @Spy
+    private SchedulerProperties schedulerProperties = new SchedulerProperties();
+    @InjectMocks
+    private GraphTopologyCache topologyCache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testGet_SameStructureSharesTopology() throws Exception {
+        GraphTopology first = topologyCache.get(List.of(task("a", "查天气"), task("b", "写总结", "a")));
+        GraphTopology second = topologyCache.get(List.of(task("a", "查股价"), task("b", "写报告", "a")));
+
+        // 任务内容不同、结构相同时共享同一个拓扑
+        assertSame(first, second);
+        assertEquals(List.of(List.of("a"), List.of("b")), second.getLevels());
+        assertEquals(1L, topologyCache.metrics().get("hits"));
+    }
+
+    @Test
+    void testGet_DifferentDependenciesMiss() throws Exception {
+        GraphTopology chained = topologyCache.get(List.of(task("a", "x"), task("b", "y", "a")));
+        GraphTopology parallel = topologyCache.get(List.of(task("a", "x"), task("b", "y")));
+
+        assertNotSame(chained, parallel);
+        assertEquals(List.of(List.of("a", "b")), parallel.getLevels());
+    }
+
+    @Test
+    void testGet_EvictsLeastRecentlyUsed() throws Exception {
+        schedulerProperties.setTopologyCacheSize(1);
+        List<Task> single = List.of(task("a", "x"));
+        GraphTopology first = topologyCache.get(single);
+        topologyCache.get(List.of(task("a", "x"), task("b", "y")));
+
+        assertNotSame(first, topologyCache.get(single));
+        assertEquals(1, topologyCache.metrics().get("size"));
+    }
+
+    @Test
+    void testGet_ZeroSizeDisablesCache() throws Exception {
+        schedulerProperties.setTopologyCacheSize(0);
+        List<Task> tasks = List.of(task("a", "x"));
+
+        assertNotSame(topologyCache.get(tasks), topologyCache.get(tasks));
+        assertEquals(0, topologyCache.metrics().get("size"));
+    }
+
+    @Test
+    void testGet_InvalidPlanNotCached() {
+        List<Task> cyclic = List.of(task("a", "x", "b"), task("b", "y", "a"));
+
+        assertThrows(GraphStateException.class, () -> topologyCache.get(cyclic));
+        assertThrows(GraphStateException.class, () -> topologyCache.get(cyclic));
+        assertEquals(0, topologyCache.metrics().get("size"));
+    }
+
+    @Test
+    void testKey_IdsWithSeparatorsDoNotCollide() {
+        // 不带长度前缀时前置任务 [b, c] 与 [bc] 会拼成相同的键
+        String first = GraphTopologyCache.key(List.of(task("d", "x", "b", "c")));
+        String second = GraphTopologyCache.key(List.of(task("d", "x", "bc")));
+
+        assertNotEquals(first, second);
+    }
+
+    private static Task task(String id, String description, String... fromTask) {
+        return Task.builder()
+                .id(id)
+                .description(description)
+                .inputs(Task.TaskInputs.builder().fromTask(List.of(fromTask)).build())
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.ddd.domain.agent.service.execute.memory;
+
+import com.example.ddd.configuration.config.MemoryProperties;
+import com.example.ddd.domain.agent.adapter.repository.IAgentMemoryRepository;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 对话记忆测试类
+ */
+class InMemoryTest {
+
+    @Spy
+    private MemoryProperties memoryProperties = new MemoryProperties();
+    @Mock
+    private IAgentMemoryRepository agentMemoryRepository;
+    @Mock
+    private DSLContextFactory dslContextFactory;
+    @InjectMocks
+    private InMemory inMemory;
+
+    /**
+     * 阻塞后台写库，模拟写库较慢
+     */
+    private final CountDownLatch writeReleased = new CountDownLatch(1);
+    private final CountDownLatch writeStarted = new CountDownLatch(1);
+    private final List<InMemory.PendingMessage> written = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        memoryProperties.setMaxSessions(1);
+        memoryProperties.setFlushBatchSize(1);
+        when(dslContextFactory.callable(any())).thenAnswer(invocation ->
+                invocation.<DSLContextFactory.CallableOperation<?>>getArgument(0).callable(null));
+        doAnswer(invocation -> {
+            invocation.<DSLContextFactory.ExecuteOperation>getArgument(0).execute(null);
+            return null;
+        }).when(dslContextFactory).execute(any());
+        when(agentMemoryRepository.saveMessages(any(), anyList(), any())).thenAnswer(invocation -> {
+            written.addAll(invocation.getArgument(1));
+            writeStarted.countDown();
+            writeReleased.await();
+            return 1;
+        });
+        inMemory.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeReleased.countDown();
+        inMemory.close();
+    }
+
+    @Test
+    void testLoad_MergesUnflushedMessagesWithStoredHistory() throws Exception {
+        long earlier = System.currentTimeMillis() - 60_000;
+        when(agentMemoryRepository.queryRecentMessages(any(), eq("u_s1"), anyInt())).thenReturn(List.of(
+                new InMemory.ConversationMessage("USER", "stored", earlier / 1000 * 1000)));
+        inMemory.addMessage("u", "s1", "USER", "unflushed");
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        // maxSessions=1，访问另一个会话后 s1 被淘汰，此时 s1 的消息仍在写库中
+        inMemory.getHistory("u", "s2");
+
+        List<InMemory.ConversationMessage> history = inMemory.getHistory("u", "s1");
+
+        assertEquals(List.of("stored", "unflushed"), history.stream().map(InMemory.ConversationMessage::getContent).toList());
+    }
+
+    @Test
+    void testLoad_DeduplicatesMessagesAlreadyStored() throws Exception {
+        // 模拟写库已提交：数据库只保存秒级时间戳
+        when(agentMemoryRepository.queryRecentMessages(any(), eq("u_s1"), anyInt())).thenAnswer(invocation ->
+                written.stream()
+                        .map(InMemory.PendingMessage::message)
+                        .map(m -> new InMemory.ConversationMessage(m.getRole(), m.getContent(), m.getTimestamp() / 1000 * 1000))
+                        .toList());
+        inMemory.addMessage("u", "s1", "USER", "hello");
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        inMemory.getHistory("u", "s2");
+
+        assertEquals(1, inMemory.getHistory("u", "s1").size());
+    }
+
+    @Test
+    void testAddMessage_DoesNotWaitForLoad() throws Exception {
+        CountDownLatch queryReleased = new CountDownLatch(1);
+        when(agentMemoryRepository.queryRecentMessages(any(), eq("u_s1"), anyInt())).thenAnswer(invocation -> {
+            queryReleased.await();
+            return List.of();
+        });
+
+        inMemory.addMessage("u", "s1", "USER", "hello");
+        verify(agentMemoryRepository, timeout(5000)).queryRecentMessages(any(), eq("u_s1"), anyInt());
+        queryReleased.countDown();
+
+        assertEquals(1, inMemory.getHistory("u", "s1").size());
+    }
+
+    @Test
+    void testEnqueue_QueueFullDoesNotWriteOnCallerThread() throws Exception {
+        when(agentMemoryRepository.queryRecentMessages(any(), any(), anyInt())).thenReturn(List.of());
+        inMemory.addMessage("u", "s1", "USER", "m0");
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        // 后台写库被阻塞，队列容量为16
+        for (int i = 1; i <= 32; i++) {
+            inMemory.addMessage("u", "s1", "USER", "m" + i);
+        }
+
+        // 调用方线程不写库，只有后台线程的一次写入
+        verify(agentMemoryRepository, timeout(5000).times(1)).saveMessages(any(), anyList(), any());
+        assertEquals(33, inMemory.getHistory("u", "s1").size());
+    }
+}
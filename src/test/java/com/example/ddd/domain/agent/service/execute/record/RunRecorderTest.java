@@ -0,0 +1,269 @@
+package com.example.ddd.domain.agent.service.execute.record;
+
+import com.example.ddd.common.utils.IdGenerator;
+import com.example.ddd.configuration.config.RecorderProperties;
+import com.example.ddd.domain.agent.adapter.repository.IOrchestratorRunRepository;
+import com.example.ddd.domain.agent.model.entity.OrchestratorMessageEntity;
+import com.example.ddd.domain.agent.model.entity.OrchestratorRunEntity;
+import com.example.ddd.domain.agent.model.valobj.OrchestratorRunStatus;
+import com.example.ddd.domain.agent.service.execute.context.EventType;
+import com.example.ddd.domain.agent.service.execute.context.OverflowPolicy;
+import com.example.ddd.domain.agent.service.execute.context.UserContext;
+import com.example.ddd.infrastructure.config.DSLContextFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.when;
+
+/**
+ * 执行记录器测试类
+ */
+class RunRecorderTest {
+
+    private static final Long RUN_ID = 100L;
+
+    @Spy
+    private RecorderProperties recorderProperties = new RecorderProperties();
+    @Mock
+    private IOrchestratorRunRepository orchestratorRunRepository;
+    @Mock
+    private DSLContextFactory dslContextFactory;
+    @Mock
+    private IdGenerator idGenerator;
+    @InjectMocks
+    private RunRecorder runRecorder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(dslContextFactory.callable(any())).thenAnswer(invocation ->
+                invocation.<DSLContextFactory.CallableOperation<?>>getArgument(0).callable(null));
+        doAnswer(invocation -> {
+            invocation.<DSLContextFactory.ExecuteOperation>getArgument(0).execute(null);
+            return null;
+        }).when(dslContextFactory).execute(any());
+        runRecorder.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        runRecorder.close();
+    }
+
+    @Test
+    void testLoadEvents_MarksMissingRanges() {
+        when(orchestratorRunRepository.queryMessages(any(), eq(RUN_ID), eq(2), eq(10), anyInt()))
+                .thenReturn(List.of(message(3), message(4), message(7)));
+
+        List<UserContext.TaskStatusEvent> events = runRecorder.loadEvents(RUN_ID, 2, 10);
+
+        assertEquals(List.of(3L, 4L, 6L, 7L, 9L), events.stream().map(UserContext.TaskStatusEvent::getId).toList());
+        assertEquals(EventType.EVENTS_MISSING, events.get(2).getType());
+        assertTrue(events.get(2).getMessage().contains("5-6"));
+        assertEquals(EventType.EVENTS_MISSING, events.get(4).getType());
+        assertTrue(events.get(4).getMessage().contains("8-9"));
+    }
+
+    @Test
+    void testLoadEvents_UnboundedRangeOnlyMarksInnerGaps() {
+        when(orchestratorRunRepository.queryMessages(any(), eq(RUN_ID), eq(0), eq(Integer.MAX_VALUE), anyInt()))
+                .thenReturn(List.of(message(2), message(3)));
+
+        List<UserContext.TaskStatusEvent> events = runRecorder.loadEvents(RUN_ID, 0, Long.MAX_VALUE);
+
+        assertEquals(List.of(1L, 2L, 3L), events.stream().map(UserContext.TaskStatusEvent::getId).toList());
+        assertEquals(EventType.EVENTS_MISSING, events.get(0).getType());
+    }
+
+    @Test
+    void testLoadEvents_WritesQueuedRecordsBeforeQuery() {
+        List<OrchestratorMessageEntity> saved = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(1));
+            return saved.size();
+        }).when(orchestratorRunRepository).saveMessages(any(), anyList());
+        when(orchestratorRunRepository.queryMessages(any(), eq(RUN_ID), anyInt(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> List.copyOf(saved));
+        UserContext userContext = new UserContext();
+        userContext.setRunId(RUN_ID);
+        RunRecorder.Run run = runRecorder.start(1L, "hello", userContext);
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_START).taskId("t1").build());
+
+        List<UserContext.TaskStatusEvent> events = runRecorder.loadEvents(RUN_ID, 0, 2);
+
+        assertEquals(1, events.size());
+        assertEquals(EventType.TASK_START, events.get(0).getType());
+        InOrder order = inOrder(orchestratorRunRepository);
+        order.verify(orchestratorRunRepository).saveMessages(any(), argThat(messages -> !messages.isEmpty()));
+        order.verify(orchestratorRunRepository).queryMessages(any(), eq(RUN_ID), anyInt(), anyInt(), anyInt());
+        assertNotNull(run);
+    }
+
+    @Test
+    void testFinish_RecordsFinalStatusAndCounters() {
+        List<OrchestratorRunEntity> runs = captureRuns();
+        UserContext userContext = new UserContext();
+        userContext.setRunId(RUN_ID);
+        RunRecorder.Run run = runRecorder.start(1L, "hello", userContext);
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_START).taskId("t1").build());
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_COMPLETE).taskId("t1").build());
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_START).taskId("t2").build());
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_FAILED).taskId("t2").build());
+
+        runRecorder.finish(run, null);
+        // 重复结束无效
+        runRecorder.finish(run, OrchestratorRunStatus.SUCCEEDED);
+        runRecorder.flush();
+
+        assertEquals(List.of(OrchestratorRunStatus.RUNNING, OrchestratorRunStatus.FAILED),
+                runs.stream().map(OrchestratorRunEntity::getStatus).toList());
+        OrchestratorRunEntity last = runs.get(1);
+        assertEquals(2, last.getTotalTasks());
+        assertEquals(1, last.getCompletedTasks());
+        assertEquals(4, last.getMessageCount());
+        assertNotNull(last.getEndTime());
+    }
+
+    @Test
+    void testFinish_SeesEventsQueuedBehindSlowDelivery() throws Exception {
+        List<OrchestratorRunEntity> runs = captureRuns();
+        UserContext userContext = new UserContext(2, OverflowPolicy.BLOCK, 3000, 16);
+        userContext.setRunId(RUN_ID);
+        RunRecorder.Run run = runRecorder.start(1L, "hello", userContext);
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.PLANNING_START).build());
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.PLANNING_COMPLETE).build());
+        // 客户端未读取，投递线程等待缓冲区；失败事件排在它之后尚未投递
+        CompletableFuture<Void> delivering = CompletableFuture.runAsync(() -> userContext.emit(
+                UserContext.TaskStatusEvent.builder().type(EventType.TASK_START).taskId("t1").build()));
+        Thread.sleep(100);
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_FAILED).taskId("t1").build());
+
+        runRecorder.finish(run, null);
+        runRecorder.flush();
+
+        OrchestratorRunEntity last = runs.get(runs.size() - 1);
+        assertEquals(OrchestratorRunStatus.FAILED, last.getStatus());
+        assertEquals(1, last.getTotalTasks());
+        assertEquals(4, last.getMessageCount());
+        userContext.asFlux().subscribe();
+        delivering.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testFinish_StatusNotDroppedWhenQueueFull() throws Exception {
+        recorderProperties.setQueueCapacity(1);
+        recorderProperties.setFlushMillis(10);
+        runRecorder.close();
+        runRecorder.init();
+        List<OrchestratorRunEntity> runs = captureRuns();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            List<?> messages = invocation.getArgument(1);
+            if (!messages.isEmpty()) {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return messages.size();
+        }).when(orchestratorRunRepository).saveMessages(any(), anyList());
+        UserContext userContext = new UserContext();
+        userContext.setRunId(RUN_ID);
+        RunRecorder.Run run = runRecorder.start(1L, "hello", userContext);
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_START).taskId("t1").build());
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // 写入线程阻塞，队列已满，后续消息记录被丢弃
+        for (int i = 0; i < 3; i++) {
+            userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_FAILED).taskId("t1").build());
+        }
+
+        runRecorder.finish(run, null);
+        release.countDown();
+        runRecorder.flush();
+
+        OrchestratorRunEntity last = runs.get(runs.size() - 1);
+        assertEquals(OrchestratorRunStatus.FAILED, last.getStatus());
+        assertNotNull(last.getEndTime());
+    }
+
+    @Test
+    void testRecord_SamplesStreamingTokensUnderPressure() {
+        // 水位为0时始终视为写入压力大，流式token每2个保留1个
+        recorderProperties.setSamplingWatermark(0);
+        recorderProperties.setSamplingRate(2);
+        runRecorder.close();
+        runRecorder.init();
+        List<OrchestratorMessageEntity> saved = captureMessages();
+        List<OrchestratorRunEntity> runs = captureRuns();
+        UserContext userContext = new UserContext();
+        userContext.setRunId(RUN_ID);
+        RunRecorder.Run run = runRecorder.start(1L, "hello", userContext);
+        userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.TASK_START).taskId("t1").build());
+        for (int i = 0; i < 4; i++) {
+            userContext.emit(UserContext.TaskStatusEvent.builder().type(EventType.STREAMING).taskId("t1").content("x").build());
+        }
+
+        runRecorder.finish(run, OrchestratorRunStatus.SUCCEEDED);
+        runRecorder.flush();
+
+        // 状态事件不采样；序号与SSE事件ID一致，采样留下的空洞可以识别
+        assertEquals(List.of(1, 2, 4), saved.stream().map(OrchestratorMessageEntity::getSequence).toList());
+        assertEquals(2, runs.get(runs.size() - 1).getSampledCount());
+    }
+
+    @Test
+    void testDisabled_RecordsNothing() {
+        recorderProperties.setEnabled(false);
+        runRecorder.close();
+        runRecorder.init();
+
+        assertNull(runRecorder.start(1L, "hello", new UserContext()));
+        assertTrue(runRecorder.loadEvents(RUN_ID, 0, 10).isEmpty());
+    }
+
+    private List<OrchestratorMessageEntity> captureMessages() {
+        List<OrchestratorMessageEntity> saved = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(1));
+            return saved.size();
+        }).when(orchestratorRunRepository).saveMessages(any(), anyList());
+        return saved;
+    }
+
+    private List<OrchestratorRunEntity> captureRuns() {
+        List<OrchestratorRunEntity> runs = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            runs.addAll(invocation.getArgument(1));
+            return runs.size();
+        }).when(orchestratorRunRepository).saveRuns(any(), anyList());
+        return runs;
+    }
+
+    static OrchestratorMessageEntity message(int sequence) {
+        OrchestratorMessageEntity message = new OrchestratorMessageEntity();
+        message.setRunId(RUN_ID);
+        message.setMessageType(EventType.STREAMING.getValue());
+        message.setContent("token-" + sequence);
+        message.setSequence(sequence);
+        return message;
+    }
+}
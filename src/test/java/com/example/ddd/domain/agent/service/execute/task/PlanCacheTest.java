@@ -0,0 +1,184 @@
+package com.example.ddd.domain.agent.service.execute.task;
+
+import com.example.ddd.configuration.config.PlanCacheProperties;
+import com.example.ddd.domain.agent.service.embedding.EmbeddingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 任务计划语义缓存测试类
+ */
+class PlanCacheTest {
+
+    private static final Long ORCHESTRATOR_ID = 1L;
+    private static final String FINGERPRINT = "workers-v1";
+    private static final String USER_ID = "user-1";
+
+    @Spy
+    private PlanCacheProperties planCacheProperties = new PlanCacheProperties();
+    @Mock
+    private EmbeddingService embeddingService;
+    @InjectMocks
+    private PlanCache planCache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        planCacheProperties.setSimilarityThreshold(0.9);
+        // 二维向量，夹角越小越相似
+        when(embeddingService.embed("查询北京天气")).thenReturn(new float[]{1f, 0f});
+        when(embeddingService.embed("北京天气怎么样")).thenReturn(new float[]{0.95f, 0.1f});
+        when(embeddingService.embed("写一首诗")).thenReturn(new float[]{0f, 1f});
+        when(embeddingService.embed("写一首短诗")).thenReturn(new float[]{0.1f, 0.95f});
+        when(embeddingService.embed("翻译这段话")).thenReturn(new float[]{-1f, 0f});
+    }
+
+    @Test
+    void testLookup_HitsAboveThresholdOnly() {
+        store("查询北京天气", "", "plan-weather");
+
+        PlanCache.Lookup similar = lookup("北京天气怎么样", "");
+        PlanCache.Lookup different = lookup("写一首诗", "");
+
+        assertTrue(similar.isHit());
+        assertEquals("plan-weather", similar.getPlanJson());
+        assertFalse(different.isHit());
+        assertEquals(1L, planCache.metrics().get("hits"));
+    }
+
+    @Test
+    void testLookup_ExpiredEntryMisses() throws Exception {
+        planCacheProperties.setTtlSeconds(0);
+        store("查询北京天气", "", "plan-weather");
+        Thread.sleep(5);
+
+        assertFalse(lookup("查询北京天气", "").isHit());
+        assertEquals(1L, planCache.metrics().get("expired"));
+        assertEquals(0, planCache.metrics().get("entries"));
+    }
+
+    @Test
+    void testPut_EvictsLeastRecentlyHitEntryInScope() throws Exception {
+        planCacheProperties.setMaxEntriesPerScope(2);
+        store("查询北京天气", "", "plan-weather");
+        store("写一首诗", "", "plan-poem");
+        Thread.sleep(5);
+        // 命中天气计划后，诗的计划成为最久未命中的
+        assertTrue(lookup("北京天气怎么样", "").isHit());
+
+        store("翻译这段话", "", "plan-translate");
+
+        assertTrue(lookup("北京天气怎么样", "").isHit());
+        assertFalse(lookup("写一首短诗", "").isHit());
+        assertTrue(lookup("翻译这段话", "").isHit());
+        assertEquals(1L, planCache.metrics().get("evicted"));
+    }
+
+    @Test
+    void testPut_EvictsLeastRecentlyUsedScope() {
+        planCacheProperties.setMaxScopes(1);
+        planCacheProperties.setHistoryWindowChars(100);
+        store("查询北京天气", "用户: A\n", "plan-a");
+        store("查询北京天气", "用户: B\n", "plan-b");
+
+        assertFalse(lookup("查询北京天气", "用户: A\n").isHit());
+        assertTrue(lookup("查询北京天气", "用户: B\n").isHit());
+    }
+
+    @Test
+    void testLookup_DistinguishesRecentHistoryByDefault() {
+        store("查询北京天气", "用户: 你好\n助手: 你好！\n", "plan-weather");
+
+        // 追问依赖上下文，不同对话的计划不复用
+        assertFalse(lookup("北京天气怎么样", "用户: 帮我写代码\n助手: 好的\n").isHit());
+        assertTrue(lookup("北京天气怎么样", "用户: 你好\n助手: 你好！\n").isHit());
+    }
+
+    @Test
+    void testLookup_ZeroWindowIgnoresHistory() {
+        planCacheProperties.setHistoryWindowChars(0);
+        store("查询北京天气", "用户: 你好\n助手: 你好！\n", "plan-weather");
+
+        assertTrue(lookup("北京天气怎么样", "用户: 帮我写代码\n助手: 好的\n").isHit());
+    }
+
+    @Test
+    void testLookup_IsolatesUsersByDefault() {
+        store("查询北京天气", "", "plan-weather");
+
+        assertFalse(planCache.lookup(ORCHESTRATOR_ID, FINGERPRINT, "user-2", "北京天气怎么样", "").isHit());
+        // 没有用户ID时无法隔离，不使用缓存
+        assertNull(planCache.lookup(ORCHESTRATOR_ID, FINGERPRINT, null, "北京天气怎么样", ""));
+    }
+
+    @Test
+    void testLookup_SharesAcrossUsersWhenEnabled() {
+        planCacheProperties.setShareAcrossUsers(true);
+        store("查询北京天气", "", "plan-weather");
+
+        assertTrue(planCache.lookup(ORCHESTRATOR_ID, FINGERPRINT, "user-2", "北京天气怎么样", "").isHit());
+        assertTrue(planCache.lookup(ORCHESTRATOR_ID, FINGERPRINT, null, "北京天气怎么样", "").isHit());
+    }
+
+    @Test
+    void testLookup_HistoryWindowUsesRecentHistoryOnly() {
+        planCacheProperties.setHistoryWindowChars(10);
+        store("查询北京天气", "用户: 很早以前的对话\n用户: 最近一轮\n", "plan-weather");
+
+        // 窗口之外的历史不同仍然命中，窗口之内不同则不命中
+        assertTrue(lookup("北京天气怎么样", "用户: 另一段早先的对话\n用户: 最近一轮\n").isHit());
+        assertFalse(lookup("北京天气怎么样", "用户: 很早以前的对话\n用户: 其他内容\n").isHit());
+    }
+
+    @Test
+    void testLookup_FullHistoryModeSkipsRequestsWithHistory() {
+        planCacheProperties.setHistoryWindowChars(-1);
+
+        assertNull(lookup("查询北京天气", "用户: 你好\n"));
+        verify(embeddingService, never()).embed(anyString());
+
+        store("查询北京天气", "", "plan-weather");
+        assertTrue(lookup("北京天气怎么样", "").isHit());
+    }
+
+    @Test
+    void testLookup_DisabledSkipsEmbedding() {
+        planCacheProperties.setEnabled(false);
+
+        assertNull(lookup("查询北京天气", ""));
+        verify(embeddingService, never()).embed(anyString());
+    }
+
+    @Test
+    void testInvalidate_RemovesOnlyThatOrchestrator() {
+        store("查询北京天气", "", "plan-1");
+        PlanCache.Lookup other = planCache.lookup(2L, FINGERPRINT, USER_ID, "查询北京天气", "");
+        planCache.put(other, "plan-2");
+
+        planCache.invalidate(ORCHESTRATOR_ID);
+
+        assertFalse(lookup("查询北京天气", "").isHit());
+        assertTrue(planCache.lookup(2L, FINGERPRINT, USER_ID, "查询北京天气", "").isHit());
+    }
+
+    private PlanCache.Lookup lookup(String userRequest, String history) {
+        return planCache.lookup(ORCHESTRATOR_ID, FINGERPRINT, USER_ID, userRequest, history);
+    }
+
+    private void store(String userRequest, String history, String planJson) {
+        PlanCache.Lookup lookup = lookup(userRequest, history);
+        assertNotNull(lookup);
+        assertFalse(lookup.isHit());
+        planCache.put(lookup, planJson);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.ddd.domain.agent.service.execute.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 任务计划增量解析器测试类
+ */
+class StreamingPlanParserTest {
+
+    private static final String PLAN = """
+            {
+              "summary": "先查询天气 {北京}，再写诗",
+              "totalTasks": 3,
+              "tasks": [
+                {"id": "t3", "title": "写诗", "agentId": 2, "order": 3,
+                 "inputs": {"fromUser": false, "fromTask": ["t1", "t2"]}},
+                {"id": "t1", "title": "查询\\"北京\\"天气", "agentId": 1, "order": 1,
+                 "description": "包含 {花括号} 和 [方括号] 以及 \\\\ 反斜杠", "inputs": {"fromUser": true}},
+                {"id": "t2", "title": "查询空气质量", "agentId": 1, "order": 2, "outputs": ["aqi"]}
+              ]
+            }
+            """;
+
+    @Test
+    void testAccept_WholePlanInOneToken() {
+        List<Task> tasks = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(tasks::add);
+
+        parser.accept(PLAN);
+
+        assertEquals(List.of("t3", "t1", "t2"), tasks.stream().map(Task::getId).toList());
+        assertEquals(3, parser.getParsed());
+    }
+
+    @Test
+    void testAccept_SplitIntoSingleCharacterTokens() {
+        List<Task> tasks = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(tasks::add);
+
+        feedByChars(parser, PLAN);
+
+        // 任务按在数组中出现的顺序回调，不按 order 或依赖关系排序
+        assertEquals(List.of("t3", "t1", "t2"), tasks.stream().map(Task::getId).toList());
+        Task t1 = tasks.get(1);
+        assertEquals("查询\"北京\"天气", t1.getTitle());
+        assertEquals("包含 {花括号} 和 [方括号] 以及 \\ 反斜杠", t1.getDescription());
+        assertEquals(1L, t1.getAgentId());
+        assertEquals(List.of("t1", "t2"), tasks.get(0).getInputs().getFromTask());
+        assertEquals(List.of("aqi"), tasks.get(2).getOutputs());
+    }
+
+    @Test
+    void testAccept_TaskEmittedAsSoonAsItCloses() {
+        List<Task> tasks = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(tasks::add);
+        String head = PLAN.substring(0, PLAN.indexOf("]}}") + 3);
+
+        feedByChars(parser, head);
+        assertEquals(List.of("t3"), tasks.stream().map(Task::getId).toList());
+
+        feedByChars(parser, PLAN.substring(head.length()));
+        assertEquals(3, tasks.size());
+    }
+
+    @Test
+    void testAccept_SkipsLeadingTextAndTrailingContent() {
+        List<Task> tasks = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(tasks::add);
+
+        parser.accept("好的，计划如下：\n```json\n");
+        feedByChars(parser, PLAN);
+        parser.accept("```\n以上计划共3个任务 {结束}");
+
+        assertEquals(3, tasks.size());
+    }
+
+    @Test
+    void testAccept_TruncatedStreamEmitsCompletedTasksOnly() {
+        List<Task> tasks = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(tasks::add);
+        String truncated = PLAN.substring(0, PLAN.indexOf("\"id\": \"t2\"") + 12);
+
+        feedByChars(parser, truncated);
+
+        assertEquals(List.of("t3", "t1"), tasks.stream().map(Task::getId).toList());
+        assertEquals(2, parser.getParsed());
+    }
+
+    @Test
+    void testAccept_MalformedJsonStopsWithoutThrowing() {
+        List<Task> tasks = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(tasks::add);
+
+        parser.accept("{\"tasks\": [{\"id\": \"t1\"}, {\"id\": }]}");
+        parser.accept("{\"tasks\": [{\"id\": \"t9\"}]}");
+
+        assertEquals(List.of("t1"), tasks.stream().map(Task::getId).toList());
+    }
+
+    @Test
+    void testAccept_CallbackFailureDoesNotStopParsing() {
+        List<String> ids = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(task -> {
+            ids.add(task.getId());
+            throw new IllegalStateException("派发失败");
+        });
+
+        feedByChars(parser, PLAN);
+
+        assertEquals(List.of("t3", "t1", "t2"), ids);
+    }
+
+    @Test
+    void testAccept_IgnoresTasksFieldOutsideRoot() {
+        List<Task> tasks = new ArrayList<>();
+        StreamingPlanParser parser = new StreamingPlanParser(tasks::add);
+
+        parser.accept("{\"meta\": {\"tasks\": [{\"id\": \"nested\"}]}, \"tasks\": [{\"id\": \"t1\"}]}");
+
+        assertEquals(List.of("t1"), tasks.stream().map(Task::getId).toList());
+    }
+
+    private static void feedByChars(StreamingPlanParser parser, String text) {
+        text.codePoints().forEach(codePoint -> parser.accept(new String(Character.toChars(codePoint))));
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ddd.infrastructure.dao;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.util.PGobject;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * pgvector 编解码测试类
+ */
+class PgVectorCodecTest {
+
+    @Test
+    void testDecode_VectorSendFormat() {
+        float[] vector = {0.5f, -1.25f, 3.0e-8f, Float.MAX_VALUE};
+
+        assertArrayEquals(vector, PgVectorCodec.decode(vectorSend(vector)));
+    }
+
+    @Test
+    void testDecode_HighDimension() {
+        float[] vector = new float[3072];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) Math.sin(i) / 7;
+        }
+
+        assertArrayEquals(vector, PgVectorCodec.decode(vectorSend(vector)));
+    }
+
+    @Test
+    void testDecode_Null() {
+        assertNull(PgVectorCodec.decode(null));
+    }
+
+    @Test
+    void testEncode_TextFormatRoundTrip() throws Exception {
+        float[] vector = {0.5f, -1.25f, 3.0e-8f, -Float.MIN_VALUE, 1f / 3};
+
+        PGobject object = PgVectorCodec.encoder().encode(vector);
+
+        assertEquals("vector", object.getType());
+        assertEquals("[0.5,-1.25,3.0E-8,-1.4E-45,0.33333334]", object.getValue());
+        assertArrayEquals(vector, parse(object.getValue()));
+    }
+
+    @Test
+    void testEncode_ReusedEncoderDoesNotLeakPreviousVector() throws Exception {
+        PgVectorCodec.Encoder encoder = PgVectorCodec.encoder();
+        float[] large = new float[1536];
+        Arrays.fill(large, -0.123456789f);
+        float[] small = {1f, 2f};
+
+        PGobject first = encoder.encode(large);
+        PGobject second = encoder.encode(small);
+
+        assertArrayEquals(large, parse(first.getValue()));
+        assertEquals("[1.0,2.0]", second.getValue());
+    }
+
+    @Test
+    void testEncode_NullOrEmpty() throws Exception {
+        assertNull(PgVectorCodec.encoder().encode(null));
+        assertNull(PgVectorCodec.encoder().encode(new float[0]));
+    }
+
+    /**
+     * 按 vector_send 的格式编码：int16维度 + int16保留 + float4大端数组
+     */
+    private static byte[] vectorSend(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + vector.length * Float.BYTES);
+        buffer.putShort((short) vector.length);
+        buffer.putShort((short) 0);
+        for (float v : vector) {
+            buffer.putFloat(v);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 按 pgvector 文本格式解析
+     */
+    private static float[] parse(String text) {
+        String[] parts = text.substring(1, text.length() - 1).split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+}